@@ -226,32 +226,34 @@ public abstract class AbstractConnection extends Thread {
         if (!connected) {
             throw new IOException("Not connected");
         }
-        @SuppressWarnings("resource")
-        final OtpOutputStream header = new OtpOutputStream(headerLen);
-
-        // preamble: 4 byte length + "passthrough" tag + version
-        header.write4BE(0); // reserve space for length
-        header.write1(passThrough);
-        header.write1(version);
+        final OtpOutputStream header = OtpOutputStream.acquire();
+        try {
+            // preamble: 4 byte length + "passthrough" tag + version
+            header.write4BE(0); // reserve space for length
+            header.write1(passThrough);
+            header.write1(version);
 
-        // header info
-        header.write_tuple_head(4);
-        header.write_long(regSendTag);
-        header.write_any(from);
-        if (sendCookie) {
-            header.write_atom(localNode.cookie());
-        } else {
-            header.write_atom("");
-        }
-        header.write_atom(dest);
+            // header info
+            header.write_tuple_head(4);
+            header.write_long(regSendTag);
+            header.write_any(from);
+            if (sendCookie) {
+                header.write_atom(localNode.cookie());
+            } else {
+                header.write_atom("");
+            }
+            header.write_atom(dest);
 
-        // version for payload
-        header.write1(version);
+            // version for payload
+            header.write1(version);
 
-        // fix up length in preamble
-        header.poke4BE(0, header.size() + payload.size() - 4);
+            // fix up length in preamble
+            header.poke4BE(0, header.size() + payload.size() - 4);
 
-        do_send(header, payload);
+            do_send(header, payload);
+        } finally {
+            header.release();
+        }
     }
 
     /**
@@ -270,31 +272,33 @@ public abstract class AbstractConnection extends Thread {
         if (!connected) {
             throw new IOException("Not connected");
         }
-        @SuppressWarnings("resource")
-        final OtpOutputStream header = new OtpOutputStream(headerLen);
-
-        // preamble: 4 byte length + "passthrough" tag + version
-        header.write4BE(0); // reserve space for length
-        header.write1(passThrough);
-        header.write1(version);
+        final OtpOutputStream header = OtpOutputStream.acquire();
+        try {
+            // preamble: 4 byte length + "passthrough" tag + version
+            header.write4BE(0); // reserve space for length
+            header.write1(passThrough);
+            header.write1(version);
 
-        // header info
-        header.write_tuple_head(3);
-        header.write_long(sendTag);
-        if (sendCookie) {
-            header.write_atom(localNode.cookie());
-        } else {
-            header.write_atom("");
-        }
-        header.write_any(dest);
+            // header info
+            header.write_tuple_head(3);
+            header.write_long(sendTag);
+            if (sendCookie) {
+                header.write_atom(localNode.cookie());
+            } else {
+                header.write_atom("");
+            }
+            header.write_any(dest);
 
-        // version for payload
-        header.write1(version);
+            // version for payload
+            header.write1(version);
 
-        // fix up length in preamble
-        header.poke4BE(0, header.size() + payload.size() - 4);
+            // fix up length in preamble
+            header.poke4BE(0, header.size() + payload.size() - 4);
 
-        do_send(header, payload);
+            do_send(header, payload);
+        } finally {
+            header.release();
+        }
     }
 
     /*
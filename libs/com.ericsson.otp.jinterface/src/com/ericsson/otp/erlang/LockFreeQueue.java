@@ -0,0 +1,161 @@
+/*
+ * %CopyrightBegin%
+ *
+ * Copyright Ericsson AB 2000-2013. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * %CopyrightEnd%
+ */
+package com.ericsson.otp.erlang;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A FIFO queue with the same contract as {@link GenericQueue}, but where producers never
+ * take a lock. Items are kept in a non-blocking linked queue and consumers that find it
+ * empty park until a producer hands them a wakeup, so many connections delivering to the
+ * same mailbox don't contend on a monitor.
+ *
+ * <p>
+ * Like {@link GenericQueue}, interrupts received while waiting are ignored.
+ * </p>
+ */
+public class LockFreeQueue extends GenericQueue {
+
+    private final ConcurrentLinkedQueue<Object> items = new ConcurrentLinkedQueue<Object>();
+    private final ConcurrentLinkedQueue<Thread> waiters = new ConcurrentLinkedQueue<Thread>();
+    private final AtomicInteger count = new AtomicInteger();
+
+    /** Create an empty queue */
+    public LockFreeQueue() {
+        super();
+    }
+
+    /** Clear a queue */
+    @Override
+    public void flush() {
+        items.clear();
+        count.set(0);
+    }
+
+    /**
+     * Add an object to the tail of the queue.
+     *
+     * @param o
+     *            Object to insert in the queue
+     */
+    @Override
+    public void put(final Object o) {
+        items.offer(o);
+        count.incrementAndGet();
+        signalWaiter();
+    }
+
+    /**
+     * Retrieve an object from the head of the queue, or block until one arrives.
+     *
+     * @return The object at the head of the queue.
+     */
+    @Override
+    public Object get() {
+        Object o = tryGet();
+        while (o == null) {
+            o = await(0);
+        }
+        return o;
+    }
+
+    /**
+     * Retrieve an object from the head of the queue, blocking until one arrives or until
+     * timeout occurs.
+     *
+     * @param timeout
+     *            Maximum time to block on queue, in ms. Use 0 to poll the queue.
+     *
+     * @exception InterruptedException
+     *                if the operation times out.
+     *
+     * @return The object at the head of the queue, or null if none arrived in time.
+     */
+    @Override
+    public Object get(final long timeout) throws InterruptedException {
+        Object o = tryGet();
+        if (o != null) {
+            return o;
+        }
+        final long stopTime = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        while (true) {
+            final long remaining = stopTime - System.nanoTime();
+            if (remaining <= 0) {
+                throw new InterruptedException("Get operation timed out");
+            }
+            o = await(remaining);
+            if (o != null) {
+                return o;
+            }
+        }
+    }
+
+    // attempt to retrieve message from queue head
+    @Override
+    public Object tryGet() {
+        final Object o = items.poll();
+        if (o != null) {
+            count.decrementAndGet();
+        }
+        return o;
+    }
+
+    @Override
+    public int getCount() {
+        return Math.max(0, count.get());
+    }
+
+    /*
+     * Park until woken by a producer, a spurious wakeup or the timeout (0 means no
+     * timeout), then try to take an item. The thread registers itself as a waiter before
+     * checking the queue one last time, so a put that happens in between always sees it.
+     */
+    private Object await(final long nanos) {
+        final Thread me = Thread.currentThread();
+        waiters.offer(me);
+        Object o = tryGet();
+        if (o == null) {
+            if (nanos > 0) {
+                LockSupport.parkNanos(this, nanos);
+            } else {
+                LockSupport.park(this);
+            }
+            // ignore interrupts, like GenericQueue does
+            Thread.interrupted();
+            o = tryGet();
+        }
+        if (!waiters.remove(me) && !items.isEmpty()) {
+            // a producer picked us to wake up, but we may have taken another item than
+            // the one it signalled for; pass the wakeup on so that no waiter is stranded
+            signalWaiter();
+        }
+        return o;
+    }
+
+    private void signalWaiter() {
+        final Thread waiter = waiters.poll();
+        if (waiter != null) {
+            LockSupport.unpark(waiter);
+        }
+    }
+}
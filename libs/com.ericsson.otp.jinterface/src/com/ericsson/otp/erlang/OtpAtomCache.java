@@ -0,0 +1,234 @@
+/*
+ * %CopyrightBegin%
+ *
+ * Copyright Ericsson AB 2000-2013. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * %CopyrightEnd%
+ */
+package com.ericsson.otp.erlang;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded table of shared {@link OtpErlangAtom} instances, keyed by the encoded bytes
+ * of the atom.
+ *
+ * <p>
+ * The table is direct mapped: each atom hashes to exactly one slot and a newer atom
+ * simply replaces an older one that collides with it, so the memory used is bounded by
+ * the number of slots. Lookups do not lock and, on a hit, do not allocate.
+ * </p>
+ *
+ * <p>
+ * Only atoms made of 7-bit characters are cached; their Latin-1 and UTF-8 encodings are
+ * identical, so the raw bytes are a valid key regardless of the tag they were received
+ * with. This covers practically all atoms seen in practice.
+ * </p>
+ *
+ * <p>
+ * The System property OtpAtomCache.size can be used to change the number of slots (it is
+ * rounded up to a power of two). A size of 0 disables the cache.
+ * </p>
+ */
+public final class OtpAtomCache {
+
+    private static final int DEFAULT_SIZE = 4096;
+
+    private static final class Entry {
+        final byte[] key;
+        final int hash;
+        final OtpErlangAtom atom;
+
+        Entry(final byte[] key, final int hash, final OtpErlangAtom atom) {
+            this.key = key;
+            this.hash = hash;
+            this.atom = atom;
+        }
+    }
+
+    private static final Entry[] table;
+    private static final int mask;
+
+    private static final LongAdder hits = new LongAdder();
+    private static final LongAdder misses = new LongAdder();
+
+    static {
+        int size = DEFAULT_SIZE;
+        final String prop = System.getProperties().getProperty("OtpAtomCache.size");
+        try {
+            if (prop != null) {
+                size = Integer.valueOf(prop).intValue();
+            }
+        } catch (final NumberFormatException e) {
+            size = DEFAULT_SIZE;
+        }
+        int n = 1;
+        while (n < size) {
+            n <<= 1;
+        }
+        table = size > 0 ? new Entry[n] : null;
+        mask = n - 1;
+    }
+
+    private OtpAtomCache() {
+    }
+
+    /**
+     * Look up the atom whose encoded name is found in buf[off..off+len).
+     *
+     * @return the shared atom, or null if it is not in the table (or can't be cached).
+     */
+    static OtpErlangAtom lookup(final byte[] buf, final int off, final int len) {
+        if (table == null || len > OtpExternal.maxAtomLength) {
+            return null;
+        }
+        final int hash = hash(buf, off, len);
+        if (hash == -1) {
+            return null;
+        }
+        final Entry e = table[hash & mask];
+        if (e != null && e.hash == hash && sameBytes(e.key, buf, off, len)) {
+            hits.increment();
+            return e.atom;
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * Remember atom as the shared instance for the name encoded in buf[off..off+len).
+     */
+    static void store(final byte[] buf, final int off, final int len,
+            final OtpErlangAtom atom) {
+        if (table == null || len > OtpExternal.maxAtomLength) {
+            return;
+        }
+        final int hash = hash(buf, off, len);
+        if (hash == -1) {
+            return;
+        }
+        final byte[] key = new byte[len];
+        System.arraycopy(buf, off, key, 0, len);
+        table[hash & mask] = new Entry(key, hash, atom);
+    }
+
+    /**
+     * Get a shared atom with the given name, creating and caching it if needed.
+     */
+    static OtpErlangAtom intern(final String name) {
+        final int len = name.length();
+        if (table == null || len > OtpExternal.maxAtomLength) {
+            return new OtpErlangAtom(name);
+        }
+        int hash = 0;
+        for (int i = 0; i < len; i++) {
+            final char c = name.charAt(i);
+            if (c > 0x7f) {
+                return new OtpErlangAtom(name);
+            }
+            hash = 31 * hash + c;
+        }
+        hash = spread(hash);
+        final Entry e = table[hash & mask];
+        if (e != null && e.hash == hash && e.atom.atomValue().equals(name)) {
+            hits.increment();
+            return e.atom;
+        }
+        misses.increment();
+        final OtpErlangAtom atom = new OtpErlangAtom(name);
+        final byte[] key = new byte[len];
+        for (int i = 0; i < len; i++) {
+            key[i] = (byte) name.charAt(i);
+        }
+        table[hash & mask] = new Entry(key, hash, atom);
+        return atom;
+    }
+
+    /**
+     * @return the hash of the bytes, or -1 if they are not all 7-bit characters.
+     */
+    private static int hash(final byte[] buf, final int off, final int len) {
+        int hash = 0;
+        for (int i = off; i < off + len; i++) {
+            final byte b = buf[i];
+            if (b < 0) {
+                return -1;
+            }
+            hash = 31 * hash + b;
+        }
+        return spread(hash);
+    }
+
+    private static int spread(final int h) {
+        // keep -1 free as the "not cacheable" marker
+        return (h ^ h >>> 16) & 0x7fffffff;
+    }
+
+    private static boolean sameBytes(final byte[] key, final byte[] buf, final int off,
+            final int len) {
+        if (key.length != len) {
+            return false;
+        }
+        for (int i = 0; i < len; i++) {
+            if (key[i] != buf[off + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the number of lookups that found a shared atom.
+     */
+    public static long hits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of lookups that had to create a new atom.
+     */
+    public static long misses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return the fraction of lookups that found a shared atom, between 0 and 1.
+     */
+    public static double hitRate() {
+        final long h = hits.sum();
+        final long total = h + misses.sum();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    /**
+     * @return the number of slots in the table, 0 if the cache is disabled.
+     */
+    public static int capacity() {
+        return table == null ? 0 : table.length;
+    }
+
+    /**
+     * Drop all cached atoms and reset the statistics.
+     */
+    public static void clear() {
+        if (table != null) {
+            for (int i = 0; i < table.length; i++) {
+                table[i] = null;
+            }
+        }
+        hits.reset();
+        misses.reset();
+    }
+}
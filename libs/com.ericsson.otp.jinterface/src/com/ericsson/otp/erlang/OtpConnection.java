@@ -62,7 +62,7 @@ public class OtpConnection extends AbstractConnection {
             throws IOException, OtpAuthException {
         super(self, s);
         this.self = self;
-        queue = new GenericQueue();
+        queue = new LockFreeQueue();
         start();
     }
 
@@ -78,7 +78,7 @@ public class OtpConnection extends AbstractConnection {
             throws IOException, OtpAuthException {
         super(self, other);
         this.self = self;
-        queue = new GenericQueue();
+        queue = new LockFreeQueue();
         start();
     }
 
@@ -327,11 +327,16 @@ public class OtpConnection extends AbstractConnection {
      * @exception java.io.IOException
      *                if the connection is not active or a communication error occurs.
      */
-    @SuppressWarnings("resource")
     public void send(final OtpErlangPid dest, final OtpErlangObject msg)
             throws IOException {
-        // encode and send the message
-        super.sendBuf(self.pid(), dest, new OtpOutputStream(msg));
+        // encode and send the message, reusing this thread's buffer
+        final OtpOutputStream payload = OtpOutputStream.acquire();
+        try {
+            payload.write_any(msg);
+            super.sendBuf(self.pid(), dest, payload);
+        } finally {
+            payload.release();
+        }
     }
 
     /**
@@ -345,10 +350,15 @@ public class OtpConnection extends AbstractConnection {
      * @exception java.io.IOException
      *                if the connection is not active or a communication error occurs.
      */
-    @SuppressWarnings("resource")
     public void send(final String dest, final OtpErlangObject msg) throws IOException {
-        // encode and send the message
-        super.sendBuf(self.pid(), dest, new OtpOutputStream(msg));
+        // encode and send the message, reusing this thread's buffer
+        final OtpOutputStream payload = OtpOutputStream.acquire();
+        try {
+            payload.write_any(msg);
+            super.sendBuf(self.pid(), dest, payload);
+        } finally {
+            payload.release();
+        }
     }
 
     /**
@@ -141,22 +141,33 @@ public class OtpCookedConnection extends AbstractConnection {
     /*
      * send to pid
      */
-    @SuppressWarnings("resource")
     void send(final OtpErlangPid from, final OtpErlangPid dest, final OtpErlangObject msg)
             throws IOException {
-        // encode and send the message
-        sendBuf(from, dest, new OtpOutputStream(msg));
+        // encode and send the message, reusing this thread's buffer
+        final OtpOutputStream payload = OtpOutputStream.acquire();
+        try {
+            payload.write_any(msg);
+            sendBuf(from, dest, payload);
+        } finally {
+            payload.release();
+        }
     }
 
     /*
      * send to remote name dest is recipient's registered name, the nodename is implied by
      * the choice of connection.
      */
-    @SuppressWarnings("resource")
-    void send(final OtpErlangPid from, final String dest, final OtpErlangObject msg)
+    int send(final OtpErlangPid from, final String dest, final OtpErlangObject msg)
             throws IOException {
-        // encode and send the message
-        sendBuf(from, dest, new OtpOutputStream(msg));
+        // encode and send the message, reusing this thread's buffer
+        final OtpOutputStream payload = OtpOutputStream.acquire();
+        try {
+            payload.write_any(msg);
+            sendBuf(from, dest, payload);
+            return payload.size();
+        } finally {
+            payload.release();
+        }
     }
 
     @Override
@@ -54,6 +54,24 @@ public class OtpErlangAtom extends OtpErlangObject {
         this.atom = atom;
     }
 
+    /**
+     * Get an atom with the given name. Unlike the constructor, this may return an
+     * instance shared with other callers, see {@link OtpAtomCache}.
+     *
+     * @param atom
+     *            the string to create the atom from.
+     *
+     * @exception java.lang.IllegalArgumentException
+     *                if the string is null or contains more than {@link #maxAtomLength
+     *                maxAtomLength} characters.
+     */
+    public static OtpErlangAtom valueOf(final String atom) {
+        if (atom == null) {
+            throw new java.lang.IllegalArgumentException("null string value");
+        }
+        return OtpAtomCache.intern(atom);
+    }
+
     /**
      * Create an atom from a stream containing an atom encoded in Erlang external format.
      *
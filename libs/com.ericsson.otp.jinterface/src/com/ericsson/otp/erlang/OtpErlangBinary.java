@@ -54,6 +54,14 @@ public class OtpErlangBinary extends OtpErlangBitstr {
         pad_bits = 0;
     }
 
+    /**
+     * Create a binary that is a view on len bytes of frame, starting at off, without
+     * copying them.
+     */
+    OtpErlangBinary(final byte[] frame, final int off, final int len) {
+        super(frame, off, len, 0);
+    }
+
     /**
      * Create a binary from an arbitrary Java Object. The object must implement
      * java.io.Serializable or java.io.Externalizable.
@@ -73,7 +81,7 @@ public class OtpErlangBinary extends OtpErlangBitstr {
      */
     @Override
     public void encode(final OtpOutputStream buf) {
-        buf.write_binary(bin);
+        writeBytes(buf);
     }
 
     @Override
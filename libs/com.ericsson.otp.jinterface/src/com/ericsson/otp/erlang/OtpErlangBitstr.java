@@ -21,6 +21,7 @@ package com.ericsson.otp.erlang;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /**
  * Provides a Java representation of Erlang bitstrs. An Erlang bitstr is an Erlang binary
@@ -34,6 +35,12 @@ public class OtpErlangBitstr extends OtpErlangObject {
     protected byte[] bin;
     protected int pad_bits;
 
+    // set while the bytes of a lazily decoded bitstr still live in the received frame;
+    // bin is written before frame is cleared, so whoever sees null here also sees bin
+    private transient volatile byte[] frame;
+    private transient int frameOffset;
+    private transient int frameLength;
+
     /**
      * Create a bitstr from a byte array
      *
@@ -62,13 +69,88 @@ public class OtpErlangBitstr extends OtpErlangObject {
         check_bitstr(this.bin, this.pad_bits);
     }
 
-    private void check_bitstr(final byte[] abin, final int a_pad_bits) {
+    /**
+     * Create a bitstr that is a view on len bytes of frame, starting at off. The bytes are
+     * copied only when {@link #binaryValue()} is first called, until then the whole frame
+     * is kept reachable and must not be modified.
+     */
+    OtpErlangBitstr(final byte[] frame, final int off, final int len,
+            final int pad_bits) {
+        // the same checks as for a copy, the pad bits are cleared when copying
+        check_padding(len, pad_bits);
+        this.frame = frame;
+        frameOffset = off;
+        frameLength = len;
+        this.pad_bits = pad_bits;
+    }
+
+    /**
+     * Copy the bytes of a lazily decoded bitstr out of the received frame.
+     */
+    protected final byte[] materialize() {
+        final byte[] f = frame;
+        if (f == null) {
+            return bin;
+        }
+        // several threads may get here at once, each copies the same bytes
+        final byte[] abin = new byte[frameLength];
+        System.arraycopy(f, frameOffset, abin, 0, frameLength);
+        check_bitstr(abin, pad_bits);
+        bin = abin;
+        frame = null;
+        return abin;
+    }
+
+    /**
+     * @return true if the bytes of this bitstr have not been copied out of the frame it
+     *         was decoded from yet.
+     */
+    public boolean isLazy() {
+        return frame != null;
+    }
+
+    /**
+     * Get a read-only view of the bytes of this bitstr. For a lazily decoded binary no
+     * bytes are copied.
+     *
+     * @return a buffer positioned at the first byte of this bitstr.
+     */
+    public ByteBuffer asByteBuffer() {
+        final byte[] f = frame;
+        if (f != null && pad_bits == 0) {
+            return ByteBuffer.wrap(f, frameOffset, frameLength).slice().asReadOnlyBuffer();
+        }
+        return ByteBuffer.wrap(materialize()).asReadOnlyBuffer();
+    }
+
+    /**
+     * Write the bytes of this bitstr to buf, straight from the frame if lazy.
+     */
+    void writeBytes(final OtpOutputStream buf) {
+        final byte[] f = frame;
+        if (f != null && pad_bits == 0) {
+            buf.write_binary(f, frameOffset, frameLength);
+        } else {
+            buf.write_bitstr(materialize(), pad_bits);
+        }
+    }
+
+    private void writeObject(final java.io.ObjectOutputStream out) throws IOException {
+        materialize();
+        out.defaultWriteObject();
+    }
+
+    private static void check_padding(final int len, final int a_pad_bits) {
         if (a_pad_bits < 0 || 7 < a_pad_bits) {
             throw new java.lang.IllegalArgumentException("Padding must be in range 0..7");
         }
-        if (a_pad_bits != 0 && abin.length == 0) {
+        if (a_pad_bits != 0 && len == 0) {
             throw new java.lang.IllegalArgumentException("Padding on zero length bitstr");
         }
+    }
+
+    private void check_bitstr(final byte[] abin, final int a_pad_bits) {
+        check_padding(abin.length, a_pad_bits);
         if (abin.length != 0) {
             // Make sure padding is zero
             abin[abin.length - 1] &= ~((1 << a_pad_bits) - 1);
@@ -152,7 +234,7 @@ public class OtpErlangBitstr extends OtpErlangObject {
      * @return the byte array containing the bytes for this bitstr.
      */
     public byte[] binaryValue() {
-        return bin;
+        return materialize();
     }
 
     /**
@@ -161,13 +243,18 @@ public class OtpErlangBitstr extends OtpErlangObject {
      * @return the number of bytes contained in the bintstr.
      */
     public int size() {
+        final int length = byteLength();
         if (pad_bits == 0) {
-            return bin.length;
+            return length;
         }
-        if (bin.length == 0) {
+        if (length == 0) {
             throw new java.lang.IllegalStateException("Impossible length");
         }
-        return bin.length - 1;
+        return length - 1;
+    }
+
+    private int byteLength() {
+        return frame != null ? frameLength : materialize().length;
     }
 
     /**
@@ -192,7 +279,7 @@ public class OtpErlangBitstr extends OtpErlangObject {
         if (pad_bits != 0) {
             return null;
         }
-        return fromByteArray(bin);
+        return fromByteArray(materialize());
     }
 
     /**
@@ -204,13 +291,14 @@ public class OtpErlangBitstr extends OtpErlangObject {
      */
     @Override
     public String toString() {
+        final int length = byteLength();
         if (pad_bits == 0) {
-            return "#Bin<" + bin.length + ">";
+            return "#Bin<" + length + ">";
         }
-        if (bin.length == 0) {
+        if (length == 0) {
             throw new java.lang.IllegalStateException("Impossible length");
         }
-        return "#Bin<" + bin.length + "-" + pad_bits + ">";
+        return "#Bin<" + length + "-" + pad_bits + ">";
     }
 
     /**
@@ -221,7 +309,7 @@ public class OtpErlangBitstr extends OtpErlangObject {
      */
     @Override
     public void encode(final OtpOutputStream buf) {
-        buf.write_bitstr(bin, pad_bits);
+        writeBytes(buf);
     }
 
     /**
@@ -244,13 +332,15 @@ public class OtpErlangBitstr extends OtpErlangObject {
             return false;
         }
 
-        final int len = bin.length;
-        if (len != that.bin.length) {
+        final byte[] abin = materialize();
+        final byte[] thatbin = that.materialize();
+        final int len = abin.length;
+        if (len != thatbin.length) {
             return false;
         }
 
         for (int i = 0; i < len; i++) {
-            if (bin[i] != that.bin[i]) {
+            if (abin[i] != thatbin[i]) {
                 return false; // early exit
             }
         }
@@ -261,7 +351,7 @@ public class OtpErlangBitstr extends OtpErlangObject {
     @Override
     protected int doHashCode() {
         final OtpErlangObject.Hash hash = new OtpErlangObject.Hash(15);
-        hash.combine(bin);
+        hash.combine(materialize());
         hash.combine(pad_bits);
         return hash.valueOf();
     }
@@ -269,7 +359,8 @@ public class OtpErlangBitstr extends OtpErlangObject {
     @Override
     public Object clone() {
         final OtpErlangBitstr that = (OtpErlangBitstr) super.clone();
-        that.bin = bin.clone();
+        that.bin = materialize().clone();
+        that.frame = null;
         that.pad_bits = pad_bits;
         return that;
     }
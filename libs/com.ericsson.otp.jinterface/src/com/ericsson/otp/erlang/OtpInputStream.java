@@ -21,6 +21,7 @@ package com.ericsson.otp.erlang;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.UnsupportedEncodingException;
 import java.math.BigDecimal;
 import java.util.Arrays;
 
@@ -35,7 +36,26 @@ public class OtpInputStream extends ByteArrayInputStream {
 
     public static int DECODE_INT_LISTS_AS_STRINGS = 1;
 
+    /**
+     * Decode integers, atoms and strings directly from the backing buffer instead of
+     * copying each value into a temporary array first. Reading past the end of the
+     * buffer raises an {@link OtpErlangDecodeException} instead of yielding zeroes.
+     */
+    public static int DECODE_DIRECT = 2;
+
+    /**
+     * Decode binaries and bitstrs as views over the decoded buffer; their bytes are only
+     * copied when {@link OtpErlangBitstr#binaryValue()} is called. Binaries smaller than
+     * {@link #LAZY_BINARY_THRESHOLD} bytes are copied right away, so that small values
+     * don't keep a large buffer reachable. The buffer must not be modified afterwards.
+     */
+    public static int DECODE_LAZY_BINARIES = 4;
+
+    public static final int LAZY_BINARY_THRESHOLD = 256;
+
     private final int flags;
+    private final boolean direct;
+    private final boolean lazyBinaries;
 
     /**
      * @param buf
@@ -52,6 +72,8 @@ public class OtpInputStream extends ByteArrayInputStream {
     public OtpInputStream(final byte[] buf, final int flags) {
         super(buf);
         this.flags = flags;
+        direct = (flags & DECODE_DIRECT) != 0;
+        lazyBinaries = (flags & DECODE_LAZY_BINARIES) != 0;
     }
 
     /**
@@ -64,6 +86,8 @@ public class OtpInputStream extends ByteArrayInputStream {
             final int flags) {
         super(buf, offset, length);
         this.flags = flags;
+        direct = (flags & DECODE_DIRECT) != 0;
+        lazyBinaries = (flags & DECODE_LAZY_BINARIES) != 0;
     }
 
     /**
@@ -209,6 +233,13 @@ public class OtpInputStream extends ByteArrayInputStream {
      *                if the next byte cannot be read.
      */
     public int read2BE() throws OtpErlangDecodeException {
+        if (direct) {
+            ensureAvailable(2);
+            final int i = (super.buf[super.pos] << 8 & 0xff00)
+                    + (super.buf[super.pos + 1] & 0xff);
+            super.pos += 2;
+            return i;
+        }
         final byte[] b = new byte[2];
         try {
             super.read(b);
@@ -227,6 +258,13 @@ public class OtpInputStream extends ByteArrayInputStream {
      *                if the next byte cannot be read.
      */
     public int read4BE() throws OtpErlangDecodeException {
+        if (direct) {
+            ensureAvailable(4);
+            final int p = super.pos;
+            super.pos += 4;
+            return (super.buf[p] << 24 & 0xff000000) + (super.buf[p + 1] << 16 & 0xff0000)
+                    + (super.buf[p + 2] << 8 & 0xff00) + (super.buf[p + 3] & 0xff);
+        }
         final byte[] b = new byte[4];
         try {
             super.read(b);
@@ -246,6 +284,13 @@ public class OtpInputStream extends ByteArrayInputStream {
      *                if the next byte cannot be read.
      */
     public int read2LE() throws OtpErlangDecodeException {
+        if (direct) {
+            ensureAvailable(2);
+            final int i = (super.buf[super.pos + 1] << 8 & 0xff00)
+                    + (super.buf[super.pos] & 0xff);
+            super.pos += 2;
+            return i;
+        }
         final byte[] b = new byte[2];
         try {
             super.read(b);
@@ -264,6 +309,14 @@ public class OtpInputStream extends ByteArrayInputStream {
      *                if the next byte cannot be read.
      */
     public int read4LE() throws OtpErlangDecodeException {
+        if (direct) {
+            ensureAvailable(4);
+            final int p = super.pos;
+            super.pos += 4;
+            return (super.buf[p + 3] << 24 & 0xff000000)
+                    + (super.buf[p + 2] << 16 & 0xff0000) + (super.buf[p + 1] << 8 & 0xff00)
+                    + (super.buf[p] & 0xff);
+        }
         final byte[] b = new byte[4];
         try {
             super.read(b);
@@ -286,6 +339,16 @@ public class OtpInputStream extends ByteArrayInputStream {
      *                if the next byte cannot be read.
      */
     public long readLE(final int n) throws OtpErlangDecodeException {
+        if (direct) {
+            ensureAvailable(n);
+            long v = 0;
+            int i = n;
+            while (i-- > 0) {
+                v = v << 8 | (long) super.buf[super.pos + i] & 0xff;
+            }
+            super.pos += n;
+            return v;
+        }
         final byte[] b = new byte[n];
         try {
             super.read(b);
@@ -312,6 +375,15 @@ public class OtpInputStream extends ByteArrayInputStream {
      *                if the next byte cannot be read.
      */
     public long readBE(final int n) throws OtpErlangDecodeException {
+        if (direct) {
+            ensureAvailable(n);
+            long v = 0;
+            for (int i = 0; i < n; i++) {
+                v = v << 8 | (long) super.buf[super.pos + i] & 0xff;
+            }
+            super.pos += n;
+            return v;
+        }
         final byte[] b = new byte[n];
         try {
             super.read(b);
@@ -325,6 +397,29 @@ public class OtpInputStream extends ByteArrayInputStream {
         return v;
     }
 
+    private void ensureAvailable(final int n) throws OtpErlangDecodeException {
+        if (n < 0 || super.count - super.pos < n) {
+            throw new OtpErlangDecodeException("Cannot read from input stream");
+        }
+    }
+
+    /**
+     * Read len bytes from the stream and decode them as a string in the given charset.
+     * In direct mode, the string is built straight from the backing buffer.
+     */
+    private String readChars(final int len, final String charsetName)
+            throws OtpErlangDecodeException, UnsupportedEncodingException {
+        if (direct) {
+            ensureAvailable(len);
+            final String s = new String(super.buf, super.pos, len, charsetName);
+            super.pos += len;
+            return s;
+        }
+        final byte[] strbuf = new byte[len];
+        this.readN(strbuf);
+        return new String(strbuf, charsetName);
+    }
+
     /**
      * Read an Erlang atom from the stream and interpret the value as a boolean.
      *
@@ -350,7 +445,6 @@ public class OtpInputStream extends ByteArrayInputStream {
     public String read_atom() throws OtpErlangDecodeException {
         int tag;
         int len = -1;
-        byte[] strbuf;
         String atom;
 
         tag = read1skip_version();
@@ -359,10 +453,8 @@ public class OtpInputStream extends ByteArrayInputStream {
 
         case OtpExternal.atomTag:
             len = read2BE();
-            strbuf = new byte[len];
-            this.readN(strbuf);
             try {
-                atom = new String(strbuf, "ISO-8859-1");
+                atom = readChars(len, "ISO-8859-1");
             } catch (final java.io.UnsupportedEncodingException e) {
                 throw new OtpErlangDecodeException("Failed to decode ISO-8859-1 atom");
             }
@@ -382,10 +474,8 @@ public class OtpInputStream extends ByteArrayInputStream {
             if (len < 0) {
                 len = read2BE();
             }
-            strbuf = new byte[len];
-            this.readN(strbuf);
             try {
-                atom = new String(strbuf, "UTF-8");
+                atom = readChars(len, "UTF-8");
             } catch (final java.io.UnsupportedEncodingException e) {
                 throw new OtpErlangDecodeException("Failed to decode UTF-8 atom");
             }
@@ -408,6 +498,48 @@ public class OtpInputStream extends ByteArrayInputStream {
         return atom;
     }
 
+    /**
+     * Read an Erlang atom from the stream, returning a shared instance if the atom is
+     * found in the {@link OtpAtomCache}.
+     *
+     * @return the atom.
+     *
+     * @exception OtpErlangDecodeException
+     *                if the next term in the stream is not an atom.
+     */
+    public OtpErlangAtom read_shared_atom() throws OtpErlangDecodeException {
+        final int start = super.pos;
+        final int tag = read1skip_version();
+        int len;
+        switch (tag) {
+        case OtpExternal.atomTag:
+        case OtpExternal.atomUtf8Tag:
+            len = read2BE();
+            break;
+        case OtpExternal.smallAtomUtf8Tag:
+            len = read1();
+            break;
+        default:
+            super.pos = start;
+            return new OtpErlangAtom(this);
+        }
+        final int off = super.pos;
+        final boolean cacheable = len <= super.count - off;
+        if (cacheable) {
+            final OtpErlangAtom atom = OtpAtomCache.lookup(super.buf, off, len);
+            if (atom != null) {
+                super.pos = off + len;
+                return atom;
+            }
+        }
+        super.pos = start;
+        final OtpErlangAtom atom = new OtpErlangAtom(this);
+        if (cacheable) {
+            OtpAtomCache.store(super.buf, off, len, atom);
+        }
+        return atom;
+    }
+
     /**
      * Read an Erlang binary from the stream.
      *
@@ -477,6 +609,55 @@ public class OtpInputStream extends ByteArrayInputStream {
         return bin;
     }
 
+    /**
+     * Read an Erlang binary or bitstr from the stream as a view over the stream's buffer,
+     * without copying its bytes.
+     *
+     * @return an {@link OtpErlangBinary} for a binary and an {@link OtpErlangBitstr}
+     *         for a bitstr, as when the bytes are copied.
+     *
+     * @exception OtpErlangDecodeException
+     *                if the next term in the stream is not a binary or a bitstr.
+     */
+    public OtpErlangBitstr read_bitstr_view() throws OtpErlangDecodeException {
+        final int tag = read1skip_version();
+        final int len;
+        int pad_bits = 0;
+        switch (tag) {
+        case OtpExternal.binTag:
+            len = read4BE();
+            break;
+        case OtpExternal.bitBinTag:
+            len = read4BE();
+            final int tail_bits = read1();
+            if (tail_bits < 0 || 7 < tail_bits) {
+                throw new OtpErlangDecodeException(
+                        "Wrong tail bit count in bitstr: " + tail_bits);
+            }
+            if (len == 0 && tail_bits != 0) {
+                throw new OtpErlangDecodeException(
+                        "Length 0 on bitstr with tail bit count: " + tail_bits);
+            }
+            pad_bits = 8 - tail_bits;
+            break;
+        default:
+            throw new OtpErlangDecodeException("Wrong tag encountered, expected "
+                    + OtpExternal.binTag + " or " + OtpExternal.bitBinTag + ", got " + tag);
+        }
+        ensureAvailable(len);
+        final OtpErlangBitstr result;
+        if (tag == OtpExternal.binTag) {
+            result = new OtpErlangBinary(super.buf, super.pos, len);
+        } else {
+            result = new OtpErlangBitstr(super.buf, super.pos, len, pad_bits);
+        }
+        super.pos += len;
+        if (len < LAZY_BINARY_THRESHOLD) {
+            result.materialize();
+        }
+        return result;
+    }
+
     /**
      * Read an Erlang float from the stream.
      *
@@ -688,6 +869,21 @@ public class OtpInputStream extends ByteArrayInputStream {
     }
 
     public long read_long(final boolean unsigned) throws OtpErlangDecodeException {
+        if (direct) {
+            // fixnums are by far the most common case, decode them in place
+            final int tag = peek1skip_version();
+            if (tag == OtpExternal.smallIntTag) {
+                read1();
+                return read1();
+            } else if (tag == OtpExternal.intTag) {
+                read1();
+                final int v = read4BE();
+                if (v < 0 && unsigned) {
+                    throw new OtpErlangDecodeException("Value not unsigned: " + v);
+                }
+                return v;
+            }
+        }
         final byte[] b = read_integer_byte_array();
         return OtpInputStream.byte_array_to_long(b, unsigned);
     }
@@ -1091,13 +1287,19 @@ public class OtpInputStream extends ByteArrayInputStream {
     public String read_string() throws OtpErlangDecodeException {
         int tag;
         int len;
-        byte[] strbuf;
         int[] intbuf;
         tag = read1skip_version();
         switch (tag) {
         case OtpExternal.stringTag:
             len = read2BE();
-            strbuf = new byte[len];
+            if (direct) {
+                try {
+                    return readChars(len, "ISO-8859-1");
+                } catch (final UnsupportedEncodingException e) {
+                    throw new OtpErlangDecodeException("Failed to decode ISO-8859-1 string");
+                }
+            }
+            final byte[] strbuf = new byte[len];
             this.readN(strbuf);
             return OtpErlangString.newString(strbuf);
         case OtpExternal.nilTag:
@@ -1183,7 +1385,7 @@ public class OtpInputStream extends ByteArrayInputStream {
         case OtpExternal.atomTag:
         case OtpExternal.smallAtomUtf8Tag:
         case OtpExternal.atomUtf8Tag:
-            return new OtpErlangAtom(this);
+            return read_shared_atom();
 
         case OtpExternal.floatTag:
         case OtpExternal.newFloatTag:
@@ -1225,9 +1427,15 @@ public class OtpInputStream extends ByteArrayInputStream {
             return new OtpErlangTuple(this);
 
         case OtpExternal.binTag:
+            if (lazyBinaries) {
+                return read_bitstr_view();
+            }
             return new OtpErlangBinary(this);
 
         case OtpExternal.bitBinTag:
+            if (lazyBinaries) {
+                return read_bitstr_view();
+            }
             return new OtpErlangBitstr(this);
 
         case OtpExternal.compressedTag:
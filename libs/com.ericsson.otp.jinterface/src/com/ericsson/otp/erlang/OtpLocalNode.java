@@ -19,13 +19,15 @@
  */
 package com.ericsson.otp.erlang;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * This class represents local node types. It is used to group the node types
  * {@link OtpNode OtpNode} and {@link OtpSelf OtpSelf}.
  */
 public class OtpLocalNode extends AbstractNode {
-    private int serial = 0;
-    private int pidCount = 1;
+    // pids are numbered sequentially, see createPid()
+    private final AtomicLong pidSequence = new AtomicLong();
     private int portCount = 1;
     private int refId[];
 
@@ -67,8 +69,7 @@ public class OtpLocalNode extends AbstractNode {
     }
 
     private void init() {
-        serial = 0;
-        pidCount = 1;
+        pidSequence.set(0);
         portCount = 1;
         refId = new int[3];
         refId[0] = 1;
@@ -111,20 +112,12 @@ public class OtpLocalNode extends AbstractNode {
      *
      * @return an Erlang pid.
      */
-    public synchronized OtpErlangPid createPid() {
-        final OtpErlangPid p = new OtpErlangPid(node, pidCount, serial, creation);
-
-        pidCount++;
-        if (pidCount > 0x7fff) {
-            pidCount = 0;
-
-            serial++;
-            if (serial > 0x1fff) { /* 13 bits */
-                serial = 0;
-            }
-        }
-
-        return p;
+    public OtpErlangPid createPid() {
+        // the first pid is <0.1.0>; the 15 bit id wraps into the 13 bit serial
+        final long n = pidSequence.getAndIncrement() + 1;
+        final int pidCount = (int) (n & 0x7fff);
+        final int serial = (int) (n >>> 15 & 0x1fff);
+        return new OtpErlangPid(node, pidCount, serial, creation);
     }
 
     /**
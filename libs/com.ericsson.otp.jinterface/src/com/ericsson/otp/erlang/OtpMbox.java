@@ -81,6 +81,8 @@ public class OtpMbox {
     GenericQueue queue;
     String name;
     Links links;
+    // false for aliases, which deliver into the queue of another mailbox
+    private final boolean ownsQueue;
 
     // package constructor: called by OtpNode:createMbox(name)
     // to create a named mbox
@@ -88,14 +90,26 @@ public class OtpMbox {
         this.self = self;
         this.home = home;
         this.name = name;
-        queue = new GenericQueue();
+        queue = new LockFreeQueue();
         links = new Links(10);
+        ownsQueue = true;
+    }
+
+    // package constructor: called by OtpNode:createAlias(owner)
+    // to create an anonymous mbox sharing the queue of owner
+    OtpMbox(final OtpNode home, final OtpErlangPid self, final OtpMbox owner) {
+        this.self = self;
+        this.home = home;
+        name = null;
+        queue = owner.queue;
+        links = new Links(10);
+        ownsQueue = false;
     }
 
     // package constructor: called by OtpNode:createMbox()
     // to create an anonymous
     OtpMbox(final OtpNode home, final OtpErlangPid self) {
-        this(home, self, null);
+        this(home, self, (String) null);
     }
 
     /**
@@ -367,23 +381,39 @@ public class OtpMbox {
      *
      */
     public void send(final String aname, final String node, final OtpErlangObject msg) {
+        sendSized(aname, node, msg);
+    }
+
+    /**
+     * Send a message to a named mailbox created from another node, like
+     * {@link #send(String, String, OtpErlangObject)}, and tell how large the encoded
+     * message was.
+     *
+     * @return the size in bytes of the encoded message, 0 if it was delivered locally
+     *         without being encoded, or -1 if it could not be sent.
+     */
+    public int sendSized(final String aname, final String node,
+            final OtpErlangObject msg) {
         try {
             final String currentNode = home.node();
             if (node.equals(currentNode)) {
                 send(aname, msg);
+                return 0;
             } else if (node.indexOf('@', 0) < 0 && node
                     .equals(currentNode.substring(0, currentNode.indexOf('@', 0)))) {
                 send(aname, msg);
+                return 0;
             } else {
                 // other node
                 final OtpCookedConnection conn = home.getConnection(node);
                 if (conn == null) {
-                    return;
+                    return -1;
                 }
-                conn.send(self, aname, msg);
+                return conn.send(self, aname, msg);
             }
         } catch (final Exception e) {
         }
+        return -1;
     }
 
     /**
@@ -640,7 +670,9 @@ public class OtpMbox {
     @Override
     protected void finalize() {
         close();
-        queue.flush();
+        if (ownsQueue) {
+            queue.flush();
+        }
     }
 
     /**
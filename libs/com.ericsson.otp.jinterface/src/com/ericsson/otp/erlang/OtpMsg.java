@@ -67,6 +67,8 @@ public class OtpMsg {
     protected OtpErlangPid from;
     protected OtpErlangPid to;
     protected String toName;
+    // size of the payload as received, -1 if it was never encoded
+    protected int payloadSize = -1;
 
     // send has receiver pid but no sender information
     OtpMsg(final OtpErlangPid to, final OtpInputStream paybuf) {
@@ -75,6 +77,7 @@ public class OtpMsg {
         this.to = to;
         toName = null;
         this.paybuf = paybuf;
+        payloadSize = paybuf.available();
         payload = null;
     }
 
@@ -95,6 +98,7 @@ public class OtpMsg {
         this.toName = toName;
         to = null;
         this.paybuf = paybuf;
+        payloadSize = paybuf.available();
         payload = null;
     }
 
@@ -210,6 +214,18 @@ public class OtpMsg {
         return payload;
     }
 
+    /**
+     * <p>
+     * Get the size of the payload of this message, as it was received.
+     * </p>
+     *
+     * @return the number of bytes in the encoded payload, or -1 if the message was
+     *         delivered locally and never encoded.
+     */
+    public int getPayloadSize() {
+        return payloadSize;
+    }
+
     /**
      * <p>
      * Get the name of the recipient for this message.
@@ -20,11 +20,15 @@
 package com.ericsson.otp.erlang;
 
 import java.io.IOException;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
 import java.lang.ref.WeakReference;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Enumeration;
-import java.util.Hashtable;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * <p>
@@ -63,7 +67,9 @@ public class OtpNode extends OtpLocalNode {
     private Acceptor acceptor = null;
 
     // keep track of all connections
-    Hashtable<String, OtpCookedConnection> connections = null;
+    ConcurrentHashMap<String, OtpCookedConnection> connections = null;
+    // held while setting up a new connection, so that we don't connect twice
+    private final Object connectLock = new Object();
 
     // keep track of all mailboxes
     Mailboxes mboxes = null;
@@ -223,7 +229,7 @@ public class OtpNode extends OtpLocalNode {
 
     private synchronized void init(final int aport) throws IOException {
         if (!initDone) {
-            connections = new Hashtable<>(17, (float) 0.95);
+            connections = new ConcurrentHashMap<>(17, (float) 0.95);
             mboxes = new Mailboxes();
             acceptor = new Acceptor(aport);
             initDone = true;
@@ -318,6 +324,28 @@ public class OtpNode extends OtpLocalNode {
         }
     }
 
+    /**
+     * <p>
+     * Create an anonymous mailbox that has its own {@link OtpMbox#self() pid}, but
+     * delivers into the queue of an existing mailbox. Messages sent to either pid are
+     * received through owner, and {@link OtpMsg#getRecipientPid()} tells them apart.
+     * </p>
+     *
+     * <p>
+     * This lets a single thread serve many peers that each need a distinct address to
+     * reply to. The alias should be closed when it is no longer needed; closing it does
+     * not affect owner.
+     * </p>
+     *
+     * @param owner
+     *            the mailbox whose queue the alias delivers into.
+     *
+     * @return a mailbox.
+     */
+    public OtpMbox createAlias(final OtpMbox owner) {
+        return mboxes.createAlias(owner);
+    }
+
     /**
      * Create an named mailbox that can be used to send and receive messages with other,
      * similar mailboxes and with Erlang processes. Messages can be sent to this mailbox
@@ -548,9 +576,12 @@ public class OtpNode extends OtpLocalNode {
      */
     OtpCookedConnection getConnection(final String anode) {
         OtpPeer peer = null;
-        OtpCookedConnection conn = null;
+        OtpCookedConnection conn = connections.get(anode);
 
-        synchronized (connections) {
+        if (conn != null) {
+            return conn;
+        }
+        synchronized (connectLock) {
             // first just try looking up the name as-is
             conn = connections.get(anode);
 
@@ -626,34 +657,41 @@ public class OtpNode extends OtpLocalNode {
      */
     public class Mailboxes {
         // mbox pids here
-        private Hashtable<OtpErlangPid, WeakReference<OtpMbox>> byPid = null;
+        private final ConcurrentHashMap<OtpErlangPid, MboxRef> byPid;
         // mbox names here
-        private Hashtable<String, WeakReference<OtpMbox>> byName = null;
+        private final ConcurrentHashMap<String, MboxRef> byName;
+        // references to collected mailboxes are queued here
+        private final ReferenceQueue<OtpMbox> collected = new ReferenceQueue<>();
 
         public Mailboxes() {
-            byPid = new Hashtable<>(17, (float) 0.95);
-            byName = new Hashtable<>(17, (float) 0.95);
+            byPid = new ConcurrentHashMap<>(17, (float) 0.95);
+            byName = new ConcurrentHashMap<>(17, (float) 0.95);
         }
 
         public OtpMbox create(final String name) {
-            OtpMbox m = null;
-
-            synchronized (byName) {
-                if (get(name) != null) {
-                    return null;
-                }
-                final OtpErlangPid pid = createPid();
-                m = new OtpMbox(OtpNode.this, pid, name);
-                byPid.put(pid, new WeakReference<>(m));
-                byName.put(name, new WeakReference<>(m));
+            purge();
+            final OtpErlangPid pid = createPid();
+            final OtpMbox m = new OtpMbox(OtpNode.this, pid, name);
+            if (!claimName(name, m)) {
+                return null;
             }
+            byPid.put(pid, new MboxRef(m, pid));
             return m;
         }
 
         public OtpMbox create() {
+            purge();
             final OtpErlangPid pid = createPid();
             final OtpMbox m = new OtpMbox(OtpNode.this, pid);
-            byPid.put(pid, new WeakReference<>(m));
+            byPid.put(pid, new MboxRef(m, pid));
+            return m;
+        }
+
+        public OtpMbox createAlias(final OtpMbox owner) {
+            purge();
+            final OtpErlangPid pid = createPid();
+            final OtpMbox m = new OtpMbox(OtpNode.this, pid, owner);
+            byPid.put(pid, new MboxRef(m, pid));
             return m;
         }
 
@@ -663,35 +701,26 @@ public class OtpNode extends OtpLocalNode {
         }
 
         public String[] names() {
-            String allnames[] = null;
-
-            synchronized (byName) {
-                final int n = byName.size();
-                final Enumeration<String> keys = byName.keys();
-                allnames = new String[n];
-
-                int i = 0;
-                while (keys.hasMoreElements()) {
-                    allnames[i++] = keys.nextElement();
+            final List<String> allnames = new ArrayList<>(byName.size());
+            for (final Map.Entry<String, MboxRef> entry : byName.entrySet()) {
+                if (entry.getValue().get() != null) {
+                    allnames.add(entry.getKey());
                 }
             }
-            return allnames;
+            return allnames.toArray(new String[allnames.size()]);
         }
 
         public boolean register(final String name, final OtpMbox mbox) {
             if (name == null) {
                 if (mbox.name != null) {
-                    byName.remove(mbox.name);
+                    removeName(mbox.name, mbox);
                     mbox.name = null;
                 }
             } else {
-                synchronized (byName) {
-                    if (get(name) != null) {
-                        return false;
-                    }
-                    byName.put(name, new WeakReference<>(mbox));
-                    mbox.name = name;
+                if (!claimName(name, mbox)) {
+                    return false;
                 }
+                mbox.name = name;
             }
             return true;
         }
@@ -701,7 +730,7 @@ public class OtpNode extends OtpLocalNode {
          * also remove the reference from the hashtable so we don't find it again.
          */
         public OtpMbox get(final String name) {
-            final WeakReference<OtpMbox> wr = byName.get(name);
+            final MboxRef wr = byName.get(name);
 
             if (wr != null) {
                 final OtpMbox m = wr.get();
@@ -709,7 +738,7 @@ public class OtpNode extends OtpLocalNode {
                 if (m != null) {
                     return m;
                 }
-                byName.remove(name);
+                byName.remove(name, wr);
             }
             return null;
         }
@@ -719,7 +748,7 @@ public class OtpNode extends OtpLocalNode {
          * also remove the reference from the hashtable so we don't find it again.
          */
         public OtpMbox get(final OtpErlangPid pid) {
-            final WeakReference<OtpMbox> wr = byPid.get(pid);
+            final MboxRef wr = byPid.get(pid);
 
             if (wr != null) {
                 final OtpMbox m = wr.get();
@@ -727,7 +756,7 @@ public class OtpNode extends OtpLocalNode {
                 if (m != null) {
                     return m;
                 }
-                byPid.remove(pid);
+                byPid.remove(pid, wr);
             }
             return null;
         }
@@ -735,7 +764,62 @@ public class OtpNode extends OtpLocalNode {
         public void remove(final OtpMbox mbox) {
             byPid.remove(mbox.self);
             if (mbox.name != null) {
-                byName.remove(mbox.name);
+                removeName(mbox.name, mbox);
+            }
+        }
+
+        /*
+         * associate name with mbox, unless it is taken by another live mailbox
+         */
+        private boolean claimName(final String name, final OtpMbox mbox) {
+            final MboxRef ref = new MboxRef(mbox, name);
+            while (true) {
+                final MboxRef old = byName.putIfAbsent(name, ref);
+                if (old == null) {
+                    return true;
+                }
+                if (old.get() != null) {
+                    return false;
+                }
+                // the previous owner is gone, take over its name
+                if (byName.replace(name, old, ref)) {
+                    return true;
+                }
+            }
+        }
+
+        private void removeName(final String name, final OtpMbox mbox) {
+            final MboxRef wr = byName.get(name);
+            if (wr != null) {
+                final OtpMbox m = wr.get();
+                if (m == null || m == mbox) {
+                    byName.remove(name, wr);
+                }
+            }
+        }
+
+        /*
+         * drop the entries of mailboxes that were garbage collected without being closed
+         */
+        private void purge() {
+            Reference<? extends OtpMbox> ref;
+            while ((ref = collected.poll()) != null) {
+                final MboxRef wr = (MboxRef) ref;
+                if (wr.key instanceof OtpErlangPid) {
+                    byPid.remove(wr.key, wr);
+                } else {
+                    byName.remove(wr.key, wr);
+                }
+            }
+        }
+
+        private final class MboxRef extends WeakReference<OtpMbox> {
+            // the pid or name this reference is stored under
+            final Object key;
+
+            MboxRef(final OtpMbox mbox, final Object key) {
+                super(mbox, collected);
+                this.key = key;
             }
         }
     }
@@ -831,7 +915,7 @@ public class OtpNode extends OtpLocalNode {
                 }
 
                 try {
-                    synchronized (connections) {
+                    synchronized (connectLock) {
                         conn = new OtpCookedConnection(OtpNode.this, newsock);
                         conn.setFlags(connFlags);
                         addConnection(conn);
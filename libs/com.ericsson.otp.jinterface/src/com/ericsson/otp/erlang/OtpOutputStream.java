@@ -58,6 +58,42 @@ public class OtpOutputStream extends ByteArrayOutputStream {
 
     private int fixedSize = Integer.MAX_VALUE;
 
+    /**
+     * Streams whose buffer has grown beyond this size are not returned to the pool when
+     * released, so that each thread keeps at most a few of these around. The System
+     * property OtpOutputStream.maxPooledSize can be used to change the default of 64 kB.
+     */
+    public static final int maxPooledSize;
+
+    private static final int poolDepth = 4;
+
+    private static final class Pool {
+        final OtpOutputStream[] free = new OtpOutputStream[poolDepth];
+        int size = 0;
+    }
+
+    private static final ThreadLocal<Pool> pool = new ThreadLocal<Pool>() {
+        @Override
+        protected Pool initialValue() {
+            return new Pool();
+        }
+    };
+
+    static {
+        int size = 64 * 1024;
+        final String prop = System.getProperties()
+                .getProperty("OtpOutputStream.maxPooledSize");
+        try {
+            if (prop != null) {
+                size = Integer.valueOf(prop).intValue();
+            }
+        } catch (final NumberFormatException e) {
+        }
+        maxPooledSize = size;
+    }
+
+    private boolean pooled = false;
+
     /**
      * Create a stream with the default initial size (2048 bytes).
      */
@@ -80,6 +116,45 @@ public class OtpOutputStream extends ByteArrayOutputStream {
         write_any(o);
     }
 
+    /**
+     * Get an empty stream from the calling thread's pool, or a new one if the pool is
+     * empty. The stream keeps the buffer it grew in earlier uses, so encoding terms of
+     * similar sizes over and over doesn't allocate. Call {@link #release()} when done
+     * with it.
+     */
+    public static OtpOutputStream acquire() {
+        final Pool p = pool.get();
+        final OtpOutputStream s;
+        if (p.size > 0) {
+            s = p.free[--p.size];
+            p.free[p.size] = null;
+        } else {
+            s = new OtpOutputStream();
+        }
+        s.pooled = true;
+        return s;
+    }
+
+    /**
+     * Return a stream obtained with {@link #acquire()} to the pool of the calling thread.
+     * The stream must not be used after this. Does nothing for streams that were not
+     * acquired from the pool.
+     */
+    public void release() {
+        if (!pooled) {
+            return;
+        }
+        pooled = false;
+        if (super.buf.length > maxPooledSize) {
+            return;
+        }
+        final Pool p = pool.get();
+        if (p.size < poolDepth) {
+            super.count = 0;
+            p.free[p.size++] = this;
+        }
+    }
+
     // package scope
     /*
      * Get the contents of the output stream as an input stream instead. This is used
@@ -137,7 +212,11 @@ public class OtpOutputStream extends ByteArrayOutputStream {
         }
         final int oldCapacity = super.buf.length;
         if (minCapacity > oldCapacity) {
-            int newCapacity = oldCapacity * 3 / 2 + 1;
+            // grow geometrically, so that a large term is copied O(log n) times
+            int newCapacity = oldCapacity * 2;
+            if (newCapacity < 0) {
+                newCapacity = Integer.MAX_VALUE - 8;
+            }
             if (newCapacity < oldCapacity + defaultIncrement) {
                 newCapacity = oldCapacity + defaultIncrement;
             }
@@ -445,6 +524,22 @@ public class OtpOutputStream extends ByteArrayOutputStream {
         writeN(bin);
     }
 
+    /**
+     * Write len bytes of an array, starting at off, to the stream as an Erlang binary.
+     *
+     * @param bin
+     *            the array of bytes to write.
+     * @param off
+     *            the index of the first byte to write.
+     * @param len
+     *            the number of bytes to write.
+     */
+    public void write_binary(final byte[] bin, final int off, final int len) {
+        write1(OtpExternal.binTag);
+        write4BE(len);
+        write(bin, off, len);
+    }
+
     /**
      * Write an array of bytes to the stream as an Erlang bitstr.
      *
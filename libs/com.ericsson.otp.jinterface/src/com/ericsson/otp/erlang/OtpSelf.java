@@ -266,6 +266,20 @@ public class OtpSelf extends OtpLocalNode {
         super.epmd = null;
     }
 
+    /**
+     * Unregister the node from Epmd if it was published, and close the socket it listens
+     * on. No connections can be accepted after this.
+     */
+    public void close() {
+        if (getEpmd() != null) {
+            unPublishPort();
+        }
+        try {
+            sock.close();
+        } catch (final IOException e) {/* ignore close errors */
+        }
+    }
+
     /**
      * Accept an incoming connection from a remote node. A call to this method will block
      * until an incoming connection is at least attempted.
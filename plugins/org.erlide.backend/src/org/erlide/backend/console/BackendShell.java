@@ -13,6 +13,9 @@ package org.erlide.backend.console;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import org.erlide.backend.api.IBackend;
 import org.erlide.runtime.events.ErlangEventHandler;
@@ -30,9 +33,34 @@ import com.ericsson.otp.erlang.OtpErlangPid;
 import com.ericsson.otp.erlang.OtpErlangString;
 import com.ericsson.otp.erlang.OtpErlangTuple;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
+/**
+ * Keeps the latest io requests of a backend and tells listeners about the text they
+ * add.
+ *
+ * <p>
+ * The requests are kept in a ring buffer; when it's full, each new request drops the
+ * oldest one. Request starts are positions in the whole output of the backend, and the
+ * position of the first kept character is subtracted to get offsets in the text, so
+ * neither adding nor dropping a request touches the others.
+ * </p>
+ *
+ * <p>
+ * Listeners are notified in batches: the first change after a notification schedules
+ * the next one {@link #FLUSH_DELAY} ms later, and it covers all changes made meanwhile
+ * with at most two events (text removed from the start, text added at the end). Input
+ * typed by the user is notified at once.
+ * </p>
+ */
 public class BackendShell implements IBackendShell {
 
+    private static final int MAX_REQUESTS = 5000;
+    private static final long FLUSH_DELAY = 20;
+    private static final ScheduledExecutorService FLUSHER = Executors
+            .newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setDaemon(true)
+                    .setNameFormat("console-flush-%d").build());
+
     private final IBackend backend;
     private OtpErlangPid server;
     private final String fId;
@@ -42,7 +70,6 @@ public class BackendShell implements IBackendShell {
         this.backend = backend;
         fId = id;
         this.server = server;
-        requests = new ArrayList<>(1000);
         listeners = new ArrayList<>();
     }
 
@@ -79,12 +106,22 @@ public class BackendShell implements IBackendShell {
         return fId;
     }
 
-    private static final int MAX_REQUESTS = 5000;
-    private static final int DELTA_REQUESTS = 500;
-
-    private final List<IoRequest> requests;
+    private final IoRequest[] requests = new IoRequest[MAX_REQUESTS];
+    // index of the oldest request and number of requests
+    private int first;
+    private int count;
+    // position of the first kept character and of the end of the text
+    private long base;
+    private long end;
+    // the part of the text that listeners know about
+    private long notifiedBase;
+    private long notifiedEnd;
+    private boolean flushScheduled;
+    /**
+     * Held while listeners are notified, so that they get events in order.
+     */
+    private final Object notifyLock = new Object();
     private final List<BackendShellListener> listeners;
-    private int length = 0;
 
     @Override
     public void input(final String s0) {
@@ -92,28 +129,42 @@ public class BackendShell implements IBackendShell {
         if (!s.endsWith("\n")) {
             s += "\n";
         }
-        final IoRequest request = new IoRequest(s, IoRequestKind.INPUT);
-        request.setStart(length);
-        final int prevLength = length;
-        addRequest(request);
-        notifyListeners(makeEvent(prevLength, request));
+        addRequest(new IoRequest(s, IoRequestKind.INPUT));
+        flush();
     }
 
-    private void addRequest(final IoRequest req) {
-        final int reqLength = req.getLength();
-        length += reqLength;
+    private void addRequest(final IoRequest request) {
         synchronized (requests) {
-            requests.add(req);
+            if (count == MAX_REQUESTS) {
+                base += requests[first].getLength();
+                requests[first] = null;
+                first = (first + 1) % MAX_REQUESTS;
+                count--;
+            }
+            request.setStart(end);
+            end += request.getLength();
+            requests[(first + count) % MAX_REQUESTS] = request;
+            count++;
+            if (!flushScheduled) {
+                flushScheduled = true;
+                FLUSHER.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        flush();
+                    }
+                }, FLUSH_DELAY, TimeUnit.MILLISECONDS);
+            }
         }
     }
 
+    private IoRequest get(final int i) {
+        return requests[(first + i) % MAX_REQUESTS];
+    }
+
     @Override
     public void add(final OtpErlangObject msg) {
-        deleteOldItems();
-        final int prevLength = length;
-        final IoRequest request = addRequestFromTuple(msg);
-        if (request != null) {
-            notifyListeners(makeEvent(prevLength, request));
+        if (msg instanceof OtpErlangTuple) {
+            addRequest(new IoRequest((OtpErlangTuple) msg));
         }
     }
 
@@ -122,112 +173,144 @@ public class BackendShell implements IBackendShell {
         if (IoRequest.RE_PROMPT.matcher(text).matches()) {
             return;
         }
-        final IoRequest request = new IoRequest(text, kind);
-        request.setStart(length);
-        final int prevLength = length;
-        addRequest(request);
-        notifyListeners(makeEvent(prevLength, request));
+        addRequest(new IoRequest(text, kind));
     }
 
-    private BackendShellEvent makeEvent(final int prevLength, final IoRequest request) {
-        return new BackendShellEvent(prevLength, 0, request.getMessage());
+    @Override
+    public void add(final List<OtpErlangObject> msgs) {
+        for (final OtpErlangObject msg : msgs) {
+            add(msg);
+        }
     }
 
-    private IoRequest addRequestFromTuple(final OtpErlangObject msg) {
-        if (!(msg instanceof OtpErlangTuple)) {
-            return null;
+    /**
+     * Tells listeners about the changes since the last notification.
+     */
+    private void flush() {
+        synchronized (notifyLock) {
+            final List<BackendShellEvent> events;
+            synchronized (requests) {
+                events = takeChanges();
+            }
+            for (final BackendShellEvent event : events) {
+                notifyListeners(event);
+            }
         }
-        final IoRequest request = new IoRequest((OtpErlangTuple) msg);
-        request.setStart(length);
-        addRequest(request);
-        return request;
     }
 
-    private void deleteOldItems() {
-        final int prevLength = length;
-        synchronized (requests) {
-            if (requests.size() > MAX_REQUESTS) {
-                requests.subList(0, DELTA_REQUESTS).clear();
-                final IoRequest first = requests.get(0);
-                final int start = first.getStart();
-                length = 0;
-                for (final IoRequest request : requests) {
-                    request.setStart(request.getStart() - start);
-                    length += request.getLength();
-                }
+    /**
+     * @return the events that turn the notified text into the current one
+     */
+    private List<BackendShellEvent> takeChanges() {
+        final List<BackendShellEvent> events = new ArrayList<>(2);
+        flushScheduled = false;
+        // where the notified text that is still kept ends
+        final long keptEnd = Math.max(base, notifiedEnd);
+        final int removed = (int) (Math.min(base, notifiedEnd) - notifiedBase);
+        final String text = textFrom(keptEnd);
+        if (removed > 0 && keptEnd == base) {
+            // nothing notified is left, replace it all at once
+            events.add(new BackendShellEvent(0, removed, text));
+        } else {
+            if (removed > 0) {
+                events.add(new BackendShellEvent(0, removed, ""));
             }
+            if (!text.isEmpty()) {
+                events.add(new BackendShellEvent((int) (keptEnd - base), 0, text));
+            }
+        }
+        notifiedBase = base;
+        notifiedEnd = end;
+        return events;
+    }
+
+    /**
+     * @return the text of the requests that start at or after pos
+     */
+    private String textFrom(final long pos) {
+        final StringBuilder result = new StringBuilder();
+        for (int i = indexAt(pos); i < count; i++) {
+            result.append(get(i).getMessage());
         }
-        if (length != prevLength) {
-            notifyListeners(new BackendShellEvent(0, length - prevLength, ""));
+        return result.toString();
+    }
+
+    /**
+     * @return the index of the request that contains pos, or count if pos is at or
+     *         after the end
+     */
+    private int indexAt(final long pos) {
+        if (pos >= end) {
+            return count;
         }
+        int low = 0;
+        int high = count - 1;
+        while (low < high) {
+            final int mid = low + high + 1 >>> 1;
+            if (get(mid).getStart() <= pos) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
     }
 
     @Override
     public IoRequest findAtPos(final int thePos) {
         synchronized (requests) {
-            for (final IoRequest req : requests) {
-                if (req.getStart() <= thePos
-                        && req.getStart() + req.getLength() > thePos) {
-                    return req;
-                }
+            if (thePos < 0 || base + thePos >= end) {
+                return null;
             }
-            return null;
+            return get(indexAt(base + thePos));
         }
     }
 
     @Override
-    public List<IoRequest> getAllFrom(final OtpErlangPid sender) {
-        final List<IoRequest> result = new ArrayList<>();
+    public int getStart(final IoRequest request) {
         synchronized (requests) {
-            for (final IoRequest element : requests) {
-                if (element.getSender().equals(sender)) {
-                    result.add(element);
-                }
-            }
+            return (int) (request.getStart() - base);
         }
-        return result;
     }
 
     @Override
-    public void add(final List<OtpErlangObject> msgs) {
-        final int prevLength = length;
-        final StringBuffer text = new StringBuffer();
+    public List<IoRequest> getAllFrom(final OtpErlangPid sender) {
+        final List<IoRequest> result = new ArrayList<>();
         synchronized (requests) {
-            deleteOldItems();
-            for (final OtpErlangObject element : msgs) {
-                final IoRequest request = addRequestFromTuple(element);
-                if (request != null) {
-                    requests.add(request);
-                    text.append(request.getMessage());
+            for (int i = 0; i < count; i++) {
+                final IoRequest element = get(i);
+                if (element.getSender().equals(sender)) {
+                    result.add(element);
                 }
             }
         }
-        if (!requests.isEmpty()) {
-            notifyListeners(new BackendShellEvent(prevLength, 0, text.toString()));
-        }
+        return result;
     }
 
     @Override
     public void dispose() {
-        listeners.clear();
-    }
-
-    @Override
-    public synchronized void addListener(final BackendShellListener listener) {
-        sendEarlierRequests(listener);
         synchronized (listeners) {
-            if (!listeners.contains(listener)) {
-                listeners.add(listener);
-            }
+            listeners.clear();
         }
     }
 
-    private void sendEarlierRequests(final BackendShellListener listener) {
-        int alength = 0;
-        synchronized (requests) {
-            for (final IoRequest request : requests) {
-                listener.changed(makeEvent(alength, request));
-                alength += request.getLength();
+    @Override
+    public void addListener(final BackendShellListener listener) {
+        synchronized (notifyLock) {
+            final List<BackendShellEvent> events;
+            final String text;
+            synchronized (requests) {
+                events = takeChanges();
+                text = textFrom(base);
+            }
+            for (final BackendShellEvent event : events) {
+                notifyListeners(event);
+            }
+            listener.changed(new BackendShellEvent(0, 0, text));
+            synchronized (listeners) {
+                if (!listeners.contains(listener)) {
+                    listeners.add(listener);
+                }
             }
         }
     }
@@ -251,28 +334,25 @@ public class BackendShell implements IBackendShell {
 
     @Override
     public int getTextLength() {
-        return length;
+        synchronized (requests) {
+            return (int) (end - base);
+        }
     }
 
     @Override
     public String getText() {
-        final StringBuffer result = new StringBuffer();
         synchronized (requests) {
-            for (final IoRequest request : requests) {
-                result.append(request.getMessage());
-            }
+            return textFrom(base);
         }
-        return result.toString();
     }
 
     @Override
     public String[] getLastMessages(final int nMessages) {
         final List<String> result = Lists.newArrayListWithCapacity(nMessages);
         synchronized (requests) {
-            final int size = requests.size();
-            final int n = Math.min(nMessages, size);
-            for (int i = size - n; i < size; ++i) {
-                result.add(requests.get(i).getMessage());
+            final int n = Math.min(nMessages, count);
+            for (int i = count - n; i < count; ++i) {
+                result.add(get(i).getMessage());
             }
         }
         return result.toArray(new String[nMessages]);
@@ -1,82 +1,75 @@
 package org.erlide.backend.debug.events;
 
-import org.erlide.util.ErlLogger;
-import org.erlide.util.erlang.OtpBindings;
-import org.erlide.util.erlang.OtpErlang;
-import org.erlide.util.erlang.OtpParserException;
+import org.erlide.util.erlang.OtpPattern;
 
 import com.ericsson.otp.erlang.OtpErlangAtom;
-import com.ericsson.otp.erlang.OtpErlangException;
 import com.ericsson.otp.erlang.OtpErlangList;
+import com.ericsson.otp.erlang.OtpErlangLong;
 import com.ericsson.otp.erlang.OtpErlangObject;
 import com.ericsson.otp.erlang.OtpErlangPid;
+import com.ericsson.otp.erlang.OtpErlangRangeException;
+import com.ericsson.otp.erlang.OtpErlangTuple;
 
 public class DebuggerEventFactory {
 
+    private static final OtpPattern STARTED = OtpPattern.of("{started, Pid:p}");
+    private static final OtpPattern TERMINATED = OtpPattern.of("{terminated, Pid:p}");
+    private static final OtpPattern INT = OtpPattern.of("{int, Cmd}");
+    private static final OtpPattern ATTACHED = OtpPattern.of("{attached, Pid:p}");
+    private static final OtpPattern OTHER = OtpPattern.of("{Other:a, Cmd}");
+    private static final OtpPattern META = OtpPattern.of("{Meta:p, Event}");
+
+    private static final OtpPattern BREAK_AT = OtpPattern
+            .of("{break_at, Mod:a, Line:i, Crt}");
+    private static final OtpPattern EXIT_AT = OtpPattern
+            .of("{exit_at, Pos, Reason, Le, OrigPid:p}");
+    private static final OtpPattern EXIT_AT_STACK = OtpPattern
+            .of("{exit_at, Pos, Reason, Le, OrigPid:p, Stack:l, Binds:l}");
+    private static final OtpPattern WAIT_AT = OtpPattern
+            .of("{wait_at, Mod:a, Line:i, Crt}");
+
+    // enough for all the patterns above
+    private static final int SLOTS = 6;
+
     public static DebuggerEvent parse(final OtpErlangObject message) {
         // TODO More events from dbg_mon...
-        try {
-            OtpBindings b = OtpErlang.match("{started, Pid:p}", message);
-            if (b != null) {
-                return buildStartedEvent(b);
-            }
-            b = OtpErlang.match("{terminated, Pid:p}", message);
-            if (b != null) {
-                return buildTerminatedEvent(b);
-            }
-            b = OtpErlang.match("{int, Cmd}", message);
-            if (b != null) {
-                return buildIntEvent(b);
-            }
-            b = OtpErlang.match("{attached, Pid:p}", message);
-            if (b != null) {
-                return buildAttachedEvent(b);
-            }
-            b = OtpErlang.match("{Other:a, Cmd}", message);
-            if (b != null) {
-                return buildUnknownEvent(message);
-            }
-            b = OtpErlang.match("{Meta:p, Event}", message);
-            if (b != null) {
-                return buildMetaEvent(b);
-            }
-        } catch (final OtpParserException e) {
-            ErlLogger.error(e);
-        } catch (final OtpErlangException e) {
-            ErlLogger.error(e);
+        final OtpErlangObject[] b = new OtpErlangObject[SLOTS];
+        if (STARTED.match(message, b)) {
+            return new StartedEvent((OtpErlangPid) b[0]);
+        }
+        if (TERMINATED.match(message, b)) {
+            return new TerminatedEvent((OtpErlangPid) b[0]);
+        }
+        if (INT.match(message, b)) {
+            return buildIntEvent(b[0]);
+        }
+        if (ATTACHED.match(message, b)) {
+            return new AttachedEvent((OtpErlangPid) b[0]);
+        }
+        if (OTHER.match(message, b)) {
+            return buildUnknownEvent(message);
+        }
+        if (META.match(message, b)) {
+            return parseMeta((OtpErlangPid) b[0], b[1], b);
         }
         return new UnknownEvent(message);
     }
 
-    private static DebuggerEvent buildMetaEvent(final OtpBindings b)
-            throws OtpErlangException {
-        return parseMeta(b.getPid("Meta"), b.get("Event"));
-    }
-
     private static MetaEvent parseMeta(final OtpErlangPid pid,
-            final OtpErlangObject event) {
+            final OtpErlangObject event, final OtpErlangObject[] b) {
         try {
-            OtpBindings b = OtpErlang.match("{break_at, Mod:a, Line:i, Crt}", event);
-            if (b != null) {
-                return new BreakAtEvent(pid, b.getAtom("Mod"), b.getInt("Line"),
-                        b.get("Crt"));
+            if (BREAK_AT.match(event, b)) {
+                return new BreakAtEvent(pid, atom(b[0]), intValue(b[1]), b[2]);
             }
-            b = OtpErlang.match("{exit_at, Pos, Reason, Le, OrigPid:p}", event);
-            if (b != null) {
-                return new ExitAtEvent(pid, b.get("Pos"), b.get("Reason"), b.get("Le"),
-                        b.getPid("OrigPid"));
+            if (EXIT_AT.match(event, b)) {
+                return new ExitAtEvent(pid, b[0], b[1], b[2], (OtpErlangPid) b[3]);
             }
-            b = OtpErlang.match("{exit_at, Pos, Reason, Le, OrigPid:p, Stack:l, Binds:l}",
-                    event);
-            if (b != null) {
-                return new ExitAtEvent(pid, b.get("Pos"), b.get("Reason"), b.get("Le"),
-                        b.getPid("OrigPid"), (OtpErlangList) b.get("Stack"),
-                        (OtpErlangList) b.get("Binds"));
+            if (EXIT_AT_STACK.match(event, b)) {
+                return new ExitAtEvent(pid, b[0], b[1], b[2], (OtpErlangPid) b[3],
+                        (OtpErlangList) b[4], (OtpErlangList) b[5]);
             }
-            b = OtpErlang.match("{wait_at, Mod:a, Line:i, Crt}", event);
-            if (b != null) {
-                return new WaitAtEvent(pid, b.getAtom("Mod"), b.getInt("Line"),
-                        b.get("Crt"));
+            if (WAIT_AT.match(event, b)) {
+                return new WaitAtEvent(pid, atom(b[0]), intValue(b[1]), b[2]);
             }
         } catch (final Exception e) {
         }
@@ -84,18 +77,22 @@ public class DebuggerEventFactory {
         return new MetaEvent(pid, event);
     }
 
-    private static DebuggerEvent buildUnknownEvent(final OtpErlangObject message) {
-        return new UnknownEvent(message);
+    private static String atom(final OtpErlangObject value) {
+        return ((OtpErlangAtom) value).atomValue();
     }
 
-    private static DebuggerEvent buildAttachedEvent(final OtpBindings b)
-            throws OtpErlangException {
-        return new AttachedEvent(b.getPid("Pid"));
+    private static int intValue(final OtpErlangObject value)
+            throws OtpErlangRangeException {
+        return ((OtpErlangLong) value).intValue();
     }
 
-    private static DebuggerEvent buildIntEvent(final OtpBindings b) {
+    private static DebuggerEvent buildUnknownEvent(final OtpErlangObject message) {
+        return new UnknownEvent(message);
+    }
+
+    private static DebuggerEvent buildIntEvent(final OtpErlangObject cmd0) {
         try {
-            final OtpErlangObject[] cmds = b.getTuple("Cmd");
+            final OtpErlangObject[] cmds = ((OtpErlangTuple) cmd0).elements();
             final String cmd = ((OtpErlangAtom) cmds[0]).atomValue();
             if (cmd.equals("new_break")) {
                 return new NewBreakEvent(cmds);
@@ -115,14 +112,4 @@ public class DebuggerEventFactory {
         }
     }
 
-    private static DebuggerEvent buildTerminatedEvent(final OtpBindings b)
-            throws OtpErlangException {
-        return new TerminatedEvent(b.getPid("Pid"));
-    }
-
-    private static DebuggerEvent buildStartedEvent(final OtpBindings b)
-            throws OtpErlangException {
-        return new StartedEvent(b.getPid("Pid"));
-    }
-
 }
@@ -380,12 +380,10 @@ public class Backend implements IStreamListener, IBackend {
                         && "beam".compareTo(path.getFileExtension()) == 0) {
                     final String m = path.removeFileExtension().lastSegment();
                     try {
-                        boolean ok = false;
                         final OtpErlangBinary bin = BeamUtil.getBeamBinary(m, path);
                         if (bin != null) {
-                            ok = BeamLoader.loadBeam(getOtpRpc(), m, bin);
-                        }
-                        if (!ok) {
+                            BeamLoader.loadBeam(getOtpRpc(), m, bin);
+                        } else {
                             ErlLogger.error("Could not load %s", m);
                         }
                     } catch (final Exception ex) {
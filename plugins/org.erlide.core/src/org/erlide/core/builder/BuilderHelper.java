@@ -592,12 +592,10 @@ public final class BuilderHelper {
                         .append(erlProject.getProperties().getOutputDir())
 						.append(module + ".beam");
 
-				boolean ok = false;
 				final OtpErlangBinary bin = BeamUtil.getBeamBinary(module, path);
 				if (bin != null) {
-					ok = BeamLoader.loadBeam(b.getOtpRpc(), module, bin);
-				}
-				if (!ok) {
+					BeamLoader.loadBeam(b.getOtpRpc(), module, bin);
+				} else {
 					ErlLogger.error("Could not load %s", module);
 				}
 
@@ -14,9 +14,7 @@ import static com.google.common.collect.Lists.newArrayList;
 
 import java.util.Collection;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
@@ -52,6 +50,7 @@ import org.erlide.engine.model.root.ErlangProjectProperties;
 import org.erlide.engine.model.root.IErlModel;
 import org.erlide.engine.model.root.IErlModule;
 import org.erlide.engine.model.root.IErlProject;
+import org.erlide.runtime.rpc.RpcCompletionQueue;
 import org.erlide.runtime.rpc.RpcFuture;
 import org.erlide.util.ErlLogger;
 import org.erlide.util.SystemConfiguration;
@@ -203,7 +202,7 @@ public class InternalBuilder extends ErlangBuilder {
 		backend.addProjectPath(model.findProject(project));
 
 		notifier.setProgressPerCompilationUnit(1.0f / n);
-		final Map<RpcFuture, IResource> results = new HashMap<>();
+		final RpcCompletionQueue<IResource> results = new RpcCompletionQueue<>();
 		for (final BuildResource bres : resourcesToBuild) {
 			notifier.checkCancel();
 			final IResource resource = bres.getResource();
@@ -213,41 +212,40 @@ public class InternalBuilder extends ErlangBuilder {
 				final String outputDir = erlProject.getProperties().getOutputDir().toString();
 				final RpcFuture f = helper.startCompileErl(project, bres, outputDir, backend.getOtpRpc(), compilerOptions, kind == BuildKind.FULL);
 				if (f != null) {
-					results.put(f, resource);
+					results.add(f, resource);
 				}
 			} else if ("yrl".equals(resource.getFileExtension())) {
 				final RpcFuture f = helper.startCompileYrl(project, resource, backend.getOtpRpc(), compilerOptions);
 				if (f != null) {
-					results.put(f, resource);
+					results.add(f, resource);
 				}
 			} else {
 				ErlLogger.warn("Don't know how to compile: %s", resource.getName());
 			}
 		}
 
-		final List<Entry<RpcFuture, IResource>> done = Lists.newArrayList();
-		final List<Entry<RpcFuture, IResource>> waiting = Lists.newArrayList(results.entrySet());
-
-		// TODO should use some kind of notification!
-		while (!waiting.isEmpty()) {
-			for (final Entry<RpcFuture, IResource> result : waiting) {
-				notifier.checkCancel();
-				OtpErlangObject r;
-				try {
-					r = result.getKey().get(100, TimeUnit.MILLISECONDS);
-				} catch (final Exception e) {
-					r = null;
-				}
-				if (r != null) {
-					final IResource resource = result.getValue();
-					helper.completeCompile(project, resource, r, backend.getOtpRpc(), compilerOptions);
-					notifier.compiled(resource);
-
-					done.add(result);
-				}
+		// handle each result as soon as it arrives
+		while (!results.isEmpty()) {
+			notifier.checkCancel();
+			final Entry<RpcFuture, IResource> result;
+			try {
+				// the timeout is only there to check for cancellation now and then
+				result = results.poll(100, TimeUnit.MILLISECONDS);
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new OperationCanceledException();
+			}
+			if (result == null) {
+				continue;
+			}
+			final IResource resource = result.getValue();
+			final OtpErlangObject r = result.getKey().get();
+			if (r != null) {
+				helper.completeCompile(project, resource, r, backend.getOtpRpc(), compilerOptions);
+			} else {
+				ErlLogger.warn("Could not compile %s", resource.getName());
 			}
-			waiting.removeAll(done);
-			done.clear();
+			notifier.compiled(resource);
 		}
 		helper.refreshOutputDir(project);
 
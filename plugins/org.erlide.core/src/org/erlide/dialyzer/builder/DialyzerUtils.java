@@ -98,6 +98,8 @@ public class DialyzerUtils {
             while (!future.isDone()) {
                 // check cancellation
                 if (monitor.isCanceled()) {
+                    // nobody will wait for the reply anymore
+                    future.cancel(false);
                     throw new OperationCanceledException();
                 }
                 // check backend down
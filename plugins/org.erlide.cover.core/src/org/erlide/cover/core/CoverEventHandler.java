@@ -21,7 +21,6 @@ import com.ericsson.otp.erlang.OtpErlangAtom;
 import com.ericsson.otp.erlang.OtpErlangList;
 import com.ericsson.otp.erlang.OtpErlangObject;
 import com.ericsson.otp.erlang.OtpErlangTuple;
-import com.google.common.eventbus.Subscribe;
 
 /**
  * Handler for coverage events
@@ -45,7 +44,12 @@ public class CoverEventHandler extends ErlangEventHandler {
         log = Activator.getDefault();
     }
 
-    @Subscribe
+    @Override
+    public int getQueueCapacity() {
+        return 10000;
+    }
+
+    @Override
     public void handleEvent(final ErlEvent event) {
         if (!event.getTopic().equals(getTopic())) {
             return;
@@ -8,7 +8,6 @@ import org.erlide.runtime.events.ErlangEventHandler;
 import com.ericsson.otp.erlang.OtpErlangAtom;
 import com.ericsson.otp.erlang.OtpErlangObject;
 import com.ericsson.otp.erlang.OtpErlangTuple;
-import com.google.common.eventbus.Subscribe;
 
 /**
  * Handler for eunit events
@@ -44,7 +43,12 @@ public class EUnitEventHandler extends ErlangEventHandler {
         log = Activator.getDefault();
     }
 
-    @Subscribe
+    @Override
+    public int getQueueCapacity() {
+        return 10000;
+    }
+
+    @Override
     public void handleEvent(final ErlEvent event) {
         if (!event.getTopic().equals(getTopic())) {
             return;
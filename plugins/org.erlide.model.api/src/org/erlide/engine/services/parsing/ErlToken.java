@@ -11,6 +11,8 @@
 
 package org.erlide.engine.services.parsing;
 
+import java.nio.ByteBuffer;
+
 import org.erlide.util.ErlLogger;
 
 import com.ericsson.otp.erlang.OtpErlangAtom;
@@ -46,16 +48,16 @@ public final class ErlToken {
 
     // special for lightscanstring
     // <<(kind_small(Kind)), L:24, O:24, G:24>>
-    public ErlToken(final byte[] bytes, final int index, final int offset0) {
-        kind = bytes[index];
+    public ErlToken(final ByteBuffer bytes, final int index, final int offset0) {
+        kind = bytes.get(index);
         line = int24(bytes, index + 1);
         offset = int24(bytes, index + 4) + offset0;
         length = int24(bytes, index + 7);
     }
 
-    private int int24(final byte[] bytes, final int index) {
-        return (0xff & bytes[index]) << 16 | (0xff & bytes[index + 1]) << 8
-                | 0xff & bytes[index + 2];
+    private int int24(final ByteBuffer bytes, final int index) {
+        return (0xff & bytes.get(index)) << 16 | (0xff & bytes.get(index + 1)) << 8
+                | 0xff & bytes.get(index + 2);
     }
 
     public ErlToken(final OtpErlangTuple e) {
@@ -51,4 +51,15 @@ public interface ModelFindService {
     String resolveMacroValue(final String definedName, final IErlModule module);
 
     Collection<IErlModule> findAllIncludedFiles(IErlModule module) throws CoreException;
+
+    /**
+     * Looks up the include through the model's index, so it costs a few lookups and no
+     * walk over the project's files.
+     *
+     * @return the file that an include with this file name resolves to in the module,
+     *         searched in the same order as {@link #findAllIncludedFiles(IErlModule)}
+     *         does, or null
+     */
+    IErlModule findIncludedFile(IErlModule module, String includeFileName)
+            throws ErlModelException;
 }
@@ -45,6 +45,7 @@ import org.eclipse.xtext.xbase.lib.IterableExtensions;
 import org.erlide.engine.ErlangEngine;
 import org.erlide.engine.ModelPlugin;
 import org.erlide.engine.internal.model.cache.ErlModelCache;
+import org.erlide.engine.internal.model.cache.ModuleIndex;
 import org.erlide.engine.internal.model.root.ErlElementDelta;
 import org.erlide.engine.internal.model.root.ErlFolder;
 import org.erlide.engine.internal.model.root.ErlModule;
@@ -74,10 +75,8 @@ import org.erlide.engine.model.root.IOpenable;
 import org.erlide.engine.model.root.ProjectConfigurationChangeListener;
 import org.erlide.engine.util.CommonUtils;
 import org.erlide.engine.util.NatureUtil;
-import org.erlide.engine.util.ResourceUtil;
 import org.erlide.runtime.runtimeinfo.RuntimeVersion;
 import org.erlide.util.ErlLogger;
-import org.erlide.util.SystemConfiguration;
 
 import com.ericsson.otp.erlang.OtpErlangList;
 import com.ericsson.otp.erlang.OtpErlangObject;
@@ -591,6 +590,9 @@ public class ErlModel extends Openable implements IErlModel {
 		if (element != null) {
 			final IParent p = element.getParent();
 			p.removeChild(element);
+			if (element instanceof IErlModule) {
+				ErlModelCache.getDefault().removeDeletedModule((IErlModule) element);
+			}
 			if (element instanceof IOpenable) {
 				final IOpenable openable = (IOpenable) element;
 				try {
@@ -917,43 +919,21 @@ public class ErlModel extends Openable implements IErlModel {
 		return null;
 	}
 
-	private Collection<IErlModule> getAllIncludes(final IErlProject project, final boolean checkExternals, final IErlElementLocator.Scope scope) throws ErlModelException {
-		final List<IErlProject> projects = Lists.newArrayList();
-		final List<IErlModule> result = Lists.newArrayList();
-		final Set<String> paths = Sets.newHashSet();
+	/**
+	 * @return the projects to search, in the order they should be searched
+	 */
+	private Collection<IErlProject> getProjectsInScope(final IErlProject project, final IErlElementLocator.Scope scope) throws ErlModelException {
+		final Set<IErlProject> projects = Sets.newLinkedHashSet();
 		if (project != null) {
 			projects.add(project);
-			if (scope == IErlElementLocator.Scope.REFERENCED_PROJECTS) {
+			if (scope == Scope.REFERENCED_PROJECTS || scope == Scope.ALL_PROJECTS) {
 				projects.addAll(project.getReferencedProjects());
 			}
 		}
-		if (scope == IErlElementLocator.Scope.ALL_PROJECTS) {
-			for (final IErlProject project2 : getErlangProjects()) {
-				if (!projects.contains(project2)) {
-					projects.add(project2);
-				}
-			}
-		}
-		for (final IErlProject project2 : projects) {
-			getAllModulesAux(project2.getIncludes(), result, paths);
-		}
-		if (checkExternals && project != null) {
-			getAllModulesAux(project.getExternalIncludes(), result, paths);
-		}
-		return result;
-	}
-
-	static void getAllModulesAux(final Collection<IErlModule> modules, final Collection<IErlModule> result, final Set<String> paths) {
-		for (final IErlModule module : modules) {
-			final String path = module.getFilePath();
-			if (path != null) {
-				if (paths.contains(path)) {
-					continue;
-				}
-				paths.add(path);
-			}
-			result.add(module);
+		if (scope == Scope.ALL_PROJECTS) {
+			projects.addAll(getErlangProjects());
 		}
+		return projects;
 	}
 
 	private IErlModule findIncludeFromProject(final IErlProject project, final String includeName, final String includePath, final boolean checkExternals, final IErlElementLocator.Scope scope) throws ErlModelException {
@@ -963,24 +943,34 @@ public class ErlModel extends Openable implements IErlModel {
 				return module;
 			}
 		}
-		final Collection<IErlModule> includes = getAllIncludes(project, checkExternals, scope);
-		ErlModelCache.getDefault().putModules(includes);
+		final ModuleIndex index = ErlModelCache.getDefault().getModuleIndex();
+		final Collection<IErlProject> projects = getProjectsInScope(project, scope);
+		final boolean externals = checkExternals && project != null;
+		// a match by path anywhere wins over a match by name
 		if (includePath != null) {
-			for (final IErlModule module2 : includes) {
-				final String path2 = module2.getFilePath();
-				if (path2 != null && includePath.equals(path2)) {
-					return module2;
+			for (final IErlProject project2 : projects) {
+				final IErlModule module = index.findInclude(project2, null, includePath, false);
+				if (module != null) {
+					return module;
+				}
+			}
+			if (externals) {
+				final IErlModule module = index.findInclude(project, null, includePath, true);
+				if (module != null) {
+					return module;
 				}
 			}
 		}
 		if (includeName != null) {
-			final boolean hasExtension = SystemConfiguration.hasExtension(includeName);
-			for (final IErlModule module2 : includes) {
-				final String name = hasExtension ? module2.getName() : module2.getModuleName();
-				if (ResourceUtil.samePath(includeName, name)) {
-					return module2;
+			for (final IErlProject project2 : projects) {
+				final IErlModule module = index.findInclude(project2, includeName, null, false);
+				if (module != null) {
+					return module;
 				}
 			}
+			if (externals) {
+				return index.findInclude(project, includeName, null, true);
+			}
 		}
 		return null;
 	}
@@ -1003,71 +993,16 @@ public class ErlModel extends Openable implements IErlModel {
 				return module;
 			}
 		}
-		final List<IErlModule> allModules = Lists.newArrayList();
-		final Set<String> paths = Sets.newHashSet();
-		try {
-			for (int i = 0; i < 2; ++i) {
-				final boolean externalModules = i > 0;
-				if (externalModules && !checkExternals) {
-					break;
-				}
-				if (project != null) {
-					final IErlModule module = tryFindModule(Sets.newHashSet(project), moduleName, modulePath, allModules, paths, externalModules);
-					if (module != null) {
-						return module;
-					}
-				}
-				if ((scope == Scope.REFERENCED_PROJECTS || scope == Scope.ALL_PROJECTS) && project != null) {
-					final Collection<IErlProject> projects = project.getReferencedProjects();
-					final IErlModule module = tryFindModule(projects, moduleName, modulePath, allModules, paths, externalModules);
-					if (module != null) {
-						return module;
-					}
-				}
-
-				if (scope == Scope.ALL_PROJECTS) {
-					final Collection<IErlProject> projects = getErlangProjects();
-					final IErlModule module = tryFindModule(projects, moduleName, modulePath, allModules, paths, externalModules);
-					if (module != null) {
-						return module;
-					}
-				}
-			}
-			return null;
-		} finally {
-			ErlModelCache.getDefault().putModules(allModules);
-		}
-	}
-
-	private IErlModule tryFindModule(final Collection<IErlProject> projects, final String moduleName, final String modulePath, final List<IErlModule> allModules, final Set<String> paths, final boolean externalModules) throws ErlModelException {
-		IErlModule module;
-		for (final IErlProject project : projects) {
-			final Collection<IErlModule> modules = Lists.newArrayList();
-			final Collection<IErlModule> modulesOrExternals = externalModules ? project.getExternalModules() : project.getModules();
-			getAllModulesAux(modulesOrExternals, modules, paths);
-			allModules.addAll(modules);
-			module = findModule(modules, moduleName, modulePath);
-			if (module != null) {
-				return module;
-			}
-		}
-		return null;
-	}
-
-	private IErlModule findModule(final Collection<IErlModule> modules, final String moduleName, final String modulePath) {
-		if (modulePath != null) {
-			for (final IErlModule module : modules) {
-				final String path = module.getFilePath();
-				if (path != null && ResourceUtil.samePath(modulePath, path)) {
-					return module;
-				}
+		final ModuleIndex index = ErlModelCache.getDefault().getModuleIndex();
+		final Collection<IErlProject> projects = getProjectsInScope(project, scope);
+		for (int i = 0; i < 2; ++i) {
+			final boolean externalModules = i > 0;
+			if (externalModules && !checkExternals) {
+				break;
 			}
-		}
-		if (moduleName != null) {
-			final boolean hasExtension = SystemConfiguration.hasExtension(moduleName);
-			for (final IErlModule module : modules) {
-				final String name = hasExtension ? module.getName() : module.getModuleName();
-				if (moduleName.equals(name)) {
+			for (final IErlProject project2 : projects) {
+				final IErlModule module = index.findModule(project2, moduleName, modulePath, externalModules);
+				if (module != null) {
 					return module;
 				}
 			}
@@ -1089,13 +1024,6 @@ public class ErlModel extends Openable implements IErlModel {
 		return findIncludeFromProject(ErlangEngine.getInstance().getModelUtilService().getProject(module), includeName, includePath, true, scope);
 	}
 
-	private final Object fModelLock = new Object();
-
-	@Override
-	public Object getModelLock() {
-		return fModelLock;
-	}
-
 	@Override
 	public IErlElementDelta createElementDelta(final int kind, final int flags, final IErlElement element) {
 		return new ErlElementDelta(kind, flags, element);
@@ -32,7 +32,8 @@ public class ErlModelCache implements IDisposable {
     private static volatile ErlModelCache fgInstance;
 
     private final Cache<IErlModule, List<IErlModule>> moduleIncludeCache;
-    private final Cache<String, IErlModule> pathToModuleCache;
+    private final ModuleIndex moduleIndex;
+    private final IncludeGraph includeGraph;
     private final Cache<String, Pair<IErlProject, List<ExternalTreeEntry>>> externalTreeCache;
     private final Map<String, IErlModule> editedModulesMap;
     // private final Cache<String, Set<IErlModule>> nameToModuleCache;
@@ -68,7 +69,8 @@ public class ErlModelCache implements IDisposable {
     }
 
     private ErlModelCache() {
-        pathToModuleCache = newCache();
+        moduleIndex = new ModuleIndex();
+        includeGraph = new IncludeGraph();
         editedModulesMap = Maps.newHashMap();
         // nameToModuleCache = newCache();
         moduleIncludeCache = newCache();
@@ -80,25 +82,40 @@ public class ErlModelCache implements IDisposable {
         ErlangEngine.getInstance().getModel().addModelChangeListener(modelChangeListener);
     }
 
-    public void putModule(final IErlModule module) {
-        // final String moduleName = module.getModuleName();
-        // Set<IErlModule> modules = getModulesByName(moduleName);
-        // if (modules == null) {
-        // modules = Sets.newHashSet();
-        // }
-        // modules.add(module);
-        // nameToModuleCache.put(moduleName, modules);
-        final String path = module.getFilePath();
-        pathToModuleCache.put(path, module);
+    /**
+     * @return the index used to find modules and includes by name or path
+     */
+    public ModuleIndex getModuleIndex() {
+        return moduleIndex;
+    }
+
+    /**
+     * @return the graph of which modules include which files
+     */
+    public IncludeGraph getIncludeGraph() {
+        return includeGraph;
     }
 
+    /**
+     * Called when a module is disposed, e.g. when its editor is closed. Its file is still
+     * there, so it stays in the index and on disk, and its includes are only read again
+     * before they are next used.
+     */
     public void removeModule(final IErlModule module) {
         // final String moduleName = module.getModuleName();
         // nameToModuleCache.remove(moduleName);
-        final String path = module.getFilePath();
-        if (path != null) {
-            pathToModuleCache.invalidate(path);
-        }
+        getIncludeGraph().invalidate(module);
+    }
+
+    /**
+     * Like {@link #removeModule(IErlModule)}, for a module whose file was deleted: it is
+     * removed from the index and the include graph, and what is kept of it on disk is
+     * removed too.
+     */
+    public void removeDeletedModule(final IErlModule module) {
+        getModuleIndex().removeModule(module);
+        getIncludeGraph().removeModule(module);
+        ModelDiskCache.getDefault().remove(module.getFilePath());
     }
 
     // public Set<IErlModule> getModulesByName(final String moduleName) {
@@ -129,7 +146,7 @@ public class ErlModelCache implements IDisposable {
         if (module != null) {
             return module;
         }
-        return pathToModuleCache.getIfPresent(path);
+        return getModuleIndex().getModuleByPath(path);
     }
 
     public void putIncludedFilesForModule(final IErlModule module,
@@ -233,6 +250,8 @@ public class ErlModelCache implements IDisposable {
         }
         projectIncludeCache.invalidate(project);
         projectModuleCache.invalidate(project);
+        moduleIndex.removeProject(project);
+        includeGraph.removeProject(project);
         final Set<String> keysToRemove = Sets.newHashSet();
         final Set<Entry<String, Pair<IErlProject, List<ExternalTreeEntry>>>> entrySet = externalTreeCache
                 .asMap().entrySet();
@@ -251,19 +270,14 @@ public class ErlModelCache implements IDisposable {
     }
 
     public void newProjectCreated() {
-        pathToModuleCache.invalidateAll();
+        moduleIndex.clear();
         // nameToModuleCache.clear();
     }
 
-    public void putModules(final Collection<IErlModule> modules) {
-        for (final IErlModule module : modules) {
-            putModule(module);
-        }
-    }
-
     public void clearModelCache() {
         moduleIncludeCache.invalidateAll();
-        pathToModuleCache.invalidateAll();
+        moduleIndex.clear();
+        includeGraph.clear();
         externalTreeCache.invalidateAll();
         // editedModulesMap.clear();
         // nameToModuleCache.clear();
@@ -272,6 +286,16 @@ public class ErlModelCache implements IDisposable {
     }
 
     private static class DisabledErlModelCache extends ErlModelCache {
+        @Override
+        public ModuleIndex getModuleIndex() {
+            return new ModuleIndex();
+        }
+
+        @Override
+        public IncludeGraph getIncludeGraph() {
+            return new IncludeGraph();
+        }
+
         @Override
         public void putEdited(final String path, final IErlModule module) {
         }
@@ -291,14 +315,6 @@ public class ErlModelCache implements IDisposable {
                 final List<IErlModule> includes) {
         }
 
-        @Override
-        public void putModule(final IErlModule module) {
-        }
-
-        @Override
-        public void putModules(final Collection<IErlModule> modules) {
-        }
-
         @Override
         public void putModulesForProject(final IErlProject project,
                 final List<IErlModule> modules) {
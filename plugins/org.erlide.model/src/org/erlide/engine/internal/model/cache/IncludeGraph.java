@@ -0,0 +1,258 @@
+package org.erlide.engine.internal.model.cache;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.erlide.engine.ErlangEngine;
+import org.erlide.engine.model.ErlElementKind;
+import org.erlide.engine.model.ErlModelException;
+import org.erlide.engine.model.IErlElement;
+import org.erlide.engine.model.IParent;
+import org.erlide.engine.model.erlang.ErlangIncludeFile;
+import org.erlide.engine.model.erlang.SourceKind;
+import org.erlide.engine.model.root.IErlModule;
+import org.erlide.engine.model.root.IErlProject;
+import org.erlide.engine.model.root.ISourceUnit;
+import org.erlide.engine.services.search.ModelFindService;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+/**
+ * Which files each module includes, and which modules include each file.
+ *
+ * <p>
+ * Edges are kept by the file name of the include, since they are set whenever a
+ * module's structure is built and resolving them there would read the projects. When
+ * the graph is queried, the includes that match by name are resolved through the
+ * {@link ModuleIndex}, in the order that
+ * {@link ModelFindService#findAllIncludedFiles(IErlModule)} uses, so a module only
+ * depends on the file its include actually refers to. The first query for a project
+ * reads the includes of the project's modules that aren't known yet; later queries only
+ * touch the modules that include a file of that name.
+ * </p>
+ */
+public class IncludeGraph {
+
+    private final Map<IErlModule, Set<String>> includes = Maps.newHashMap();
+    private final Map<String, Set<IErlModule>> includers = Maps.newHashMap();
+    // modules whose file changed since their edges were set
+    private final Set<IErlModule> stale = Sets.newHashSet();
+    private final Set<IErlProject> completeProjects = Sets.newHashSet();
+    // changed whenever projects can get modules that aren't in the graph
+    private long version;
+
+    /**
+     * Replaces the edges of a module.
+     */
+    public synchronized void setIncludes(final IErlModule module,
+            final Collection<ErlangIncludeFile> files) {
+        removeEdges(module);
+        final Set<String> names = Sets.newHashSet();
+        for (final ErlangIncludeFile file : files) {
+            names.add(file.getFilenameLastPart());
+        }
+        includes.put(module, names);
+        for (final String name : names) {
+            Set<IErlModule> set = includers.get(name);
+            if (set == null) {
+                set = Sets.newHashSet();
+                includers.put(name, set);
+            }
+            set.add(module);
+        }
+        stale.remove(module);
+    }
+
+    private void removeEdges(final IErlModule module) {
+        final Set<String> names = includes.remove(module);
+        if (names == null) {
+            return;
+        }
+        for (final String name : names) {
+            final Set<IErlModule> set = includers.get(name);
+            if (set != null) {
+                set.remove(module);
+                if (set.isEmpty()) {
+                    includers.remove(name);
+                }
+            }
+        }
+    }
+
+    /**
+     * The module's file changed, its edges will be read again before they are used.
+     */
+    public synchronized void invalidate(final IErlModule module) {
+        if (includes.containsKey(module)) {
+            stale.add(module);
+        }
+    }
+
+    public synchronized void removeModule(final IErlModule module) {
+        removeEdges(module);
+        stale.remove(module);
+    }
+
+    public synchronized void removeProject(final IErlProject project) {
+        completeProjects.remove(project);
+        version++;
+    }
+
+    public synchronized void clear() {
+        includes.clear();
+        includers.clear();
+        stale.clear();
+        completeProjects.clear();
+        version++;
+    }
+
+    /**
+     * @return the modules of the project that include the file
+     */
+    public Set<ISourceUnit> getDirectDependents(final IErlProject project,
+            final IErlModule include) throws ErlModelException {
+        update(project);
+        final Set<ISourceUnit> result = Sets.newHashSet();
+        for (final IErlModule module : getIncluders(include)) {
+            if (isProjectModule(project, module)) {
+                result.add(module);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the modules of the project that include the file, directly or through
+     *         other included files
+     */
+    public Set<ISourceUnit> getAllDependents(final IErlProject project,
+            final IErlModule include) throws ErlModelException {
+        update(project);
+        final Set<ISourceUnit> result = Sets.newHashSet();
+        final Set<IErlModule> seen = Sets.newHashSet(include);
+        final Deque<IErlModule> queue = new ArrayDeque<>(seen);
+        while (!queue.isEmpty()) {
+            for (final IErlModule module : getIncluders(queue.poll())) {
+                if (module.getSourceKind() == SourceKind.HRL) {
+                    if (seen.add(module)) {
+                        queue.add(module);
+                    }
+                } else if (isProjectModule(project, module)) {
+                    result.add(module);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The edges only know the file name, so an include is resolved again here and the
+     * module is kept only if it includes this very file. Each resolution is a few index
+     * lookups, but building the index reads the projects, so it is done outside of the
+     * lock.
+     */
+    private List<IErlModule> getIncluders(final IErlModule include)
+            throws ErlModelException {
+        final List<IErlModule> candidates;
+        synchronized (this) {
+            final Set<IErlModule> set = includers.get(include.getName());
+            if (set == null) {
+                return Collections.emptyList();
+            }
+            candidates = Lists.newArrayList(set);
+        }
+        final ModelFindService finder = ErlangEngine.getInstance().getModelFindService();
+        final List<IErlModule> result = Lists.newArrayList();
+        for (final IErlModule module : candidates) {
+            if (include.equals(finder.findIncludedFile(module, include.getName()))) {
+                result.add(module);
+            }
+        }
+        return result;
+    }
+
+    private static boolean isProjectModule(final IErlProject project,
+            final IErlModule module) {
+        if (module.getSourceKind() == SourceKind.HRL || !module.isOnSourcePath()) {
+            return false;
+        }
+        return project.equals(
+                ErlangEngine.getInstance().getModelUtilService().getProject(module));
+    }
+
+    /**
+     * Reads the includes of the modules that aren't known or are stale. Modules are
+     * opened outside of the lock, since opening a module sets its edges.
+     */
+    private void update(final IErlProject project) throws ErlModelException {
+        final List<IErlModule> toRead = Lists.newArrayList();
+        final long startVersion;
+        final boolean complete;
+        synchronized (this) {
+            startVersion = version;
+            complete = completeProjects.contains(project);
+            toRead.addAll(stale);
+        }
+        if (!complete) {
+            for (final IErlModule module : getUnits(project)) {
+                final boolean known;
+                synchronized (this) {
+                    known = includes.containsKey(module);
+                }
+                if (!known) {
+                    toRead.add(module);
+                }
+            }
+        }
+        for (final IErlModule module : toRead) {
+            readIncludes(module);
+        }
+        synchronized (this) {
+            if (version == startVersion) {
+                completeProjects.add(project);
+            }
+        }
+    }
+
+    private void readIncludes(final IErlModule module) throws ErlModelException {
+        final boolean wasOpen = module.isOpen();
+        if (!wasOpen) {
+            module.open(null);
+        }
+        setIncludes(module, module.getIncludeFiles());
+        if (!wasOpen) {
+            module.close();
+        }
+    }
+
+    /**
+     * @return the project's modules and the files they can include
+     */
+    private static Collection<IErlModule> getUnits(final IErlProject project)
+            throws ErlModelException {
+        final Set<IErlModule> result = Sets.newLinkedHashSet();
+        final Set<IParent> folders = Sets.newHashSet();
+        for (final IErlModule module : project.getModules()) {
+            result.add(module);
+            final IParent parent = module.getParent();
+            if (parent != null && folders.add(parent)) {
+                for (final IErlElement child : parent
+                        .getChildrenOfKind(ErlElementKind.MODULE)) {
+                    if (child instanceof IErlModule && SourceKind
+                            .nameToModuleKind(child.getName()) == SourceKind.HRL) {
+                        result.add((IErlModule) child);
+                    }
+                }
+            }
+        }
+        result.addAll(project.getIncludes());
+        return result;
+    }
+}
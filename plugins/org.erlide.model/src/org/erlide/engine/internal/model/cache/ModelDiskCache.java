@@ -0,0 +1,182 @@
+package org.erlide.engine.internal.model.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+import org.eclipse.core.runtime.Platform;
+import org.eclipse.xtext.xbase.lib.Pair;
+import org.erlide.engine.ErlangEngine;
+import org.erlide.util.ErlLogger;
+import org.osgi.framework.Bundle;
+
+import com.ericsson.otp.erlang.OtpErlangDecodeException;
+import com.ericsson.otp.erlang.OtpErlangList;
+import com.ericsson.otp.erlang.OtpErlangObject;
+import com.ericsson.otp.erlang.OtpErlangTuple;
+import com.ericsson.otp.erlang.OtpInputStream;
+import com.ericsson.otp.erlang.OtpOutputStream;
+import com.google.common.base.Charsets;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+/**
+ * Keeps the forms and comments of parsed modules on disk, so that after a restart a
+ * module whose text didn't change can be built again without the backend.
+ *
+ * <p>
+ * There is one file per module path, checked against a hash of the text it was parsed
+ * from. The forms are stored after
+ * {@link org.erlide.engine.internal.services.parsing.ErlParser} has resolved the parts
+ * that need the backend to be read. Each file also records the versions of the code that
+ * produced it, the kernel's parser and this plugin, and is ignored by other versions.
+ * Files are replaced atomically, so a reader sees either an old entry or a new one; an
+ * entry that can't be read is deleted.
+ * </p>
+ */
+public class ModelDiskCache {
+
+    private static final int MAGIC = 0x45524d43;
+    // change whenever the format of the file or of the stored forms changes
+    private static final int VERSION = 1;
+    private static final String SUFFIX = ".model";
+
+    private static final boolean disabled = Boolean
+            .valueOf(System.getProperty("erlide.noModelDiskCache"));
+    private static volatile ModelDiskCache fgInstance;
+
+    private static final HashFunction HASH = Hashing.murmur3_128();
+
+    private final File dir;
+    private final String producer;
+
+    public static ModelDiskCache getDefault() {
+        if (fgInstance == null) {
+            final String stateDir = ErlangEngine.getInstance().getStateDir();
+            fgInstance = new ModelDiskCache(
+                    disabled || stateDir == null ? null : new File(stateDir, "model"),
+                    getProducer());
+        }
+        return fgInstance;
+    }
+
+    /**
+     * @param dir
+     *            where the files are kept, or null to keep nothing
+     * @param producer
+     *            identifies the code that produces the stored forms; entries written
+     *            with another one are not used
+     */
+    public ModelDiskCache(final File dir, final String producer) {
+        this.dir = dir;
+        this.producer = producer;
+    }
+
+    private static String getProducer() {
+        final StringBuilder result = new StringBuilder();
+        for (final String id : new String[] { "org.erlide.kernel", "org.erlide.model" }) {
+            final Bundle bundle = Platform.getBundle(id);
+            result.append(id).append(' ')
+                    .append(bundle == null ? "-" : bundle.getVersion().toString())
+                    .append(' ');
+        }
+        return result.toString();
+    }
+
+    private File getFile(final String path) {
+        return new File(dir, HASH.hashString(path, Charsets.UTF_8).toString() + SUFFIX);
+    }
+
+    private static byte[] textHash(final String text) {
+        return HASH.hashString(text, Charsets.UTF_8).asBytes();
+    }
+
+    /**
+     * @return the forms and comments stored for the module at this path, if they were
+     *         parsed from the same text
+     */
+    public Pair<OtpErlangList, OtpErlangList> get(final String path, final String text) {
+        if (dir == null || path == null || text == null) {
+            return null;
+        }
+        final File file = getFile(path);
+        if (!file.isFile()) {
+            return null;
+        }
+        try (final DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION
+                    || !producer.equals(in.readUTF()) || !path.equals(in.readUTF())) {
+                return null;
+            }
+            final byte[] hash = new byte[HASH.bits() / 8];
+            in.readFully(hash);
+            if (!Arrays.equals(hash, textHash(text))) {
+                return null;
+            }
+            final byte[] data = new byte[in.readInt()];
+            in.readFully(data);
+            final OtpErlangTuple entry = (OtpErlangTuple) new OtpInputStream(data)
+                    .read_any();
+            return new Pair<OtpErlangList, OtpErlangList>(
+                    (OtpErlangList) entry.elementAt(0), (OtpErlangList) entry.elementAt(1));
+        } catch (final IOException | OtpErlangDecodeException | ClassCastException e) {
+            ErlLogger.warn("Could not read model cache %s for %s: %s", file, path, e);
+            file.delete();
+            return null;
+        }
+    }
+
+    /**
+     * Stores the forms and comments parsed from the text of the module at this path.
+     */
+    public void put(final String path, final String text, final OtpErlangList forms,
+            final OtpErlangList comments) {
+        if (dir == null || path == null || text == null) {
+            return;
+        }
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            return;
+        }
+        final OtpOutputStream term = new OtpOutputStream();
+        term.write_compressed(new OtpErlangTuple(new OtpErlangObject[] { forms,
+                comments }));
+        final byte[] data = term.toByteArray();
+        File tmp = null;
+        try {
+            tmp = File.createTempFile("module", SUFFIX, dir);
+            try (final DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeUTF(producer);
+                out.writeUTF(path);
+                out.write(textHash(text));
+                out.writeInt(data.length);
+                out.write(data);
+            }
+            Files.move(tmp.toPath(), getFile(path).toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (final IOException e) {
+            ErlLogger.warn("Could not write model cache for %s: %s", path, e);
+            if (tmp != null) {
+                tmp.delete();
+            }
+        }
+    }
+
+    public void remove(final String path) {
+        if (dir == null || path == null) {
+            return;
+        }
+        getFile(path).delete();
+    }
+}
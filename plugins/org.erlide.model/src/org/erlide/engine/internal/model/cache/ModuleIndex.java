@@ -0,0 +1,275 @@
+package org.erlide.engine.internal.model.cache;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+
+import org.eclipse.core.filesystem.EFS;
+import org.erlide.engine.model.ErlElementKind;
+import org.erlide.engine.model.ErlModelException;
+import org.erlide.engine.model.IErlElement;
+import org.erlide.engine.model.IParent;
+import org.erlide.engine.model.erlang.SourceKind;
+import org.erlide.engine.model.root.IErlModule;
+import org.erlide.engine.model.root.IErlProject;
+import org.erlide.util.SystemConfiguration;
+
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Maps module and include names and paths to modules, per project. Include files are
+ * also kept per folder, for includes that are found next to the including file.
+ *
+ * <p>
+ * The tables of a project are built the first time they are needed and are kept until
+ * the project's modules change (see {@link ErlModelCache#removeProject(IErlProject)}),
+ * so that looking up a module doesn't have to walk all the modules in the workspace.
+ * When several modules match, the one that comes first in the project's list wins,
+ * like with a linear search.
+ * </p>
+ */
+public class ModuleIndex {
+
+    private final ConcurrentMap<IErlProject, ProjectEntry> projects = Maps
+            .newConcurrentMap();
+
+    private static final boolean caseSensitive = EFS.getLocalFileSystem()
+            .isCaseSensitive();
+
+    static String pathKey(final String path) {
+        return caseSensitive ? path : path.toLowerCase(Locale.ROOT);
+    }
+
+    private static class ModuleTable {
+        private final boolean fileNames;
+        private final Map<String, IErlModule> byPath = Maps.newConcurrentMap();
+        private final Map<String, IErlModule> byName = Maps.newConcurrentMap();
+        private final Map<String, IErlModule> byModuleName = Maps.newConcurrentMap();
+
+        /**
+         * @param fileNames
+         *            names are compared like paths, as include names are
+         */
+        ModuleTable(final Collection<IErlModule> modules, final boolean fileNames) {
+            this.fileNames = fileNames;
+            for (final IErlModule module : modules) {
+                final String path = module.getFilePath();
+                if (path != null) {
+                    putIfAbsent(byPath, pathKey(path), module);
+                }
+                putIfAbsent(byName, nameKey(module.getName()), module);
+                putIfAbsent(byModuleName, nameKey(module.getModuleName()), module);
+            }
+        }
+
+        private String nameKey(final String name) {
+            return fileNames && name != null ? pathKey(name) : name;
+        }
+
+        private static void putIfAbsent(final Map<String, IErlModule> map,
+                final String key, final IErlModule module) {
+            if (key != null && !map.containsKey(key)) {
+                map.put(key, module);
+            }
+        }
+
+        IErlModule get(final String name, final String path) {
+            if (path != null) {
+                final IErlModule module = byPath.get(pathKey(path));
+                if (module != null) {
+                    return module;
+                }
+            }
+            if (name == null) {
+                return null;
+            }
+            final Map<String, IErlModule> map = SystemConfiguration.hasExtension(name)
+                    ? byName : byModuleName;
+            return map.get(nameKey(name));
+        }
+
+        IErlModule getByPath(final String path) {
+            return byPath.get(pathKey(path));
+        }
+
+        void remove(final IErlModule module) {
+            byPath.values().remove(module);
+            byName.values().remove(module);
+            byModuleName.values().remove(module);
+        }
+    }
+
+    private static class ProjectEntry {
+        private final IErlProject project;
+        private volatile ModuleTable modules;
+        private volatile ModuleTable externalModules;
+        private volatile ModuleTable includes;
+        private volatile ModuleTable externalIncludes;
+        private volatile Map<IParent, ModuleTable> localIncludes;
+
+        ProjectEntry(final IErlProject project) {
+            this.project = project;
+        }
+
+        ModuleTable getModules(final boolean external) throws ErlModelException {
+            if (external) {
+                if (externalModules == null) {
+                    externalModules = new ModuleTable(project.getExternalModules(),
+                            false);
+                }
+                return externalModules;
+            }
+            if (modules == null) {
+                modules = new ModuleTable(project.getModules(), false);
+            }
+            return modules;
+        }
+
+        ModuleTable getIncludes(final boolean external) throws ErlModelException {
+            if (external) {
+                if (externalIncludes == null) {
+                    externalIncludes = new ModuleTable(project.getExternalIncludes(),
+                            true);
+                }
+                return externalIncludes;
+            }
+            if (includes == null) {
+                includes = new ModuleTable(project.getIncludes(), true);
+            }
+            return includes;
+        }
+
+        ModuleTable getLocalIncludes(final IParent folder) throws ErlModelException {
+            Map<IParent, ModuleTable> tables = localIncludes;
+            if (tables == null) {
+                tables = Maps.newConcurrentMap();
+                for (final IErlModule module : Iterables.concat(project.getModules(),
+                        project.getIncludes())) {
+                    final IParent parent = module.getParent();
+                    if (parent != null && !tables.containsKey(parent)) {
+                        tables.put(parent, new ModuleTable(getHeaders(parent), true));
+                    }
+                }
+                localIncludes = tables;
+            }
+            return tables.get(folder);
+        }
+
+        private static List<IErlModule> getHeaders(final IParent folder)
+                throws ErlModelException {
+            final List<IErlModule> result = Lists.newArrayList();
+            for (final IErlElement child : folder
+                    .getChildrenOfKind(ErlElementKind.MODULE)) {
+                if (child instanceof IErlModule && SourceKind
+                        .nameToModuleKind(child.getName()) == SourceKind.HRL) {
+                    result.add((IErlModule) child);
+                }
+            }
+            return result;
+        }
+
+        IErlModule getByPath(final String path) {
+            for (final ModuleTable table : new ModuleTable[] { modules, includes,
+                    externalModules, externalIncludes }) {
+                if (table != null) {
+                    final IErlModule module = table.getByPath(path);
+                    if (module != null) {
+                        return module;
+                    }
+                }
+            }
+            return null;
+        }
+
+        void remove(final IErlModule module) {
+            for (final ModuleTable table : new ModuleTable[] { modules, includes,
+                    externalModules, externalIncludes }) {
+                if (table != null) {
+                    table.remove(module);
+                }
+            }
+            final Map<IParent, ModuleTable> tables = localIncludes;
+            if (tables != null) {
+                for (final ModuleTable table : tables.values()) {
+                    table.remove(module);
+                }
+            }
+        }
+    }
+
+    private ProjectEntry getEntry(final IErlProject project) {
+        ProjectEntry entry = projects.get(project);
+        if (entry == null) {
+            final ProjectEntry newEntry = new ProjectEntry(project);
+            entry = projects.putIfAbsent(project, newEntry);
+            if (entry == null) {
+                entry = newEntry;
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Finds a module of the project, by path first and then by name.
+     *
+     * @param external
+     *            look among the project's external modules instead of its own
+     */
+    public IErlModule findModule(final IErlProject project, final String name,
+            final String path, final boolean external) throws ErlModelException {
+        return getEntry(project).getModules(external).get(name, path);
+    }
+
+    /**
+     * Finds an include file of the project, by path first and then by name.
+     *
+     * @param external
+     *            look among the project's external includes instead of its own
+     */
+    public IErlModule findInclude(final IErlProject project, final String name,
+            final String path, final boolean external) throws ErlModelException {
+        return getEntry(project).getIncludes(external).get(name, path);
+    }
+
+    /**
+     * Finds an include file in a folder of the project's modules or includes, by name.
+     *
+     * @return the include, or null if there is none or the folder has none of them
+     */
+    public IErlModule findLocalInclude(final IErlProject project, final IParent folder,
+            final String name) throws ErlModelException {
+        final ModuleTable table = getEntry(project).getLocalIncludes(folder);
+        return table == null ? null : table.get(name, null);
+    }
+
+    /**
+     * @return a module with this path, if one is in the tables that are already built
+     */
+    public IErlModule getModuleByPath(final String path) {
+        for (final ProjectEntry entry : projects.values()) {
+            final IErlModule module = entry.getByPath(path);
+            if (module != null) {
+                return module;
+            }
+        }
+        return null;
+    }
+
+    public void removeModule(final IErlModule module) {
+        for (final ProjectEntry entry : projects.values()) {
+            entry.remove(module);
+        }
+    }
+
+    public void removeProject(final IErlProject project) {
+        projects.remove(project);
+    }
+
+    public void clear() {
+        projects.clear();
+    }
+}
@@ -9,6 +9,7 @@ import org.eclipse.core.runtime.CoreException;
 import org.erlide.engine.ErlangEngine;
 import org.erlide.engine.internal.model.SourceRange;
 import org.erlide.engine.internal.model.cache.ErlModelCache;
+import org.erlide.engine.internal.model.cache.ModuleIndex;
 import org.erlide.engine.model.ErlElementKind;
 import org.erlide.engine.model.ErlModelException;
 import org.erlide.engine.model.IErlElement;
@@ -286,6 +287,59 @@ public class ModelFindUtil implements ModelFindService {
         return result;
     }
 
+    @Override
+    public IErlModule findIncludedFile(final IErlModule module,
+            final String includeFileName) throws ErlModelException {
+        final IErlProject project = modelUtilService.getProject(module);
+        if (project == null) {
+            return null;
+        }
+        final ModuleIndex index = ErlModelCache.getDefault().getModuleIndex();
+        IErlModule include = index.findInclude(project, includeFileName, null, false);
+        if (include == null) {
+            include = index.findLocalInclude(project, module.getParent(),
+                    includeFileName);
+        }
+        if (include == null) {
+            for (final IErlProject referencedProject : project.getReferencedProjects()) {
+                include = index.findInclude(referencedProject, includeFileName, null,
+                        false);
+                if (include != null) {
+                    break;
+                }
+            }
+        }
+        if (include == null) {
+            include = index.findInclude(project, includeFileName, null, true);
+        }
+        if (include == null) {
+            include = index.findModule(project, includeFileName, null, false);
+        }
+        if (include != null && include.getParent() instanceof IErlExternal) {
+            return findIncludeInOpenProjects(index, include);
+        }
+        return include;
+    }
+
+    /**
+     * Like {@link #findExternalIncludeInOpenProjects(IErlModule)}, through the index.
+     */
+    private static IErlModule findIncludeInOpenProjects(final ModuleIndex index,
+            final IErlModule externalInclude) throws ErlModelException {
+        final String filePath = externalInclude.getFilePath();
+        if (filePath == null) {
+            return externalInclude;
+        }
+        for (final IErlProject project : ErlangEngine.getInstance().getModel()
+                .getErlangProjects()) {
+            final IErlModule include = index.findInclude(project, null, filePath, false);
+            if (include != null) {
+                return include;
+            }
+        }
+        return externalInclude;
+    }
+
     private Collection<IErlModule> getLocalIncludes(final IErlModule module)
             throws ErlModelException {
         final List<IErlModule> result = Lists.newArrayList();
@@ -317,7 +371,7 @@ public class ModelFindUtil implements ModelFindService {
     }
 
     public static IErlModule findExternalIncludeInOpenProjects(
-            final IErlModule externalInclude) throws CoreException {
+            final IErlModule externalInclude) throws ErlModelException {
         final String filePath = externalInclude.getFilePath();
         final Collection<IErlProject> projects = ErlangEngine.getInstance().getModel()
                 .getErlangProjects();
@@ -136,9 +136,7 @@ public abstract class SourceRefElement extends ErlElement implements ISourceRefe
      */
     @Override
     public boolean hasChildren() {
-        synchronized (getModelLock()) {
-            return internalGetChildren().size() > 0;
-        }
+        return !internalGetChildren().isEmpty();
     }
 
     public void setSourceRangeOffset(final int offset) {
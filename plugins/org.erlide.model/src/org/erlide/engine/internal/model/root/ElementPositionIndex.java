@@ -0,0 +1,161 @@
+package org.erlide.engine.internal.model.root;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.erlide.engine.model.IErlElement;
+import org.erlide.engine.model.erlang.ISourceRange;
+import org.erlide.engine.model.erlang.ISourceReference;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Finds the children of a module whose source range contains an offset or a line, by
+ * binary search over the ranges sorted by start.
+ *
+ * <p>
+ * An index is built for one list of children and never changes; since the list of
+ * children is replaced on each parse, a new index is needed only then. Children
+ * without a range can't be located and are always returned.
+ * </p>
+ */
+public class ElementPositionIndex {
+
+    private final List<IErlElement> children;
+    private final Intervals offsets;
+    private final Intervals lines;
+
+    /**
+     * Intervals with inclusive ends, sorted by start, together with the index of the
+     * child they belong to.
+     */
+    private static class Intervals {
+        private final int[] starts;
+        private final int[] ends;
+        private final int[] indexes;
+        // the largest end among the intervals up to each one
+        private final int[] maxEnds;
+        private final int[] unlocated;
+
+        Intervals(final long[] startsAndIndexes, final int[] endsByIndex,
+                final int[] unlocated) {
+            Arrays.sort(startsAndIndexes);
+            final int n = startsAndIndexes.length;
+            starts = new int[n];
+            ends = new int[n];
+            indexes = new int[n];
+            maxEnds = new int[n];
+            for (int i = 0; i < n; i++) {
+                starts[i] = (int) (startsAndIndexes[i] >> 32);
+                indexes[i] = (int) startsAndIndexes[i];
+                ends[i] = endsByIndex[indexes[i]];
+                maxEnds[i] = i == 0 ? ends[i] : Math.max(maxEnds[i - 1], ends[i]);
+            }
+            this.unlocated = unlocated;
+        }
+
+        /**
+         * @return the indexes of the children containing the position, in the order of
+         *         the children
+         */
+        int[] find(final int position) {
+            int low = 0;
+            int high = starts.length - 1;
+            // last interval starting at or before the position
+            while (low <= high) {
+                final int mid = low + high >>> 1;
+                if (starts[mid] <= position) {
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            int[] result = new int[unlocated.length + 4];
+            int count = 0;
+            for (final int index : unlocated) {
+                result[count++] = index;
+            }
+            for (int i = high; i >= 0 && maxEnds[i] >= position; i--) {
+                if (ends[i] >= position) {
+                    if (count == result.length) {
+                        result = Arrays.copyOf(result, count * 2);
+                    }
+                    result[count++] = indexes[i];
+                }
+            }
+            result = Arrays.copyOf(result, count);
+            Arrays.sort(result);
+            return result;
+        }
+    }
+
+    public ElementPositionIndex(final List<IErlElement> children) {
+        this.children = children;
+        final int n = children.size();
+        final long[] offsetStarts = new long[n];
+        final int[] offsetEnds = new int[n];
+        final int[] offsetUnlocated = new int[n];
+        final long[] lineStarts = new long[n];
+        final int[] lineEnds = new int[n];
+        final int[] lineUnlocated = new int[n];
+        int offsetCount = 0;
+        int offsetUnlocatedCount = 0;
+        int lineCount = 0;
+        int lineUnlocatedCount = 0;
+        for (int i = 0; i < n; i++) {
+            final IErlElement child = children.get(i);
+            if (!(child instanceof ISourceReference)) {
+                offsetUnlocated[offsetUnlocatedCount++] = i;
+                lineUnlocated[lineUnlocatedCount++] = i;
+                continue;
+            }
+            final ISourceReference ref = (ISourceReference) child;
+            final ISourceRange range = ref.getSourceRange();
+            if (range == null) {
+                offsetUnlocated[offsetUnlocatedCount++] = i;
+            } else {
+                offsetStarts[offsetCount++] = pack(range.getOffset(), i);
+                offsetEnds[i] = range.getOffset() + range.getLength();
+            }
+            lineStarts[lineCount++] = pack(ref.getLineStart(), i);
+            lineEnds[i] = ref.getLineEnd();
+        }
+        offsets = new Intervals(Arrays.copyOf(offsetStarts, offsetCount), offsetEnds,
+                Arrays.copyOf(offsetUnlocated, offsetUnlocatedCount));
+        lines = new Intervals(Arrays.copyOf(lineStarts, lineCount), lineEnds,
+                Arrays.copyOf(lineUnlocated, lineUnlocatedCount));
+    }
+
+    private static long pack(final int start, final int index) {
+        return (long) start << 32 | index;
+    }
+
+    /**
+     * @return the list of children this index was built for
+     */
+    public List<IErlElement> getChildren() {
+        return children;
+    }
+
+    /**
+     * @return the children whose source range contains the offset, in their order
+     */
+    public List<IErlElement> getChildrenAtOffset(final int offset) {
+        return select(offsets.find(offset));
+    }
+
+    /**
+     * @return the children whose lines contain the line, in their order
+     */
+    public List<IErlElement> getChildrenAtLine(final int line) {
+        return select(lines.find(line));
+    }
+
+    private List<IErlElement> select(final int[] indexes) {
+        final List<IErlElement> result = Lists.newArrayListWithCapacity(indexes.length);
+        for (final int index : indexes) {
+            result.add(children.get(index));
+        }
+        return result;
+    }
+}
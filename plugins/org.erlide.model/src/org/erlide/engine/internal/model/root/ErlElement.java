@@ -20,7 +20,6 @@ import org.eclipse.core.resources.IResourceDelta;
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.PlatformObject;
 import org.eclipse.core.runtime.jobs.ISchedulingRule;
-import org.erlide.engine.ErlangEngine;
 import org.erlide.engine.internal.model.cache.ErlModelCache;
 import org.erlide.engine.model.ErlElementKind;
 import org.erlide.engine.model.ErlModelException;
@@ -35,6 +34,13 @@ import com.google.common.collect.Lists;
 /**
  * Root of Erlang element handle hierarchy.
  *
+ * <p>
+ * The children of an element are kept in a list that is never modified: changes
+ * replace it with a new list. Readers use the current list without locking, so they
+ * never wait for a writer, and changes to one element are serialized by a lock of that
+ * element only.
+ * </p>
+ *
  * @see IErlElement
  */
 public abstract class ErlElement extends PlatformObject
@@ -45,7 +51,8 @@ public abstract class ErlElement extends PlatformObject
      */
     private final IParent fParent;
 
-    private final List<IErlElement> fChildren = Lists.newArrayList();
+    private volatile List<IErlElement> fChildren = Collections.emptyList();
+    private final Object fChildrenLock = new Object();
 
     /**
      * This element's name, or an empty <code>String</code> if this element does not have
@@ -205,19 +212,16 @@ public abstract class ErlElement extends PlatformObject
      */
     @Override
     public boolean hasChildren() {
-        synchronized (getModelLock()) {
-            return !internalGetChildren().isEmpty();
-        }
+        return !internalGetChildren().isEmpty();
     }
 
     @Override
     public boolean hasChildrenOfKind(final ErlElementKind... kinds) {
-        synchronized (getModelLock()) {
-            for (final ErlElementKind kind : kinds) {
-                for (final IErlElement child : internalGetChildren()) {
-                    if (child.getKind() == kind) {
-                        return true;
-                    }
+        final List<IErlElement> children = internalGetChildren();
+        for (final ErlElementKind kind : kinds) {
+            for (final IErlElement child : children) {
+                if (child.getKind() == kind) {
+                    return true;
                 }
             }
         }
@@ -373,21 +377,19 @@ public abstract class ErlElement extends PlatformObject
 
     @Override
     public List<IErlElement> getChildren() throws ErlModelException {
-        synchronized (getModelLock()) {
-            return Collections
-                    .unmodifiableList(Lists.newArrayList(internalGetChildren()));
-        }
+        return internalGetChildren();
     }
 
+    /**
+     * @return the current children; the list can't be modified and doesn't change
+     */
     public List<IErlElement> internalGetChildren() {
         return fChildren;
     }
 
     @Override
     public int getChildCount() {
-        synchronized (getModelLock()) {
-            return internalGetChildren().size();
-        }
+        return internalGetChildren().size();
     }
 
     /**
@@ -400,12 +402,11 @@ public abstract class ErlElement extends PlatformObject
     public List<IErlElement> getChildrenOfKind(final ErlElementKind... kinds)
             throws ErlModelException {
         final List<IErlElement> result = Lists.newArrayList();
-        synchronized (getModelLock()) {
-            for (final ErlElementKind kind : kinds) {
-                for (final IErlElement element : internalGetChildren()) {
-                    if (element.getKind() == kind) {
-                        result.add(element);
-                    }
+        final List<IErlElement> children = internalGetChildren();
+        for (final ErlElementKind kind : kinds) {
+            for (final IErlElement element : children) {
+                if (element.getKind() == kind) {
+                    result.add(element);
                 }
             }
         }
@@ -432,27 +433,45 @@ public abstract class ErlElement extends PlatformObject
 
     @Override
     public void removeChild(final IErlElement child) {
-        synchronized (getModelLock()) {
+        synchronized (fChildrenLock) {
             clearCaches();
-            fChildren.remove(child);
+            final List<IErlElement> children = Lists.newArrayList(fChildren);
+            if (children.remove(child)) {
+                fChildren = Collections.unmodifiableList(children);
+            }
         }
     }
 
     @Override
     public void addChild(final IErlElement child) {
-        synchronized (getModelLock()) {
+        synchronized (fChildrenLock) {
             clearCaches();
-            fChildren.add(child);
+            final List<IErlElement> children = Lists
+                    .newArrayListWithCapacity(fChildren.size() + 1);
+            children.addAll(fChildren);
+            children.add(child);
+            fChildren = Collections.unmodifiableList(children);
         }
     }
 
     @Override
     public void setChildren(final Collection<? extends IErlElement> children) {
-        synchronized (getModelLock()) {
+        synchronized (fChildrenLock) {
             clearCaches();
-            fChildren.clear();
-            if (children != null) {
-                fChildren.addAll(children);
+            internalSetChildren(children);
+        }
+    }
+
+    /**
+     * Replaces the children without clearing any caches.
+     */
+    protected void internalSetChildren(final Collection<? extends IErlElement> children) {
+        synchronized (fChildrenLock) {
+            if (children == null || children.isEmpty()) {
+                fChildren = Collections.emptyList();
+            } else {
+                fChildren = Collections
+                        .unmodifiableList(Lists.<IErlElement> newArrayList(children));
             }
         }
     }
@@ -467,27 +486,19 @@ public abstract class ErlElement extends PlatformObject
     }
 
     private static IErlElement getChildNamed(final ErlElement parent, final String name) {
-        synchronized (parent.getModelLock()) {
-            for (final IErlElement child : parent.internalGetChildren()) {
-                if (child.getName().equals(name)) {
-                    return child;
-                }
+        for (final IErlElement child : parent.internalGetChildren()) {
+            if (child.getName().equals(name)) {
+                return child;
             }
         }
         return null;
     }
 
-    protected Object getModelLock() {
-        return ErlangEngine.getInstance().getModel().getModelLock();
-    }
-
     private static IErlElement getChildWithResource(final ErlElement parent,
             final IResource rsrc) {
-        synchronized (parent.getModelLock()) {
-            for (final IErlElement child : parent.internalGetChildren()) {
-                if (rsrc.equals(child.getResource())) {
-                    return child;
-                }
+        for (final IErlElement child : parent.internalGetChildren()) {
+            if (rsrc.equals(child.getResource())) {
+                return child;
             }
         }
         return null;
@@ -497,9 +508,7 @@ public abstract class ErlElement extends PlatformObject
     public final void accept(final IErlElementVisitor visitor,
             final Set<AcceptFlags> flags, final ErlElementKind leafKind)
                     throws ErlModelException {
-        synchronized (getModelLock()) {
-            internalAccept(visitor, flags, leafKind);
-        }
+        internalAccept(visitor, flags, leafKind);
     }
 
     private final void internalAccept(final IErlElementVisitor visitor,
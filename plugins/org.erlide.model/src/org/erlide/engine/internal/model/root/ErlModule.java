@@ -21,12 +21,14 @@ import java.util.Set;
 
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceDelta;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.Path;
 import org.erlide.engine.ErlangEngine;
 import org.erlide.engine.internal.model.SourceRange;
+import org.erlide.engine.internal.model.cache.ErlModelCache;
 import org.erlide.engine.internal.services.parsing.ErlParser;
 import org.erlide.engine.internal.util.ModelConfig;
 import org.erlide.engine.model.ErlElementKind;
@@ -75,7 +77,10 @@ public class ErlModule extends Openable implements IErlModule {
     private String initialText;
     private boolean parsed;
     private final String scannerName;
-    private final Collection<IErlComment> comments;
+    // replaced, never modified, so that it can be read without locking
+    private volatile Collection<IErlComment> comments = Collections.emptyList();
+    // built for one list of children, see getPositionIndex
+    private volatile ElementPositionIndex positionIndex;
     private ScannerService scanner;
     private final Charset encoding;
 
@@ -101,7 +106,6 @@ public class ErlModule extends Openable implements IErlModule {
         moduleKind = SourceKind.nameToModuleKind(name);
         parsed = false;
         scannerName = createScannerName();
-        comments = Lists.newArrayList();
         if (ModelConfig.verbose) {
             // final IErlElement element = (IErlElement) parent;
             // final String parentName = element.getName();
@@ -114,6 +118,13 @@ public class ErlModule extends Openable implements IErlModule {
         setChildren(null);
         final String text = getInitialText();
         if (text != null) {
+            if (!parsed && scanner == null
+                    && ErlParser.restore(this, getFilePath(), text)) {
+                // the backend gets the text only when an editor first needs it:
+                // parsed stays false, so that parse is an initial one. The search
+                // server reads the modules of a search from their paths
+                return true;
+            }
             final ErlParser parser = new ErlParser(OtpRpcFactory.getOtpRpc());
             parsed = parser.parse(this, scannerName, !parsed, getFilePath(), text, true);
             return parsed;
@@ -161,6 +172,8 @@ public class ErlModule extends Openable implements IErlModule {
     public synchronized boolean buildStructure(final IProgressMonitor pm)
             throws ErlModelException {
         if (internalBuildStructure(pm)) {
+            ErlModelCache.getDefault().getIncludeGraph().setIncludes(this,
+                    collectIncludeFiles());
             final IErlModel model = ErlangEngine.getInstance().getModel();
             if (model != null) {
                 model.notifyChange(this);
@@ -181,9 +194,38 @@ public class ErlModule extends Openable implements IErlModule {
         return path;
     }
 
+    /**
+     * Returns the index for the current children, building it if the children changed.
+     */
+    private ElementPositionIndex getPositionIndex() {
+        final List<IErlElement> children = internalGetChildren();
+        ElementPositionIndex index = positionIndex;
+        if (index == null || index.getChildren() != children) {
+            index = new ElementPositionIndex(children);
+            positionIndex = index;
+        }
+        return index;
+    }
+
+    /**
+     * Only the children that contain the position are searched, the elements inside
+     * them are within their range too.
+     */
+    private static IErlElement innermostThat(final List<IErlElement> candidates,
+            final Predicate<IErlElement> predicate) {
+        final IErlModel model = ErlangEngine.getInstance().getModel();
+        for (final IErlElement child : candidates) {
+            final IErlElement element = model.innermostThat(child, predicate);
+            if (element != null) {
+                return element;
+            }
+        }
+        return null;
+    }
+
     @Override
     public IErlElement getElementAt(final int position) throws ErlModelException {
-        return ErlangEngine.getInstance().getModel().innermostThat(this,
+        return innermostThat(getPositionIndex().getChildrenAtOffset(position),
                 new Predicate<IErlElement>() {
                     @Override
                     public boolean apply(final IErlElement e) {
@@ -202,7 +244,8 @@ public class ErlModule extends Openable implements IErlModule {
 
     @Override
     public IErlMember getElementAtLine(final int lineNumber) {
-        return (IErlMember) ErlangEngine.getInstance().getModel().innermostThat(this,
+        return (IErlMember) innermostThat(
+                getPositionIndex().getChildrenAtLine(lineNumber),
                 new Predicate<IErlElement>() {
                     @Override
                     public boolean apply(final IErlElement e) {
@@ -248,19 +291,17 @@ public class ErlModule extends Openable implements IErlModule {
 
     @Override
     public void setComments(final Collection<? extends IErlComment> comments) {
-        synchronized (getModelLock()) {
-            this.comments.clear();
-            if (comments != null) {
-                this.comments.addAll(comments);
-            }
+        if (comments == null || comments.isEmpty()) {
+            this.comments = Collections.emptyList();
+        } else {
+            this.comments = Collections
+                    .unmodifiableList(Lists.<IErlComment> newArrayList(comments));
         }
     }
 
     @Override
     public Collection<IErlComment> getComments() {
-        synchronized (getModelLock()) {
-            return Collections.unmodifiableCollection(comments);
-        }
+        return comments;
     }
 
     @Override
@@ -330,13 +371,11 @@ public class ErlModule extends Openable implements IErlModule {
     @Override
     public IErlPreprocessorDef findPreprocessorDef(final String definedName,
             final ErlElementKind kind) {
-        synchronized (getModelLock()) {
-            for (final IErlElement m : internalGetChildren()) {
-                if (m instanceof IErlPreprocessorDef) {
-                    final IErlPreprocessorDef pd = (IErlPreprocessorDef) m;
-                    if (pd.getKind() == kind && pd.getDefinedName().equals(definedName)) {
-                        return pd;
-                    }
+        for (final IErlElement m : internalGetChildren()) {
+            if (m instanceof IErlPreprocessorDef) {
+                final IErlPreprocessorDef pd = (IErlPreprocessorDef) m;
+                if (pd.getKind() == kind && pd.getDefinedName().equals(definedName)) {
+                    return pd;
                 }
             }
         }
@@ -348,19 +387,21 @@ public class ErlModule extends Openable implements IErlModule {
         if (!isStructureKnown()) {
             open(null);
         }
+        return collectIncludeFiles();
+    }
+
+    private List<ErlangIncludeFile> collectIncludeFiles() {
         final List<ErlangIncludeFile> r = Lists.newArrayList();
-        synchronized (getModelLock()) {
-            for (final IErlElement m : internalGetChildren()) {
-                if (m instanceof IErlAttribute) {
-                    final IErlAttribute a = (IErlAttribute) m;
-                    final OtpErlangObject v = a.getValue();
-                    if (v instanceof OtpErlangString) {
-                        final String s = ((OtpErlangString) v).stringValue();
-                        if ("include".equals(a.getName())) {
-                            r.add(new ErlangIncludeFile(false, s));
-                        } else if ("include_lib".equals(a.getName())) {
-                            r.add(new ErlangIncludeFile(true, s));
-                        }
+        for (final IErlElement m : internalGetChildren()) {
+            if (m instanceof IErlAttribute) {
+                final IErlAttribute a = (IErlAttribute) m;
+                final OtpErlangObject v = a.getValue();
+                if (v instanceof OtpErlangString) {
+                    final String s = ((OtpErlangString) v).stringValue();
+                    if ("include".equals(a.getName())) {
+                        r.add(new ErlangIncludeFile(false, s));
+                    } else if ("include_lib".equals(a.getName())) {
+                        r.add(new ErlangIncludeFile(true, s));
                     }
                 }
             }
@@ -371,12 +412,10 @@ public class ErlModule extends Openable implements IErlModule {
     @Override
     public Collection<IErlImport> getImports() {
         final List<IErlImport> result = new ArrayList<>();
-        synchronized (getModelLock()) {
-            for (final IErlElement e : internalGetChildren()) {
-                if (e instanceof IErlImport) {
-                    final IErlImport ei = (IErlImport) e;
-                    result.add(ei);
-                }
+        for (final IErlElement e : internalGetChildren()) {
+            if (e instanceof IErlImport) {
+                final IErlImport ei = (IErlImport) e;
+                result.add(ei);
             }
         }
         return result;
@@ -437,41 +476,30 @@ public class ErlModule extends Openable implements IErlModule {
         ErlangEngine.getInstance().getModel().removeModule(this);
     }
 
+    @Override
+    public void resourceChanged(final IResourceDelta delta) {
+        super.resourceChanged(delta);
+        ErlModelCache.getDefault().getIncludeGraph().invalidate(this);
+    }
+
     @Override
     public Set<ISourceUnit> getDirectDependentModules() throws ErlModelException {
-        final Set<ISourceUnit> result = new HashSet<>();
         final IErlProject project = modelUtilService.getProject(this);
-        for (final IErlModule module : project.getModules()) {
-            final boolean wasOpen = module.isOpen();
-            if (!wasOpen) {
-                module.open(null);
-            }
-            final Collection<ErlangIncludeFile> incs = module.getIncludeFiles();
-            for (final ErlangIncludeFile inc : incs) {
-                if (inc.getFilename().equals(getName())) {
-                    result.add(module);
-                    break;
-                }
-            }
-            if (!wasOpen) {
-                module.close();
-            }
+        if (project == null) {
+            return new HashSet<>();
         }
-        return result;
+        return ErlModelCache.getDefault().getIncludeGraph().getDirectDependents(project,
+                this);
     }
 
     @Override
     public Set<ISourceUnit> getAllDependentModules() throws CoreException {
-        final Set<ISourceUnit> result = new HashSet<>();
         final IErlProject project = modelUtilService.getProject(this);
-        for (final IErlModule module : project.getModules()) {
-            final Collection<IErlModule> allIncludedFiles = ErlangEngine.getInstance()
-                    .getModelFindService().findAllIncludedFiles(module);
-            if (allIncludedFiles.contains(this)) {
-                result.add(module);
-            }
+        if (project == null) {
+            return new HashSet<>();
         }
-        return result;
+        return ErlModelCache.getDefault().getIncludeGraph().getAllDependents(project,
+                this);
     }
 
     @Override
@@ -520,13 +548,11 @@ public class ErlModule extends Openable implements IErlModule {
     public Collection<IErlPreprocessorDef> getPreprocessorDefs(
             final ErlElementKind kind) {
         final List<IErlPreprocessorDef> result = Lists.newArrayList();
-        synchronized (getModelLock()) {
-            for (final IErlElement e : internalGetChildren()) {
-                if (e instanceof IErlPreprocessorDef) {
-                    final IErlPreprocessorDef pd = (IErlPreprocessorDef) e;
-                    if (pd.getKind() == kind || kind == ErlElementKind.PROBLEM) {
-                        result.add(pd);
-                    }
+        for (final IErlElement e : internalGetChildren()) {
+            if (e instanceof IErlPreprocessorDef) {
+                final IErlPreprocessorDef pd = (IErlPreprocessorDef) e;
+                if (pd.getKind() == kind || kind == ErlElementKind.PROBLEM) {
+                    result.add(pd);
                 }
             }
         }
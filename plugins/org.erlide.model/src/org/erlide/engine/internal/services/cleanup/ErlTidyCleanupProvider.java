@@ -61,6 +61,7 @@ public class ErlTidyCleanupProvider implements CleanupProvider {
 
         // wait as long as reasonable for erl_tidy to finish
         erlTidyFuture.get(PATIENCE_LIMIT, TimeUnit.MILLISECONDS);
+        erlTidyFuture.cancel(false);
 
         // refresh the resource so it reflects the altered state on disk
         resource.refreshLocal(IResource.DEPTH_ZERO, null);
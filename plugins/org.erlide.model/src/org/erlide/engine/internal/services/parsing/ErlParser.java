@@ -17,7 +17,9 @@ import java.util.Comparator;
 import java.util.LinkedList;
 import java.util.List;
 
+import org.eclipse.xtext.xbase.lib.Pair;
 import org.erlide.engine.ErlangEngine;
+import org.erlide.engine.internal.model.cache.ModelDiskCache;
 import org.erlide.engine.internal.model.erlang.ErlAttribute;
 import org.erlide.engine.internal.model.erlang.ErlComment;
 import org.erlide.engine.internal.model.erlang.ErlExport;
@@ -80,6 +82,11 @@ public final class ErlParser {
     private static final int MODULE_HEADER_COMMENT_THRESHOLD = 1;
     private static final boolean TRACE = false;
 
+    private static final OtpErlangAtom ATTRIBUTE = new OtpErlangAtom("attribute");
+    // an error form with its message already formatted
+    private static final OtpErlangAtom ERROR_MESSAGE = new OtpErlangAtom(
+            "error_message");
+
     private final RuntimeHelper helper;
     private final IOtpRpc backend;
 
@@ -89,6 +96,41 @@ public final class ErlParser {
         helper = new RuntimeHelper(backend);
     }
 
+    /**
+     * For building modules from forms that were already resolved, which doesn't need the
+     * backend.
+     */
+    private ErlParser() {
+        backend = null;
+        helper = null;
+    }
+
+    /**
+     * Builds the module from the forms and comments that the disk cache has for this
+     * text, if any. A cached entry that can't be built from is removed.
+     *
+     * @return false if nothing usable was cached for the text
+     */
+    public static boolean restore(final IErlModule module, final String path,
+            final String text) {
+        if (module == null) {
+            return false;
+        }
+        final Pair<OtpErlangList, OtpErlangList> cached = ModelDiskCache.getDefault()
+                .get(path, text);
+        if (cached == null) {
+            return false;
+        }
+        try {
+            new ErlParser().build(module, cached.getKey(), cached.getValue());
+        } catch (final RuntimeException e) {
+            ErlLogger.warn("Could not restore %s from the model cache: %s", path, e);
+            ModelDiskCache.getDefault().remove(path);
+            return false;
+        }
+        return true;
+    }
+
     public boolean parse(final IErlModule module, final String scannerName,
             final boolean initialParse, final String path, final String initialText,
             final boolean updateSearchServer) {
@@ -108,11 +150,33 @@ public final class ErlParser {
         }
         if (Util.isOk(res)) {
             final OtpErlangTuple t = (OtpErlangTuple) res.elementAt(1);
-            forms = (OtpErlangList) t.elementAt(1);
+            forms = resolveForms((OtpErlangList) t.elementAt(1));
             comments = (OtpErlangList) t.elementAt(2);
+            if (initialParse && path != null && !path.isEmpty()) {
+                ModelDiskCache.getDefault().put(path, initialText, forms, comments);
+            }
         } else {
             ErlLogger.error("error when parsing %s: %s", path, res);
         }
+        build(module, forms, comments);
+        String cached = "reparsed";
+        if (res != null && res.arity() > 2) {
+            final OtpErlangObject res2 = res.elementAt(2);
+            if (res2 instanceof OtpErlangAtom) {
+                final OtpErlangAtom atom = (OtpErlangAtom) res2;
+                cached = atom.atomValue();
+            }
+        }
+        if (TRACE) {
+            ErlLogger.debug("Parsed %d forms and %d comments (%s)",
+                    forms != null ? forms.arity() : 0,
+                    comments != null ? comments.arity() : 0, cached);
+        }
+        return forms != null && comments != null;
+    }
+
+    private void build(final IErlModule module, final OtpErlangList forms,
+            final OtpErlangList comments) {
         if (forms == null) {
             module.setChildren(null);
         } else {
@@ -126,20 +190,41 @@ public final class ErlParser {
             module.setComments(moduleComments);
         }
         attachFunctionComments(module);
-        String cached = "reparsed";
-        if (res != null && res.arity() > 2) {
-            final OtpErlangObject res2 = res.elementAt(2);
-            if (res2 instanceof OtpErlangAtom) {
-                final OtpErlangAtom atom = (OtpErlangAtom) res2;
-                cached = atom.atomValue();
-            }
+    }
+
+    /**
+     * Replaces the forms that can only be read with the help of the backend by
+     * equivalent ones that can be read without it, so that they can be stored: syntax
+     * trees become attributes and errors get their formatted message.
+     */
+    private OtpErlangList resolveForms(final OtpErlangList forms) {
+        final OtpErlangObject[] result = new OtpErlangObject[forms.arity()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = resolve((OtpErlangTuple) forms.elementAt(i));
         }
-        if (TRACE) {
-            ErlLogger.debug("Parsed %d forms and %d comments (%s)",
-                    forms != null ? forms.arity() : 0,
-                    comments != null ? comments.arity() : 0, cached);
+        return new OtpErlangList(result);
+    }
+
+    private OtpErlangTuple resolve(final OtpErlangTuple el) {
+        final String typeS = ((OtpErlangAtom) el.elementAt(0)).atomValue();
+        if ("error".equals(typeS)) {
+            final OtpErlangTuple er = (OtpErlangTuple) el.elementAt(1);
+            final String msg = helper.formatError(er);
+            return new OtpErlangTuple(new OtpErlangObject[] { ERROR_MESSAGE,
+                    er.elementAt(0), new OtpErlangString(msg) });
+        } else if ("tree".equals(typeS)) {
+            final OtpErlangTuple atr = (OtpErlangTuple) el.elementAt(3);
+            final OtpErlangObject pos = ((OtpErlangTuple) el.elementAt(2)).elementAt(1);
+            final OtpErlangObject name = concreteTerm(atr.elementAt(1));
+            final OtpErlangObject val = atr.elementAt(2);
+            if (el.arity() > 4) {
+                return new OtpErlangTuple(new OtpErlangObject[] { ATTRIBUTE, pos, name,
+                        val, el.elementAt(4) });
+            }
+            return new OtpErlangTuple(
+                    new OtpErlangObject[] { ATTRIBUTE, pos, name, val });
         }
-        return forms != null && comments != null;
+        return el;
     }
 
     private List<IErlComment> createComments(final IErlModule module,
@@ -297,26 +382,17 @@ public final class ErlParser {
      * create an IErlMember from a tuple from noparse
      *
      * @param el
-     *            the tuple, either function or attribute
+     *            the resolved tuple, either function, attribute or error message
      * @return
      */
     private IErlMember create(final IErlModule module, final OtpErlangTuple el) {
         final OtpErlangAtom type = (OtpErlangAtom) el.elementAt(0);
         final String typeS = type.atomValue();
-        if ("error".equals(typeS)) {
-            final OtpErlangTuple er = (OtpErlangTuple) el.elementAt(1);
-            final String msg = helper.formatError(er);
+        if (ERROR_MESSAGE.equals(type)) {
+            final String msg = Util.stringValue(el.elementAt(2));
             final ErlParserProblem e = ErlParserProblem.newError(module, msg);
-            setPos(e, er.elementAt(0));
+            setPos(e, el.elementAt(1));
             return e;
-        } else if ("tree".equals(typeS)) {
-            final OtpErlangTuple atr = (OtpErlangTuple) el.elementAt(3);
-            final OtpErlangObject pos = ((OtpErlangTuple) el.elementAt(2)).elementAt(1);
-            final OtpErlangTuple name = (OtpErlangTuple) atr.elementAt(1);
-            final OtpErlangAtom n = (OtpErlangAtom) concreteTerm(name);
-            final OtpErlangObject val = atr.elementAt(2);
-            final OtpErlangObject extra = el.arity() > 4 ? el.elementAt(4) : null;
-            return addAttribute(module, pos, n, val, extra, null);
         } else if ("attribute".equals(typeS)) {
             final OtpErlangObject pos = el.elementAt(1);
             final OtpErlangAtom name = (OtpErlangAtom) el.elementAt(2);
@@ -1,5 +1,6 @@
 package org.erlide.engine.internal.services.parsing;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -138,9 +139,11 @@ public class ErlideScanner implements SimpleScannerService, InternalScanner {
         if (Util.isOk(t1)) {
             if (t1.elementAt(1) instanceof OtpErlangBinary) {
                 final OtpErlangBinary b = (OtpErlangBinary) t1.elementAt(1);
-                final byte[] bytes = b.binaryValue();
-                toks = new ArrayList<>(bytes.length / 10);
-                for (int i = 0; i < bytes.length; i += 10) {
+                // read the tokens in place, without copying the binary
+                final ByteBuffer bytes = b.asByteBuffer();
+                final int size = bytes.remaining();
+                toks = new ArrayList<>(size / 10);
+                for (int i = 0; i < size; i += 10) {
                     final ErlToken tk = new ErlToken(bytes, i, offset);
                     toks.add(tk);
                 }
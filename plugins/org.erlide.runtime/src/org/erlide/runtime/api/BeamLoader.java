@@ -1,9 +1,14 @@
 package org.erlide.runtime.api;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 import org.erlide.runtime.rpc.IOtpRpc;
+import org.erlide.runtime.rpc.RpcCall;
+import org.erlide.runtime.rpc.RpcException;
+import org.erlide.runtime.rpc.RpcResult;
 import org.erlide.util.ErlLogger;
 
 import com.ericsson.otp.erlang.OtpErlangAtom;
@@ -14,34 +19,107 @@ import com.ericsson.otp.erlang.OtpErlangTuple;
 
 public class BeamLoader {
 
+    /**
+     * Load a module unless it is sticky. Failures are logged here, with their reason.
+     */
     public static boolean loadBeam(final IOtpRpc backend, final String moduleName,
             final OtpErlangBinary bin) {
-        OtpErlangObject r = null;
         try {
-            r = backend.call("code", "is_sticky", "a", moduleName);
-            // TODO handle sticky directories
-            if (!((OtpErlangAtom) r).booleanValue()) {
-                r = backend.call("code", "load_binary", "asb", moduleName,
-                        moduleName + ".erl", bin);
-            } else {
-                ErlLogger.warn("sticky:: %s", moduleName);
-                r = null;
+            final OtpErlangObject sticky = backend.call("code", "is_sticky", "a",
+                    moduleName);
+            if (!isNotSticky(moduleName, new RpcResult(sticky))) {
+                return false;
             }
-        } catch (final Exception e) {
-            ErlLogger.warn(e);
+            final OtpErlangObject r = backend.call("code", "load_binary", "asb",
+                    moduleName, moduleName + ".erl", bin);
+            return checkLoaded(moduleName, new RpcResult(r));
+        } catch (final RpcException e) {
+            ErlLogger.error("Could not load %s: %s", moduleName, e.getMessage());
+            return false;
         }
-        if (r instanceof OtpErlangTuple) {
-            final OtpErlangTuple t = (OtpErlangTuple) r;
-            if (((OtpErlangAtom) t.elementAt(0)).atomValue().compareTo("module") == 0) {
-                return true;
+    }
+
+    /**
+     * Load several modules with two batches of calls, one to find the sticky modules and
+     * one to load the others, instead of two calls per module. Failures are logged here,
+     * with their reason.
+     *
+     * @return the names of the modules that could not be loaded.
+     */
+    public static Collection<String> loadBeams(final IOtpRpc backend,
+            final Map<String, OtpErlangBinary> beams) {
+        final List<String> names = new ArrayList<>(beams.keySet());
+        final List<String> failed = new ArrayList<>();
+        try {
+            final List<RpcCall> checks = new ArrayList<>(names.size());
+            for (final String moduleName : names) {
+                checks.add(new RpcCall(backend, "code", "is_sticky", "a",
+                        new Object[] { moduleName }));
+            }
+            final List<RpcResult> sticky = backend.call_batch(checks);
+
+            final List<String> toLoad = new ArrayList<>(names.size());
+            final List<RpcCall> loads = new ArrayList<>(names.size());
+            for (int i = 0; i < names.size(); i++) {
+                final String moduleName = names.get(i);
+                if (isNotSticky(moduleName, sticky.get(i))) {
+                    toLoad.add(moduleName);
+                    loads.add(new RpcCall(backend, "code", "load_binary", "asb",
+                            new Object[] { moduleName, moduleName + ".erl",
+                                    beams.get(moduleName) }));
+                } else {
+                    failed.add(moduleName);
+                }
+            }
+            final List<RpcResult> loaded = backend.call_batch(loads);
+            for (int i = 0; i < toLoad.size(); i++) {
+                final String moduleName = toLoad.get(i);
+                if (!checkLoaded(moduleName, loaded.get(i))) {
+                    failed.add(moduleName);
+                }
             }
-            // code couldn't be loaded
-            // TODO throw exception?
-            ErlLogger.error("Could not load " + moduleName + ": " + r);
+        } catch (final RpcException e) {
+            ErlLogger.error("Could not load %s: %s", names, e.getMessage());
+            return names;
+        }
+        return failed;
+    }
+
+    /**
+     * @return true if code:is_sticky/1 answered false; otherwise logs why the module
+     *         won't be loaded: either it is sticky or the check itself failed.
+     */
+    private static boolean isNotSticky(final String moduleName, final RpcResult r) {
+        final OtpErlangObject value = r.getValue();
+        if (!r.isOk() || !(value instanceof OtpErlangAtom)) {
+            ErlLogger.error("Could not load %s: checking if it is sticky failed: %s",
+                    moduleName, value);
             return false;
         }
-        // binary couldn't be extracted
-        ErlLogger.error("Could not load " + moduleName + ": " + r);
+        if (((OtpErlangAtom) value).booleanValue()) {
+            ErlLogger.warn("Could not load %s: module is sticky", moduleName);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return true if code:load_binary/3 answered {module, Module}; otherwise logs the
+     *         reason it gave.
+     */
+    private static boolean checkLoaded(final String moduleName, final RpcResult r) {
+        final OtpErlangObject value = r.getValue();
+        if (r.isOk() && value instanceof OtpErlangTuple) {
+            final OtpErlangTuple t = (OtpErlangTuple) value;
+            if (t.arity() == 2 && new OtpErlangAtom("module").equals(t.elementAt(0))) {
+                return true;
+            }
+            if (t.arity() == 2 && new OtpErlangAtom("error").equals(t.elementAt(0))) {
+                ErlLogger.error("Could not load %s: %s", moduleName, t.elementAt(1));
+                return false;
+            }
+        }
+        ErlLogger.error("Could not load %s: %s", moduleName, value);
         return false;
     }
 
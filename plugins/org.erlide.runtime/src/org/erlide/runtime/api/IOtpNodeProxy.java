@@ -12,6 +12,7 @@ package org.erlide.runtime.api;
 
 import java.util.concurrent.Executor;
 
+import org.erlide.runtime.events.ErlangEventHandler;
 import org.erlide.runtime.rpc.IOtpRpc;
 import org.erlide.runtime.runtimeinfo.RuntimeVersion;
 import org.erlide.util.IDisposable;
@@ -42,7 +43,9 @@ public interface IOtpNodeProxy extends IDisposable {
 
     OtpErlangPid getEventPid();
 
-    void registerEventListener(Object handler);
+    void registerEventListener(ErlangEventHandler handler);
+
+    void unregisterEventListener(ErlangEventHandler handler);
 
     void addRuntimeListener(Listener listener, Executor executor);
 
@@ -2,11 +2,36 @@ package org.erlide.runtime.events;
 
 import org.erlide.util.IDisposable;
 
+/**
+ * Receives the events that a runtime posts on one topic.
+ *
+ * <p>
+ * By default, {@link #handleEvent(ErlEvent)} is called on the thread that reads the event
+ * mailbox, so it should be quick. Handlers that can receive floods of events or that do
+ * slow work return a positive {@link #getQueueCapacity()} and get a queue and a thread of
+ * their own instead.
+ * </p>
+ */
 public abstract class ErlangEventHandler implements IDisposable {
     private final String topic;
 
     public ErlangEventHandler(final String topic) {
-        this.topic = topic;
+        this.topic = topic.intern();
+    }
+
+    /**
+     * Called for each event posted on this handler's topic, in the order they arrived.
+     */
+    public abstract void handleEvent(ErlEvent event);
+
+    /**
+     * @return how many events can be waiting to be handled by this handler on its own
+     *         thread before it is reported as falling behind, or 0 to handle them on the
+     *         thread that receives them. Events beyond it are still queued: the receiving
+     *         thread never waits for a handler.
+     */
+    public int getQueueCapacity() {
+        return 0;
     }
 
     @Override
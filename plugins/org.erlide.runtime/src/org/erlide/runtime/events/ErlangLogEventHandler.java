@@ -7,7 +7,6 @@ import com.ericsson.otp.erlang.OtpErlangBinary;
 import com.ericsson.otp.erlang.OtpErlangLong;
 import com.ericsson.otp.erlang.OtpErlangObject;
 import com.ericsson.otp.erlang.OtpErlangTuple;
-import com.google.common.eventbus.Subscribe;
 
 public class ErlangLogEventHandler extends ErlangEventHandler {
 
@@ -15,7 +14,7 @@ public class ErlangLogEventHandler extends ErlangEventHandler {
         super("erlang_log");
     }
 
-    @Subscribe
+    @Override
     public void handleEvent(final ErlEvent event) {
         if (!event.getTopic().equals(getTopic())) {
             return;
@@ -1,31 +1,32 @@
 package org.erlide.runtime.events;
 
 import org.erlide.util.ErlLogger;
-import org.erlide.util.erlang.OtpBindings;
 import org.erlide.util.erlang.OtpErlang;
+import org.erlide.util.erlang.OtpPattern;
 
 import com.ericsson.otp.erlang.OtpErlangAtom;
 import com.ericsson.otp.erlang.OtpErlangObject;
-import com.google.common.eventbus.Subscribe;
 
 public class LogEventHandler extends ErlangEventHandler {
 
+    private static final OtpPattern LOG = OtpPattern.of("{K:a,M}");
+
     public LogEventHandler() {
         super("log");
     }
 
-    @Subscribe
+    @Override
     public void handleEvent(final ErlEvent event) {
         if (!event.getTopic().equals(getTopic())) {
             return;
         }
         final OtpErlangObject data = event.getEvent();
-        try {
-            final OtpBindings b = OtpErlang.match("{K:a,M}", data);
-            final String kind = ((OtpErlangAtom) b.get("K")).atomValue();
-            final OtpErlangObject amsg = b.get("M");
+        final OtpErlangObject[] b = LOG.newSlots();
+        if (LOG.match(data, b)) {
+            final String kind = ((OtpErlangAtom) b[0]).atomValue();
+            final OtpErlangObject amsg = b[1];
             ErlLogger.debug("%s: %s", kind, OtpErlang.asString(amsg));
-        } catch (final Exception e) {
+        } else {
             ErlLogger.error("erroneous log msg: %s", data);
         }
     }
@@ -0,0 +1,256 @@
+/*******************************************************************************
+ * Copyright (c) 2010 Vlad Dumitrescu and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Vlad Dumitrescu
+ *******************************************************************************/
+package org.erlide.runtime.internal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.erlide.runtime.events.ErlEvent;
+import org.erlide.runtime.events.ErlangEventHandler;
+import org.erlide.util.ErlLogger;
+
+/**
+ * Routes the events of a runtime to the handlers registered for their topic.
+ *
+ * <p>
+ * Handlers with a queue capacity of 0 are called directly by the thread that calls
+ * {@link #dispatch(ErlEvent)}. The others get a queue and a daemon thread that handles
+ * the queued events in batches. The dispatching thread never waits for a handler, so a
+ * flood on one topic doesn't hold up the others. Events are never dropped either, since
+ * handlers like the trace, eunit and cover ones need all of them: when a handler falls
+ * behind by more than its capacity, its own queue keeps growing, and the events queued
+ * beyond the capacity are counted and reported.
+ * </p>
+ *
+ * <p>
+ * Routing is a hash lookup on the topic. Strings cache their hash, so the topics that
+ * come from the shared atom cache don't need to hash it again.
+ * </p>
+ */
+public class ErlEventDispatcher {
+
+    private static final int BATCH_SIZE = 256;
+    private static final long IDLE_TIMEOUT = 30;
+
+    private abstract static class Route {
+        final ErlangEventHandler handler;
+        volatile boolean closed;
+
+        Route(final ErlangEventHandler handler) {
+            this.handler = handler;
+        }
+
+        abstract void deliver(ErlEvent event);
+
+        /**
+         * Events already dispatched to a closed route are not handled anymore.
+         */
+        void close() {
+            closed = true;
+        }
+
+        void handle(final ErlEvent event) {
+            if (closed) {
+                return;
+            }
+            try {
+                handler.handleEvent(event);
+            } catch (final Exception e) {
+                ErlLogger.error(e);
+            }
+        }
+    }
+
+    private static class DirectRoute extends Route {
+        DirectRoute(final ErlangEventHandler handler) {
+            super(handler);
+        }
+
+        @Override
+        void deliver(final ErlEvent event) {
+            handle(event);
+        }
+    }
+
+    /*
+     * The thread is started when the first event is queued and ends after the queue has
+     * been empty for a while, so idle handlers of runtimes that are gone don't keep
+     * threads around. At most one thread runs at a time, which keeps events in order.
+     */
+    private static class QueuedRoute extends Route implements Runnable {
+        // grows as needed, so a large capacity costs nothing until it is used
+        private final BlockingQueue<ErlEvent> queue = new LinkedBlockingQueue<>();
+        private final int capacity;
+        private final String threadName;
+        private final AtomicLong overCapacity;
+        private final AtomicBoolean running = new AtomicBoolean();
+
+        QueuedRoute(final ErlangEventHandler handler, final String name,
+                final AtomicLong overCapacity) {
+            super(handler);
+            this.overCapacity = overCapacity;
+            capacity = handler.getQueueCapacity();
+            threadName = "events " + handler.getTopic() + " " + name;
+        }
+
+        @Override
+        void deliver(final ErlEvent event) {
+            if (queue.size() >= capacity) {
+                final long n = overCapacity.getAndIncrement();
+                if (n % 1000 == 0) {
+                    ErlLogger.warn("Event queue for %s is over its capacity of %d, "
+                            + "%d event(s) queued beyond it", handler.getTopic(),
+                            capacity, n + 1);
+                }
+            }
+            queue.add(event);
+            if (running.compareAndSet(false, true)) {
+                start();
+            }
+        }
+
+        @Override
+        void close() {
+            super.close();
+            queue.clear();
+        }
+
+        private void start() {
+            final Thread thread = new Thread(this, threadName);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        @Override
+        public void run() {
+            final List<ErlEvent> batch = new ArrayList<>(BATCH_SIZE);
+            while (true) {
+                ErlEvent first;
+                try {
+                    first = queue.poll(IDLE_TIMEOUT, TimeUnit.SECONDS);
+                } catch (final InterruptedException e) {
+                    // let the interrupt end this thread, a new one takes over
+                    Thread.currentThread().interrupt();
+                    running.set(false);
+                    if (!queue.isEmpty() && running.compareAndSet(false, true)) {
+                        start();
+                    }
+                    return;
+                }
+                if (first == null) {
+                    running.set(false);
+                    // an event queued just before the flag was cleared started no thread
+                    if (queue.isEmpty() || !running.compareAndSet(false, true)) {
+                        return;
+                    }
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, BATCH_SIZE - 1);
+                for (final ErlEvent event : batch) {
+                    handle(event);
+                }
+                batch.clear();
+            }
+        }
+    }
+
+    private final String name;
+    private final ConcurrentMap<String, Route[]> routes = new ConcurrentHashMap<>();
+    private final AtomicLong overCapacity = new AtomicLong();
+
+    /**
+     * @param name
+     *            used in the names of the handler threads
+     */
+    public ErlEventDispatcher(final String name) {
+        this.name = name;
+    }
+
+    public synchronized void register(final ErlangEventHandler handler) {
+        final Route route = handler.getQueueCapacity() > 0 ? new QueuedRoute(handler,
+                name, overCapacity) : new DirectRoute(handler);
+        final String topic = handler.getTopic();
+        final Route[] old = routes.get(topic);
+        if (old == null) {
+            routes.put(topic, new Route[] { route });
+        } else {
+            final Route[] all = Arrays.copyOf(old, old.length + 1);
+            all[old.length] = route;
+            routes.put(topic, all);
+        }
+    }
+
+    /**
+     * Stop routing events to a handler. Events already queued for it are discarded.
+     */
+    public synchronized void unregister(final ErlangEventHandler handler) {
+        final String topic = handler.getTopic();
+        final Route[] old = routes.get(topic);
+        if (old == null) {
+            return;
+        }
+        final List<Route> kept = new ArrayList<>(old.length);
+        for (final Route route : old) {
+            if (route.handler == handler) {
+                route.close();
+            } else {
+                kept.add(route);
+            }
+        }
+        if (kept.isEmpty()) {
+            routes.remove(topic);
+        } else if (kept.size() < old.length) {
+            routes.put(topic, kept.toArray(new Route[kept.size()]));
+        }
+    }
+
+    /**
+     * @return false if there was no handler for the event's topic.
+     */
+    public boolean dispatch(final ErlEvent event) {
+        final Route[] targets = routes.get(event.getTopic());
+        if (targets == null) {
+            return false;
+        }
+        for (final Route route : targets) {
+            route.deliver(event);
+        }
+        return true;
+    }
+
+    /**
+     * Dispatch a batch of events, in order.
+     */
+    public void dispatchAll(final List<ErlEvent> events) {
+        for (final ErlEvent event : events) {
+            if (!dispatch(event)) {
+                ErlLogger.warn("Dead event: %s in runtime %s", event.getTopic(), name);
+            }
+        }
+    }
+
+    /**
+     * @return the number of events that were queued for a handler while it was already
+     *         behind by its queue capacity.
+     */
+    public long getOverCapacityCount() {
+        return overCapacity.get();
+    }
+}
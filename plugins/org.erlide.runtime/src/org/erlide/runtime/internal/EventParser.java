@@ -8,46 +8,37 @@ import com.ericsson.otp.erlang.OtpErlangObject;
 import com.ericsson.otp.erlang.OtpErlangPid;
 import com.ericsson.otp.erlang.OtpErlangTuple;
 
+/**
+ * Recognizes messages of the form <code>{event, Topic, Data, Sender}</code>.
+ */
 public class EventParser {
 
+    private static final OtpErlangAtom EVENT = OtpErlangAtom.valueOf("event");
+
+    /**
+     * @return the event, or null if msg doesn't look like an event message.
+     */
     public ErlEvent parse(final OtpErlangObject msg, final IOtpNodeProxy runtime) {
-        if (msg == null) {
+        if (!(msg instanceof OtpErlangTuple)) {
             return null;
         }
-        final String topic = getEventTopic(msg);
-        if (topic == null) {
+        final OtpErlangTuple tmsg = (OtpErlangTuple) msg;
+        if (tmsg.arity() < 4 || !(tmsg.elementAt(1) instanceof OtpErlangAtom)
+                || !(tmsg.elementAt(3) instanceof OtpErlangPid)) {
             return null;
         }
-        final OtpErlangObject event = getEventData(msg);
-        final OtpErlangPid sender = getEventSender(msg);
+        final String topic = ((OtpErlangAtom) tmsg.elementAt(1)).atomValue();
+        final OtpErlangObject event = tmsg.elementAt(2);
+        final OtpErlangPid sender = (OtpErlangPid) tmsg.elementAt(3);
         return new ErlEvent(topic, runtime, event, sender);
     }
 
     public boolean isEventMessage(final OtpErlangObject msg) {
-        try {
-            final OtpErlangTuple tmsg = (OtpErlangTuple) msg;
-            final OtpErlangObject el0 = tmsg.elementAt(0);
-            return ((OtpErlangAtom) el0).atomValue().equals("event") && tmsg.arity() == 4;
-        } catch (final Exception e) {
+        if (!(msg instanceof OtpErlangTuple)) {
             return false;
         }
-    }
-
-    private OtpErlangPid getEventSender(final OtpErlangObject msg) {
-        final OtpErlangTuple tmsg = (OtpErlangTuple) msg;
-        return (OtpErlangPid) tmsg.elementAt(3);
-    }
-
-    private OtpErlangObject getEventData(final OtpErlangObject msg) {
-        final OtpErlangTuple tmsg = (OtpErlangTuple) msg;
-        return tmsg.elementAt(2);
-    }
-
-    private String getEventTopic(final OtpErlangObject msg) {
         final OtpErlangTuple tmsg = (OtpErlangTuple) msg;
-        final Object el0 = tmsg.elementAt(1);
-        final OtpErlangAtom a = (OtpErlangAtom) el0;
-        return a.atomValue();
+        return tmsg.arity() == 4 && EVENT.equals(tmsg.elementAt(0));
     }
 
 }
@@ -8,35 +8,73 @@
  *******************************************************************************/
 package org.erlide.runtime.internal;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.List;
 
 import org.erlide.util.ErlLogger;
-import org.erlide.util.erlang.OtpBindings;
 import org.erlide.util.erlang.OtpErlang;
-import org.erlide.util.erlang.OtpParserException;
+import org.erlide.util.erlang.OtpPattern;
 
 import com.ericsson.otp.erlang.OtpErlangAtom;
+import com.ericsson.otp.erlang.OtpErlangBinary;
 import com.ericsson.otp.erlang.OtpErlangException;
 import com.ericsson.otp.erlang.OtpErlangExit;
+import com.ericsson.otp.erlang.OtpErlangList;
+import com.ericsson.otp.erlang.OtpErlangLong;
 import com.ericsson.otp.erlang.OtpErlangObject;
 import com.ericsson.otp.erlang.OtpErlangPid;
+import com.ericsson.otp.erlang.OtpErlangString;
 import com.ericsson.otp.erlang.OtpErlangTuple;
 import com.ericsson.otp.erlang.OtpMbox;
 
 /**
  * An Erlang io_server.
+ *
+ * <p>
+ * All the requests that are waiting when the server wakes up are handled together, up
+ * to {@link #BATCH_SIZE} of them. A request that can't be handled gets an error reply
+ * and doesn't affect the others. Output is not limited by default. The system property
+ * <code>erlide.ioserver.rate</code> (for example
+ * <code>-Derlide.ioserver.rate=1048576</code> in eclipse.ini) limits it to a number of
+ * bytes per second; requests over the limit are acknowledged but not written, and at
+ * most once a second a line telling how much was dropped is written.
+ * </p>
  */
 public class IOServer implements Runnable {
 
+    private static final int BATCH_SIZE = 256;
+    private static final long RECEIVE_TIMEOUT = 3000;
+    private static final long REPORT_INTERVAL = 1000;
+    private static final OtpErlangAtom IO_REPLY = new OtpErlangAtom("io_reply");
+    private static final OtpErlangAtom OK = new OtpErlangAtom("ok");
+
     private final IOCallback callback;
     private final OtpMbox mbox;
     private final Thread thread;
+    private final OutputRateLimiter limiter;
     private volatile boolean stopped = false;
 
+    // who to write the "dropped" line for, and when it was last written
+    private OtpErlangPid droppedFrom;
+    private long lastReport = System.currentTimeMillis() - REPORT_INTERVAL;
+
     public IOServer(final OtpMbox box, final IOCallback callback) {
+        this(box, callback, Long.getLong("erlide.ioserver.rate", 0));
+    }
+
+    /**
+     * @param bytesPerSecond
+     *            output limit; 0 or less means no limit
+     */
+    public IOServer(final OtpMbox box, final IOCallback callback,
+            final long bytesPerSecond) {
         this.callback = callback;
         mbox = box;
+        limiter = new OutputRateLimiter(bytesPerSecond);
         thread = new Thread(this, "io_server");
+        thread.setDaemon(true);
         thread.start();
     }
 
@@ -46,137 +84,201 @@ public class IOServer implements Runnable {
 
     @Override
     public void run() {
+        final List<OtpErlangObject> batch = new ArrayList<>(BATCH_SIZE);
         boolean done = false;
-        do {
-            OtpErlangObject msg;
+        while (!stopped && !done) {
             try {
-                msg = mbox.receive(3000);
-                if (msg != null) {
-
-                    ErlLogger.debug(
-                            "IOS " + Thread.currentThread().getName() + " : " + msg);
-
-                    if (msg instanceof OtpErlangTuple) {
-                        handleMessage(msg);
-                    } else {
-                        ErlLogger.debug("IOServer: unknown message " + msg);
-                    }
+                OtpErlangObject msg = mbox.receive(
+                        droppedFrom != null ? REPORT_INTERVAL : RECEIVE_TIMEOUT);
+                while (msg != null) {
+                    batch.add(msg);
+                    msg = batch.size() < BATCH_SIZE ? mbox.receive(0) : null;
                 }
             } catch (final OtpErlangExit e) {
                 done = true;
             } catch (final Exception e) {
                 ErlLogger.error(e);
             }
-        } while (!stopped || !done || !Thread.interrupted());
+            try {
+                handleMessages(batch);
+            } catch (final Exception e) {
+                ErlLogger.error(e);
+            } finally {
+                batch.clear();
+            }
+        }
         if (stopped) {
             mbox.close();
         }
     }
 
+    private void handleMessages(final List<OtpErlangObject> msgs) {
+        for (final OtpErlangObject msg : msgs) {
+            handleMessage(msg);
+        }
+        if (droppedFrom != null
+                && System.currentTimeMillis() - lastReport >= REPORT_INTERVAL) {
+            reportDropped();
+        }
+    }
+
     private void handleMessage(final OtpErlangObject msg) {
+        if (!(msg instanceof OtpErlangTuple)) {
+            ErlLogger.debug("IOServer: unknown message " + msg);
+            return;
+        }
         final OtpErlangTuple tuple = (OtpErlangTuple) msg;
-        final String tag = ((OtpErlangAtom) tuple.elementAt(0)).atomValue();
-        if ("io_request".equals(tag)) {
+        if (tuple.arity() == 4 && tuple.elementAt(0) instanceof OtpErlangAtom
+                && "io_request".equals(atom(tuple.elementAt(0)))
+                && tuple.elementAt(1) instanceof OtpErlangPid) {
             final OtpErlangPid from = (OtpErlangPid) tuple.elementAt(1);
             final OtpErlangObject replyAs = tuple.elementAt(2);
-            final OtpErlangTuple request = (OtpErlangTuple) tuple.elementAt(3);
-            final OtpErlangObject reply = processRequest(from, request);
-            final OtpErlangTuple replyMsg = OtpErlang
-                    .mkTuple(new OtpErlangAtom("io_reply"), replyAs, reply);
-            mbox.send(from, replyMsg);
+            final OtpErlangObject request = tuple.elementAt(3);
+            OtpErlangObject reply;
+            try {
+                reply = processRequest(from, request);
+            } catch (final RuntimeException e) {
+                ErlLogger.warn("IOServer: could not handle %s: %s", request, e);
+                reply = error;
+            }
+            reply(from, replyAs, reply);
         } else {
             ErlLogger.warn("IOServer: unknown message " + msg);
         }
     }
 
+    private void reply(final OtpErlangPid to, final OtpErlangObject replyAs,
+            final OtpErlangObject reply) {
+        mbox.send(to, OtpErlang.mkTuple(IO_REPLY, replyAs, reply));
+    }
+
+    /**
+     * Passes chars to the callback, unless they are over the rate limit.
+     */
+    private OtpErlangObject putChars(final OtpErlangPid from, final IOEncoding encoding,
+            final OtpErlangObject chars) {
+        if (!limiter.tryAcquire(size(chars))) {
+            droppedFrom = from;
+            return OK;
+        }
+        return callback.putChars(from, encoding, chars);
+    }
+
+    private void reportDropped() {
+        final String text = "\n*** output too fast, dropped " + limiter.takeDropped()
+                + " bytes ***\n";
+        callback.putChars(droppedFrom, IOEncoding.latin1, new OtpErlangString(text));
+        droppedFrom = null;
+        lastReport = System.currentTimeMillis();
+    }
+
+    /**
+     * @return the size of chars (iodata or chardata), counting one byte per character
+     */
+    private static long size(final OtpErlangObject chars) {
+        if (chars instanceof OtpErlangBinary) {
+            return ((OtpErlangBinary) chars).size();
+        } else if (chars instanceof OtpErlangString) {
+            return ((OtpErlangString) chars).stringValue().length();
+        } else if (chars instanceof OtpErlangList) {
+            final OtpErlangList list = (OtpErlangList) chars;
+            long result = 0;
+            for (final OtpErlangObject element : list.elements()) {
+                result += size(element);
+            }
+            if (list.getLastTail() != null) {
+                result += size(list.getLastTail());
+            }
+            return result;
+        } else if (chars instanceof OtpErlangLong) {
+            return 1;
+        }
+        return chars.toString().length();
+    }
+
     private final OtpErlangObject error = OtpErlang.mkTuple(new OtpErlangAtom("error"),
             new OtpErlangAtom("request"));
 
+    private static final OtpPattern PUT_CHARS = OtpPattern.of("{put_chars, Chars}");
+    private static final OtpPattern PUT_CHARS_ENC = OtpPattern
+            .of("{put_chars, Enc:a, Chars}");
+    private static final OtpPattern PUT_CHARS_MFA = OtpPattern
+            .of("{put_chars, M:a, F:a, A}");
+    private static final OtpPattern PUT_CHARS_ENC_MFA = OtpPattern
+            .of("{put_chars, Enc:a, M:a, F:a, A}");
+    private static final OtpPattern GET_UNTIL = OtpPattern.of("{get_until, Prompt}");
+    private static final OtpPattern GET_UNTIL_N = OtpPattern
+            .of("{get_until, Prompt, N:i}");
+    private static final OtpPattern GET_UNTIL_ENC = OtpPattern
+            .of("{get_until, Enc:a, Prompt}");
+    private static final OtpPattern GET_UNTIL_ENC_N = OtpPattern
+            .of("{get_until, Enc:a, Prompt, N:i}");
+    private static final OtpPattern GET_UNTIL_MFA = OtpPattern
+            .of("{get_until, Prompt, M:a, F:a, A}");
+    private static final OtpPattern GET_UNTIL_ENC_MFA = OtpPattern
+            .of("{get_until, Enc:a, Prompt, M:a, F:a, A}");
+    private static final OtpPattern REQUESTS = OtpPattern.of("{requests, Reqs:lx}");
+    private static final OtpPattern SETOPTS = OtpPattern.of("{setopts, Opts:lx}");
+
+    // only used by the io_server thread; the patterns above need at most 5
+    private final OtpErlangObject[] slots = new OtpErlangObject[5];
+
     private OtpErlangObject processRequest(final OtpErlangPid from,
             final OtpErlangObject arequest) {
         if (callback == null) {
             return error;
         }
-        OtpBindings b;
         try {
             if (arequest instanceof OtpErlangTuple) {
                 final OtpErlangTuple request = (OtpErlangTuple) arequest;
                 final String tag = ((OtpErlangAtom) request.elementAt(0)).atomValue();
                 if ("put_chars".equals(tag)) {
-                    b = OtpErlang.match("{put_chars, Chars}", request);
-                    if (b != null) {
-                        return callback.putChars(from, IOEncoding.latin1, b.get("Chars"));
+                    if (PUT_CHARS.match(request, slots)) {
+                        return putChars(from, IOEncoding.latin1, slots[0]);
                     }
-
-                    b = OtpErlang.match("{put_chars, Enc:a, Chars}", request);
-                    if (b != null) {
-                        final String enc = b.getAtom("Enc");
-                        return callback.putChars(from, IOEncoding.valueOf(enc),
-                                b.get("Chars"));
+                    if (PUT_CHARS_ENC.match(request, slots)) {
+                        final IOEncoding enc = IOEncoding.valueOf(atom(slots[0]));
+                        return putChars(from, enc, slots[1]);
                     }
-
-                    b = OtpErlang.match("{put_chars, M:a, F:a, A}", request);
-                    if (b != null) {
-                        final String m = b.getAtom("M");
-                        final String f = b.getAtom("F");
-                        final Collection<OtpErlangObject> a = b.getList("A");
-                        return callback.putChars(from, IOEncoding.latin1, m, f, a);
+                    if (PUT_CHARS_MFA.match(request, slots)) {
+                        return callback.putChars(from, IOEncoding.latin1,
+                                atom(slots[0]), atom(slots[1]), list(slots[2]));
                     }
-
-                    b = OtpErlang.match("{put_chars, Enc:a, M:a, F:a, A}", request);
-                    if (b != null) {
-                        final String enc = b.getAtom("Enc");
-                        final String m = b.getAtom("M");
-                        final String f = b.getAtom("F");
-                        final Collection<OtpErlangObject> a = b.getList("A");
-                        return callback.putChars(from, IOEncoding.valueOf(enc), m, f, a);
+                    if (PUT_CHARS_ENC_MFA.match(request, slots)) {
+                        final IOEncoding enc = IOEncoding.valueOf(atom(slots[0]));
+                        return callback.putChars(from, enc, atom(slots[1]),
+                                atom(slots[2]), list(slots[3]));
                     }
                     return error;
                 } else if ("get_until".equals(tag)) {
-                    b = OtpErlang.match("{get_until, Prompt}", request);
-                    if (b != null) {
-                        return callback.getUntil(IOEncoding.latin1, b.get("Prompt"));
+                    if (GET_UNTIL.match(request, slots)) {
+                        return callback.getUntil(IOEncoding.latin1, slots[0]);
                     }
-                    b = OtpErlang.match("{get_until, Prompt, N:i}", request);
-                    if (b != null) {
-                        final long n = b.getLong("N");
-                        return callback.getUntil(IOEncoding.latin1, b.get("Prompt"), n);
+                    if (GET_UNTIL_N.match(request, slots)) {
+                        return callback.getUntil(IOEncoding.latin1, slots[0],
+                                ((OtpErlangLong) slots[1]).longValue());
                     }
-                    b = OtpErlang.match("{get_until, Enc:a, Prompt}", request);
-                    if (b != null) {
-                        final String enc = b.getAtom("Enc");
-                        return callback.getUntil(IOEncoding.valueOf(enc),
-                                b.get("Prompt"));
+                    if (GET_UNTIL_ENC.match(request, slots)) {
+                        final IOEncoding enc = IOEncoding.valueOf(atom(slots[0]));
+                        return callback.getUntil(enc, slots[1]);
                     }
-                    b = OtpErlang.match("{get_until, Enc:a, Prompt, N:i}", request);
-                    if (b != null) {
-                        final String enc = b.getAtom("Enc");
-                        final long n = b.getLong("N");
-                        return callback.getUntil(IOEncoding.valueOf(enc), b.get("Prompt"),
-                                n);
+                    if (GET_UNTIL_ENC_N.match(request, slots)) {
+                        final IOEncoding enc = IOEncoding.valueOf(atom(slots[0]));
+                        return callback.getUntil(enc, slots[1],
+                                ((OtpErlangLong) slots[2]).longValue());
                     }
-                    b = OtpErlang.match("{get_until, Prompt, M:a, F:a, A}", request);
-                    if (b != null) {
-                        final String m = b.getAtom("M");
-                        final String f = b.getAtom("F");
-                        final Collection<OtpErlangObject> a = b.getList("A");
-                        return callback.getUntil(IOEncoding.latin1, b.get("Prompt"), m, f,
-                                a);
+                    if (GET_UNTIL_MFA.match(request, slots)) {
+                        return callback.getUntil(IOEncoding.latin1, slots[0],
+                                atom(slots[1]), atom(slots[2]), list(slots[3]));
                     }
-                    b = OtpErlang.match("{get_until, Enc: a, Prompt, M:a, F:a, A}",
-                            request);
-                    if (b != null) {
-                        final String enc = b.getAtom("Enc");
-                        final String m = b.getAtom("M");
-                        final String f = b.getAtom("F");
-                        final Collection<OtpErlangObject> a = b.getList("A");
-                        return callback.getUntil(IOEncoding.valueOf(enc), b.get("Prompt"),
-                                m, f, a);
+                    if (GET_UNTIL_ENC_MFA.match(request, slots)) {
+                        final IOEncoding enc = IOEncoding.valueOf(atom(slots[0]));
+                        return callback.getUntil(enc, slots[1], atom(slots[2]),
+                                atom(slots[3]), list(slots[4]));
                     }
                 } else if ("requests".equals(tag)) {
-                    b = OtpErlang.match("{requests, Reqs:lx}", request);
-                    if (b != null) {
-                        final Collection<OtpErlangObject> reqs = b.getList("Reqs");
+                    if (REQUESTS.match(request, slots)) {
+                        final Collection<OtpErlangObject> reqs = list(slots[0]);
                         OtpErlangObject val = null;
                         for (final OtpErlangObject r : reqs) {
                             val = processRequest(from, r);
@@ -187,10 +289,8 @@ public class IOServer implements Runnable {
                         return val == null ? error : val;
                     }
                 } else if ("setopts".equals(tag)) {
-                    b = OtpErlang.match("{setopts, Opts:lx}", request);
-                    if (b != null) {
-                        final Collection<OtpErlangObject> opts = b.getList("Opts");
-                        return callback.setOpts(opts);
+                    if (SETOPTS.match(request, slots)) {
+                        return callback.setOpts(list(slots[0]));
                     }
                 } else if ("get_geometry".equals(tag)) {
                     return OtpErlang.mkTuple(new OtpErlangAtom("error"),
@@ -207,11 +307,21 @@ public class IOServer implements Runnable {
             } else {
                 return error;
             }
-        } catch (final OtpParserException e) {
-            ErlLogger.error(e);
         } catch (final OtpErlangException e) {
             ErlLogger.error(e);
         }
         return error;
     }
+
+    private static String atom(final OtpErlangObject value) {
+        return ((OtpErlangAtom) value).atomValue();
+    }
+
+    private static Collection<OtpErlangObject> list(final OtpErlangObject value)
+            throws OtpErlangException {
+        if (value instanceof OtpErlangList) {
+            return Arrays.asList(((OtpErlangList) value).elements());
+        }
+        throw new OtpErlangException("value is not a list");
+    }
 }
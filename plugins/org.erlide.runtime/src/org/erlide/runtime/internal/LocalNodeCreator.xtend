@@ -1,5 +1,6 @@
 package org.erlide.runtime.internal
 
+import com.ericsson.otp.erlang.OtpInputStream
 import com.ericsson.otp.erlang.OtpNode
 import com.ericsson.otp.erlang.OtpNodeStatus
 import com.google.common.base.Strings
@@ -11,13 +12,25 @@ import org.fishwife.jrugged.Initializer
 
 class LocalNodeCreator {
 
+    static val DIRECT_DECODE = Boolean.parseBoolean(System.getProperty("erlide.decode.direct", "true"))
+    static val LAZY_BINARIES = Boolean.parseBoolean(System.getProperty("erlide.decode.lazy_binaries", "true"))
+
     static def OtpNode createOtpNode(String cookie, boolean longName) {
         val hostName = HostnameChecker.instance.getErlangHostName(longName)
-        if (Strings.isNullOrEmpty(cookie)) {
+        val node = if (Strings.isNullOrEmpty(cookie)) {
             new OtpNode(NodeNameCreator.create(hostName))
         } else {
             new OtpNode(NodeNameCreator.create(hostName), cookie)
         }
+        var flags = 0
+        if (DIRECT_DECODE) {
+            flags = flags.bitwiseOr(OtpInputStream.DECODE_DIRECT)
+        }
+        if (LAZY_BINARIES) {
+            flags = flags.bitwiseOr(OtpInputStream.DECODE_LAZY_BINARIES)
+        }
+        node.setFlags(flags)
+        node
     }
 
     static def OtpNode startLocalNode(OtpNodeProxy runtime, String cookie, boolean hasLongName) {
@@ -12,7 +12,9 @@ package org.erlide.runtime.internal;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
@@ -21,6 +23,7 @@ import java.util.concurrent.TimeoutException;
 import org.erlide.runtime.api.IOtpNodeProxy;
 import org.erlide.runtime.api.RuntimeData;
 import org.erlide.runtime.events.ErlEvent;
+import org.erlide.runtime.events.ErlangEventHandler;
 import org.erlide.runtime.events.ErlangLogEventHandler;
 import org.erlide.runtime.events.LogEventHandler;
 import org.erlide.runtime.internal.rpc.OtpRpc;
@@ -34,15 +37,13 @@ import org.erlide.util.ErlLogger;
 import org.erlide.util.SystemConfiguration;
 import org.erlide.util.services.Provider;
 
+import com.ericsson.otp.erlang.OtpErlangAtom;
 import com.ericsson.otp.erlang.OtpErlangDecodeException;
 import com.ericsson.otp.erlang.OtpErlangExit;
 import com.ericsson.otp.erlang.OtpErlangObject;
 import com.ericsson.otp.erlang.OtpErlangPid;
 import com.ericsson.otp.erlang.OtpMbox;
 import com.ericsson.otp.erlang.OtpNode;
-import com.google.common.eventbus.DeadEvent;
-import com.google.common.eventbus.EventBus;
-import com.google.common.eventbus.Subscribe;
 import com.google.common.util.concurrent.AbstractExecutionThreadService;
 import com.google.common.util.concurrent.MoreExecutors;
 import com.google.common.util.concurrent.Service;
@@ -63,7 +64,7 @@ public class OtpNodeProxy implements IOtpNodeProxy {
 	final ErlRuntimeReporter reporter;
 	private OtpMbox eventMBox;
 	private IOtpRpc otpRpc;
-	private final EventBus eventBus;
+	private final ErlEventDispatcher events;
 	private final EventParser eventHelper;
 	private Process process = null;
 	private volatile int exitCode = -1;
@@ -71,6 +72,10 @@ public class OtpNodeProxy implements IOtpNodeProxy {
     static final boolean DEBUG = Boolean
             .parseBoolean(System.getProperty("erlide.event.daemon"));
 	public static final long POLL_INTERVAL = 100;
+	// how often a managed runtime checks if its process is alive when no events arrive
+	private static final long EXIT_CHECK_INTERVAL = 1000;
+	private static final int EVENT_BATCH_SIZE = 256;
+	private static final OtpErlangAtom WAKEUP = OtpErlangAtom.valueOf("wakeup");
 
 	public OtpNodeProxy(final RuntimeData data) {
 		this.data = data;
@@ -78,8 +83,7 @@ public class OtpNodeProxy implements IOtpNodeProxy {
 
 		eventHelper = new EventParser();
 		final String nodeName = getNodeName();
-		eventBus = new EventBus(nodeName);
-		eventBus.register(this);
+		events = new ErlEventDispatcher(nodeName);
 		registerEventListener(new LogEventHandler());
 		registerEventListener(new ErlangLogEventHandler());
 
@@ -101,23 +105,34 @@ public class OtpNodeProxy implements IOtpNodeProxy {
 		service.addListener(new ErlRuntimeListener(), MoreExecutors.sameThreadExecutor());
 	}
 
-	private void receiveEventMessage(final OtpMbox eventBox) throws OtpErlangExit {
-		OtpErlangObject msg = null;
+	/**
+	 * Wait for a message (forever if timeout is 0), then dispatch it together with the
+	 * messages already queued behind it, up to {@link #EVENT_BATCH_SIZE}.
+	 */
+	private void receiveEventMessages(final OtpMbox eventBox, final long timeout)
+			throws OtpErlangExit {
+		final List<ErlEvent> batch = new ArrayList<>();
 		try {
-			msg = eventBox.receive(POLL_INTERVAL);
-			final ErlEvent busEvent = eventHelper.parse(msg, this);
-			if (busEvent != null) {
-				if (DEBUG) {
-                    ErlLogger.debug("MSG: %s", "[" + busEvent.getSender() + "::"
-                            + busEvent.getTopic() + ": " + busEvent.getEvent() + "]");
+			OtpErlangObject msg = timeout > 0 ? eventBox.receive(timeout) : eventBox
+					.receive();
+			while (msg != null) {
+				final ErlEvent busEvent = eventHelper.parse(msg, this);
+				if (busEvent != null) {
+					if (DEBUG) {
+                        ErlLogger.debug("MSG: %s", "[" + busEvent.getSender() + "::"
+                                + busEvent.getTopic() + ": " + busEvent.getEvent() + "]");
+					}
+					batch.add(busEvent);
 				}
-				eventBus.post(busEvent);
+				msg = batch.size() < EVENT_BATCH_SIZE ? eventBox.receive(0) : null;
 			}
 		} catch (final OtpErlangExit e) {
 			ErlLogger.error(e);
 			throw e;
 		} catch (final OtpErlangDecodeException e) {
 			ErlLogger.error(e);
+		} finally {
+			events.dispatchAll(batch);
 		}
 	}
 
@@ -153,7 +168,7 @@ public class OtpNodeProxy implements IOtpNodeProxy {
 
 	@Override
 	public void dispose() {
-		otpRpc.setConnected(false);
+		otpRpc.dispose();
 		localNode.close();
 		service.stopAsync();
 	}
@@ -204,8 +219,13 @@ public class OtpNodeProxy implements IOtpNodeProxy {
 	}
 
 	@Override
-	public void registerEventListener(final Object handler) {
-		eventBus.register(handler);
+	public void registerEventListener(final ErlangEventHandler handler) {
+		events.register(handler);
+	}
+
+	@Override
+	public void unregisterEventListener(final ErlangEventHandler handler) {
+		events.unregister(handler);
 	}
 
 	private void connect() throws Exception {
@@ -260,11 +280,6 @@ public class OtpNodeProxy implements IOtpNodeProxy {
 		}
 	}
 
-	@Subscribe
-	public void deadEventHandler(final DeadEvent dead) {
-		ErlLogger.warn("Dead event: " + dead + " in runtime " + getNodeName());
-	}
-
 	private class ErlRuntimeListener extends Listener {
 
 		@Override
@@ -390,14 +405,20 @@ public class OtpNodeProxy implements IOtpNodeProxy {
 		@Override
 		protected void triggerShutdown() {
 			stopped = true;
+			// the event loop may be blocked waiting for a message
+			final OtpMbox eventBox = eventMBox;
+			if (eventBox != null) {
+				eventBox.send(eventBox.self(), WAKEUP);
+			}
 		}
 
 		@Override
 		protected void run() throws Exception {
 			final OtpMbox eventBox = eventMBox;
 			int theCode = -1;
+			final long timeout = managed ? EXIT_CHECK_INTERVAL : 0;
 			do {
-				receiveEventMessage(eventBox);
+				receiveEventMessages(eventBox, timeout);
 				if (managed) {
 					try {
 						final int code = process.exitValue();
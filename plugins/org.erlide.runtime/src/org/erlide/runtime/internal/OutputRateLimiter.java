@@ -0,0 +1,88 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2013 Vlad Dumitrescu and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available
+ * at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Vlad Dumitrescu
+ *******************************************************************************/
+package org.erlide.runtime.internal;
+
+/**
+ * Token bucket that limits output to a number of bytes per second, allowing bursts of
+ * up to one second worth of output. A single write larger than that goes through when
+ * the bucket is full, and empties it. It counts what it refused, so that the amount can
+ * be reported once output is allowed again.
+ *
+ * <p>
+ * Not thread safe.
+ * </p>
+ */
+public class OutputRateLimiter {
+
+    private static final long SECOND = 1000000000L;
+
+    private final long bytesPerSecond;
+    private long available;
+    private long lastRefill;
+    private long dropped;
+
+    /**
+     * @param bytesPerSecond
+     *            the limit; 0 or less means no limit
+     */
+    public OutputRateLimiter(final long bytesPerSecond) {
+        this.bytesPerSecond = bytesPerSecond;
+        available = bytesPerSecond;
+        lastRefill = System.nanoTime();
+    }
+
+    /**
+     * @return <code>true</code> if the bytes may be written now; if not, they are
+     *         counted as dropped
+     */
+    public boolean tryAcquire(final long bytes) {
+        if (bytesPerSecond <= 0) {
+            return true;
+        }
+        refill(System.nanoTime());
+        if (bytes <= available) {
+            available -= bytes;
+            return true;
+        }
+        if (available == bytesPerSecond) {
+            available = 0;
+            return true;
+        }
+        dropped += bytes;
+        return false;
+    }
+
+    private void refill(final long now) {
+        final long elapsed = now - lastRefill;
+        if (elapsed <= 0) {
+            return;
+        }
+        // the bucket holds one second worth of bytes, waiting longer adds nothing
+        final long tokens = Math.min(elapsed, SECOND) * bytesPerSecond / SECOND;
+        if (tokens > 0) {
+            available = Math.min(bytesPerSecond, available + tokens);
+            lastRefill = now;
+        }
+    }
+
+    /**
+     * @return the number of bytes dropped since the last call, and resets it
+     */
+    public long takeDropped() {
+        final long result = dropped;
+        dropped = 0;
+        return result;
+    }
+
+    public long getDropped() {
+        return dropped;
+    }
+}
@@ -1,28 +1,26 @@
 package org.erlide.runtime.internal.rpc;
 
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ThreadFactory;
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
 import org.erlide.runtime.rpc.IOtpRpc;
 import org.erlide.runtime.rpc.IRpcCallback;
 import org.erlide.runtime.rpc.IRpcResultCallback;
+import org.erlide.runtime.rpc.RpcCall;
 import org.erlide.runtime.rpc.RpcException;
 import org.erlide.runtime.rpc.RpcFuture;
 import org.erlide.runtime.rpc.RpcMonitor;
 import org.erlide.runtime.rpc.RpcResult;
 import org.erlide.runtime.rpc.RpcTimeoutException;
 import org.erlide.util.ErlLogger;
+import org.erlide.util.erlang.CompiledSignature;
 import org.erlide.util.erlang.OtpErlang;
-import org.erlide.util.erlang.Signature;
 import org.erlide.util.erlang.SignatureException;
 import org.erlide.util.erlang.TypeConverter;
 
 import com.ericsson.otp.erlang.OtpErlangAtom;
-import com.ericsson.otp.erlang.OtpErlangDecodeException;
-import com.ericsson.otp.erlang.OtpErlangExit;
 import com.ericsson.otp.erlang.OtpErlangList;
 import com.ericsson.otp.erlang.OtpErlangObject;
 import com.ericsson.otp.erlang.OtpErlangPid;
@@ -30,11 +28,13 @@ import com.ericsson.otp.erlang.OtpErlangRef;
 import com.ericsson.otp.erlang.OtpErlangTuple;
 import com.ericsson.otp.erlang.OtpMbox;
 import com.ericsson.otp.erlang.OtpNode;
-import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.SettableFuture;
 
 public class OtpRpc implements IOtpRpc {
 
     private static final OtpErlangAtom USER_ATOM = new OtpErlangAtom("user");
+    private static final OtpErlangAtom GEN_CALL_ATOM = new OtpErlangAtom("$gen_call");
+    private static final OtpErlangAtom CALL_ATOM = new OtpErlangAtom("call");
 
     public static final long INFINITY = Long.MAX_VALUE;
 
@@ -46,24 +46,32 @@ public class OtpRpc implements IOtpRpc {
         setDefaultTimeout();
     }
 
-    private static final ThreadFactory threadFactory = new ThreadFactoryBuilder()
-            .setDaemon(true).setNameFormat("rpc-%d").build();
-    private static final ExecutorService threadPool = Executors
-            .newCachedThreadPool(threadFactory);
+    private static final RpcCallbackExecutor callbacks = new RpcCallbackExecutor();
 
     private final String nodeName;
     private final OtpNode localNode;
+    private final RpcReplyDispatcher replies;
     private volatile boolean connected;
 
     public OtpRpc(final OtpNode localNode, final String nodeName) {
         this.localNode = localNode;
         this.nodeName = nodeName;
+        replies = new RpcReplyDispatcher(localNode);
         connected = false;
     }
 
     @Override
     public void setConnected(final boolean connected) {
         this.connected = connected;
+        if (!connected) {
+            replies.failAll(String.format("backend %s down", nodeName));
+        }
+    }
+
+    @Override
+    public void dispose() {
+        connected = false;
+        replies.dispose();
     }
 
     @Override
@@ -74,9 +82,7 @@ public class OtpRpc implements IOtpRpc {
         try {
             final Object[] args1 = new Object[args.length + 1];
             System.arraycopy(args, 0, args1, 1, args.length);
-            final OtpMbox mbox = localNode.createMbox();
-            args1[0] = mbox.self();
-            new RpcResultReceiver(mbox, cb);
+            args1[0] = replies.addStream(cb);
             rpcCast(localNode, nodeName, false, gleader, m, f, signature, args1);
         } catch (final SignatureException e) {
             throw new RpcException(e);
@@ -117,22 +123,7 @@ public class OtpRpc implements IOtpRpc {
         try {
             final RpcFuture future = sendRpcCall(localNode, nodeName, false, gleader,
                     module, fun, signature, args);
-            final Runnable target = new Runnable() {
-                @Override
-                public void run() {
-                    OtpErlangObject result;
-                    try {
-                        result = future.checkedGet(timeout, TimeUnit.MILLISECONDS);
-                        cb.onSuccess(result);
-                    } catch (final Exception e) {
-                        ErlLogger.error("Could not execute RPC " + module + ":" + fun
-                                + " : " + e.getMessage());
-                        cb.onFailure(e);
-                    }
-                }
-            };
-            // We can't use jobs here, it's an Eclipse dependency
-            threadPool.execute(target);
+            callbacks.execute(future, timeout, cb, module + ":" + fun);
         } catch (final SignatureException e) {
             throw new RpcException(e);
         }
@@ -147,7 +138,13 @@ public class OtpRpc implements IOtpRpc {
         try {
             final RpcFuture future = sendRpcCall(localNode, nodeName, false, gleader,
                     module, fun, signature, args0);
-            result = future.checkedGet(timeout, TimeUnit.MILLISECONDS);
+            try {
+                result = future.checkedGet(timeout, TimeUnit.MILLISECONDS);
+            } catch (final RpcTimeoutException e) {
+                // nobody will wait for the reply anymore
+                future.cancel(false);
+                throw e;
+            }
             if (CHECK_RPC) {
                 ErlLogger.debug("RPC result:: " + result);
             }
@@ -168,6 +165,49 @@ public class OtpRpc implements IOtpRpc {
         return call(timeout, USER_ATOM, module, fun, signature, args0);
     }
 
+    @Override
+    public List<RpcResult> call_batch(final long timeout, final List<RpcCall> calls)
+            throws RpcException {
+        checkConnected();
+        final RpcResult[] results = new RpcResult[calls.size()];
+        final RpcFuture[] futures = new RpcFuture[calls.size()];
+        int i = 0;
+        for (final RpcCall call : calls) {
+            final OtpErlangObject gleader = call.getGroupLeader() != null
+                    ? call.getGroupLeader() : USER_ATOM;
+            try {
+                futures[i] = sendRpcCall(localNode, nodeName, false, gleader,
+                        call.getModule(), call.getFunction(), call.getSignature(),
+                        call.getArgs());
+            } catch (final SignatureException e) {
+                results[i] = RpcResult.error(e.getMessage());
+            }
+            i++;
+        }
+        final long deadline = timeout == INFINITY ? INFINITY
+                : System.currentTimeMillis() + timeout;
+        for (i = 0; i < futures.length; i++) {
+            if (futures[i] == null) {
+                continue;
+            }
+            final long left = deadline == INFINITY ? INFINITY
+                    : Math.max(0, deadline - System.currentTimeMillis());
+            try {
+                results[i] = new RpcResult(
+                        futures[i].checkedGet(left, TimeUnit.MILLISECONDS));
+            } catch (final TimeoutException | RpcException e) {
+                futures[i].cancel(false);
+                results[i] = RpcResult.error(e.getMessage());
+            }
+        }
+        return Arrays.asList(results);
+    }
+
+    @Override
+    public List<RpcResult> call_batch(final List<RpcCall> calls) throws RpcException {
+        return call_batch(DEFAULT_TIMEOUT, calls);
+    }
+
     @Override
     public void cast(final OtpErlangObject gleader, final String module, final String fun,
             final String signature, final Object... args0) throws RpcException {
@@ -189,17 +229,10 @@ public class OtpRpc implements IOtpRpc {
     public void send(final OtpErlangPid pid, final Object msg) {
         try {
             checkConnected();
-            final OtpMbox mbox = localNode.createMbox();
-            try {
-                if (mbox != null) {
-                    if (CHECK_RPC) {
-                        ErlLogger.debug("SEND " + pid + "-> " + msg);
-                    }
-                    mbox.send(pid, TypeConverter.java2erlang(msg, "x"));
-                }
-            } finally {
-                localNode.closeMbox(mbox);
+            if (CHECK_RPC) {
+                ErlLogger.debug("SEND " + pid + "-> " + msg);
             }
+            replies.getMbox().send(pid, TypeConverter.java2erlang(msg, "x"));
         } catch (final Exception e) {
         }
     }
@@ -208,7 +241,7 @@ public class OtpRpc implements IOtpRpc {
     public void send(final String fullNodeName, final String name, final Object msg) {
         try {
             checkConnected();
-            send(localNode, fullNodeName, name, msg);
+            sendNamed(fullNodeName, name, msg);
         } catch (final Exception e) {
         }
     }
@@ -246,11 +279,19 @@ public class OtpRpc implements IOtpRpc {
     public void send(final String name, final Object msg) {
         try {
             checkConnected();
-            send(localNode, nodeName, name, msg);
+            sendNamed(nodeName, name, msg);
         } catch (final Exception e) {
         }
     }
 
+    /**
+     * The executor that runs the callbacks of {@link #async_call_cb}, shared by all
+     * backends. Use it to monitor the callback load.
+     */
+    public static RpcCallbackExecutor getCallbackExecutor() {
+        return callbacks;
+    }
+
     private void checkConnected() throws RpcException {
         if (!isConnected()) {
             throw new RpcException(String.format("backend %s down", nodeName));
@@ -274,19 +315,12 @@ public class OtpRpc implements IOtpRpc {
         }
     }
 
-    private void send(final OtpNode node, final String peer, final String name,
-            final Object msg) throws SignatureException {
-        final OtpMbox mbox = node.createMbox();
-        try {
-            if (mbox != null) {
-                if (CHECK_RPC) {
-                    ErlLogger.debug("SEND " + name + "-> " + msg);
-                }
-                mbox.send(name, peer, TypeConverter.java2erlang(msg, "x"));
-            }
-        } finally {
-            node.closeMbox(mbox);
+    private void sendNamed(final String peer, final String name, final Object msg)
+            throws SignatureException {
+        if (CHECK_RPC) {
+            ErlLogger.debug("SEND " + name + "-> " + msg);
         }
+        replies.getMbox().send(name, peer, TypeConverter.java2erlang(msg, "x"));
     }
 
     private boolean isBadRpc(final OtpErlangObject result) {
@@ -300,29 +334,27 @@ public class OtpRpc implements IOtpRpc {
         return false;
     }
 
-    private synchronized RpcFuture sendRpcCall(final OtpNode node, final String peer,
+    private RpcFuture sendRpcCall(final OtpNode node, final String peer,
             final boolean logCalls, final OtpErlangObject gleader, final String module,
             final String fun, final String signature, final Object... args0)
             throws SignatureException {
         final OtpErlangObject[] args = convertArgs(signature, args0);
 
+        final SettableFuture<OtpErlangObject> reply = SettableFuture.create();
+        final RpcMonitor.Call call = RpcMonitor.recordRequest(module, fun);
+        final OtpErlangRef tag = replies.addCall(reply, call);
+        final OtpMbox mbox = replies.getMbox();
         OtpErlangObject res = null;
-        final OtpMbox mbox = node.createMbox();
-        res = buildRpcCall(mbox.self(), gleader, module, fun, args);
+        res = buildRpcCall(mbox.self(), tag, gleader, module, fun, args);
         if (logCalls) {
             final Object[] args01 = { module, fun, argString(args) };
             ErlLogger.debug("call -> %s:%s(%s)", args01);
         }
-        //
-        final OtpErlangRef ref = RpcMonitor.recordRequest(node, peer, module, fun, args,
-                OtpErlang.sizeOf(res));
-        //
-        mbox.send("rex", peer, res);
+        RpcMonitor.recordRequestSize(call, mbox.sendSized("rex", peer, res));
         if (CHECK_RPC) {
-            ErlLogger.debug("RPC " + mbox.hashCode() + "=> " + res);
+            ErlLogger.debug("RPC " + tag + "=> " + res);
         }
-        return new RpcFuture(ref, mbox, module + ":" + fun + "/" + args0.length, logCalls,
-                this);
+        return new RpcFuture(reply, module + ":" + fun + "/" + args0.length, logCalls);
     }
 
     private static final String SEP = ", ";
@@ -338,65 +370,18 @@ public class OtpRpc implements IOtpRpc {
         return r;
     }
 
-    /**
-     * Retrieve the result of a RPC.
-     *
-     * @param mbox
-     * @param timeout
-     * @param env
-     * @return
-     * @throws RpcException
+    /*
+     * rex is called like a gen_server, so that the reply comes back tagged with our
+     * reference: {'$gen_call', {Pid, Ref}, {call, M, F, A, GroupLeader}} -> {Ref, Result}
      */
-    @Override
-    public OtpErlangObject getRpcResult(final OtpMbox mbox, final long timeout,
-            final String env) throws RpcException {
-        assert mbox != null;
-
-        OtpErlangObject res = null;
-        try {
-            try {
-                if (timeout == INFINITY) {
-                    res = mbox.receive();
-                } else {
-                    res = mbox.receive(timeout);
-                }
-                if (CHECK_RPC) {
-                    ErlLogger.debug("RPC " + mbox.hashCode() + "<= " + res);
-                }
-            } finally {
-                if (res != null) {
-                    mbox.close();
-                }
-            }
-            if (res == null) {
-                final String msg = env != null ? env : "??";
-                throw new RpcTimeoutException(msg);
-            }
-            if (!(res instanceof OtpErlangTuple)) {
-                throw new RpcException(res.toString());
-            }
-            final OtpErlangTuple t = (OtpErlangTuple) res;
-            if (t.arity() != 2) {
-                throw new RpcException(res.toString());
-            }
-            res = t.elementAt(1);
-
-        } catch (final OtpErlangExit e) {
-            throw new RpcException(e);
-        } catch (final OtpErlangDecodeException e) {
-            throw new RpcException(e);
-        }
-        return res;
-    }
-
-    private OtpErlangObject buildRpcCall(final OtpErlangPid pid,
+    private OtpErlangObject buildRpcCall(final OtpErlangPid pid, final OtpErlangRef tag,
             final OtpErlangObject gleader, final String module, final String fun,
             final OtpErlangObject[] args) {
-        final OtpErlangObject m = new OtpErlangAtom(module);
-        final OtpErlangObject f = new OtpErlangAtom(fun);
+        final OtpErlangObject m = OtpErlangAtom.valueOf(module);
+        final OtpErlangObject f = OtpErlangAtom.valueOf(fun);
         final OtpErlangObject a = new OtpErlangList(args);
-        return OtpErlang.mkTuple(pid,
-                OtpErlang.mkTuple(new OtpErlangAtom("call"), m, f, a, gleader));
+        return OtpErlang.mkTuple(GEN_CALL_ATOM, OtpErlang.mkTuple(pid, tag),
+                OtpErlang.mkTuple(CALL_ATOM, m, f, a, gleader));
     }
 
     private void rpcCast(final OtpNode node, final String peer, final boolean logCalls,
@@ -410,7 +395,7 @@ public class OtpRpc implements IOtpRpc {
             final Object[] args01 = { module, fun, argString(args) };
             ErlLogger.debug("cast -> %s:%s(%s)", args01);
         }
-        send(node, peer, "rex", msg);
+        sendNamed(peer, "rex", msg);
         if (CHECK_RPC) {
             ErlLogger.debug("RPC _cast_" + "=> " + msg);
         }
@@ -420,29 +405,21 @@ public class OtpRpc implements IOtpRpc {
             throws SignatureException {
         final Object[] args0 = args == null ? new OtpErlangObject[] {} : args;
 
-        Signature[] type;
-        type = Signature.parse(signature);
+        final CompiledSignature type = CompiledSignature.of(signature);
         if (type == null) {
-            type = new Signature[args0.length];
-            for (int i = 0; i < args0.length; i++) {
-                type[i] = new Signature('x');
+            final OtpErlangObject[] args1 = new OtpErlangObject[args0.length];
+            for (int i = 0; i < args1.length; i++) {
+                args1[i] = TypeConverter.java2erlang(args0[i], "x");
             }
+            return args1;
         }
-        if (type.length != args0.length) {
-            throw new SignatureException("Signature doesn't match parameter number: "
-                    + type.length + "/" + args0.length);
-        }
-        final OtpErlangObject[] args1 = new OtpErlangObject[args0.length];
-        for (int i = 0; i < args1.length; i++) {
-            args1[i] = TypeConverter.java2erlang(args0[i], type[i]);
-        }
-        return args1;
+        return type.encode(args0);
     }
 
     private OtpErlangObject buildRpcCastMsg(final OtpErlangObject gleader,
             final String module, final String fun, final OtpErlangObject[] args) {
-        final OtpErlangObject m = new OtpErlangAtom(module);
-        final OtpErlangObject f = new OtpErlangAtom(fun);
+        final OtpErlangObject m = OtpErlangAtom.valueOf(module);
+        final OtpErlangObject f = OtpErlangAtom.valueOf(fun);
         final OtpErlangObject a = new OtpErlangList(args);
         final OtpErlangAtom castTag = new OtpErlangAtom("$gen_cast");
         return OtpErlang.mkTuple(castTag,
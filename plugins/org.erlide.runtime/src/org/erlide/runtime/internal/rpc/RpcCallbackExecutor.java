@@ -0,0 +1,182 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Vlad Dumitrescu and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available
+ * at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Vlad Dumitrescu
+ *******************************************************************************/
+package org.erlide.runtime.internal.rpc;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.erlide.runtime.rpc.IRpcCallback;
+import org.erlide.runtime.rpc.RpcException;
+import org.erlide.runtime.rpc.RpcFuture;
+import org.erlide.runtime.rpc.RpcTimeoutException;
+import org.erlide.util.ErlLogger;
+
+import com.ericsson.otp.erlang.OtpErlangObject;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Runs the callbacks of asynchronous RPCs on a bounded number of threads.
+ *
+ * <p>
+ * No thread is used while waiting for a reply: the callback is queued when the reply
+ * arrives, and timeouts are tracked by a single timer thread. Callbacks are never run by
+ * the thread that delivers the reply or by the timer: a callback that makes a
+ * synchronous RPC would wait for a reply that only the blocked delivering thread can
+ * deliver.
+ * </p>
+ *
+ * <p>
+ * The backlog is bounded at the callers instead: {@link #execute} waits while as many
+ * callbacks as there are threads and queue slots are pending, until one of them has
+ * run. Callbacks that start calls of their own don't wait, since the callbacks they
+ * would wait for may need their thread; those are counted by
+ * {@link #getOverLimitCount()}.
+ * </p>
+ *
+ * <p>
+ * The number of threads and the queue size can be set with the system properties
+ * <code>erlide.rpc.callback.threads</code> and <code>erlide.rpc.callback.queue</code>.
+ * </p>
+ */
+public class RpcCallbackExecutor {
+
+    private final ThreadPoolExecutor executor;
+    private final ScheduledExecutorService timer;
+    private final Semaphore pending;
+    private final AtomicLong overLimit = new AtomicLong();
+    private final ThreadLocal<Boolean> inCallback = new ThreadLocal<>();
+
+    public RpcCallbackExecutor() {
+        this(Integer.getInteger("erlide.rpc.callback.threads", 4),
+                Integer.getInteger("erlide.rpc.callback.queue", 1024));
+    }
+
+    public RpcCallbackExecutor(final int threads, final int queueSize) {
+        pending = new Semaphore(threads + queueSize);
+        executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("rpc-%d")
+                        .build());
+        executor.allowCoreThreadTimeOut(true);
+        timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setDaemon(true).setNameFormat("rpc-timeout-%d").build());
+    }
+
+    /**
+     * Call cb with the result of future once it arrives, or with a
+     * {@link RpcTimeoutException} if it doesn't arrive within timeout milliseconds.
+     * Waits first if too many callbacks are pending.
+     *
+     * @param what
+     *            describes the call in log messages
+     */
+    public void execute(final RpcFuture future, final long timeout, final IRpcCallback cb,
+            final String what) {
+        final boolean permit;
+        if (inCallback.get() == null) {
+            pending.acquireUninterruptibly();
+            permit = true;
+        } else {
+            permit = pending.tryAcquire();
+            if (!permit) {
+                overLimit.incrementAndGet();
+            }
+        }
+        final AtomicBoolean done = new AtomicBoolean();
+        final ScheduledFuture<?> timeoutTask;
+        if (timeout == OtpRpc.INFINITY) {
+            timeoutTask = null;
+        } else {
+            timeoutTask = timer.schedule(() -> {
+                if (done.compareAndSet(false, true)) {
+                    future.cancel(false);
+                    executor.execute(() -> run(permit, () -> fail(cb, what,
+                            new RpcTimeoutException(what))));
+                }
+            }, timeout, TimeUnit.MILLISECONDS);
+        }
+        future.addListener(() -> {
+            if (!done.compareAndSet(false, true)) {
+                return;
+            }
+            if (timeoutTask != null) {
+                timeoutTask.cancel(false);
+            }
+            run(permit, () -> {
+                final OtpErlangObject result;
+                try {
+                    result = future.checkedGet();
+                } catch (final RpcException e) {
+                    fail(cb, what, e);
+                    return;
+                }
+                try {
+                    cb.onSuccess(result);
+                } catch (final Exception e) {
+                    fail(cb, what, e);
+                }
+            });
+        }, executor);
+    }
+
+    private void run(final boolean permit, final Runnable callback) {
+        inCallback.set(Boolean.TRUE);
+        try {
+            callback.run();
+        } finally {
+            inCallback.remove();
+            if (permit) {
+                pending.release();
+            }
+        }
+    }
+
+    private static void fail(final IRpcCallback cb, final String what, final Exception e) {
+        ErlLogger.error("Could not execute RPC " + what + " : " + e.getMessage());
+        cb.onFailure(e);
+    }
+
+    /**
+     * @return the number of callbacks waiting for a thread.
+     */
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * @return the number of callbacks being run right now.
+     */
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    /**
+     * @return the number of calls started by callbacks while the limit was reached,
+     *         which were let through instead of waiting.
+     */
+    public long getOverLimitCount() {
+        return overLimit.get();
+    }
+
+    /**
+     * @return the number of callbacks that were run so far.
+     */
+    public long getCompletedCount() {
+        return executor.getCompletedTaskCount();
+    }
+}
@@ -0,0 +1,286 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Vlad Dumitrescu and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available
+ * at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Vlad Dumitrescu
+ *******************************************************************************/
+package org.erlide.runtime.internal.rpc;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.erlide.runtime.rpc.IRpcResultCallback;
+import org.erlide.runtime.rpc.RpcException;
+import org.erlide.runtime.rpc.RpcMonitor;
+import org.erlide.util.ErlLogger;
+
+import com.ericsson.otp.erlang.OtpErlangAtom;
+import com.ericsson.otp.erlang.OtpErlangExit;
+import com.ericsson.otp.erlang.OtpErlangObject;
+import com.ericsson.otp.erlang.OtpErlangPid;
+import com.ericsson.otp.erlang.OtpErlangRef;
+import com.ericsson.otp.erlang.OtpErlangString;
+import com.ericsson.otp.erlang.OtpErlangTuple;
+import com.ericsson.otp.erlang.OtpMbox;
+import com.ericsson.otp.erlang.OtpMsg;
+import com.ericsson.otp.erlang.OtpNode;
+import com.google.common.util.concurrent.SettableFuture;
+
+/**
+ * Owns the single mailbox through which an {@link OtpRpc} receives its replies, and the
+ * thread that dispatches them.
+ *
+ * <ul>
+ * <li>calls are sent to rex as <code>{'$gen_call', {Pid, Ref}, Request}</code>; the
+ * reply <code>{Ref, Result}</code> completes the future registered for Ref. Callers that
+ * stop waiting for a reply must cancel its future, or the call is only forgotten when
+ * the remote node goes down.</li>
+ * <li>calls with progress reports get the pid of an alias of the mailbox as their first
+ * argument; the <code>start</code>, <code>progress</code> and <code>stop</code> messages
+ * sent to it are passed to the callback registered for that pid. The alias is closed
+ * after <code>stop</code>, or when nothing was received on it for a while (see
+ * {@link #STREAM_TIMEOUT}), in which case the callback gets
+ * <code>{error, Reason}</code> as if it were stopped.</li>
+ * </ul>
+ */
+public class RpcReplyDispatcher implements Runnable {
+
+    private static final OtpErlangAtom STOP = new OtpErlangAtom("$stop");
+
+    /**
+     * Milliseconds a call with progress reports can stay silent before it is given up,
+     * 10 minutes unless set with the System property erlide.rpc.streamTimeout.
+     */
+    public static final long STREAM_TIMEOUT = Long.getLong("erlide.rpc.streamTimeout",
+            TimeUnit.MINUTES.toMillis(10));
+
+    private final OtpNode node;
+    private final OtpMbox mbox;
+    private final Map<OtpErlangRef, Pending> calls = new ConcurrentHashMap<>();
+    private final Map<OtpErlangPid, Stream> streams = new ConcurrentHashMap<>();
+    private final long streamTimeout;
+    private volatile boolean running = true;
+
+    private static class Pending {
+        final SettableFuture<OtpErlangObject> future;
+        final RpcMonitor.Call monitor;
+
+        Pending(final SettableFuture<OtpErlangObject> future,
+                final RpcMonitor.Call monitor) {
+            this.future = future;
+            this.monitor = monitor;
+        }
+    }
+
+    private static class Stream {
+        final OtpMbox alias;
+        final IRpcResultCallback callback;
+        // only used by the dispatching thread
+        long lastSeen = System.currentTimeMillis();
+
+        Stream(final OtpMbox alias, final IRpcResultCallback callback) {
+            this.alias = alias;
+            this.callback = callback;
+        }
+    }
+
+    public RpcReplyDispatcher(final OtpNode node) {
+        this(node, STREAM_TIMEOUT);
+    }
+
+    /**
+     * @param streamTimeout
+     *            milliseconds a call with progress reports can stay silent before it is
+     *            given up
+     */
+    public RpcReplyDispatcher(final OtpNode node, final long streamTimeout) {
+        this.node = node;
+        this.streamTimeout = streamTimeout;
+        mbox = node.createMbox();
+        final Thread thread = new Thread(this, "rpc-replies");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * The mailbox that replies are sent to. It can also be used to send messages from.
+     */
+    public OtpMbox getMbox() {
+        return mbox;
+    }
+
+    /**
+     * Register a new call; its reply will complete the given future and be recorded in
+     * the {@link RpcMonitor}. Cancelling the future forgets the call, a reply that
+     * arrives later is dropped.
+     *
+     * @return the reference the reply will be tagged with.
+     */
+    public OtpErlangRef addCall(final SettableFuture<OtpErlangObject> future,
+            final RpcMonitor.Call monitor) {
+        final OtpErlangRef ref = node.createRef();
+        calls.put(ref, new Pending(future, monitor));
+        future.addListener(() -> {
+            if (future.isCancelled() && calls.remove(ref) != null) {
+                RpcMonitor.recordFailure(monitor);
+            }
+        }, Runnable::run);
+        return ref;
+    }
+
+    /**
+     * @return the number of calls waiting for a reply.
+     */
+    public int getPendingCount() {
+        return calls.size();
+    }
+
+    /**
+     * Register a callback for progress reports.
+     *
+     * @return the pid the reports should be sent to.
+     */
+    public OtpErlangPid addStream(final IRpcResultCallback callback) {
+        final OtpMbox alias = node.createAlias(mbox);
+        streams.put(alias.self(), new Stream(alias, callback));
+        return alias.self();
+    }
+
+    /**
+     * @return the number of calls with progress reports that didn't stop yet.
+     */
+    public int getStreamCount() {
+        return streams.size();
+    }
+
+    /**
+     * Fail all calls that are waiting for a reply or for progress reports, for example
+     * because the remote node went down.
+     */
+    public void failAll(final String reason) {
+        final Iterator<Pending> it = calls.values().iterator();
+        while (it.hasNext()) {
+            final Pending call = it.next();
+            it.remove();
+            RpcMonitor.recordFailure(call.monitor);
+            call.future.setException(new RpcException(reason));
+        }
+        for (final Stream stream : streams.values()) {
+            stopStream(stream, reason);
+        }
+    }
+
+    public void dispose() {
+        running = false;
+        mbox.send(mbox.self(), STOP);
+    }
+
+    @Override
+    public void run() {
+        final long sweepInterval = Math.max(10, streamTimeout / 4);
+        long nextSweep = System.currentTimeMillis() + sweepInterval;
+        try {
+            while (running) {
+                try {
+                    final OtpMsg msg = mbox.receiveMsg(sweepInterval);
+                    if (msg != null) {
+                        dispatch(msg);
+                    }
+                } catch (final InterruptedException e) {
+                    // that's how the mailbox says no message came in time
+                } catch (final OtpErlangExit e) {
+                    // we don't link to anything, but don't let it stop us
+                    ErlLogger.warn(e);
+                } catch (final Exception e) {
+                    ErlLogger.error(e);
+                }
+                final long now = System.currentTimeMillis();
+                if (now >= nextSweep) {
+                    expireStreams(now);
+                    nextSweep = now + sweepInterval;
+                }
+            }
+        } finally {
+            failAll("rpc dispatcher stopped");
+            mbox.close();
+        }
+    }
+
+    private void expireStreams(final long now) {
+        for (final Stream stream : streams.values()) {
+            if (now - stream.lastSeen > streamTimeout) {
+                ErlLogger.warn("No progress from rpc in %d ms, giving up", streamTimeout);
+                stopStream(stream, "timeout");
+            }
+        }
+    }
+
+    private void stopStream(final Stream stream, final String reason) {
+        if (streams.remove(stream.alias.self()) == null) {
+            return;
+        }
+        stream.alias.close();
+        try {
+            stream.callback.stop(new OtpErlangTuple(new OtpErlangObject[] {
+                    new OtpErlangAtom("error"), new OtpErlangString(reason) }));
+        } catch (final Exception e) {
+            ErlLogger.error(e);
+        }
+    }
+
+    private void dispatch(final OtpMsg msg) throws Exception {
+        final OtpErlangObject term = msg.getMsg();
+        final OtpErlangPid to = msg.getRecipientPid();
+        if (to != null && !to.equals(mbox.self())) {
+            final Stream stream = streams.get(to);
+            if (stream != null) {
+                dispatchProgress(stream, term);
+            }
+            return;
+        }
+        if (!(term instanceof OtpErlangTuple)) {
+            if (!STOP.equals(term)) {
+                ErlLogger.warn("Unexpected rpc reply: %s", term);
+            }
+            return;
+        }
+        final OtpErlangTuple t = (OtpErlangTuple) term;
+        if (t.arity() != 2 || !(t.elementAt(0) instanceof OtpErlangRef)) {
+            ErlLogger.warn("Unexpected rpc reply: %s", term);
+            return;
+        }
+        final Pending call = calls.remove(t.elementAt(0));
+        if (call != null) {
+            RpcMonitor.recordResponse(call.monitor, t.elementAt(1), msg.getPayloadSize());
+            call.future.set(t.elementAt(1));
+        }
+    }
+
+    private void dispatchProgress(final Stream stream, final OtpErlangObject msg) {
+        stream.lastSeen = System.currentTimeMillis();
+        if (!(msg instanceof OtpErlangTuple) || ((OtpErlangTuple) msg).arity() != 2
+                || !(((OtpErlangTuple) msg).elementAt(0) instanceof OtpErlangAtom)) {
+            ErlLogger.warn("Unexpected rpc progress report: %s", msg);
+            return;
+        }
+        final OtpErlangTuple tuple = (OtpErlangTuple) msg;
+        final String tag = ((OtpErlangAtom) tuple.elementAt(0)).atomValue();
+        if ("start".equals(tag)) {
+            stream.callback.start(tuple.elementAt(1));
+        } else if ("stop".equals(tag)) {
+            // unless it was given up in the meantime
+            if (streams.remove(stream.alias.self()) != null) {
+                stream.alias.close();
+                stream.callback.stop(tuple.elementAt(1));
+            }
+        } else if ("progress".equals(tag)) {
+            stream.callback.progress(tuple.elementAt(1));
+        }
+    }
+}
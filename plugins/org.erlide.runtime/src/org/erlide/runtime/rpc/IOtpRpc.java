@@ -1,8 +1,9 @@
 package org.erlide.runtime.rpc;
 
+import java.util.List;
+
 import com.ericsson.otp.erlang.OtpErlangObject;
 import com.ericsson.otp.erlang.OtpErlangPid;
-import com.ericsson.otp.erlang.OtpMbox;
 
 public interface IOtpRpc {
 
@@ -67,6 +68,22 @@ public interface IOtpRpc {
             final String m, final String f, final String signature, final Object... a)
             throws RpcException;
 
+    /**
+     * Make several regular RPCs at once. All requests are sent before waiting for the
+     * first reply, so the batch costs a single round-trip instead of one per call.
+     * Group leaders are taken from the calls, their timeouts are ignored.
+     *
+     * @return one result per call, in the same order. A call that fails or doesn't
+     *         return in time gets an error result; the rest of the batch is unaffected.
+     */
+    List<RpcResult> call_batch(final long timeout, final List<RpcCall> calls)
+            throws RpcException;
+
+    /**
+     * Make several regular RPCs at once, with the default timeout for the whole batch.
+     */
+    List<RpcResult> call_batch(final List<RpcCall> calls) throws RpcException;
+
     /**
      * Calls a function that supports sending progress reports back. The first
      * argument is implicit and is the pid where the reports are to be sent.
@@ -93,11 +110,13 @@ public interface IOtpRpc {
     // n
     void send(final String fullNodeName, final String name, final Object msg);
 
-    // y (RpcFuture)
-    OtpErlangObject getRpcResult(OtpMbox mbox, long timeout, String env)
-            throws RpcException;
-
     // y (ErlRuntime)
     void setConnected(boolean b);
 
+    /**
+     * Release the resources used for receiving replies. No calls can be made after this.
+     */
+    // y (OtpNodeProxy)
+    void dispose();
+
 }
@@ -0,0 +1,61 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2013 Vlad Dumitrescu and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available
+ * at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Vlad Dumitrescu
+ *******************************************************************************/
+package org.erlide.runtime.rpc;
+
+import java.util.AbstractMap;
+import java.util.Map.Entry;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Collects {@link RpcFuture}s and hands them back in the order their replies arrive, the
+ * way a {@link java.util.concurrent.CompletionService} does for tasks. Each future is
+ * paired with a tag that tells the caller what the call was about.
+ */
+public class RpcCompletionQueue<T> {
+
+    private final BlockingQueue<Entry<RpcFuture, T>> completed = new LinkedBlockingQueue<>();
+    private final AtomicInteger pending = new AtomicInteger();
+
+    public void add(final RpcFuture future, final T tag) {
+        pending.incrementAndGet();
+        final Entry<RpcFuture, T> entry = new AbstractMap.SimpleImmutableEntry<>(future,
+                tag);
+        future.addListener(() -> completed.add(entry), Runnable::run);
+    }
+
+    /**
+     * Wait for the next completed future.
+     *
+     * @return the future and its tag, or null if nothing completed within the timeout.
+     */
+    public Entry<RpcFuture, T> poll(final long timeout, final TimeUnit unit)
+            throws InterruptedException {
+        final Entry<RpcFuture, T> entry = completed.poll(timeout, unit);
+        if (entry != null) {
+            pending.decrementAndGet();
+        }
+        return entry;
+    }
+
+    /**
+     * @return the number of futures that were added but not yet polled.
+     */
+    public int size() {
+        return pending.get();
+    }
+
+    public boolean isEmpty() {
+        return pending.get() == 0;
+    }
+}
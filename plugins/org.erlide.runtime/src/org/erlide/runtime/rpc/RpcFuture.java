@@ -10,6 +10,9 @@
  *******************************************************************************/
 package org.erlide.runtime.rpc;
 
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
@@ -18,28 +21,25 @@ import org.erlide.runtime.internal.rpc.OtpRpc;
 import org.erlide.util.ErlLogger;
 
 import com.ericsson.otp.erlang.OtpErlangObject;
-import com.ericsson.otp.erlang.OtpErlangRef;
-import com.ericsson.otp.erlang.OtpMbox;
 import com.google.common.util.concurrent.CheckedFuture;
+import com.google.common.util.concurrent.ListenableFuture;
 
 public class RpcFuture implements CheckedFuture<OtpErlangObject, RpcException> {
 
-    private final OtpMbox mbox;
+    private final ListenableFuture<OtpErlangObject> reply;
     private OtpErlangObject result = null;
     private final String env;
     private final boolean logCalls;
 
-    private final IOtpRpc rpc;
-    private final OtpErlangRef ref;
-
-    public RpcFuture(final OtpErlangRef ref, final OtpMbox mbox, final String env,
-            final boolean logCalls, final IOtpRpc rpc) {
-        this.ref = ref;
-
-        this.mbox = mbox;
+    /**
+     * @param reply
+     *            completed by the rpc dispatcher when the reply arrives
+     */
+    public RpcFuture(final ListenableFuture<OtpErlangObject> reply, final String env,
+            final boolean logCalls) {
+        this.reply = reply;
         this.env = env;
         this.logCalls = logCalls;
-        this.rpc = rpc;
     }
 
     @Override
@@ -64,21 +64,45 @@ public class RpcFuture implements CheckedFuture<OtpErlangObject, RpcException> {
 
     @Override
     public boolean isDone() {
-        return result != null;
+        return reply.isDone();
     }
 
+    /**
+     * Run listener on executor as soon as the reply arrives (or the call fails).
+     */
     @Override
     public void addListener(final Runnable listener, final Executor executor) {
+        reply.addListener(listener, executor);
     }
 
+    /**
+     * A {@link CompletableFuture} that completes with the result of this call, or
+     * exceptionally with the {@link RpcException} it failed with.
+     */
+    public CompletableFuture<OtpErlangObject> toCompletableFuture() {
+        final CompletableFuture<OtpErlangObject> result = new CompletableFuture<>();
+        addListener(() -> {
+            try {
+                result.complete(checkedGet());
+            } catch (final RpcException e) {
+                result.completeExceptionally(e);
+            }
+        }, Runnable::run);
+        return result;
+    }
+
+    /**
+     * Stop waiting for the reply. The call itself can't be stopped on the remote node,
+     * but its reply will be dropped when it arrives.
+     */
     @Override
     public boolean cancel(final boolean mayInterruptIfRunning) {
-        return false;
+        return reply.cancel(mayInterruptIfRunning);
     }
 
     @Override
     public boolean isCancelled() {
-        return false;
+        return reply.isCancelled();
     }
 
     @Override
@@ -93,16 +117,39 @@ public class RpcFuture implements CheckedFuture<OtpErlangObject, RpcException> {
     @Override
     public OtpErlangObject checkedGet(final long timeout, final TimeUnit unit)
             throws TimeoutException, RpcException {
-        result = rpc.getRpcResult(mbox, TimeUnit.MILLISECONDS.convert(timeout, unit),
-                env);
-        if (isDone()) {
-            RpcMonitor.recordResponse(ref, result);
-            if (logCalls) {
-                final Object[] args0 = { result };
-                ErlLogger.debug("call <- %s", args0);
+        final OtpErlangObject res;
+        try {
+            if (timeout == OtpRpc.INFINITY) {
+                res = reply.get();
+            } else {
+                res = reply.get(timeout, unit);
             }
+        } catch (final TimeoutException e) {
+            throw new RpcTimeoutException(env != null ? env : "??");
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RpcException(e);
+        } catch (final CancellationException e) {
+            throw new RpcException("cancelled: " + (env != null ? env : "??"));
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof RpcException) {
+                throw (RpcException) e.getCause();
+            }
+            throw new RpcException(e);
+        }
+        received(res);
+        return res;
+    }
+
+    private synchronized void received(final OtpErlangObject res) {
+        if (result != null) {
+            return;
+        }
+        result = res;
+        if (logCalls) {
+            final Object[] args0 = { result };
+            ErlLogger.debug("call <- %s", args0);
         }
-        return result;
     }
 
 }
@@ -4,207 +4,341 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.PrintStream;
-import java.lang.ref.SoftReference;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
-import java.util.Map;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.erlide.util.ErlLogger;
-import org.erlide.util.erlang.OtpErlang;
 
 import com.ericsson.otp.erlang.OtpErlangAtom;
 import com.ericsson.otp.erlang.OtpErlangObject;
-import com.ericsson.otp.erlang.OtpErlangRef;
-import com.ericsson.otp.erlang.OtpNode;
-import com.google.common.collect.Lists;
-import com.google.common.collect.Maps;
+import com.ericsson.otp.erlang.OtpErlangTuple;
 
+/**
+ * Keeps statistics about the RPCs made to the backends, per module:function: call and
+ * error counts, bytes sent and received, and a latency histogram. Calls that time out
+ * or fail without an answer count as errors.
+ *
+ * <p>
+ * Recording doesn't lock, and apart from the first call of a function it allocates only
+ * the small {@link Call} that holds the start time, so the monitor is always on; it can
+ * be turned off with -Derlide.rpcmonitor=false. Sizes are those of the encoded messages
+ * on the wire.
+ * </p>
+ */
 public class RpcMonitor {
-    private static final boolean DISABLED = System
-            .getProperty("erlide.rpcmonitor") == null;
+    private static final boolean DISABLED = "false"
+            .equals(System.getProperty("erlide.rpcmonitor"));
     private static final int COUNT = Integer
             .parseInt(System.getProperty("erlide.rpcmonitor.count", "50"));
-    private static final boolean FULL = System
-            .getProperty("erlide.rpcmonitor.full") != null;
-
-    private static class RpcData {
-        public final long startTime;
-        public final String node;
-        public final String module;
-        public final String fun;
-        public final SoftReference<Collection<OtpErlangObject>> args;
-        public final long size;
-
-        public RpcData(final long startTime, final String node, final String module,
-                final String fun, final OtpErlangObject[] args, final long size) {
-            this.startTime = startTime;
-            this.node = node;
-            this.module = module;
-            this.fun = fun;
-            this.args = new SoftReference<>(
-                    Collections.unmodifiableCollection(Lists.newArrayList(args)));
-            this.size = size;
-        }
-    }
-
-    private static class RpcInfo {
-        public final String node;
-        public final String module;
-        public final String fun;
-        public final SoftReference<Collection<OtpErlangObject>> args;
-        public final long callSize;
-        public final SoftReference<OtpErlangObject> result;
-        public final long answerSize;
-        public final long callTime;
-        public final long answerTime;
-        private final int argsSize;
-
-        public RpcInfo(final RpcData data, final OtpErlangObject result,
-                final long answerTime) {
-            node = data.node;
-            module = data.module;
-            fun = data.fun;
-            args = data.args;
-            final Collection<OtpErlangObject> collection = args.get();
-            argsSize = collection == null ? 0 : collection.size();
-            this.result = new SoftReference<>(result);
-            callTime = data.startTime;
-            this.answerTime = answerTime;
-            callSize = data.size;
-            answerSize = OtpErlang.sizeOf(result);
-        }
-
-        public void dump(final PrintStream out, final boolean full) {
-            Collection<OtpErlangObject> myArgs = args.get();
-            myArgs = myArgs == null ? new ArrayList<>() : myArgs;
-            final String argsString = full ? args.toString().replaceAll("\n|\r", " ")
-                    : "...";
-            OtpErlangObject val = result.get();
-            val = val == null ? new OtpErlangAtom("null") : val;
-            String resultString = full ? val.toString().replaceAll("\n|\r", " ") : "...";
-            if (resultString.length() > 100) {
-                resultString = new String(resultString.substring(0, 99) + "...");
+
+    // latency buckets, bucket i holds times in [2^i, 2^(i+1)) microseconds
+    private static final int BUCKETS = 40;
+
+    // by module, then by function, so that finding them doesn't build a key
+    private static final ConcurrentHashMap<String, ConcurrentHashMap<String, Stats>> stats =
+            new ConcurrentHashMap<>();
+    private static final LongAdder callCount = new LongAdder();
+
+    private static class Stats {
+        final String name;
+        final LongAdder calls = new LongAdder();
+        final LongAdder errors = new LongAdder();
+        final LongAdder bytesOut = new LongAdder();
+        final LongAdder bytesIn = new LongAdder();
+        final LongAdder totalTime = new LongAdder();
+        final LongAccumulator maxTime = new LongAccumulator(Math::max, 0);
+        final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+
+        Stats(final String name) {
+            this.name = name;
+        }
+
+        void record(final long micros) {
+            totalTime.add(micros);
+            maxTime.accumulate(micros);
+            final int bucket = Math.min(BUCKETS - 1,
+                    63 - Long.numberOfLeadingZeros(Math.max(1, micros)));
+            histogram.incrementAndGet(bucket);
+        }
+
+        Snapshot snapshot() {
+            final long[] counts = new long[BUCKETS];
+            long n = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] = histogram.get(i);
+                n += counts[i];
             }
-            out.format(
-                    "%30s|%25s:%-20s/%d in=%9d, out=%9d, t=%6d, args=%s -> result=%s%n",
-                    node.substring(0, Math.min(29, node.length() - 1)), module, fun,
-                    argsSize, callSize, answerSize, answerTime - callTime, argsString,
-                    resultString);
+            final long max = maxTime.get();
+            return new Snapshot(name, calls.sum(), errors.sum(), bytesOut.sum(),
+                    bytesIn.sum(), n, totalTime.sum(), percentile(counts, n, 0.5, max),
+                    percentile(counts, n, 0.99, max), max);
+        }
+
+        private static long percentile(final long[] counts, final long n, final double p,
+                final long max) {
+            if (n == 0) {
+                return 0;
+            }
+            final long rank = (long) Math.ceil(p * n);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    // upper bound of the bucket
+                    return Math.min(max, (1L << i + 1) - 1);
+                }
+            }
+            return max;
         }
     }
 
-    private static int callCount = 0;
-    private static final Map<OtpErlangRef, RpcData> ongoing = Maps.newHashMap();
-    private static Comparator<RpcInfo> timeComparator = new Comparator<RpcInfo>() {
-        @Override
-        public int compare(final RpcInfo o1, final RpcInfo o2) {
-            return (int) (o2.answerTime - o2.callTime - (o1.answerTime - o1.callTime));
+    /**
+     * A call in progress, returned by {@link #recordRequest} and handed back when the
+     * answer arrives.
+     */
+    public static final class Call {
+        private final Stats stats;
+        private final long startTime;
+
+        private Call(final Stats stats) {
+            this.stats = stats;
+            startTime = System.nanoTime();
         }
-    };
-    private static Comparator<RpcInfo> sizeComparator = new Comparator<RpcInfo>() {
-        @Override
-        public int compare(final RpcInfo o1, final RpcInfo o2) {
-            return (int) (o2.callSize + o2.answerSize - (o1.callSize + o1.answerSize));
+    }
+
+    /**
+     * The statistics of one function at some point in time. Times are in microseconds,
+     * percentiles are accurate to a factor of two.
+     */
+    public static final class Snapshot {
+        public final String function;
+        public final long calls;
+        public final long errors;
+        public final long bytesOut;
+        public final long bytesIn;
+        public final long answers;
+        public final long totalTime;
+        public final long p50;
+        public final long p99;
+        public final long max;
+
+        Snapshot(final String function, final long calls, final long errors,
+                final long bytesOut, final long bytesIn, final long answers,
+                final long totalTime, final long p50, final long p99, final long max) {
+            this.function = function;
+            this.calls = calls;
+            this.errors = errors;
+            this.bytesOut = bytesOut;
+            this.bytesIn = bytesIn;
+            this.answers = answers;
+            this.totalTime = totalTime;
+            this.p50 = p50;
+            this.p99 = p99;
+            this.max = max;
         }
-    };
-    private static final List<RpcInfo> slowest = Lists.newLinkedList();
-    private static final List<RpcInfo> largest = Lists.newLinkedList();
+    }
 
-    public static synchronized void recordResponse(final OtpErlangRef ref,
-            final OtpErlangObject result) {
+    /**
+     * Record that a call is being made.
+     *
+     * @return the call, to pass to {@link #recordResponse} or {@link #recordFailure}; null
+     *         if the monitor is disabled.
+     */
+    public static Call recordRequest(final String module, final String fun) {
+        callCount.increment();
         if (DISABLED) {
+            return null;
+        }
+        ConcurrentHashMap<String, Stats> functions = stats.get(module);
+        if (functions == null) {
+            final ConcurrentHashMap<String, Stats> newFunctions = new ConcurrentHashMap<>();
+            functions = stats.putIfAbsent(module, newFunctions);
+            if (functions == null) {
+                functions = newFunctions;
+            }
+        }
+        Stats s = functions.get(fun);
+        if (s == null) {
+            final Stats newStats = new Stats(module + ":" + fun);
+            s = functions.putIfAbsent(fun, newStats);
+            if (s == null) {
+                s = newStats;
+            }
+        }
+        s.calls.increment();
+        return new Call(s);
+    }
+
+    /**
+     * Record the size of the encoded request, once it is known.
+     */
+    public static void recordRequestSize(final Call call, final long callSize) {
+        if (call == null || callSize <= 0) {
             return;
         }
-        final RpcData data = ongoing.remove(ref);
-        final long now = System.currentTimeMillis();
-        final RpcInfo info = new RpcInfo(data, result, now);
-        add(largest, sizeComparator, info);
-        add(slowest, timeComparator, info);
+        call.stats.bytesOut.add(callSize);
     }
 
-    private static void add(final List<RpcInfo> list,
-            final Comparator<RpcInfo> comparator, final RpcInfo info) {
-        final int index = Collections.binarySearch(list, info, comparator);
-        if (index < 0) {
-            // Add the non-existent item to the list
-            list.add(-index - 1, info);
-        } else {
-            list.add(index, info);
+    /**
+     * Record the answer to a call. A badrpc answer counts as an error.
+     *
+     * @param answerSize
+     *            the size of the encoded answer, negative if unknown
+     */
+    public static void recordResponse(final Call call, final OtpErlangObject result,
+            final long answerSize) {
+        if (call == null) {
+            return;
+        }
+        final Stats s = call.stats;
+        s.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - call.startTime));
+        if (answerSize > 0) {
+            s.bytesIn.add(answerSize);
         }
-        if (list.size() > COUNT) {
-            list.remove(list.size() - 1);
+        if (isBadRpc(result)) {
+            s.errors.increment();
         }
     }
 
-    public static OtpErlangRef recordRequest(final OtpNode node, final String peer,
-            final String module, final String fun, final OtpErlangObject[] args,
-            final long callSize) {
-        callCount++;
-        if (DISABLED) {
-            return null;
+    /**
+     * Record that a call will never get an answer, for example because the backend went
+     * down or nobody waits for it anymore after a timeout.
+     */
+    public static void recordFailure(final Call call) {
+        if (call == null) {
+            return;
         }
-        final RpcData data = new RpcData(System.currentTimeMillis(), peer, module, fun,
-                args, callSize);
-        final OtpErlangRef ref = node.createRef();
-        ongoing.put(ref, data);
-        return ref;
+        call.stats.errors.increment();
     }
 
-    public static void dump() {
-        dump(System.out, COUNT, FULL);
+    private static boolean isBadRpc(final OtpErlangObject result) {
+        if (result instanceof OtpErlangTuple) {
+            final OtpErlangTuple t = (OtpErlangTuple) result;
+            if (t.arity() == 2 && t.elementAt(0) instanceof OtpErlangAtom) {
+                return "badrpc".equals(((OtpErlangAtom) t.elementAt(0)).atomValue());
+            }
+        }
+        return false;
     }
 
-    public static void dump(final String file) {
-        dump(file, COUNT, FULL);
+    /**
+     * @return the statistics of all functions called so far, most time consuming first.
+     */
+    public static List<Snapshot> snapshot() {
+        final List<Snapshot> result = new ArrayList<>();
+        for (final ConcurrentHashMap<String, Stats> functions : stats.values()) {
+            for (final Stats s : functions.values()) {
+                result.add(s.snapshot());
+            }
+        }
+        Collections.sort(result, new Comparator<Snapshot>() {
+            @Override
+            public int compare(final Snapshot o1, final Snapshot o2) {
+                return Long.compare(o2.totalTime, o1.totalTime);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Forget all statistics.
+     */
+    public static void reset() {
+        stats.clear();
+        callCount.reset();
+    }
+
+    private static final String CSV_HEADER = "function,calls,errors,bytes_out,bytes_in,total_us,p50_us,p99_us,max_us";
+
+    public static String toCsv() {
+        final StringBuilder out = new StringBuilder(CSV_HEADER).append('\n');
+        for (final Snapshot s : snapshot()) {
+            out.append(s.function).append(',').append(s.calls).append(',')
+                    .append(s.errors).append(',').append(s.bytesOut).append(',')
+                    .append(s.bytesIn).append(',').append(s.totalTime).append(',')
+                    .append(s.p50).append(',').append(s.p99).append(',').append(s.max)
+                    .append('\n');
+        }
+        return out.toString();
+    }
+
+    public static String toJson() {
+        final StringBuilder out = new StringBuilder("[");
+        String sep = "";
+        for (final Snapshot s : snapshot()) {
+            out.append(sep).append("{\"function\":\"").append(jsonEscape(s.function))
+                    .append("\",\"calls\":").append(s.calls).append(",\"errors\":")
+                    .append(s.errors).append(",\"bytes_out\":").append(s.bytesOut)
+                    .append(",\"bytes_in\":").append(s.bytesIn)
+                    .append(",\"total_us\":").append(s.totalTime)
+                    .append(",\"p50_us\":").append(s.p50).append(",\"p99_us\":")
+                    .append(s.p99).append(",\"max_us\":").append(s.max).append('}');
+            sep = ",";
+        }
+        return out.append(']').toString();
+    }
+
+    private static String jsonEscape(final String s) {
+        final StringBuilder out = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            final char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                out.append('\\').append(c);
+            } else if (c < 0x20) {
+                out.append(String.format("\\u%04x", (int) c));
+            } else {
+                out.append(c);
+            }
+        }
+        return out.toString();
     }
 
-    public static void dump(final String file, final int n) {
-        dump(file, n, FULL);
+    public static void dump() {
+        dump(System.out, COUNT);
     }
 
-    public static void dump(final String file, final boolean full) {
-        dump(file, COUNT, full);
+    public static void dump(final String file) {
+        dump(file, COUNT);
     }
 
-    public static void dump(final String fileName, final int n, final boolean full) {
+    public static void dump(final String fileName, final int n) {
         if (DISABLED) {
             return;
         }
         try (final PrintStream os = new PrintStream(
                 new FileOutputStream(fileName, true))) {
-            dump(os, n, full);
+            dump(os, n);
         } catch (final FileNotFoundException e) {
             ErlLogger.error(e);
         }
     }
 
-    public static synchronized void dump(final PrintStream out, final int n,
-            final boolean full) {
+    public static void dump(final PrintStream out, final int n) {
         final String delim = "--------------------------------------------------------------";
 
         out.println("\n" + delim);
-        out.format("*** RpcMonitor statistics%n - %d calls%n", callCount);
+        out.format("*** RpcMonitor statistics%n - %d calls%n", callCount.sum());
         out.println(delim);
-        out.println();
-        out.format("Slowest %d calls%n", slowest.size());
+        final List<Snapshot> all = snapshot();
+        out.format("Most time consuming %d of %d functions (times in ms)%n",
+                Math.min(n, all.size()), all.size());
         out.println(delim);
-        for (final RpcInfo info : slowest) {
-            info.dump(out, full);
-        }
-        out.println(delim);
-        out.println();
-        out.format("Largest %d calls%n", largest.size());
-        out.println(delim);
-        for (final RpcInfo info : largest) {
-            if (info != null) {
-                info.dump(out, full);
-            }
+        for (final Snapshot s : all.subList(0, Math.min(n, all.size()))) {
+            out.format(Locale.ROOT,
+                    "%45s calls=%7d err=%5d out=%10d in=%10d total=%9.1f p50=%8.1f p99=%8.1f max=%8.1f%n",
+                    s.function, s.calls, s.errors, s.bytesOut, s.bytesIn,
+                    s.totalTime / 1000.0, s.p50 / 1000.0, s.p99 / 1000.0,
+                    s.max / 1000.0);
         }
         out.println(delim);
-        out.close();
     }
 
     public static void cleanupOldLogs(final String dirName, final String prefix) {
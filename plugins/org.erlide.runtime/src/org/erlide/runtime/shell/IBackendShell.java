@@ -35,6 +35,11 @@ public interface IBackendShell {
 
     IoRequest findAtPos(final int thePos);
 
+    /**
+     * @return the offset of request in the text returned by {@link #getText()}
+     */
+    int getStart(final IoRequest request);
+
     List<IoRequest> getAllFrom(final OtpErlangPid sender);
 
     void add(final List<OtpErlangObject> msgs);
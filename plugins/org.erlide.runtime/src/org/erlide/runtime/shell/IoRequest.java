@@ -12,9 +12,9 @@ import java.nio.charset.Charset;
 import java.util.regex.Pattern;
 
 import org.erlide.util.ErlLogger;
-import org.erlide.util.erlang.OtpBindings;
-import org.erlide.util.erlang.OtpErlang;
+import org.erlide.util.erlang.OtpPattern;
 
+import com.ericsson.otp.erlang.OtpErlangAtom;
 import com.ericsson.otp.erlang.OtpErlangList;
 import com.ericsson.otp.erlang.OtpErlangObject;
 import com.ericsson.otp.erlang.OtpErlangPid;
@@ -29,6 +29,11 @@ public class IoRequest {
     public static final Pattern RE_HEADER = Pattern
             .compile("Eshell V[0-9]+\\.[0-9]+\\.[0-9]+");
 
+    private static final OtpPattern REQUEST = OtpPattern
+            .of("{Payload, Leader, From, Tstamp}");
+    private static final OtpPattern REQUEST_ENC = OtpPattern
+            .of("{Payload, Encoding, Leader, From, Tstamp}");
+
     public enum IoRequestKind {
         HEADER, PROMPT, INPUT, OUTPUT, STDOUT, STDERR;
     }
@@ -36,30 +41,39 @@ public class IoRequest {
     private OtpErlangPid leader;
     private OtpErlangPid sender;
     private String message;
-    private int start;
+    private long start;
     private final IoRequestKind kind;
     private Charset encoding;
 
     public IoRequest(final OtpErlangTuple obj) {
         try {
-            OtpBindings b = OtpErlang.match("{Payload, Leader, From, Tstamp}", obj);
-            if (b == null) {
-                b = OtpErlang.match("{Payload, Encoding, Leader, From, Tstamp}", obj);
-                encoding = getEncoding(b.getAtom("Encoding"));
-            } else {
+            final OtpErlangObject[] b = new OtpErlangObject[REQUEST_ENC.size()];
+            final OtpErlangObject o;
+            final OtpErlangObject l;
+            final OtpErlangObject from;
+            if (REQUEST.match(obj, b)) {
                 encoding = Charsets.ISO_8859_1;
+                o = b[0];
+                l = b[1];
+                from = b[2];
+            } else if (REQUEST_ENC.match(obj, b)) {
+                encoding = getEncoding(((OtpErlangAtom) b[1]).atomValue());
+                o = b[0];
+                l = b[2];
+                from = b[3];
+            } else {
+                throw new IllegalArgumentException("unknown io request " + obj);
             }
 
-            final OtpErlangObject o = b.get("Payload");
             if (o instanceof OtpErlangString) {
                 message = ((OtpErlangString) o).stringValue();
             } else if (o instanceof OtpErlangList) {
-                final OtpErlangList l = (OtpErlangList) o;
-                if (l.arity() == 0) {
+                final OtpErlangList list = (OtpErlangList) o;
+                if (list.arity() == 0) {
                     message = "";
                 } else {
                     try {
-                        message = l.stringValue();
+                        message = list.stringValue();
                     } catch (final Exception e) {
                         message = o.toString();
                     }
@@ -69,10 +83,9 @@ public class IoRequest {
             }
             message = convertEncoding(message, encoding);
 
-            leader = b.getPid("Leader");
-            final OtpErlangObject s = b.get("From");
-            if (s instanceof OtpErlangPid) {
-                sender = (OtpErlangPid) s;
+            leader = (OtpErlangPid) l;
+            if (from instanceof OtpErlangPid) {
+                sender = (OtpErlangPid) from;
             } else {
                 sender = new OtpErlangPid("s", 0, 0, 0);
             }
@@ -126,7 +139,11 @@ public class IoRequest {
         return sender;
     }
 
-    public int getStart() {
+    /**
+     * @return the position of the request in the whole output of its shell, including
+     *         text that the shell doesn't keep anymore
+     */
+    public long getStart() {
         return start;
     }
 
@@ -138,7 +155,7 @@ public class IoRequest {
         return kind;
     }
 
-    public void setStart(final int pos) {
+    public void setStart(final long pos) {
         start = pos;
     }
 }
@@ -3,8 +3,6 @@ package org.erlide.test_support.ui.suites;
 import org.erlide.runtime.events.ErlEvent;
 import org.erlide.runtime.events.ErlangEventHandler;
 
-import com.google.common.eventbus.Subscribe;
-
 public class TestEventHandler extends ErlangEventHandler {
 
     private final TestResultsView view;
@@ -14,7 +12,7 @@ public class TestEventHandler extends ErlangEventHandler {
         this.view = view;
     }
 
-    @Subscribe
+    @Override
     public void handleEvent(final ErlEvent event) {
         if (!event.getTopic().equals(getTopic())) {
             return;
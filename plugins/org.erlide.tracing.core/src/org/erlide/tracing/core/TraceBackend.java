@@ -1,7 +1,10 @@
 package org.erlide.tracing.core;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
@@ -12,6 +15,7 @@ import org.eclipse.jdt.annotation.NonNull;
 import org.erlide.backend.BackendCore;
 import org.erlide.backend.api.BackendData;
 import org.erlide.backend.api.IBackend;
+import org.erlide.runtime.api.IOtpNodeProxy;
 import org.erlide.runtime.events.ErlEvent;
 import org.erlide.runtime.events.ErlangEventHandler;
 import org.erlide.runtime.rpc.RpcException;
@@ -23,7 +27,11 @@ import org.erlide.tracing.core.mvc.model.TracedProcess;
 import org.erlide.tracing.core.mvc.model.treenodes.ITreeNode;
 import org.erlide.tracing.core.mvc.model.treenodes.TracingResultsNode;
 import org.erlide.tracing.core.preferences.PreferenceNames;
+import org.erlide.tracing.core.utils.ITraceEventSource;
+import org.erlide.tracing.core.utils.TraceAggregator;
 import org.erlide.tracing.core.utils.TraceDataHandler;
+import org.erlide.tracing.core.utils.TraceEventLog;
+import org.erlide.tracing.core.utils.TraceFileReader;
 import org.erlide.util.ErlLogger;
 
 import com.ericsson.otp.erlang.OtpErlangAtom;
@@ -33,7 +41,6 @@ import com.ericsson.otp.erlang.OtpErlangLong;
 import com.ericsson.otp.erlang.OtpErlangObject;
 import com.ericsson.otp.erlang.OtpErlangString;
 import com.ericsson.otp.erlang.OtpErlangTuple;
-import com.google.common.eventbus.Subscribe;
 
 /**
  * Singleton class used for communication with trace node.
@@ -52,6 +59,10 @@ public class TraceBackend {
     private static final String FUN_START = "start";
     private static final String FUN_FILE_INFO = "get_file_info";
     private static final String FUN_LOAD = "load";
+    // traces requested from the tracer node at a time when filling an event log
+    private static final int CHUNK_SIZE = 10000;
+    // how long to wait for the rest of a chunk before starting something else
+    private static final long CHUNK_TIMEOUT = 30000;
 
     private final Set<TracePattern> tracePatterns = new LinkedHashSet<>();
     private final Set<TracedNode> tracedNodes = new LinkedHashSet<>();
@@ -68,13 +79,49 @@ public class TraceBackend {
      * tracing results, <code>false</code> when loading traces from file
      */
     private boolean loadingFileInfo;
-    private TraceEventHandler handler;
+    // only the last registered handler handles events
+    private volatile TraceEventHandler handler;
+    private IOtpNodeProxy handlerRuntime;
     private List<String> activatedNodes;
     private Set<String> notActivatedNodes;
     private Object errorObject;
     private long startIndex;
     private TracingResultsNode activeResultSet;
 
+    /**
+     * All traces of {@link #eventLogFile}, requested from the tracer node the
+     * first time a page of it was requested. Pages are built from this log
+     * without asking the tracer node again.
+     */
+    private TraceEventLog eventLog;
+    private String eventLogFile;
+    private boolean eventLogComplete;
+    /**
+     * The log is filled a chunk at a time, the next chunk being requested when
+     * the previous one has arrived, so that the tracer node never sends more
+     * than {@link #CHUNK_SIZE} traces ahead of us.
+     */
+    private boolean spooling;
+    private boolean chunkInFlight;
+    // number of the next trace to request, and of the last one
+    private long spoolNext;
+    private long spoolEnd;
+    // page to show as soon as the log has it
+    private boolean pagePending;
+    private long pageStart;
+    private long pageEnd;
+    /**
+     * Reader for the trace file of the active result set, when that file can be
+     * read directly.
+     */
+    private TraceFileReader fileReader;
+    private String fileReaderFile;
+    /**
+     * Statistics of the traces in {@link #statisticsFile}.
+     */
+    private TraceAggregator statistics;
+    private String statisticsFile;
+
     private TraceBackend() {
     }
 
@@ -84,16 +131,34 @@ public class TraceBackend {
 
     private class TraceEventHandler extends ErlangEventHandler {
 
+        private final TraceDataHandler dataHandler = new TraceDataHandler();
+        private boolean firstTrace = true;
+        /**
+         * when not <code>null</code>, traces are appended to this log instead of
+         * being turned into tree nodes
+         */
+        private final TraceEventLog log;
+        private final TraceAggregator aggregator;
+
         public TraceEventHandler() {
+            this(null, null);
+        }
+
+        public TraceEventHandler(final TraceEventLog log,
+                final TraceAggregator aggregator) {
             super(EVENT_NAME);
+            this.log = log;
+            this.aggregator = aggregator;
         }
 
-        private final TraceDataHandler dataHandler = new TraceDataHandler();
-        private boolean firstTrace = true;
+        @Override
+        public int getQueueCapacity() {
+            return 50000;
+        }
 
-        @Subscribe
+        @Override
         public void handleEvent(final ErlEvent event) {
-            if (!event.getTopic().equals(getTopic())) {
+            if (!event.getTopic().equals(getTopic()) || this != handler) {
                 return;
             }
             final OtpErlangObject message = event.getEvent();
@@ -101,10 +166,26 @@ public class TraceBackend {
                 OtpErlangObject errorReason = null;
                 // System.out.println("data: " + data);
                 if (dataHandler.isTracingFinished(message)) {
-                    finishLoading(firstTrace ? TracingStatus.EMPTY : TracingStatus.OK);
+                    if (log != null) {
+                        chunkLoaded(log);
+                    } else {
+                        finishLoading(firstTrace ? TracingStatus.EMPTY
+                                : TracingStatus.OK);
+                    }
                 } else if ((errorReason = dataHandler.getErrorReson(message)) != null) {
-                    errorObject = errorReason;
-                    finishLoading(TracingStatus.ERROR);
+                    if (log != null) {
+                        chunkFailed(log, errorReason);
+                    } else {
+                        errorObject = errorReason;
+                        finishLoading(TracingStatus.ERROR);
+                    }
+                } else if (log != null) {
+                    try {
+                        log.append(message);
+                    } catch (final IOException e) {
+                        ErlLogger.error(e);
+                    }
+                    aggregator.add(message);
                 } else {
                     final ITreeNode newNode = dataHandler.getData(message);
                     if (newNode != null) {
@@ -150,11 +231,11 @@ public class TraceBackend {
             synchronized (this) {
                 if (!tracing) {
                     try {
+                        stopSpooling();
                         tracing = true;
                         getBackend(true);
                         loadingFileInfo = true;
-                        handler = new TraceEventHandler();
-                        tracerBackend.getRuntime().registerEventListener(handler);
+                        setHandler(new TraceEventHandler());
 
                         // list of nodes being traced
                         final List<OtpErlangObject> erlangObjects = new ArrayList<>();
@@ -311,11 +392,11 @@ public class TraceBackend {
             synchronized (this) {
                 if (!tracing && !loading) {
                     try {
+                        stopSpooling();
                         loading = true;
                         loadingFileInfo = true;
-                        handler = new TraceEventHandler();
                         getBackend(true);
-                        tracerBackend.getRuntime().registerEventListener(handler);
+                        setHandler(new TraceEventHandler());
                         tracerBackend.getOtpRpc().call(Constants.ERLANG_HELPER_MODULE,
                                 FUN_FILE_INFO, "s", new OtpErlangString(path));
                     } catch (final RpcException e) {
@@ -333,6 +414,16 @@ public class TraceBackend {
      * {@link #setActiveResultSet(TracingResultsNode)}). Index of last trace
      * which will be loaded is <code>max(number_of_traces, endIndex)</code>.
      *
+     * <p>
+     * If the trace file is accessible, pages are read from it directly with a
+     * {@link TraceFileReader}. Otherwise, the first time a result set is
+     * loaded, its traces are streamed from the tracer node into a
+     * {@link TraceEventLog}, a chunk at a time. The page is shown as soon as
+     * the log has it, and the rest of the traces keep coming in the background
+     * for the next pages. Either way, tree nodes are only created for the
+     * traces being shown.
+     * </p>
+     *
      * @param theStartIndex
      *            number of first trace
      * @param endIndex
@@ -342,29 +433,291 @@ public class TraceBackend {
         if (!tracing && !loading) {
             synchronized (this) {
                 if (!tracing && !loading) {
+                    loading = true;
+                    loadingFileInfo = false;
+                    final String fileName = activeResultSet.getFileName();
+                    final TraceFileReader reader = getFileReader(fileName);
+                    if (reader != null) {
+                        finishLoading(showPage(reader, theStartIndex, endIndex));
+                        return;
+                    }
+                    pageStart = theStartIndex;
+                    pageEnd = endIndex;
+                    if (fileName.equals(eventLogFile)) {
+                        // complete, or still being filled
+                        pagePending = true;
+                        showPageIfLoaded();
+                        return;
+                    }
+                    stopSpooling();
+                    getBackend(true);
+                    TraceCollections.getTracesList().clear();
                     try {
-                        loading = true;
-                        loadingFileInfo = false;
-                        startIndex = theStartIndex;
-                        handler = new TraceEventHandler();
-                        getBackend(true);
-                        TraceCollections.getTracesList().clear();
-                        tracerBackend.getRuntime().registerEventListener(handler);
-                        final OtpErlangLong start = new OtpErlangLong(theStartIndex);
-                        final OtpErlangLong stop = new OtpErlangLong(endIndex);
-                        tracerBackend.getOtpRpc()
-                                .call(Constants.ERLANG_HELPER_MODULE, FUN_LOAD, "sii",
-                                        new OtpErlangString(
-                                                activeResultSet.getFileName()),
-                                        start, stop);
-                    } catch (final RpcException e) {
-                        ErlLogger.error(e);
-                        errorObject = e;
-                        finishLoading(TracingStatus.EXCEPTION_THROWN);
+                        eventLog = new TraceEventLog();
+                    } catch (final IOException e) {
+                        // fall back to loading only the requested page
+                        ErlLogger.warn(e);
+                        loadPage(fileName, theStartIndex, endIndex);
+                        return;
                     }
+                    eventLogFile = fileName;
+                    statistics = new TraceAggregator();
+                    statisticsFile = fileName;
+                    pagePending = true;
+                    spooling = true;
+                    spoolNext = 1;
+                    spoolEnd = Math.max(endIndex, activeResultSet.getSize());
+                    setHandler(new TraceEventHandler(eventLog, statistics));
+                    requestChunk();
+                }
+            }
+        }
+    }
+
+    /**
+     * Registers a new handler for the trace events, unregistering the one it replaces.
+     */
+    private synchronized void setHandler(final TraceEventHandler newHandler) {
+        if (handler != null && handlerRuntime != null) {
+            handlerRuntime.unregisterEventListener(handler);
+        }
+        handler = newHandler;
+        handlerRuntime = tracerBackend.getRuntime();
+        handlerRuntime.registerEventListener(newHandler);
+    }
+
+    private void loadPage(final String fileName, final long first, final long last) {
+        try {
+            startIndex = first;
+            setHandler(new TraceEventHandler());
+            tracerBackend.getOtpRpc().call(Constants.ERLANG_HELPER_MODULE, FUN_LOAD,
+                    "sii", new OtpErlangString(fileName), new OtpErlangLong(first),
+                    new OtpErlangLong(last));
+        } catch (final RpcException e) {
+            ErlLogger.error(e);
+            errorObject = e;
+            finishLoading(TracingStatus.EXCEPTION_THROWN);
+        }
+    }
+
+    private void requestChunk() {
+        final long first = spoolNext;
+        final long last = Math.min(spoolEnd, first + CHUNK_SIZE - 1);
+        spoolNext = last + 1;
+        try {
+            chunkInFlight = true;
+            tracerBackend.getOtpRpc().call(Constants.ERLANG_HELPER_MODULE, FUN_LOAD,
+                    "sii", new OtpErlangString(eventLogFile), new OtpErlangLong(first),
+                    new OtpErlangLong(last));
+        } catch (final RpcException e) {
+            ErlLogger.error(e);
+            chunkInFlight = false;
+            errorObject = e;
+            disposeEventLog();
+            disposeStatistics();
+            if (pagePending) {
+                pagePending = false;
+                finishLoading(TracingStatus.EXCEPTION_THROWN);
+            }
+        }
+    }
+
+    private synchronized void chunkLoaded(final TraceEventLog log) {
+        chunkInFlight = false;
+        notifyAll();
+        if (log != eventLog) {
+            // result set was removed meanwhile
+            if (pagePending) {
+                pagePending = false;
+                finishLoading(TracingStatus.EMPTY);
+            }
+            return;
+        }
+        if (log.size() < spoolNext - 1 || spoolNext > spoolEnd) {
+            // there are no more traces
+            spooling = false;
+            eventLogComplete = true;
+        }
+        if (pagePending) {
+            showPageIfLoaded();
+        }
+        if (spooling) {
+            requestChunk();
+        }
+    }
+
+    private synchronized void chunkFailed(final TraceEventLog log,
+            final OtpErlangObject reason) {
+        chunkInFlight = false;
+        notifyAll();
+        if (log == eventLog) {
+            disposeEventLog();
+            disposeStatistics();
+        }
+        if (pagePending) {
+            pagePending = false;
+            errorObject = reason;
+            finishLoading(TracingStatus.ERROR);
+        }
+    }
+
+    private void showPageIfLoaded() {
+        if (eventLogComplete || eventLog.size() >= pageEnd) {
+            pagePending = false;
+            finishLoading(showPage(eventLog, pageStart, pageEnd));
+        }
+    }
+
+    /**
+     * Stops filling the event log, if it isn't complete, and waits for the
+     * traces that were already requested: the tracer node sends them as
+     * events that can't be told apart from those of the next request.
+     */
+    private void stopSpooling() {
+        if (spooling) {
+            if (eventLogFile != null && eventLogFile.equals(statisticsFile)) {
+                disposeStatistics();
+            }
+            disposeEventLog();
+        }
+        final long end = System.currentTimeMillis() + CHUNK_TIMEOUT;
+        while (chunkInFlight) {
+            final long left = end - System.currentTimeMillis();
+            if (left <= 0) {
+                ErlLogger.warn("Gave up waiting for the rest of a chunk of traces");
+                chunkInFlight = false;
+                break;
+            }
+            try {
+                wait(left);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+    }
+
+    /**
+     * Fills the traces list with tree nodes for traces with numbers from
+     * <code>first</code> to <code>last</code> (both inclusive, counted from 1).
+     */
+    private TracingStatus showPage(final ITraceEventSource source, final long first,
+            final long last) {
+        startIndex = first;
+        final Collection<ITreeNode> traces = TraceCollections.getTracesList();
+        traces.clear();
+        if (source.size() == 0) {
+            return TracingStatus.EMPTY;
+        }
+        try {
+            final TraceDataHandler dataHandler = new TraceDataHandler();
+            final int to = (int) Math.min(last, Integer.MAX_VALUE);
+            for (final OtpErlangObject message : source.read((int) first - 1, to)) {
+                final ITreeNode node = dataHandler.getData(message);
+                if (node != null) {
+                    traces.add(node);
                 }
             }
+        } catch (final IOException e) {
+            ErlLogger.error(e);
+            errorObject = e;
+            return TracingStatus.EXCEPTION_THROWN;
+        }
+        return TracingStatus.OK;
+    }
+
+    /**
+     * @return a reader for the given trace file, or <code>null</code> if it
+     *         can't be read from here (e.g. it is on the tracer's host)
+     */
+    private TraceFileReader getFileReader(final String fileName) {
+        if (fileName.equals(fileReaderFile)) {
+            return fileReader;
+        }
+        disposeFileReader();
+        final File file = new File(fileName);
+        if (!file.isFile()) {
+            return null;
+        }
+        try {
+            fileReader = new TraceFileReader(file);
+            fileReaderFile = fileName;
+        } catch (final IOException e) {
+            ErlLogger.warn("Can't read trace file %s: %s", fileName, e.getMessage());
+        }
+        return fileReader;
+    }
+
+    private void disposeFileReader() {
+        if (fileReader != null) {
+            try {
+                fileReader.close();
+            } catch (final IOException e) {
+                ErlLogger.warn(e);
+            }
+        }
+        fileReader = null;
+        fileReaderFile = null;
+    }
+
+    /**
+     * Returns statistics of the active result set. If its traces are being loaded,
+     * the statistics are updated as they arrive. Otherwise the trace file is read
+     * directly, which can take a while, so this shouldn't be called from the UI
+     * thread.
+     *
+     * @return statistics, or <code>null</code> if no traces of the active result
+     *         set were loaded yet and its file can't be read from here
+     */
+    public TraceAggregator getStatistics() {
+        final String fileName;
+        synchronized (this) {
+            if (activeResultSet == null) {
+                return null;
+            }
+            fileName = activeResultSet.getFileName();
+            if (fileName.equals(statisticsFile)) {
+                return statistics;
+            }
         }
+        final File file = new File(fileName);
+        if (!file.isFile()) {
+            return null;
+        }
+        // with a reader of our own, so that the file isn't closed under us and
+        // loading pages doesn't wait for this
+        final TraceAggregator aggregator = new TraceAggregator();
+        try (final TraceFileReader reader = new TraceFileReader(file)) {
+            aggregator.addAll(reader);
+        } catch (final IOException e) {
+            ErlLogger.error(e);
+            return null;
+        }
+        synchronized (this) {
+            // unless the result set changed, or its traces are being loaded and
+            // counted meanwhile
+            if (activeResultSet != null && fileName.equals(activeResultSet.getFileName())
+                    && !spooling) {
+                statistics = aggregator;
+                statisticsFile = fileName;
+            }
+        }
+        return aggregator;
+    }
+
+    private void disposeStatistics() {
+        statistics = null;
+        statisticsFile = null;
+    }
+
+    private void disposeEventLog() {
+        if (eventLog != null) {
+            eventLog.dispose();
+        }
+        eventLog = null;
+        eventLogFile = null;
+        eventLogComplete = false;
+        spooling = false;
     }
 
     /**
@@ -372,6 +725,9 @@ public class TraceBackend {
      */
     public synchronized void clearTraceLists() {
         activeResultSet = null;
+        disposeEventLog();
+        disposeFileReader();
+        disposeStatistics();
         TraceCollections.getFilesList().clear();
         TraceCollections.getTracesList().clear();
         for (final ITraceNodeObserver listener : listeners) {
@@ -391,6 +747,15 @@ public class TraceBackend {
      */
     public synchronized void removeTracingResult(final TracingResultsNode tracingResult) {
         activeResultSet = null;
+        if (tracingResult.getFileName().equals(eventLogFile)) {
+            disposeEventLog();
+        }
+        if (tracingResult.getFileName().equals(fileReaderFile)) {
+            disposeFileReader();
+        }
+        if (tracingResult.getFileName().equals(statisticsFile)) {
+            disposeStatistics();
+        }
         TraceCollections.getFilesList().remove(tracingResult);
         TraceCollections.getTracesList().clear();
         for (final ITraceNodeObserver listener : listeners) {
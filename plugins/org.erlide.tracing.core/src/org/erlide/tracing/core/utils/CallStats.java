@@ -0,0 +1,88 @@
+package org.erlide.tracing.core.utils;
+
+/**
+ * Statistics for one traced function. Times are in microseconds.
+ */
+public class CallStats {
+
+    private final String module;
+    private final String function;
+    private final int arity;
+    long calls;
+    long inclusiveTime;
+    long exclusiveTime;
+    final LatencyHistogram latency;
+
+    CallStats(final String module, final String function, final int arity) {
+        this.module = module;
+        this.function = function;
+        this.arity = arity;
+        latency = new LatencyHistogram();
+    }
+
+    CallStats(final CallStats other) {
+        module = other.module;
+        function = other.function;
+        arity = other.arity;
+        calls = other.calls;
+        inclusiveTime = other.inclusiveTime;
+        exclusiveTime = other.exclusiveTime;
+        latency = new LatencyHistogram(other.latency);
+    }
+
+    public String getModule() {
+        return module;
+    }
+
+    public String getFunction() {
+        return function;
+    }
+
+    public int getArity() {
+        return arity;
+    }
+
+    /**
+     * @return number of traced calls
+     */
+    public long getCalls() {
+        return calls;
+    }
+
+    /**
+     * @return number of calls for which the return was traced too, i.e. the ones
+     *         that times are known for
+     */
+    public long getReturns() {
+        return latency.getCount();
+    }
+
+    /**
+     * @return total time spent in the function, including the functions it called
+     */
+    public long getInclusiveTime() {
+        return inclusiveTime;
+    }
+
+    /**
+     * @return total time spent in the function itself, excluding the traced
+     *         functions it called
+     */
+    public long getExclusiveTime() {
+        return exclusiveTime;
+    }
+
+    /**
+     * @return distribution of the inclusive time of single calls
+     */
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    @Override
+    public String toString() {
+        return module + ":" + function + "/" + arity + " calls=" + calls + " incl="
+                + inclusiveTime + " excl=" + exclusiveTime + " p50="
+                + latency.getPercentile(50) + " p99=" + latency.getPercentile(99);
+    }
+}
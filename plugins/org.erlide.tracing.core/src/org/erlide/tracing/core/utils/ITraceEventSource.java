@@ -0,0 +1,23 @@
+package org.erlide.tracing.core.utils;
+
+import java.io.IOException;
+import java.util.List;
+
+import com.ericsson.otp.erlang.OtpErlangObject;
+
+/**
+ * Random access to a sequence of trace events.
+ */
+public interface ITraceEventSource {
+
+    /**
+     * @return number of events
+     */
+    int size();
+
+    /**
+     * Reads events with indexes from <code>from</code> (inclusive) to
+     * <code>to</code> (exclusive). The range is clipped to the available events.
+     */
+    List<OtpErlangObject> read(int from, int to) throws IOException;
+}
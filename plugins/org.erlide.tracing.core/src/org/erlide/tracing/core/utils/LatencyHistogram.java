@@ -0,0 +1,112 @@
+package org.erlide.tracing.core.utils;
+
+import java.util.Arrays;
+
+/**
+ * Histogram of durations with a fixed memory footprint.
+ *
+ * <p>
+ * Values below 16 have a bucket each; larger values share buckets that are 1/8 of their
+ * power of two wide, so percentiles are exact for small values and within 12.5% for the
+ * others, whatever the number of recorded values.
+ * </p>
+ */
+public class LatencyHistogram {
+
+    private static final int LINEAR = 16;
+    private static final int SUB_BITS = 3;
+    private static final int SUB = 1 << SUB_BITS;
+    private static final int BUCKETS = LINEAR + (63 - 4) * SUB;
+
+    private final long[] counts = new long[BUCKETS];
+    private long count;
+    private long total;
+    private long min = Long.MAX_VALUE;
+    private long max;
+
+    public LatencyHistogram() {
+    }
+
+    public LatencyHistogram(final LatencyHistogram other) {
+        System.arraycopy(other.counts, 0, counts, 0, BUCKETS);
+        count = other.count;
+        total = other.total;
+        min = other.min;
+        max = other.max;
+    }
+
+    private static int bucket(final long value) {
+        if (value < LINEAR) {
+            return (int) value;
+        }
+        final int exp = 63 - Long.numberOfLeadingZeros(value);
+        final int sub = (int) (value >>> exp - SUB_BITS) & SUB - 1;
+        return LINEAR + (exp - 4) * SUB + sub;
+    }
+
+    private static long upperBound(final int bucket) {
+        if (bucket < LINEAR) {
+            return bucket;
+        }
+        final int exp = (bucket - LINEAR) / SUB + 4;
+        final int sub = (bucket - LINEAR) % SUB;
+        return ((long) (SUB + sub + 1) << exp - SUB_BITS) - 1;
+    }
+
+    /**
+     * Records a value; negative values are recorded as 0.
+     */
+    public void record(final long value) {
+        final long v = Math.max(0, value);
+        counts[bucket(v)]++;
+        count++;
+        total += v;
+        min = Math.min(min, v);
+        max = Math.max(max, v);
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    public long getMin() {
+        return count == 0 ? 0 : min;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * @param percent
+     *            between 0 and 100
+     * @return a value such that at least <code>percent</code>% of the recorded values
+     *         are not larger than it, or 0 if nothing was recorded
+     */
+    public long getPercentile(final double percent) {
+        if (count == 0) {
+            return 0;
+        }
+        final long rank = Math.max(1, (long) Math.ceil(percent / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.max(min, Math.min(max, upperBound(i)));
+            }
+        }
+        return max;
+    }
+
+    public void clear() {
+        Arrays.fill(counts, 0);
+        count = 0;
+        total = 0;
+        min = Long.MAX_VALUE;
+        max = 0;
+    }
+}
@@ -0,0 +1,401 @@
+package org.erlide.tracing.core.utils;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import com.ericsson.otp.erlang.OtpErlangAtom;
+import com.ericsson.otp.erlang.OtpErlangList;
+import com.ericsson.otp.erlang.OtpErlangLong;
+import com.ericsson.otp.erlang.OtpErlangObject;
+import com.ericsson.otp.erlang.OtpErlangPid;
+import com.ericsson.otp.erlang.OtpErlangRangeException;
+import com.ericsson.otp.erlang.OtpErlangTuple;
+
+/**
+ * Computes statistics from <code>trace_ts</code> messages as they are added: for each
+ * traced function the number of calls, the inclusive and exclusive time and the
+ * distribution of call durations, and for each process the number of messages it sent
+ * and received.
+ *
+ * <p>
+ * Durations are found by pairing each <code>call</code> with the
+ * <code>return_from</code> or <code>exception_from</code> of the same function in the
+ * same process, so they are only known for functions traced with a return trace match
+ * spec. Calls that never return (e.g. tail calls without return trace) stay on the
+ * process' call stack until a caller returns; the stacks are capped so that such calls
+ * can't use up the memory.
+ * </p>
+ *
+ * <p>
+ * Times are in microseconds. Traces loaded by the tracer node have timestamps with a
+ * one second resolution only, raw trace files have microsecond timestamps.
+ * </p>
+ *
+ * <p>
+ * Adding and querying may happen on different threads.
+ * </p>
+ */
+public class TraceAggregator {
+
+    private static final String TRACE_TS = "trace_ts";
+    private static final int MAX_STACK_DEPTH = 1024;
+    private static final int CHUNK_SIZE = 10000;
+
+    private static final int INDEX_PROCESS = 1;
+    private static final int INDEX_TRACE_TYPE = 2;
+    private static final int INDEX_FUNCTION = 3;
+
+    /**
+     * Number of messages sent and received by one process.
+     */
+    public static class ProcessStats {
+        private final OtpErlangObject process;
+        long sent;
+        long received;
+
+        ProcessStats(final OtpErlangObject process) {
+            this.process = process;
+        }
+
+        ProcessStats(final ProcessStats other) {
+            process = other.process;
+            sent = other.sent;
+            received = other.received;
+        }
+
+        /**
+         * @return the pid, or <code>{RegisteredName, Node}</code> for processes traced
+         *         without a pid
+         */
+        public OtpErlangObject getProcess() {
+            return process;
+        }
+
+        public long getSent() {
+            return sent;
+        }
+
+        public long getReceived() {
+            return received;
+        }
+    }
+
+    private static final class Frame {
+        final CallStats stats;
+        final long start;
+        long childTime;
+
+        Frame(final CallStats stats, final long start) {
+            this.stats = stats;
+            this.start = start;
+        }
+    }
+
+    private static final class FunctionKey {
+        final String module;
+        final String function;
+        final int arity;
+
+        FunctionKey(final String module, final String function, final int arity) {
+            this.module = module;
+            this.function = function;
+            this.arity = arity;
+        }
+
+        @Override
+        public int hashCode() {
+            return (module.hashCode() * 31 + function.hashCode()) * 31 + arity;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (!(obj instanceof FunctionKey)) {
+                return false;
+            }
+            final FunctionKey other = (FunctionKey) obj;
+            return arity == other.arity && module.equals(other.module)
+                    && function.equals(other.function);
+        }
+    }
+
+    private final Map<FunctionKey, CallStats> functions = new HashMap<>();
+    private final Map<OtpErlangObject, ProcessStats> processes = new HashMap<>();
+    private final Map<OtpErlangObject, Deque<Frame>> stacks = new HashMap<>();
+    private long events;
+
+    /**
+     * Adds all messages of source, reading them a chunk at a time.
+     */
+    public void addAll(final ITraceEventSource source) throws IOException {
+        final int size = source.size();
+        for (int from = 0; from < size; from += CHUNK_SIZE) {
+            final List<OtpErlangObject> chunk = source.read(from, from + CHUNK_SIZE);
+            synchronized (this) {
+                for (final OtpErlangObject message : chunk) {
+                    add(message);
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds one message; anything that is not a call, return or message trace is
+     * ignored.
+     */
+    public synchronized void add(final OtpErlangObject message) {
+        if (!(message instanceof OtpErlangTuple)) {
+            return;
+        }
+        final OtpErlangTuple tuple = (OtpErlangTuple) message;
+        if (tuple.arity() < 5 || !isAtom(tuple.elementAt(0), TRACE_TS)
+                || !(tuple.elementAt(INDEX_TRACE_TYPE) instanceof OtpErlangAtom)) {
+            return;
+        }
+        events++;
+        final String type = ((OtpErlangAtom) tuple.elementAt(INDEX_TRACE_TYPE))
+                .atomValue();
+        final OtpErlangObject process = processKey(tuple.elementAt(INDEX_PROCESS));
+        try {
+            switch (type) {
+            case "call":
+                call(process, tuple);
+                break;
+            case "return_from":
+            case "exception_from":
+                returnFrom(process, tuple);
+                break;
+            case "send":
+            case "send_to_non_existing_process":
+                processStats(process).sent++;
+                break;
+            case "receive":
+                processStats(process).received++;
+                break;
+            default:
+                break;
+            }
+        } catch (final OtpErlangRangeException e) {
+            // not a trace we understand
+        }
+    }
+
+    private void call(final OtpErlangObject process, final OtpErlangTuple tuple)
+            throws OtpErlangRangeException {
+        final CallStats stats = callStats(tuple.elementAt(INDEX_FUNCTION));
+        if (stats == null) {
+            return;
+        }
+        stats.calls++;
+        final long time = timestamp(tuple.elementAt(tuple.arity() - 1));
+        if (time < 0) {
+            return;
+        }
+        Deque<Frame> stack = stacks.get(process);
+        if (stack == null) {
+            stack = new ArrayDeque<>();
+            stacks.put(process, stack);
+        } else if (stack.size() == MAX_STACK_DEPTH) {
+            stack.removeLast();
+        }
+        stack.push(new Frame(stats, time));
+    }
+
+    private void returnFrom(final OtpErlangObject process, final OtpErlangTuple tuple) {
+        final Deque<Frame> stack = stacks.get(process);
+        final long time = timestamp(tuple.elementAt(tuple.arity() - 1));
+        if (stack == null || time < 0
+                || !(tuple.elementAt(INDEX_FUNCTION) instanceof OtpErlangTuple)) {
+            return;
+        }
+        final OtpErlangTuple mfa = (OtpErlangTuple) tuple.elementAt(INDEX_FUNCTION);
+        if (mfa.arity() != 3) {
+            return;
+        }
+        // the innermost call of the same function; frames above it are calls whose
+        // return wasn't traced. Arities aren't compared, as the arguments of calls
+        // loaded by the tracer node don't always match the arity of their returns.
+        Frame frame = null;
+        for (final Iterator<Frame> it = stack.iterator(); it.hasNext();) {
+            final Frame f = it.next();
+            if (isAtom(mfa.elementAt(0), f.stats.getModule())
+                    && isAtom(mfa.elementAt(1), f.stats.getFunction())) {
+                frame = f;
+                break;
+            }
+        }
+        if (frame == null) {
+            return;
+        }
+        while (stack.pop() != frame) {
+            // drop
+        }
+        final CallStats stats = frame.stats;
+        final long inclusive = Math.max(0, time - frame.start);
+        stats.inclusiveTime += inclusive;
+        stats.exclusiveTime += Math.max(0, inclusive - frame.childTime);
+        stats.latency.record(inclusive);
+        final Frame caller = stack.peek();
+        if (caller != null) {
+            caller.childTime += inclusive;
+        }
+        if (stack.isEmpty()) {
+            stacks.remove(process);
+        }
+    }
+
+    private CallStats callStats(final OtpErlangObject function)
+            throws OtpErlangRangeException {
+        if (!(function instanceof OtpErlangTuple)) {
+            return null;
+        }
+        final OtpErlangTuple mfa = (OtpErlangTuple) function;
+        if (mfa.arity() != 3 || !(mfa.elementAt(0) instanceof OtpErlangAtom)
+                || !(mfa.elementAt(1) instanceof OtpErlangAtom)) {
+            return null;
+        }
+        final String module = ((OtpErlangAtom) mfa.elementAt(0)).atomValue();
+        final String name = ((OtpErlangAtom) mfa.elementAt(1)).atomValue();
+        final OtpErlangObject args = mfa.elementAt(2);
+        final int arity;
+        if (args instanceof OtpErlangLong) {
+            arity = ((OtpErlangLong) args).intValue();
+        } else if (args instanceof OtpErlangList) {
+            arity = ((OtpErlangList) args).arity();
+        } else {
+            return null;
+        }
+        final FunctionKey key = new FunctionKey(module, name, arity);
+        CallStats stats = functions.get(key);
+        if (stats == null) {
+            stats = new CallStats(module, name, arity);
+            functions.put(key, stats);
+        }
+        return stats;
+    }
+
+    private ProcessStats processStats(final OtpErlangObject process) {
+        ProcessStats stats = processes.get(process);
+        if (stats == null) {
+            stats = new ProcessStats(process);
+            processes.put(process, stats);
+        }
+        return stats;
+    }
+
+    /**
+     * Processes are described either by a pid, or by
+     * <code>{Pid, InitialCall | RegisteredName, Node}</code> or
+     * <code>{RegisteredName, Node}</code> in traces loaded by the tracer node.
+     */
+    private static OtpErlangObject processKey(final OtpErlangObject process) {
+        if (process instanceof OtpErlangTuple) {
+            final OtpErlangTuple tuple = (OtpErlangTuple) process;
+            if (tuple.arity() == 3 && tuple.elementAt(0) instanceof OtpErlangPid) {
+                return tuple.elementAt(0);
+            }
+        }
+        return process;
+    }
+
+    /**
+     * @return microseconds since the epoch, or -1 if timestamp isn't
+     *         <code>{MegaSecs, Secs, MicroSecs}</code> or
+     *         <code>{{Year, Month, Day}, {Hour, Minute, Second}}</code>
+     */
+    static long timestamp(final OtpErlangObject timestamp) {
+        if (!(timestamp instanceof OtpErlangTuple)) {
+            return -1;
+        }
+        final OtpErlangTuple tuple = (OtpErlangTuple) timestamp;
+        if (tuple.arity() == 3) {
+            final long mega = longValue(tuple.elementAt(0));
+            final long secs = longValue(tuple.elementAt(1));
+            final long micros = longValue(tuple.elementAt(2));
+            if (mega < 0 || secs < 0 || micros < 0) {
+                return -1;
+            }
+            return (mega * 1000000 + secs) * 1000000 + micros;
+        }
+        if (tuple.arity() == 2 && tuple.elementAt(0) instanceof OtpErlangTuple
+                && tuple.elementAt(1) instanceof OtpErlangTuple) {
+            final OtpErlangTuple date = (OtpErlangTuple) tuple.elementAt(0);
+            final OtpErlangTuple time = (OtpErlangTuple) tuple.elementAt(1);
+            if (date.arity() != 3 || time.arity() != 3) {
+                return -1;
+            }
+            final long days = daysFromCivil(longValue(date.elementAt(0)),
+                    longValue(date.elementAt(1)), longValue(date.elementAt(2)));
+            final long secs = ((days * 24 + longValue(time.elementAt(0))) * 60
+                    + longValue(time.elementAt(1))) * 60 + longValue(time.elementAt(2));
+            return secs * 1000000;
+        }
+        return -1;
+    }
+
+    private static long longValue(final OtpErlangObject object) {
+        return object instanceof OtpErlangLong ? ((OtpErlangLong) object).longValue()
+                : -1;
+    }
+
+    /**
+     * Days between 1970-01-01 and the given date of the proleptic Gregorian
+     * calendar; only differences matter here, so the time zone is irrelevant.
+     */
+    private static long daysFromCivil(final long year, final long month,
+            final long day) {
+        final long y = month <= 2 ? year - 1 : year;
+        final long era = Math.floorDiv(y, 400);
+        final long yoe = y - era * 400;
+        final long doy = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        final long doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+        return era * 146097 + doe - 719468;
+    }
+
+    private static boolean isAtom(final OtpErlangObject object, final String value) {
+        return object instanceof OtpErlangAtom
+                && ((OtpErlangAtom) object).atomValue().equals(value);
+    }
+
+    /**
+     * @return number of trace messages added so far
+     */
+    public synchronized long getEventCount() {
+        return events;
+    }
+
+    /**
+     * @return a snapshot of the statistics of all functions called so far
+     */
+    public synchronized List<CallStats> getCallStats() {
+        final List<CallStats> result = new ArrayList<>(functions.size());
+        for (final CallStats stats : functions.values()) {
+            result.add(new CallStats(stats));
+        }
+        return result;
+    }
+
+    /**
+     * @return a snapshot of the message counts of all processes that sent or
+     *         received messages so far
+     */
+    public synchronized List<ProcessStats> getProcessStats() {
+        final List<ProcessStats> result = new ArrayList<>(processes.size());
+        for (final ProcessStats stats : processes.values()) {
+            result.add(new ProcessStats(stats));
+        }
+        return result;
+    }
+
+    public synchronized void clear() {
+        functions.clear();
+        processes.clear();
+        stacks.clear();
+        events = 0;
+    }
+}
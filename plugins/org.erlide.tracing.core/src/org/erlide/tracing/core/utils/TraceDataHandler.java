@@ -203,8 +203,8 @@ public class TraceDataHandler {
     }
 
     /**
-     * Converts tuple representing date and time (<code>{date(), time()}</code>)
-     * to java {@link Date} object.
+     * Converts tuple representing date and time (<code>{date(), time()}</code>
+     * or <code>{MegaSecs, Secs, MicroSecs}</code>) to java {@link Date} object.
      *
      * @param tuple
      *            date tuple
@@ -213,6 +213,14 @@ public class TraceDataHandler {
      */
     private Date readDateTuple(final OtpErlangTuple tuple)
             throws OtpErlangRangeException {
+        if (tuple.elementAt(0) instanceof OtpErlangLong) {
+            // raw trace files have erlang:now() timestamps:
+            // {MegaSecs, Secs, MicroSecs}
+            final long mega = ((OtpErlangLong) tuple.elementAt(0)).longValue();
+            final long secs = ((OtpErlangLong) tuple.elementAt(1)).longValue();
+            final long micros = ((OtpErlangLong) tuple.elementAt(2)).longValue();
+            return new Date((mega * 1000000 + secs) * 1000 + micros / 1000);
+        }
         final OtpErlangTuple dateTuple = (OtpErlangTuple) tuple.elementAt(0);
         final OtpErlangTuple timeTuple = (OtpErlangTuple) tuple.elementAt(1);
 
@@ -0,0 +1,127 @@
+package org.erlide.tracing.core.utils;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.ericsson.otp.erlang.OtpErlangDecodeException;
+import com.ericsson.otp.erlang.OtpErlangObject;
+import com.ericsson.otp.erlang.OtpInputStream;
+import com.ericsson.otp.erlang.OtpOutputStream;
+
+/**
+ * Append-only log of trace events kept on disk.
+ *
+ * <p>
+ * Events are stored back to back in Erlang external format in a temporary file; the
+ * only thing kept in memory is the offset of each event, so a log of millions of events
+ * costs a few megabytes of heap. A range of events is read back with a single read and
+ * decoded on demand, which is what the tree viewer needs to show one page.
+ * </p>
+ *
+ * <p>
+ * Appending and reading may happen on different threads.
+ * </p>
+ */
+public class TraceEventLog implements ITraceEventSource {
+
+    private final File file;
+    private final OutputStream out;
+    private final RandomAccessFile in;
+    // offsets[i] is where event i starts, offsets[size] is the end of the data
+    private long[] offsets = new long[1024];
+    private int size;
+    private boolean dirty;
+    private boolean disposed;
+
+    public TraceEventLog() throws IOException {
+        file = File.createTempFile("erlide_trace", ".bin");
+        file.deleteOnExit();
+        final FileOutputStream fileOut = new FileOutputStream(file);
+        try {
+            in = new RandomAccessFile(file, "r");
+        } catch (final IOException e) {
+            fileOut.close();
+            file.delete();
+            throw e;
+        }
+        out = new BufferedOutputStream(fileOut, 64 * 1024);
+    }
+
+    /**
+     * Appends event to the end of the log. Does nothing if the log was disposed.
+     */
+    public synchronized void append(final OtpErlangObject event) throws IOException {
+        if (disposed) {
+            return;
+        }
+        final OtpOutputStream buf = OtpOutputStream.acquire();
+        try {
+            buf.write_any(event);
+            buf.writeTo(out);
+            if (size + 1 == offsets.length) {
+                offsets = Arrays.copyOf(offsets, offsets.length * 2);
+            }
+            offsets[size + 1] = offsets[size] + buf.size();
+            size++;
+            dirty = true;
+        } finally {
+            buf.release();
+        }
+    }
+
+    @Override
+    public synchronized int size() {
+        return size;
+    }
+
+    @Override
+    public synchronized List<OtpErlangObject> read(final int from, final int to)
+            throws IOException {
+        final int start = Math.max(0, from);
+        final int end = Math.min(size, to);
+        final List<OtpErlangObject> result = new ArrayList<>(Math.max(0, end - start));
+        if (start >= end || disposed) {
+            return result;
+        }
+        if (dirty) {
+            out.flush();
+            dirty = false;
+        }
+        final byte[] data = new byte[(int) (offsets[end] - offsets[start])];
+        in.seek(offsets[start]);
+        in.readFully(data);
+        final OtpInputStream stream = new OtpInputStream(data);
+        try {
+            for (int i = start; i < end; i++) {
+                result.add(stream.read_any());
+            }
+        } catch (final OtpErlangDecodeException e) {
+            throw new IOException(e);
+        }
+        return result;
+    }
+
+    /**
+     * Closes the log and deletes its file.
+     */
+    public synchronized void dispose() {
+        if (disposed) {
+            return;
+        }
+        disposed = true;
+        try {
+            out.close();
+            in.close();
+        } catch (final IOException e) {
+            // we're deleting it anyway
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,233 @@
+package org.erlide.tracing.core.utils;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.ericsson.otp.erlang.OtpErlangAtom;
+import com.ericsson.otp.erlang.OtpErlangDecodeException;
+import com.ericsson.otp.erlang.OtpErlangLong;
+import com.ericsson.otp.erlang.OtpErlangObject;
+import com.ericsson.otp.erlang.OtpErlangTuple;
+import com.ericsson.otp.erlang.OtpInputStream;
+
+/**
+ * Random access reader for trace files written by the <code>file</code> trace port
+ * (which is what <code>ttb</code> uses), so that pages of a trace can be shown without
+ * asking a tracer node to replay them.
+ *
+ * <p>
+ * The file is a sequence of entries, each either
+ * <code>&lt;&lt;0, Size:32, Term:Size/binary&gt;&gt;</code> for a trace message in
+ * external format, or <code>&lt;&lt;1, Dropped:32&gt;&gt;</code> when the port had to
+ * drop messages; the latter are returned as <code>{drop, Dropped}</code>. The file is
+ * memory mapped and its entries are indexed once, when the reader is created, by walking
+ * the headers; terms are only decoded when a range of them is read.
+ * </p>
+ *
+ * <p>
+ * Files larger than 2 GB are mapped as several regions, each holding whole entries.
+ * The regions are unmapped by {@link #close()}, instead of whenever the garbage
+ * collector gets to them; reading from a closed reader fails.
+ * </p>
+ */
+public class TraceFileReader implements ITraceEventSource, Closeable {
+
+    private static final int TAG_TRACE = 0;
+    private static final int TAG_DROP = 1;
+    private static final int HEADER_SIZE = 5;
+    private static final long MAX_REGION = Integer.MAX_VALUE;
+    private static final OtpErlangAtom DROP = new OtpErlangAtom("drop");
+
+    private final RandomAccessFile file;
+    private final MappedByteBuffer[] regions;
+    // reads hold the read lock, so that close can't unmap a region being read
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private boolean closed;
+    // where each entry starts: its region and the offset of its header in the region
+    private final int[] entryRegion;
+    private final int[] entryOffset;
+    private final int size;
+
+    public TraceFileReader(final File path) throws IOException {
+        this(path, MAX_REGION);
+    }
+
+    /**
+     * @param maxRegion
+     *            largest region to map, smaller than 2 GB only for testing
+     */
+    TraceFileReader(final File path, final long maxRegion) throws IOException {
+        file = new RandomAccessFile(path, "r");
+        final List<MappedByteBuffer> mapped = new ArrayList<>();
+        try {
+            final FileChannel channel = file.getChannel();
+            final long length = channel.size();
+            int[] regionOf = new int[1024];
+            int[] offsetOf = new int[1024];
+            int n = 0;
+            long regionStart = 0;
+            while (regionStart < length) {
+                final long regionLength = Math.min(maxRegion, length - regionStart);
+                final MappedByteBuffer region = channel.map(MapMode.READ_ONLY,
+                        regionStart, regionLength);
+                final int regionIndex = mapped.size();
+                mapped.add(region);
+                int pos = 0;
+                while (pos < regionLength) {
+                    final int entryLength = entryLength(region, pos, regionLength);
+                    if (entryLength < 0) {
+                        break;
+                    }
+                    if (n == regionOf.length) {
+                        regionOf = Arrays.copyOf(regionOf, n * 2);
+                        offsetOf = Arrays.copyOf(offsetOf, n * 2);
+                    }
+                    regionOf[n] = regionIndex;
+                    offsetOf[n] = pos;
+                    n++;
+                    pos += entryLength;
+                }
+                if (pos == 0) {
+                    // not even one entry fits: truncated or corrupt file
+                    break;
+                }
+                regionStart += pos;
+            }
+            regions = mapped.toArray(new MappedByteBuffer[mapped.size()]);
+            entryRegion = regionOf;
+            entryOffset = offsetOf;
+            size = n;
+        } catch (final IOException e) {
+            for (final MappedByteBuffer region : mapped) {
+                unmap(region);
+            }
+            file.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the length of the entry at pos, or -1 if it doesn't fit in the region
+     */
+    private static int entryLength(final MappedByteBuffer region, final int pos,
+            final long regionLength) throws IOException {
+        if (pos + HEADER_SIZE > regionLength) {
+            return -1;
+        }
+        final int tag = region.get(pos);
+        if (tag == TAG_DROP) {
+            return HEADER_SIZE;
+        }
+        if (tag != TAG_TRACE) {
+            throw new IOException("not a trace file: bad tag " + tag + " at " + pos);
+        }
+        final long termLength = region.getInt(pos + 1) & 0xffffffffL;
+        if (pos + HEADER_SIZE + termLength > regionLength) {
+            return -1;
+        }
+        return (int) (HEADER_SIZE + termLength);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public List<OtpErlangObject> read(final int from, final int to) throws IOException {
+        final int start = Math.max(0, from);
+        final int end = Math.min(size, to);
+        final List<OtpErlangObject> result = new ArrayList<>(Math.max(0, end - start));
+        lock.readLock().lock();
+        try {
+            if (closed) {
+                throw new IOException("trace file reader is closed");
+            }
+            for (int i = start; i < end; i++) {
+                result.add(read(i));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return result;
+    }
+
+    private OtpErlangObject read(final int i) throws IOException {
+        // absolute gets and duplicates, so concurrent readers don't disturb each other
+        final MappedByteBuffer region = regions[entryRegion[i]];
+        final int pos = entryOffset[i];
+        final long value = region.getInt(pos + 1) & 0xffffffffL;
+        if (region.get(pos) == TAG_DROP) {
+            return new OtpErlangTuple(
+                    new OtpErlangObject[] { DROP, new OtpErlangLong(value) });
+        }
+        final byte[] term = new byte[(int) value];
+        final ByteBuffer buf = region.duplicate();
+        buf.position(pos + HEADER_SIZE);
+        buf.get(term);
+        try {
+            return new OtpInputStream(term).read_any();
+        } catch (final OtpErlangDecodeException e) {
+            throw new IOException("bad term in trace entry " + i, e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            for (final MappedByteBuffer region : regions) {
+                unmap(region);
+            }
+            file.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Releases the memory and the file handle held by a mapped buffer right away;
+     * there is no public API for it. If that isn't possible, this is left to the
+     * garbage collector.
+     */
+    private static void unmap(final MappedByteBuffer buffer) {
+        try {
+            try {
+                // Java 9 and later
+                final Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+                final Method invokeCleaner = unsafeClass.getMethod("invokeCleaner",
+                        ByteBuffer.class);
+                final Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+                theUnsafe.setAccessible(true);
+                invokeCleaner.invoke(theUnsafe.get(null), buffer);
+            } catch (final NoSuchMethodException e) {
+                // Java 8
+                final Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                final Object cleaner = cleanerMethod.invoke(buffer);
+                if (cleaner != null) {
+                    cleaner.getClass().getMethod("clean").invoke(cleaner);
+                }
+            }
+        } catch (final Exception e) {
+            // the buffer stays mapped until it is collected
+        }
+    }
+}
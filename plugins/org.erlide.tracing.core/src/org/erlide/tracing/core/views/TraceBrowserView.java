@@ -1,11 +1,19 @@
 package org.erlide.tracing.core.views;
 
+import java.lang.reflect.InvocationTargetException;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
 import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.debug.ui.DebugUITools;
 import org.eclipse.debug.ui.IDebugUIConstants;
 import org.eclipse.jface.action.Action;
 import org.eclipse.jface.action.IToolBarManager;
+import org.eclipse.jface.dialogs.MessageDialog;
 import org.eclipse.jface.dialogs.ProgressMonitorDialog;
+import org.eclipse.jface.operation.IRunnableWithProgress;
 import org.eclipse.jface.viewers.ISelectionChangedListener;
 import org.eclipse.jface.viewers.IStructuredSelection;
 import org.eclipse.jface.viewers.SelectionChangedEvent;
@@ -31,6 +39,9 @@ import org.erlide.tracing.core.mvc.view.TreeContentProvider;
 import org.erlide.tracing.core.mvc.view.TreeLabelProvider;
 import org.erlide.tracing.core.preferences.PreferenceNames;
 import org.erlide.tracing.core.ui.dialogs.RunnableWithProgress;
+import org.erlide.tracing.core.utils.CallStats;
+import org.erlide.tracing.core.utils.TraceAggregator;
+import org.erlide.tracing.core.utils.TraceAggregator.ProcessStats;
 import org.erlide.tracing.core.utils.TracingStatusHandler;
 import org.erlide.util.ErlLogger;
 
@@ -46,6 +57,7 @@ public class TraceBrowserView extends ViewPart implements ITraceNodeObserver {
     private Action removeAllAction;
     private Action loadAction;
     private Action removeAction;
+    private Action statisticsAction;
     private RunnableWithProgress task;
     private TracingStatus status;
 
@@ -138,16 +150,28 @@ public class TraceBrowserView extends ViewPart implements ITraceNodeObserver {
                 DebugUITools.getImageDescriptor(IDebugUIConstants.IMG_LCL_REMOVE_ALL));
         removeAllAction.setToolTipText("Remove all");
 
+        statisticsAction = new Action() {
+            @Override
+            public void run() {
+                showStatistics();
+            }
+        };
+        statisticsAction.setImageDescriptor(PlatformUI.getWorkbench().getSharedImages()
+                .getImageDescriptor(ISharedImages.IMG_OBJS_INFO_TSK));
+        statisticsAction.setToolTipText("Show statistics of selected result set");
+
         final IToolBarManager manager = getViewSite().getActionBars().getToolBarManager();
         manager.add(loadAction);
         manager.add(removeAction);
         manager.add(removeAllAction);
+        manager.add(statisticsAction);
     }
 
     private void enableActions(final boolean enabled) {
         loadAction.setEnabled(enabled);
         removeAction.setEnabled(enabled);
         removeAllAction.setEnabled(enabled);
+        statisticsAction.setEnabled(enabled);
         treeViewer.getTree().setEnabled(enabled);
     }
 
@@ -210,6 +234,77 @@ public class TraceBrowserView extends ViewPart implements ITraceNodeObserver {
         }
     }
 
+    /**
+     * Shows the most expensive functions and the busiest processes of the active
+     * result set.
+     */
+    private void showStatistics() {
+        final Shell shell = PlatformUI.getWorkbench().getActiveWorkbenchWindow()
+                .getShell();
+        final TraceAggregator[] statistics = new TraceAggregator[1];
+        try {
+            new ProgressMonitorDialog(shell).run(true, false, new IRunnableWithProgress() {
+                @Override
+                public void run(final IProgressMonitor monitor) {
+                    monitor.beginTask("Computing trace statistics...",
+                            IProgressMonitor.UNKNOWN);
+                    statistics[0] = TraceBackend.getInstance().getStatistics();
+                    monitor.done();
+                }
+            });
+        } catch (final InvocationTargetException e) {
+            ErlLogger.error(e);
+            return;
+        } catch (final InterruptedException e) {
+            return;
+        }
+        if (statistics[0] == null) {
+            MessageDialog.openInformation(shell, "Trace statistics",
+                    "Select a tracing result first.");
+            return;
+        }
+        MessageDialog.openInformation(shell, "Trace statistics",
+                formatStatistics(statistics[0], 20));
+    }
+
+    private static String formatStatistics(final TraceAggregator statistics,
+            final int limit) {
+        final StringBuilder result = new StringBuilder();
+        result.append(statistics.getEventCount()).append(" traces\n");
+
+        final List<CallStats> calls = statistics.getCallStats();
+        Collections.sort(calls, new Comparator<CallStats>() {
+            @Override
+            public int compare(final CallStats a, final CallStats b) {
+                return Long.compare(b.getInclusiveTime(), a.getInclusiveTime());
+            }
+        });
+        if (!calls.isEmpty()) {
+            result.append("\nFunctions (times in microseconds):\n");
+        }
+        for (final CallStats stats : calls.subList(0, Math.min(limit, calls.size()))) {
+            result.append(stats).append('\n');
+        }
+
+        final List<ProcessStats> processes = statistics.getProcessStats();
+        Collections.sort(processes, new Comparator<ProcessStats>() {
+            @Override
+            public int compare(final ProcessStats a, final ProcessStats b) {
+                return Long.compare(b.getSent() + b.getReceived(),
+                        a.getSent() + a.getReceived());
+            }
+        });
+        if (!processes.isEmpty()) {
+            result.append("\nMessages:\n");
+        }
+        for (final ProcessStats stats : processes.subList(0,
+                Math.min(limit, processes.size()))) {
+            result.append(stats.getProcess()).append(" sent=").append(stats.getSent())
+                    .append(" received=").append(stats.getReceived()).append('\n');
+        }
+        return result.toString();
+    }
+
     private void doAfterLoadingFile() {
         if (TracingStatus.OK.equals(status)) {
             treeViewer.refresh();
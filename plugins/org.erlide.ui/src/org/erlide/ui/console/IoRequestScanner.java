@@ -35,7 +35,7 @@ public class IoRequestScanner implements IPartitionTokenScanner {
         docLength = length;
         final IoRequest req = model.findAtPos(docOffset);
         if (req != null) {
-            crtOffset = req.getStart();
+            crtOffset = model.getStart(req);
         } else {
             crtOffset = -1;
         }
@@ -76,7 +76,7 @@ public class IoRequestScanner implements IPartitionTokenScanner {
         docLength = length;
         final IoRequest req = model.findAtPos(docOffset);
         if (req != null) {
-            crtOffset = req.getStart();
+            crtOffset = model.getStart(req);
         } else {
             crtOffset = -1;
         }
@@ -23,6 +23,8 @@ import org.erlide.backend.api.IBackendManager;
 import org.erlide.runtime.shell.BackendShellEvent;
 import org.erlide.runtime.shell.BackendShellListener;
 import org.erlide.runtime.shell.IBackendShell;
+import org.erlide.runtime.shell.IoRequest;
+import org.erlide.runtime.shell.IoRequest.IoRequestKind;
 import org.erlide.ui.actions.SelectionDispatchAction;
 import org.erlide.ui.console.ErlConsoleManager;
 import org.erlide.ui.console.IErlangConsole;
@@ -33,32 +35,45 @@ import org.erlide.util.ErlLogger;
 
 public class SendToConsoleAction extends SelectionDispatchAction {
 
+	/**
+	 * Adds the first output that follows the input it was created for to the editor.
+	 * The output is found by its request, since changes can be batched into fewer
+	 * events.
+	 */
 	private final class ConsoleBackendShellListener implements BackendShellListener {
 
 		private final int offset;
-		private int counter;
 		private final IBackendShell shell;
+		// the last request before the input, or null if there was none
+		private final IoRequest before;
+		private boolean done;
 
 		public ConsoleBackendShellListener(final IBackendShell shell, final int offset) {
 			this.shell = shell;
 			this.offset = offset;
-			counter = 0;
+			final int length = shell == null ? 0 : shell.getTextLength();
+			before = length == 0 ? null : shell.findAtPos(length - 1);
 		}
 
 		@Override
 		public void changed(final BackendShellEvent event) {
-			if (shell == null) {
+			if (shell == null || done) {
 				return;
 			}
-			counter++;
-			if (counter != 2) {
-				return;
-			}
-			final String[] messages = shell.getLastMessages(1);
-			if (messages.length == 0) {
-				return;
+			int pos = before == null ? 0 : shell.getStart(before) + before.getLength();
+			while (pos >= 0) {
+				final IoRequest request = shell.findAtPos(pos);
+				if (request == null) {
+					return;
+				}
+				final IoRequestKind kind = request.getKind();
+				if (kind != IoRequestKind.INPUT && kind != IoRequestKind.PROMPT) {
+					done = true;
+					addMessage(offset, request.getMessage());
+					return;
+				}
+				pos = shell.getStart(request) + request.getLength();
 			}
-			addMessage(offset, messages[0]);
 		}
 	}
 
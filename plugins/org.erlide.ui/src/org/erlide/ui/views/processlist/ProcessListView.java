@@ -57,7 +57,6 @@ import com.ericsson.otp.erlang.OtpErlangObject;
 import com.ericsson.otp.erlang.OtpErlangPid;
 import com.ericsson.otp.erlang.OtpErlangString;
 import com.ericsson.otp.erlang.OtpErlangTuple;
-import com.google.common.eventbus.Subscribe;
 
 /**
  *
@@ -125,7 +124,7 @@ public class ProcessListView extends ViewPart {
                 super("processlist");
             }
 
-            @Subscribe
+            @Override
             public void handleEvent(final ErlEvent event) {
                 if (!event.getTopic().equals(getTopic())) {
                     return;
@@ -0,0 +1,185 @@
+/*******************************************************************************
+ * Copyright (c) 2008 Vlad Dumitrescu and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Vlad Dumitrescu
+ *******************************************************************************/
+package org.erlide.util.erlang;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.ericsson.otp.erlang.OtpErlangAtom;
+import com.ericsson.otp.erlang.OtpErlangList;
+import com.ericsson.otp.erlang.OtpErlangLong;
+import com.ericsson.otp.erlang.OtpErlangObject;
+import com.ericsson.otp.erlang.OtpErlangString;
+import com.ericsson.otp.erlang.OtpErlangTuple;
+
+/**
+ * A signature compiled into a chain of encoders, one per argument, so that converting
+ * the arguments of a call doesn't have to walk the {@link Signature} tree and the
+ * <code>instanceof</code> chain of {@link TypeConverter} every time.
+ *
+ * <p>
+ * The encoders handle the values that are usually passed for each type (strings for
+ * <code>s</code> and <code>a</code>, integers for <code>i</code>, collections for
+ * <code>l</code> and so on) and leave everything else to
+ * {@link TypeConverter#java2erlang(Object, Signature)}, so the results are the same.
+ * Compiled signatures are cached and can be shared between threads.
+ * </p>
+ */
+public final class CompiledSignature {
+
+    private static final ConcurrentMap<String, CompiledSignature> CACHE = new ConcurrentHashMap<>();
+
+    private static final OtpErlangAtom TRUE = new OtpErlangAtom("true");
+    private static final OtpErlangAtom FALSE = new OtpErlangAtom("false");
+
+    private interface Encoder {
+        OtpErlangObject encode(Object obj) throws SignatureException;
+    }
+
+    private final String signature;
+    private final Encoder[] encoders;
+
+    private CompiledSignature(final String signature, final Signature[] types) {
+        this.signature = signature;
+        encoders = new Encoder[types.length];
+        for (int i = 0; i < types.length; i++) {
+            encoders[i] = compile(types[i]);
+        }
+    }
+
+    /**
+     * @return the compiled form of signature, or null if signature is null.
+     */
+    public static CompiledSignature of(final String signature) throws SignatureException {
+        if (signature == null) {
+            return null;
+        }
+        if (!Signature.isUseCache()) {
+            return new CompiledSignature(signature, Signature.parse(signature));
+        }
+        CompiledSignature result = CACHE.get(signature);
+        if (result == null) {
+            result = new CompiledSignature(signature, Signature.parse(signature));
+            final CompiledSignature old = CACHE.putIfAbsent(signature, result);
+            if (old != null) {
+                result = old;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the number of arguments described by this signature.
+     */
+    public int arity() {
+        return encoders.length;
+    }
+
+    /**
+     * Converts the i-th argument to an Erlang term.
+     */
+    public OtpErlangObject encode(final int i, final Object arg) throws SignatureException {
+        return encoders[i].encode(arg);
+    }
+
+    /**
+     * Converts all arguments to Erlang terms.
+     */
+    public OtpErlangObject[] encode(final Object... args) throws SignatureException {
+        if (args.length != encoders.length) {
+            throw new SignatureException("Signature doesn't match parameter number: "
+                    + encoders.length + "/" + args.length);
+        }
+        final OtpErlangObject[] result = new OtpErlangObject[args.length];
+        for (int i = 0; i < args.length; i++) {
+            result[i] = encoders[i].encode(args[i]);
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return signature;
+    }
+
+    private static Encoder compile(final Signature type) {
+        final Encoder generic = obj -> TypeConverter.java2erlang(obj, type);
+        switch (type.kind) {
+        case 's':
+            return obj -> obj instanceof String ? new OtpErlangString((String) obj)
+                    : generic.encode(obj);
+        case 'a':
+            return obj -> obj instanceof String ? OtpErlangAtom.valueOf((String) obj)
+                    : generic.encode(obj);
+        case 'i':
+            return obj -> obj instanceof Integer || obj instanceof Long
+                    ? new OtpErlangLong(((Number) obj).longValue())
+                    : generic.encode(obj);
+        case 'o':
+            return obj -> {
+                if (obj instanceof Boolean) {
+                    return ((Boolean) obj).booleanValue() ? TRUE : FALSE;
+                }
+                return generic.encode(obj);
+            };
+        case 'l':
+            return compileList(type, generic);
+        case 't':
+            return compileTuple(type, generic);
+        default:
+            return generic;
+        }
+    }
+
+    private static Encoder compileList(final Signature type, final Encoder generic) {
+        final Encoder element = compile(type.content[0]);
+        return obj -> {
+            if (obj instanceof Collection<?>) {
+                final Collection<?> c = (Collection<?>) obj;
+                final OtpErlangObject[] items = new OtpErlangObject[c.size()];
+                final Iterator<?> it = c.iterator();
+                for (int i = 0; i < items.length; i++) {
+                    items[i] = element.encode(it.next());
+                }
+                return new OtpErlangList(items);
+            }
+            if (obj instanceof Object[]) {
+                final Object[] a = (Object[]) obj;
+                final OtpErlangObject[] items = new OtpErlangObject[a.length];
+                for (int i = 0; i < a.length; i++) {
+                    items[i] = element.encode(a[i]);
+                }
+                return new OtpErlangList(items);
+            }
+            return generic.encode(obj);
+        };
+    }
+
+    private static Encoder compileTuple(final Signature type, final Encoder generic) {
+        final Encoder[] elements = new Encoder[type.content.length];
+        for (int i = 0; i < elements.length; i++) {
+            elements[i] = compile(type.content[i]);
+        }
+        return obj -> {
+            if (obj instanceof Object[] && ((Object[]) obj).length == elements.length) {
+                final Object[] a = (Object[]) obj;
+                final OtpErlangObject[] items = new OtpErlangObject[a.length];
+                for (int i = 0; i < a.length; i++) {
+                    items[i] = elements[i].encode(a[i]);
+                }
+                return new OtpErlangTuple(items);
+            }
+            return generic.encode(obj);
+        };
+    }
+}
@@ -5,6 +5,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
 
 import com.ericsson.otp.erlang.OtpErlangAtom;
 import com.ericsson.otp.erlang.OtpErlangBinary;
@@ -14,6 +15,9 @@ import com.ericsson.otp.erlang.OtpErlangObject;
 import com.ericsson.otp.erlang.OtpErlangString;
 import com.ericsson.otp.erlang.OtpErlangTuple;
 import com.ericsson.otp.erlang.OtpOutputStream;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
 import com.google.common.collect.Lists;
 
 public class OtpErlang {
@@ -82,9 +86,28 @@ public class OtpErlang {
         return match(parse(pattern), parse(term), new OtpBindings());
     }
 
+    private static final LoadingCache<String, OtpPattern> PATTERNS = CacheBuilder
+            .newBuilder().maximumSize(250).build(new CacheLoader<String, OtpPattern>() {
+                @Override
+                public OtpPattern load(final String key) throws OtpParserException {
+                    return OtpPattern.compile(key);
+                }
+            });
+
+    /**
+     * @return the compiled pattern, from a cache of the recently used ones.
+     */
+    public static OtpPattern pattern(final String pattern) throws OtpParserException {
+        try {
+            return PATTERNS.get(pattern);
+        } catch (final ExecutionException e) {
+            throw (OtpParserException) e.getCause();
+        }
+    }
+
     public static OtpBindings match(final String pattern, final OtpErlangObject term)
             throws OtpParserException {
-        return match(parse(pattern), term, new OtpBindings());
+        return pattern(pattern).bind(term);
     }
 
     public static OtpBindings match(final String pattern, final String term,
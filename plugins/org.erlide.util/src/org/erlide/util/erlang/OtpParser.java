@@ -12,9 +12,10 @@ package org.erlide.util.erlang;
 import java.io.IOException;
 import java.io.StreamTokenizer;
 import java.io.StringReader;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
-import java.util.Stack;
 
 import org.erlide.util.ErlLogger;
 
@@ -28,6 +29,17 @@ import com.ericsson.otp.erlang.OtpErlangString;
 import com.ericsson.otp.erlang.OtpErlangTuple;
 import com.google.common.base.Strings;
 
+/**
+ * Parses the textual representation of Erlang terms, extended with pattern variables
+ * and format placeholders.
+ *
+ * <p>
+ * Tokens are scanned in one pass over the string and consumed through an index, and
+ * nested lists, tuples and maps are kept on an explicit stack, so parsing time is
+ * linear in the size of the input and deeply nested terms don't need a deep call
+ * stack. Only the first term in the string is parsed.
+ * </p>
+ */
 public class OtpParser {
 
     public OtpErlangObject parse(final String s) throws OtpParserException {
@@ -38,144 +50,250 @@ public class OtpParser {
         if (Strings.isNullOrEmpty(s)) {
             return null;
         }
-        return parse(scan(s));
+        return new Parser(scan(s)).parse();
     }
 
-    private static OtpErlangObject parse(final List<Token> tokens)
-            throws OtpParserException {
-        if (tokens.isEmpty()) {
-            return null;
-        }
-        OtpErlangObject result = null;
-        final Token t = tokens.remove(0);
-        final String text = t.text;
-        if (text == null) {
-            throw new OtpParserException("null token" + t.toString());
-        }
-        switch (t.kind) {
-        case ATOM:
-            result = new OtpErlangAtom(text);
-            break;
-        case VARIABLE:
-            result = new OtpPatternVariable(text);
-            break;
-        case STRING:
-            result = new OtpErlangString(text);
-            break;
-        case INTEGER:
-            result = new OtpErlangLong(Long.parseLong(text));
-            break;
-        case PLACEHOLDER:
-            result = new OtpFormatPlaceholder(text);
-            break;
-        case TUPLESTART:
-            result = parseTuple(tokens, new Stack<OtpErlangObject>());
-            break;
-        case TUPLEEND:
-            throw new OtpParserException("unexpected " + t.toString());
-        case LISTSTART:
-            result = parseList(tokens, new Stack<OtpErlangObject>(), null);
-            break;
-        case LISTEND:
-            throw new OtpParserException("unexpected " + t.toString());
-        case MAP:
-            result = parseMap(tokens, new Stack<OtpErlangObject>());
-            break;
-        case COMMA:
-            throw new OtpParserException("unexpected " + t.toString());
-        default:
-            throw new OtpParserException("unknown token" + t.toString());
+    private static enum FrameKind {
+        TUPLE, LIST, MAP;
+    }
+
+    /** A tuple, list or map being parsed. */
+    private static class Frame {
+        final FrameKind kind;
+        final List<OtpErlangObject> elements = new ArrayList<>();
+        OtpErlangObject tail;
+        // lists: the next term is the tail; maps: the next term is a value
+        boolean second;
+
+        Frame(final FrameKind kind) {
+            this.kind = kind;
         }
-        return result;
     }
 
-    private static OtpErlangObject parseList(final List<Token> tokens,
-            final Stack<OtpErlangObject> stack, final OtpErlangObject tail)
-            throws OtpParserException {
-        if (tokens.isEmpty()) {
-            return null;
+    private static enum Step {
+        // read a term
+        TERM,
+        // at the start of an element of the innermost tuple, list or map
+        OPEN,
+        // a term is complete, give it to the innermost tuple, list or map
+        DONE;
+    }
+
+    private static class Parser {
+        private final List<Token> tokens;
+        private int pos;
+        private final Deque<Frame> stack = new ArrayDeque<>();
+        // the last complete term
+        private OtpErlangObject value;
+
+        Parser(final List<Token> tokens) {
+            this.tokens = tokens;
         }
-        final Token t = tokens.get(0);
-        if (t.kind == TokenKind.LISTEND) {
-            tokens.remove(0);
-            try {
-                return new OtpErlangList(stack.toArray(new OtpErlangObject[stack.size()]),
-                        tail);
-            } catch (final OtpErlangException e) {
-                ErlLogger.error(e);
-                // can't happen
-                return null;
-            }
+
+        private boolean atEnd() {
+            return pos >= tokens.size();
         }
-        OtpErlangObject atail = tail;
-        if (t.kind == TokenKind.CONS) {
-            tokens.remove(0);
-            atail = parse(tokens);
-        } else {
-            stack.push(parse(tokens));
-            if (tokens.get(0).kind == TokenKind.COMMA) {
-                tokens.remove(0);
-            } else if (tokens.get(0).kind != TokenKind.LISTEND
-                    && tokens.get(0).kind != TokenKind.CONS) {
-                throw new OtpParserException("missing comma in list");
+
+        private TokenKind peek() throws OtpParserException {
+            if (atEnd()) {
+                throw new OtpParserException("unexpected end of input");
             }
+            return tokens.get(pos).kind;
         }
-        return parseList(tokens, stack, atail);
-    }
 
-    private static OtpErlangObject parseTuple(final List<Token> tokens,
-            final Stack<OtpErlangObject> stack) throws OtpParserException {
-        if (tokens.isEmpty()) {
-            return null;
-        }
-        final Token t = tokens.get(0);
-        if (t.kind == TokenKind.TUPLEEND) {
-            tokens.remove(0);
-            return new OtpErlangTuple(stack.toArray(new OtpErlangObject[stack.size()]));
-        }
-        if (t.kind == TokenKind.CONS) {
-            throw new OtpParserException("cons is invalid in tuple");
+        OtpErlangObject parse() throws OtpParserException {
+            Step step = Step.TERM;
+            while (true) {
+                switch (step) {
+                case TERM:
+                    step = term();
+                    break;
+                case OPEN:
+                    step = open(stack.peek());
+                    break;
+                case DONE:
+                    if (stack.isEmpty()) {
+                        return value;
+                    }
+                    step = add(stack.peek());
+                    break;
+                default:
+                    throw new IllegalStateException();
+                }
+            }
         }
-        stack.push(parse(tokens));
-        if (tokens.get(0).kind == TokenKind.COMMA) {
-            tokens.remove(0);
-        } else if (tokens.get(0).kind != TokenKind.TUPLEEND) {
-            throw new OtpParserException("missing comma in tuple");
+
+        private Step term() throws OtpParserException {
+            if (atEnd()) {
+                value = null;
+                return Step.DONE;
+            }
+            final Token t = tokens.get(pos++);
+            final FrameKind kind = frameKind(t.kind);
+            if (kind != null) {
+                stack.push(new Frame(kind));
+                return Step.OPEN;
+            }
+            value = scalar(t);
+            return Step.DONE;
         }
-        return parseTuple(tokens, stack);
-    }
 
-    private static OtpErlangObject parseMap(final List<Token> tokens,
-            final Stack<OtpErlangObject> stack) throws OtpParserException {
-        if (tokens.isEmpty()) {
-            return null;
+        private static FrameKind frameKind(final TokenKind kind) {
+            switch (kind) {
+            case TUPLESTART:
+                return FrameKind.TUPLE;
+            case LISTSTART:
+                return FrameKind.LIST;
+            case MAP:
+                return FrameKind.MAP;
+            default:
+                return null;
+            }
         }
-        final Token t = tokens.get(0);
-        if (t.kind == TokenKind.TUPLEEND) {
-            tokens.remove(0);
-            final int size = stack.size();
-            final OtpErlangObject[] all = stack.toArray(new OtpErlangObject[size]);
-            final OtpErlangObject[] keys = new OtpErlangObject[size / 2];
-            final OtpErlangObject[] values = new OtpErlangObject[size / 2];
-            for (int i = 0; i < size / 2; i++) {
-                keys[i] = all[i * 2];
-                values[i] = all[i * 2 + 1];
+
+        private static OtpErlangObject scalar(final Token t) throws OtpParserException {
+            final String text = t.text;
+            if (text == null) {
+                throw new OtpParserException("null token" + t.toString());
+            }
+            switch (t.kind) {
+            case ATOM:
+                return new OtpErlangAtom(text);
+            case VARIABLE:
+                return new OtpPatternVariable(text);
+            case STRING:
+                return new OtpErlangString(text);
+            case INTEGER:
+                return new OtpErlangLong(Long.parseLong(text));
+            case PLACEHOLDER:
+                return new OtpFormatPlaceholder(text);
+            case TUPLEEND:
+            case LISTEND:
+            case COMMA:
+                throw new OtpParserException("unexpected " + t.toString());
+            default:
+                throw new OtpParserException("unknown token" + t.toString());
             }
-            return new OtpErlangMap(keys, values);
         }
-        stack.push(parse(tokens));
-        if (tokens.get(0).kind != TokenKind.ARROW) {
-            throw new OtpParserException("badly constructed map");
+
+        /**
+         * Look at the token starting the next element of the frame: either the frame
+         * is closed and becomes the value, or the element is to be parsed.
+         */
+        private Step open(final Frame frame) throws OtpParserException {
+            if (atEnd()) {
+                stack.pop();
+                value = null;
+                return Step.DONE;
+            }
+            final TokenKind kind = tokens.get(pos).kind;
+            switch (frame.kind) {
+            case TUPLE:
+                if (kind == TokenKind.TUPLEEND) {
+                    pos++;
+                    stack.pop();
+                    value = new OtpErlangTuple(toArray(frame.elements));
+                    return Step.DONE;
+                }
+                if (kind == TokenKind.CONS) {
+                    throw new OtpParserException("cons is invalid in tuple");
+                }
+                return Step.TERM;
+            case LIST:
+                if (kind == TokenKind.LISTEND) {
+                    pos++;
+                    stack.pop();
+                    try {
+                        value = new OtpErlangList(toArray(frame.elements), frame.tail);
+                    } catch (final OtpErlangException e) {
+                        ErlLogger.error(e);
+                        // can't happen
+                        value = null;
+                    }
+                    return Step.DONE;
+                }
+                if (kind == TokenKind.CONS) {
+                    pos++;
+                    frame.second = true;
+                }
+                return Step.TERM;
+            case MAP:
+                if (kind == TokenKind.TUPLEEND) {
+                    pos++;
+                    stack.pop();
+                    final int size = frame.elements.size() / 2;
+                    final OtpErlangObject[] keys = new OtpErlangObject[size];
+                    final OtpErlangObject[] values = new OtpErlangObject[size];
+                    for (int i = 0; i < size; i++) {
+                        keys[i] = frame.elements.get(i * 2);
+                        values[i] = frame.elements.get(i * 2 + 1);
+                    }
+                    value = new OtpErlangMap(keys, values);
+                    return Step.DONE;
+                }
+                return Step.TERM;
+            default:
+                throw new IllegalStateException();
+            }
         }
-        tokens.remove(0);
-        stack.push(parse(tokens));
-        if (tokens.get(0).kind == TokenKind.COMMA) {
-            tokens.remove(0);
-        } else if (tokens.get(0).kind != TokenKind.TUPLEEND) {
-            throw new OtpParserException("missing comma in map");
+
+        /**
+         * Add a complete term to the frame and consume the separator after it.
+         */
+        private Step add(final Frame frame) throws OtpParserException {
+            switch (frame.kind) {
+            case TUPLE: {
+                frame.elements.add(value);
+                final TokenKind kind = peek();
+                if (kind == TokenKind.COMMA) {
+                    pos++;
+                } else if (kind != TokenKind.TUPLEEND) {
+                    throw new OtpParserException("missing comma in tuple");
+                }
+                return Step.OPEN;
+            }
+            case LIST: {
+                if (frame.second) {
+                    frame.tail = value;
+                    frame.second = false;
+                    return Step.OPEN;
+                }
+                frame.elements.add(value);
+                final TokenKind kind = peek();
+                if (kind == TokenKind.COMMA) {
+                    pos++;
+                } else if (kind != TokenKind.LISTEND && kind != TokenKind.CONS) {
+                    throw new OtpParserException("missing comma in list");
+                }
+                return Step.OPEN;
+            }
+            case MAP: {
+                frame.elements.add(value);
+                if (!frame.second) {
+                    if (peek() != TokenKind.ARROW) {
+                        throw new OtpParserException("badly constructed map");
+                    }
+                    pos++;
+                    frame.second = true;
+                    return Step.TERM;
+                }
+                frame.second = false;
+                final TokenKind kind = peek();
+                if (kind == TokenKind.COMMA) {
+                    pos++;
+                } else if (kind != TokenKind.TUPLEEND) {
+                    throw new OtpParserException("missing comma in map");
+                }
+                return Step.OPEN;
+            }
+            default:
+                throw new IllegalStateException();
+            }
         }
 
-        return parseMap(tokens, stack);
+        private static OtpErlangObject[] toArray(final List<OtpErlangObject> elements) {
+            return elements.toArray(new OtpErlangObject[elements.size()]);
+        }
     }
 
     private static enum TokenKind {
@@ -194,13 +312,16 @@ public class OtpParser {
             return "<" + kind.toString() + ": !" + text + "!>";
         }
 
-        public static Token nextToken(final String s) {
-            if (s == null || s.length() == 0) {
+        /**
+         * Scan the token starting at or after position from.
+         */
+        public static Token nextToken(final String s, final int from) {
+            if (s == null || s.length() <= from) {
                 return null;
             }
             final Token result = new Token();
             char c;
-            int i = 0;
+            int i = from;
             do {
                 c = s.charAt(i++);
                 if (i >= s.length()) {
@@ -333,13 +454,12 @@ public class OtpParser {
     }
 
     private static List<Token> scan(final String s) {
-        String ss = s + " ";
+        final String ss = s + " ";
         final List<Token> result = new ArrayList<>();
-        Token t = Token.nextToken(ss);
+        Token t = Token.nextToken(ss, 0);
         while (t != null) {
             result.add(t);
-            ss = ss.substring(t.end);
-            t = Token.nextToken(ss);
+            t = Token.nextToken(ss, t.end);
         }
         return result;
     }
@@ -0,0 +1,304 @@
+/*******************************************************************************
+ * Copyright (c) 2008 Vlad Dumitrescu and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Vlad Dumitrescu
+ *******************************************************************************/
+package org.erlide.util.erlang;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.ericsson.otp.erlang.OtpErlangList;
+import com.ericsson.otp.erlang.OtpErlangObject;
+import com.ericsson.otp.erlang.OtpErlangTuple;
+
+/**
+ * A pattern compiled once and matched many times, with the same semantics as
+ * {@link OtpErlang#match(OtpErlangObject, OtpErlangObject)}.
+ *
+ * <p>
+ * Each variable gets a slot, numbered in the order the variables first appear in the
+ * pattern (<code>_</code> gets none). {@link #match(OtpErlangObject, OtpErlangObject[])}
+ * binds into an array of slots supplied by the caller, so matching doesn't allocate;
+ * the array can be reused for any number of matches but not shared between threads.
+ * The pattern itself is immutable and can be shared.
+ * </p>
+ *
+ * <pre>
+ * static final OtpPattern PUT_CHARS = OtpPattern.of("{put_chars, Enc:a, Chars}");
+ * ...
+ * if (PUT_CHARS.match(request, slots)) {
+ *     // slots[0] is Enc, slots[1] is Chars
+ * }
+ * </pre>
+ */
+public final class OtpPattern {
+
+    private abstract static class Node {
+        abstract boolean match(OtpErlangObject term, OtpErlangObject[] slots);
+    }
+
+    private static final class VarNode extends Node {
+        private final int slot;
+        private final Signature signature;
+
+        VarNode(final int slot, final Signature signature) {
+            this.slot = slot;
+            this.signature = signature;
+        }
+
+        @Override
+        boolean match(final OtpErlangObject term, final OtpErlangObject[] slots) {
+            if (term == null || !TypeConverter.doesMatchSignature(term, signature)) {
+                return false;
+            }
+            if (slot < 0) {
+                return true;
+            }
+            final OtpErlangObject old = slots[slot];
+            if (old == null) {
+                slots[slot] = term;
+                return true;
+            }
+            return old.equals(term);
+        }
+    }
+
+    private static final class NullNode extends Node {
+        @Override
+        boolean match(final OtpErlangObject term, final OtpErlangObject[] slots) {
+            return term == null;
+        }
+    }
+
+    private static final class LiteralNode extends Node {
+        private final OtpErlangObject value;
+
+        LiteralNode(final OtpErlangObject value) {
+            this.value = value;
+        }
+
+        @Override
+        boolean match(final OtpErlangObject term, final OtpErlangObject[] slots) {
+            return term != null && value.getClass() == term.getClass()
+                    && value.equals(term);
+        }
+    }
+
+    private static final class TupleNode extends Node {
+        private final Class<?> cls;
+        private final Node[] elements;
+
+        TupleNode(final Class<?> cls, final Node[] elements) {
+            this.cls = cls;
+            this.elements = elements;
+        }
+
+        @Override
+        boolean match(final OtpErlangObject term, final OtpErlangObject[] slots) {
+            if (term == null || term.getClass() != cls) {
+                return false;
+            }
+            final OtpErlangTuple tuple = (OtpErlangTuple) term;
+            if (tuple.arity() != elements.length) {
+                return false;
+            }
+            for (int i = 0; i < elements.length; i++) {
+                if (!elements[i].match(tuple.elementAt(i), slots)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static final class ListNode extends Node {
+        private final Class<?> cls;
+        private final Node[] elements;
+        private final Node tail;
+        private final boolean proper;
+        private final boolean tailIsVariable;
+
+        ListNode(final Class<?> cls, final Node[] elements, final Node tail,
+                final boolean proper, final boolean tailIsVariable) {
+            this.cls = cls;
+            this.elements = elements;
+            this.tail = tail;
+            this.proper = proper;
+            this.tailIsVariable = tailIsVariable;
+        }
+
+        @Override
+        boolean match(final OtpErlangObject term, final OtpErlangObject[] slots) {
+            if (term == null || term.getClass() != cls) {
+                return false;
+            }
+            final OtpErlangList list = (OtpErlangList) term;
+            final int arity = elements.length;
+            final int termArity = list.arity();
+            if (arity > termArity) {
+                return false;
+            }
+            if (arity < termArity && proper) {
+                return false;
+            }
+            if (arity == termArity && proper != list.isProper()) {
+                return false;
+            }
+            for (int i = 0; i < arity; i++) {
+                if (!elements[i].match(list.elementAt(i), slots)) {
+                    return false;
+                }
+            }
+            if (arity < termArity && tailIsVariable) {
+                return tail.match(list.getNthTail(arity), slots);
+            }
+            return tail.match(list.getLastTail(), slots);
+        }
+    }
+
+    private final String source;
+    private final Node root;
+    private final String[] names;
+
+    private OtpPattern(final String source, final OtpErlangObject pattern) {
+        this.source = source;
+        final List<String> vars = new ArrayList<>();
+        root = compile(pattern, vars);
+        names = vars.toArray(new String[vars.size()]);
+    }
+
+    /**
+     * Compile a pattern written in the syntax accepted by {@link OtpParser}.
+     */
+    public static OtpPattern compile(final String pattern) throws OtpParserException {
+        return new OtpPattern(pattern, OtpErlang.parse(pattern));
+    }
+
+    /**
+     * Compile an already parsed pattern.
+     */
+    public static OtpPattern compile(final OtpErlangObject pattern) {
+        return new OtpPattern(String.valueOf(pattern), pattern);
+    }
+
+    /**
+     * Like {@link #compile(String)}, for patterns that are constants in the code.
+     *
+     * @throws IllegalArgumentException
+     *             if the pattern can't be parsed
+     */
+    public static OtpPattern of(final String pattern) {
+        try {
+            return compile(pattern);
+        } catch (final OtpParserException e) {
+            throw new IllegalArgumentException("bad pattern: " + pattern, e);
+        }
+    }
+
+    /**
+     * @return the number of slots needed to match this pattern.
+     */
+    public int size() {
+        return names.length;
+    }
+
+    /**
+     * @return the slot of the named variable, or -1 if there is no such variable.
+     */
+    public int slot(final String name) {
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return an array large enough to match this pattern.
+     */
+    public OtpErlangObject[] newSlots() {
+        return new OtpErlangObject[names.length];
+    }
+
+    /**
+     * Match term against this pattern. The slots are cleared first; after a successful
+     * match they hold the values of the variables, after a failed match their content
+     * is undefined.
+     */
+    public boolean match(final OtpErlangObject term, final OtpErlangObject[] slots) {
+        if (slots.length < names.length) {
+            throw new IllegalArgumentException("pattern " + source + " needs "
+                    + names.length + " slots, got " + slots.length);
+        }
+        Arrays.fill(slots, 0, names.length, null);
+        return root.match(term, slots);
+    }
+
+    /**
+     * Match term against this pattern.
+     *
+     * @return the bindings of the variables, or null if the term doesn't match.
+     */
+    public OtpBindings bind(final OtpErlangObject term) {
+        final OtpErlangObject[] slots = newSlots();
+        if (!match(term, slots)) {
+            return null;
+        }
+        final OtpBindings result = new OtpBindings();
+        for (int i = 0; i < names.length; i++) {
+            result.put(names[i], slots[i]);
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return source;
+    }
+
+    private static Node compile(final OtpErlangObject pattern, final List<String> vars) {
+        if (pattern == null) {
+            return new NullNode();
+        }
+        if (pattern instanceof OtpPatternVariable) {
+            final OtpPatternVariable var = (OtpPatternVariable) pattern;
+            final String name = var.getName();
+            int slot = -1;
+            if (!"_".equals(name)) {
+                slot = vars.indexOf(name);
+                if (slot < 0) {
+                    slot = vars.size();
+                    vars.add(name);
+                }
+            }
+            return new VarNode(slot, var.getSignature());
+        }
+        if (pattern instanceof OtpErlangTuple) {
+            final OtpErlangTuple tuple = (OtpErlangTuple) pattern;
+            final Node[] elements = new Node[tuple.arity()];
+            for (int i = 0; i < elements.length; i++) {
+                elements[i] = compile(tuple.elementAt(i), vars);
+            }
+            return new TupleNode(pattern.getClass(), elements);
+        }
+        if (pattern instanceof OtpErlangList) {
+            final OtpErlangList list = (OtpErlangList) pattern;
+            final Node[] elements = new Node[list.arity()];
+            for (int i = 0; i < elements.length; i++) {
+                elements[i] = compile(list.elementAt(i), vars);
+            }
+            final OtpErlangObject tail = list.getLastTail();
+            return new ListNode(pattern.getClass(), elements, compile(tail, vars),
+                    list.isProper(), tail instanceof OtpPatternVariable);
+        }
+        return new LiteralNode(pattern);
+    }
+}
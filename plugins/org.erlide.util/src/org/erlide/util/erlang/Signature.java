@@ -11,13 +11,13 @@
 package org.erlide.util.erlang;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 public class Signature {
-    private static final Map<String, Signature[]> CACHE = new HashMap<>();
-    private static boolean useCache = true;
+    private static final ConcurrentMap<String, Signature[]> CACHE = new ConcurrentHashMap<>();
+    private static volatile boolean useCache = true;
 
     public char kind = 'x';
     public Signature[] content = null;
@@ -50,7 +50,7 @@ public class Signature {
         return kind + res.toString();
     }
 
-    public static synchronized Signature[] parse(final String signature)
+    public static Signature[] parse(final String signature)
             throws SignatureException {
         if (signature == null) {
             return null;
@@ -71,7 +71,10 @@ public class Signature {
         }
         result = type.toArray(new Signature[type.size()]);
         if (useCache) {
-            CACHE.put(signature, result);
+            final Signature[] old = CACHE.putIfAbsent(signature, result);
+            if (old != null) {
+                return old;
+            }
         }
         return result;
     }
@@ -113,4 +116,8 @@ public class Signature {
         useCache = use;
     }
 
+    static boolean isUseCache() {
+        return useCache;
+    }
+
 }
@@ -10,7 +10,11 @@
  *******************************************************************************/
 package org.erlide.util.erlang;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Array;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.math.BigInteger;
 import java.util.Arrays;
@@ -80,6 +84,31 @@ public final class TypeConverter {
     private static final String CANT_CONVERT_TO = ", can't convert to ";
     private static final String WRONG_ARG_TYPE = "wrong arg type ";
 
+    private static final MethodHandle NO_CONVERTER = MethodHandles.constant(Object.class,
+            null);
+    /**
+     * The <code>fromErlangObject</code> method of each class, looked up once. Classes
+     * without one map to {@link #NO_CONVERTER}.
+     */
+    private static final ClassValue<MethodHandle> CONVERTERS = new ClassValue<MethodHandle>() {
+        @Override
+        protected MethodHandle computeValue(final Class<?> cls) {
+            try {
+                final Method method = cls.getMethod("fromErlangObject",
+                        new Class<?>[] { OtpErlangObject.class });
+                method.setAccessible(true);
+                return MethodHandles.lookup().unreflect(method)
+                        .asType(MethodType.methodType(Object.class, OtpErlangObject.class));
+            } catch (final NoSuchMethodException e) {
+                return NO_CONVERTER;
+            } catch (final Exception e) {
+                ErlLogger.warn("Rpc TypeConverter: can't use %s.fromErlangObject: %s",
+                        cls.getName(), e.getMessage());
+                return NO_CONVERTER;
+            }
+        }
+    };
+
     public static Class<?> getClassByName(final String arg) {
         if ("char".equals(arg)) {
             return char.class;
@@ -162,14 +191,13 @@ public final class TypeConverter {
                 return obj;
             }
             // if the conversion method exists, use it
-            try {
-                final Method method = cls.getMethod("fromErlangObject",
-                        new Class<?>[] { OtpErlangObject.class });
-                method.setAccessible(true);
-                final Object o = method.invoke(null, obj);
-                return o;
-            } catch (final NoSuchMethodException e) {
-                // ignore, continue
+            final MethodHandle converter = CONVERTERS.get(cls);
+            if (converter != NO_CONVERTER) {
+                try {
+                    return converter.invoke(obj);
+                } catch (final Throwable e) {
+                    throw new SignatureException(new InvocationTargetException(e));
+                }
             }
 
             if (cls.isArray()) {
@@ -325,7 +353,7 @@ public final class TypeConverter {
      */
     public static OtpErlangObject java2erlang(final Object obj, final String type)
             throws SignatureException {
-        return java2erlang(obj, Signature.parse(type)[0]);
+        return CompiledSignature.of(type).encode(0, obj);
     }
 
     @SuppressWarnings("boxing")
@@ -498,7 +526,7 @@ public final class TypeConverter {
         if (type.kind == 's') {
             return new OtpErlangString((String) obj);
         } else if (type.kind == 'a') {
-            return new OtpErlangAtom((String) obj);
+            return OtpErlangAtom.valueOf((String) obj);
         } else if (type.kind == 'b') {
             return new OtpErlangBinary(((String) obj).getBytes());
         } else {
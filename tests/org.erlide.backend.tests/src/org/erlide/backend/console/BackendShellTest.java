@@ -0,0 +1,95 @@
+package org.erlide.backend.console;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.erlide.runtime.shell.BackendShellEvent;
+import org.erlide.runtime.shell.BackendShellListener;
+import org.erlide.runtime.shell.IoRequest;
+import org.erlide.runtime.shell.IoRequest.IoRequestKind;
+import org.junit.Test;
+
+public class BackendShellTest {
+
+    /**
+     * Applies the events to a string, like the console document does.
+     */
+    private static class DocumentListener implements BackendShellListener {
+        private final StringBuilder text = new StringBuilder();
+        final AtomicInteger events = new AtomicInteger();
+
+        @Override
+        public void changed(final BackendShellEvent event) {
+            synchronized (text) {
+                text.replace(event.getOffset(),
+                        event.getOffset() + event.getRemovedLength(), event.getText());
+            }
+            events.incrementAndGet();
+        }
+
+        String getText() {
+            synchronized (text) {
+                return text.toString();
+            }
+        }
+    }
+
+    private static void awaitText(final BackendShell shell,
+            final DocumentListener listener) throws InterruptedException {
+        final long end = System.currentTimeMillis() + 5000;
+        while (!listener.getText().equals(shell.getText())
+                && System.currentTimeMillis() < end) {
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    public void listenersSeeTheKeptText() throws InterruptedException {
+        final BackendShell shell = new BackendShell(null, "test", null);
+        final DocumentListener listener = new DocumentListener();
+        shell.addListener(listener);
+        for (int i = 0; i < 20000; i++) {
+            shell.add("line " + i + "\n", IoRequestKind.OUTPUT);
+        }
+        awaitText(shell, listener);
+        assertThat(listener.getText()).isEqualTo(shell.getText());
+        assertThat(shell.getText()).startsWith("line 15000\n");
+        assertThat(shell.getText()).endsWith("line 19999\n");
+        assertThat(listener.events.get()).isLessThan(1000);
+    }
+
+    @Test
+    public void lateListenersGetTheKeptText() throws InterruptedException {
+        final BackendShell shell = new BackendShell(null, "test", null);
+        for (int i = 0; i < 6000; i++) {
+            shell.add("line " + i + "\n", IoRequestKind.OUTPUT);
+        }
+        final DocumentListener listener = new DocumentListener();
+        shell.addListener(listener);
+        for (int i = 6000; i < 7000; i++) {
+            shell.add("line " + i + "\n", IoRequestKind.OUTPUT);
+        }
+        awaitText(shell, listener);
+        assertThat(listener.getText()).isEqualTo(shell.getText());
+        assertThat(shell.getText()).startsWith("line 2000\n");
+    }
+
+    @Test
+    public void requestsAreFoundByOffset() {
+        final BackendShell shell = new BackendShell(null, "test", null);
+        for (int i = 0; i < 6000; i++) {
+            shell.add("line " + i + "\n", IoRequestKind.OUTPUT);
+        }
+        final String text = shell.getText();
+        assertThat(shell.getTextLength()).isEqualTo(text.length());
+        final int offset = text.indexOf("line 3000\n") + 3;
+        final IoRequest request = shell.findAtPos(offset);
+        assertThat(request.getMessage()).isEqualTo("line 3000\n");
+        assertThat(shell.getStart(request)).isEqualTo(offset - 3);
+        assertThat(shell.findAtPos(0).getMessage()).isEqualTo("line 1000\n");
+        assertThat(shell.findAtPos(text.length())).isNull();
+        assertThat(shell.getLastMessages(2)).asList()
+                .containsExactly("line 5998\n", "line 5999\n").inOrder();
+    }
+}
@@ -0,0 +1,210 @@
+package org.erlide.engine.model.erlang;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.erlide.engine.internal.model.erlang.ErlAttribute;
+import org.erlide.engine.model.ErlElementKind;
+import org.erlide.engine.model.ErlModelException;
+import org.erlide.engine.model.IErlElement;
+import org.erlide.engine.model.IErlElement.AcceptFlags;
+import org.erlide.engine.model.IErlElementVisitor;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Element children are read without locking while other threads replace them.
+ */
+public class ElementChildrenConcurrencyTest {
+
+    private static final int CHILDREN = 50;
+    private static final int READERS = 4;
+
+    private static List<IErlElement> generation(final ErlAttribute parent,
+            final int gen) {
+        final List<IErlElement> result = Lists.newArrayListWithCapacity(CHILDREN);
+        for (int i = 0; i < CHILDREN; i++) {
+            result.add(new ErlAttribute(parent, "g" + gen + "_" + i, null, null));
+        }
+        return result;
+    }
+
+    private static String generationOf(final IErlElement element) {
+        final String name = element.getName();
+        return name.substring(0, name.indexOf('_'));
+    }
+
+    /**
+     * Readers only ever see a complete set of children, all from one call to
+     * setChildren.
+     */
+    private static void checkSnapshot(final List<IErlElement> children) {
+        if (children.isEmpty()) {
+            return;
+        }
+        assertEquals(CHILDREN, children.size());
+        final String gen = generationOf(children.get(0));
+        for (final IErlElement child : children) {
+            assertEquals(gen, generationOf(child));
+        }
+    }
+
+    private static long run(final ErlAttribute parent, final long millis)
+            throws Exception {
+        final AtomicBoolean stop = new AtomicBoolean();
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final AtomicLong reads = new AtomicLong();
+
+        final Runnable writer = new Runnable() {
+            @Override
+            public void run() {
+                int gen = 0;
+                while (!stop.get()) {
+                    parent.setChildren(generation(parent, gen++));
+                }
+            }
+        };
+        final Runnable adder = new Runnable() {
+            @Override
+            public void run() {
+                // mixes in the other write operations, on an element of its own
+                final ErlAttribute other = new ErlAttribute(parent, "other", null, null);
+                while (!stop.get()) {
+                    final IErlElement child = new ErlAttribute(other, "x_0", null,
+                            null);
+                    other.addChild(child);
+                    other.removeChild(child);
+                }
+            }
+        };
+        final IErlElementVisitor visitor = new IErlElementVisitor() {
+            @Override
+            public boolean visit(final IErlElement element) throws ErlModelException {
+                return true;
+            }
+        };
+        final Runnable reader = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    while (!stop.get()) {
+                        final List<IErlElement> children = parent.getChildren();
+                        checkSnapshot(children);
+                        if (!children.isEmpty()) {
+                            parent.getChildNamed(children.get(CHILDREN - 1).getName());
+                        }
+                        parent.hasChildrenOfKind(ErlElementKind.ATTRIBUTE);
+                        parent.accept(visitor, EnumSet.noneOf(AcceptFlags.class),
+                                ErlElementKind.FUNCTION);
+                        reads.incrementAndGet();
+                    }
+                } catch (final Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            }
+        };
+
+        final List<Thread> threads = Lists.newArrayList();
+        threads.add(new Thread(writer));
+        threads.add(new Thread(adder));
+        for (int i = 0; i < READERS; i++) {
+            threads.add(new Thread(reader));
+        }
+        for (final Thread thread : threads) {
+            thread.start();
+        }
+        Thread.sleep(millis);
+        stop.set(true);
+        for (final Thread thread : threads) {
+            thread.join(10000);
+            assertTrue(!thread.isAlive());
+        }
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+        return reads.get();
+    }
+
+    @Test
+    public void readersSeeConsistentChildren() throws Exception {
+        final ErlAttribute parent = new ErlAttribute(null, "parent", null, null);
+        final long reads = run(parent, 1000);
+        assertTrue(reads > 0);
+        checkSnapshot(parent.getChildren());
+    }
+
+    /**
+     * Iterating the children doesn't fail while a child is added and removed on the same
+     * element, and the list being iterated doesn't change under the reader.
+     */
+    @Test
+    public void iteratingChildrenWhileTheyChange() throws Exception {
+        final ErlAttribute parent = new ErlAttribute(null, "parent", null, null);
+        parent.setChildren(generation(parent, 0));
+        final IErlElement extra = new ErlAttribute(parent, "extra_0", null, null);
+        final AtomicBoolean stop = new AtomicBoolean();
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final AtomicLong sawExtra = new AtomicLong();
+
+        final Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (!stop.get()) {
+                    parent.addChild(extra);
+                    parent.removeChild(extra);
+                }
+            }
+        });
+        final Runnable reader = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    while (!stop.get()) {
+                        final List<IErlElement> children = parent.getChildren();
+                        final int size = children.size();
+                        int n = 0;
+                        for (final IErlElement child : children) {
+                            if (n < CHILDREN) {
+                                assertEquals("g0_" + n, child.getName());
+                            } else {
+                                assertEquals(extra, child);
+                                sawExtra.incrementAndGet();
+                            }
+                            n++;
+                        }
+                        assertEquals(size, n);
+                        assertTrue(n == CHILDREN || n == CHILDREN + 1);
+                    }
+                } catch (final Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            }
+        };
+
+        final List<Thread> threads = Lists.newArrayList(writer);
+        for (int i = 0; i < READERS; i++) {
+            threads.add(new Thread(reader));
+        }
+        for (final Thread thread : threads) {
+            thread.start();
+        }
+        Thread.sleep(1000);
+        stop.set(true);
+        for (final Thread thread : threads) {
+            thread.join(10000);
+            assertTrue(!thread.isAlive());
+        }
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+        assertTrue(sawExtra.get() > 0);
+        assertEquals(CHILDREN, parent.getChildren().size());
+    }
+}
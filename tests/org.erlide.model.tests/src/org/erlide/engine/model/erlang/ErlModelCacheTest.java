@@ -1,13 +1,20 @@
 package org.erlide.engine.model.erlang;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 import java.io.File;
+import java.util.List;
 
 import org.eclipse.core.runtime.CoreException;
 import org.erlide.engine.ErlangEngine;
+import org.erlide.engine.internal.model.root.ErlModule;
 import org.erlide.engine.internal.model.root.ErlProject;
+import org.erlide.engine.internal.services.parsing.ErlParser;
+import org.erlide.engine.model.IErlElement;
 import org.erlide.engine.model.root.IErlElementLocator;
 import org.erlide.engine.model.root.IErlModule;
 import org.erlide.engine.model.root.IErlProject;
@@ -18,6 +25,8 @@ import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import com.google.common.base.Charsets;
+
 public class ErlModelCacheTest {
 
     @BeforeClass
@@ -136,4 +145,141 @@ public class ErlModelCacheTest {
         }
     }
 
+    @Test
+    public void checkThatIndexFollowsModuleChanges() throws CoreException {
+        IErlProject project = null;
+        try {
+            // given
+            // a project with a module that was looked up, so that the index for
+            // the project is built
+            project = ErlideTestUtils.createErlProject("testprojectidx");
+            final IErlModule a = ErlideTestUtils.createModule(project, "idxa.erl",
+                    "-module(idxa).\n");
+            final IErlModule h = ErlideTestUtils.createInclude(project, "idxh.hrl",
+                    "-define(A, a).\n");
+            final IErlElementLocator model = ErlangEngine.getInstance().getModel();
+            assertEquals(a, model.findModuleFromProject(project, "idxa", null,
+                    IErlElementLocator.Scope.PROJECT_ONLY));
+            // when
+            // adding a module and deleting the first one
+            final IErlModule b = ErlideTestUtils.createModule(project, "idxb.erl",
+                    "-module(idxb).\n");
+            ErlideTestUtils.deleteModule(a);
+            // then
+            // lookups by name and path see the changes
+            assertEquals(b, model.findModuleFromProject(project, "idxb", null,
+                    IErlElementLocator.Scope.PROJECT_ONLY));
+            assertEquals(b, model.findModuleFromProject(project, null, b.getFilePath(),
+                    IErlElementLocator.Scope.PROJECT_ONLY));
+            assertNull(model.findModuleFromProject(project, "idxa", null,
+                    IErlElementLocator.Scope.PROJECT_ONLY));
+            assertEquals(h, model.findIncludeFromProject(project, "idxh.hrl", null,
+                    IErlElementLocator.Scope.PROJECT_ONLY));
+        } finally {
+            if (project != null && project.exists()) {
+                ErlideTestUtils.deleteProject(project);
+            }
+        }
+    }
+
+    @Test
+    public void checkThatDisposedModuleIsStillIndexed() throws CoreException {
+        IErlProject project = null;
+        try {
+            // given
+            // a project with a module and an include that were looked up, so that
+            // the index for the project is built
+            project = ErlideTestUtils.createErlProject("testprojectidxdisp");
+            final IErlModule a = ErlideTestUtils.createModule(project, "idxd.erl",
+                    "-module(idxd).\n");
+            final IErlModule h = ErlideTestUtils.createInclude(project, "idxdh.hrl",
+                    "-define(A, a).\n");
+            final IErlElementLocator model = ErlangEngine.getInstance().getModel();
+            assertEquals(a, model.findModuleFromProject(project, "idxd", null,
+                    IErlElementLocator.Scope.PROJECT_ONLY));
+            assertEquals(h, model.findIncludeFromProject(project, "idxdh.hrl", null,
+                    IErlElementLocator.Scope.PROJECT_ONLY));
+            // when
+            // disposing them, as closing their editors does, without deleting
+            // their files
+            a.dispose();
+            h.dispose();
+            // then
+            // they are still found
+            assertEquals(a, model.findModuleFromProject(project, "idxd", null,
+                    IErlElementLocator.Scope.PROJECT_ONLY));
+            assertEquals(a, model.findModuleFromProject(project, null, a.getFilePath(),
+                    IErlElementLocator.Scope.PROJECT_ONLY));
+            assertEquals(h, model.findIncludeFromProject(project, "idxdh.hrl", null,
+                    IErlElementLocator.Scope.PROJECT_ONLY));
+        } finally {
+            if (project != null && project.exists()) {
+                ErlideTestUtils.deleteProject(project);
+            }
+        }
+    }
+
+    @Test
+    public void checkThatModuleStructureIsRestoredFromDisk() throws CoreException {
+        IErlProject project = null;
+        try {
+            // given
+            // a module that was parsed, with a comment and a syntax error
+            project = ErlideTestUtils.createErlProject("testprojectdisk");
+            final String text = "-module(dsk).\n-export([f/0]).\n-record(r, {a}).\n"
+                    + "%% f\nf() ->\n    ok.\ng( ->\n    ok.\n";
+            final IErlModule module = ErlideTestUtils.createModule(project, "dsk.erl",
+                    text);
+            module.open(null);
+            // when
+            // building another module for the same file and text
+            final IErlModule copy = new ErlModule(module.getParent(), "dsk.erl",
+                    module.getFilePath(), Charsets.UTF_8, text);
+            // then
+            // it gets the same structure, from the disk cache
+            assertTrue(ErlParser.restore(copy, module.getFilePath(), text));
+            final List<IErlElement> children = module.getChildren();
+            final List<IErlElement> restored = copy.getChildren();
+            assertEquals(children.size(), restored.size());
+            for (int i = 0; i < children.size(); i++) {
+                assertEquals(children.get(i).getKind(), restored.get(i).getKind());
+                assertEquals(children.get(i).getName(), restored.get(i).getName());
+            }
+            assertEquals(module.getComments().size(), copy.getComments().size());
+            assertFalse(ErlParser.restore(copy, module.getFilePath(), text + "\n"));
+        } finally {
+            if (project != null && project.exists()) {
+                ErlideTestUtils.deleteProject(project);
+            }
+        }
+    }
+
+    @Test
+    public void checkThatDeletedModuleIsRemovedFromDisk() throws CoreException {
+        IErlProject project = null;
+        try {
+            // given
+            // a module that was parsed
+            project = ErlideTestUtils.createErlProject("testprojectdiskdel");
+            final String text = "-module(dskdel).\nf() ->\n    ok.\n";
+            final IErlModule module = ErlideTestUtils.createModule(project,
+                    "dskdel.erl", text);
+            module.open(null);
+            final String path = module.getFilePath();
+            final IErlModule copy = new ErlModule(module.getParent(), "dskdel.erl", path,
+                    Charsets.UTF_8, text);
+            assertTrue(ErlParser.restore(copy, path, text));
+            // when
+            // its file is deleted
+            module.getResource().delete(true, null);
+            // then
+            // nothing is restored for it anymore
+            assertFalse(ErlParser.restore(copy, path, text));
+        } finally {
+            if (project != null && project.exists()) {
+                ErlideTestUtils.deleteProject(project);
+            }
+        }
+    }
+
 }
@@ -63,6 +63,34 @@ public class IErlModuleTest extends ErlModelTestBase {
         assertTrue(element3 instanceof IErlFunction);
     }
 
+    @Test
+    public void getElementAtInLargeModule() throws Exception {
+        final StringBuilder text = new StringBuilder("-module(big).\n");
+        for (int i = 0; i < 2000; i++) {
+            text.append("f").append(i).append("(X) ->\n    X + ").append(i)
+                    .append(".\n");
+        }
+        final IErlModule bigModule = ErlideTestUtils.createModule(project, "big.erl",
+                text.toString());
+        bigModule.open(null);
+        final int offset = text.indexOf("f1234(X)") + 3;
+        final IErlElement element = bigModule.getElementAt(offset);
+        final IErlElement element2 = bigModule.getElementAtLine(2 * 1234 + 2);
+        final IErlElement element3 = bigModule.getElementAt(text.length() + 100);
+        assertEquals("f1234", functionName(element));
+        assertEquals("f1234", functionName(element2));
+        assertNull(element3);
+    }
+
+    private static String functionName(final IErlElement element) {
+        assertNotNull(element);
+        if (element instanceof IErlFunctionClause) {
+            return ((IErlFunctionClause) element).getFunctionName();
+        }
+        assertTrue(element instanceof IErlFunction);
+        return element.getName();
+    }
+
     // ModuleKind getModuleKind();
     @Test
     public void getModuleKind() throws Exception {
@@ -241,6 +269,57 @@ public class IErlModuleTest extends ErlModelTestBase {
         assertEquals(0, dependentModules.size());
     }
 
+    @Test
+    public void dependentModulesFollowModuleChanges() throws Exception {
+        final IErlModule include = ErlideTestUtils.createInclude(project, "yy.hrl",
+                "-define(A, hej).\n");
+        module.open(null);
+        final Set<ISourceUnit> dependents = include.getAllDependentModules();
+        final IErlModule module2 = ErlideTestUtils.createModule(project, "ww.erl",
+                "-module(ww).\n-include(\"yy.hrl\").\n");
+        final Set<ISourceUnit> dependents2 = include.getAllDependentModules();
+        ErlideTestUtils.deleteModule(module2);
+        final Set<ISourceUnit> dependents3 = include.getDirectDependentModules();
+        assertEquals(1, dependents.size());
+        assertEquals(2, dependents2.size());
+        assertTrue(dependents2.contains(module2));
+        assertEquals(1, dependents3.size());
+        assertEquals(module, dependents3.iterator().next());
+    }
+
+    @Test
+    public void dependentModulesSurviveDispose() throws Exception {
+        final IErlModule include = ErlideTestUtils.createInclude(project, "yy.hrl",
+                "-define(A, hej).\n");
+        module.open(null);
+        final Set<ISourceUnit> dependents = include.getDirectDependentModules();
+        // as when its editor is closed
+        module.dispose();
+        final Set<ISourceUnit> dependents2 = include.getDirectDependentModules();
+        final Set<ISourceUnit> allDependents2 = include.getAllDependentModules();
+        assertEquals(1, dependents.size());
+        assertEquals(dependents, dependents2);
+        assertEquals(dependents, allDependents2);
+    }
+
+    @Test
+    public void dependentModulesOnlyIncludeTheResolvedFile() throws Exception {
+        final IErlModule include = ErlideTestUtils.createInclude(project, "yy.hrl",
+                "-define(A, hej).\n");
+        // same name, but the include directory is searched first
+        final IErlModule localInclude = ErlideTestUtils.createModule(project, "yy.hrl",
+                "-define(A, nej).\n");
+        module.open(null);
+        final Set<ISourceUnit> directDependents = include.getDirectDependentModules();
+        final Set<ISourceUnit> directDependents2 = localInclude
+                .getDirectDependentModules();
+        final Set<ISourceUnit> allDependents2 = localInclude.getAllDependentModules();
+        assertEquals(1, directDependents.size());
+        assertEquals(module, directDependents.iterator().next());
+        assertEquals(0, directDependents2.size());
+        assertEquals(0, allDependents2.size());
+    }
+
     // void resetAndCacheScannerAndParser(String newText) throws
     // ErlModelException;
 
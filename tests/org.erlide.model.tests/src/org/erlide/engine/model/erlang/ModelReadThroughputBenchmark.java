@@ -0,0 +1,110 @@
+package org.erlide.engine.model.erlang;
+
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.erlide.engine.internal.model.erlang.ErlAttribute;
+import org.erlide.engine.model.ErlElementKind;
+import org.erlide.engine.model.ErlModelException;
+import org.erlide.engine.model.IErlElement;
+import org.erlide.engine.model.IErlElement.AcceptFlags;
+import org.erlide.engine.model.IErlElementVisitor;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Measures how many reads of an element's children per second a number of threads get
+ * done, alone and while another thread keeps replacing the children. It is not a test:
+ * timings depend on the machine, so run it by hand, with the highest reader count and
+ * the seconds per measurement as optional arguments.
+ */
+public class ModelReadThroughputBenchmark {
+
+    private static final int CHILDREN = 50;
+
+    public static void main(final String[] args) throws Exception {
+        final int maxReaders = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        final long millis = args.length > 1 ? Long.parseLong(args[1]) * 1000 : 2000;
+        // warm up the JIT
+        run(maxReaders, true, millis);
+        for (int readers = 1; readers <= maxReaders; readers *= 2) {
+            System.out.printf("%d reader(s): %,d reads/s alone, %,d reads/s while "
+                    + "writing%n", readers, run(readers, false, millis) * 1000 / millis,
+                    run(readers, true, millis) * 1000 / millis);
+        }
+    }
+
+    private static List<IErlElement> generation(final ErlAttribute parent,
+            final int gen) {
+        final List<IErlElement> result = Lists.newArrayListWithCapacity(CHILDREN);
+        for (int i = 0; i < CHILDREN; i++) {
+            result.add(new ErlAttribute(parent, "g" + gen + "_" + i, null, null));
+        }
+        return result;
+    }
+
+    /**
+     * @return the number of reads done by all readers together
+     */
+    private static long run(final int readers, final boolean writing, final long millis)
+            throws InterruptedException {
+        final ErlAttribute parent = new ErlAttribute(null, "parent", null, null);
+        parent.setChildren(generation(parent, 0));
+        final AtomicBoolean stop = new AtomicBoolean();
+        final AtomicLong reads = new AtomicLong();
+
+        final Runnable writer = new Runnable() {
+            @Override
+            public void run() {
+                int gen = 1;
+                while (!stop.get()) {
+                    parent.setChildren(generation(parent, gen++));
+                }
+            }
+        };
+        final IErlElementVisitor visitor = new IErlElementVisitor() {
+            @Override
+            public boolean visit(final IErlElement element) throws ErlModelException {
+                return true;
+            }
+        };
+        final Runnable reader = new Runnable() {
+            @Override
+            public void run() {
+                long n = 0;
+                try {
+                    while (!stop.get()) {
+                        final List<IErlElement> children = parent.getChildren();
+                        parent.getChildNamed(children.get(CHILDREN - 1).getName());
+                        parent.hasChildrenOfKind(ErlElementKind.ATTRIBUTE);
+                        parent.accept(visitor, EnumSet.noneOf(AcceptFlags.class),
+                                ErlElementKind.FUNCTION);
+                        n++;
+                    }
+                } catch (final ErlModelException e) {
+                    throw new IllegalStateException(e);
+                }
+                reads.addAndGet(n);
+            }
+        };
+
+        final List<Thread> threads = Lists.newArrayList();
+        if (writing) {
+            threads.add(new Thread(writer));
+        }
+        for (int i = 0; i < readers; i++) {
+            threads.add(new Thread(reader));
+        }
+        for (final Thread thread : threads) {
+            thread.start();
+        }
+        Thread.sleep(millis);
+        stop.set(true);
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        return reads.get();
+    }
+}
@@ -0,0 +1,138 @@
+package com.ericson.erlang;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.ericsson.otp.erlang.GenericQueue;
+import com.ericsson.otp.erlang.LockFreeQueue;
+
+public class LockFreeQueueTest {
+
+    private static final int PRODUCERS = 8;
+    private static final int ITEMS = 20000;
+
+    @Test
+    public void keepsFifoOrder() {
+        final GenericQueue q = new LockFreeQueue();
+        for (int i = 0; i < 100; i++) {
+            q.put(i);
+        }
+        assertEquals(100, q.getCount());
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i, q.get());
+        }
+        assertNull(q.tryGet());
+        assertEquals(0, q.getCount());
+    }
+
+    @Test
+    public void getTimesOut() {
+        final GenericQueue q = new LockFreeQueue();
+        final long start = System.currentTimeMillis();
+        try {
+            q.get(50);
+            fail("expected timeout");
+        } catch (final InterruptedException e) {
+        }
+        assertTrue(System.currentTimeMillis() - start >= 45);
+    }
+
+    @Test
+    public void blockedGetIsWoken() throws Exception {
+        final GenericQueue q = new LockFreeQueue();
+        final Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(50);
+                } catch (final InterruptedException e) {
+                }
+                q.put("hello");
+            }
+        });
+        producer.start();
+        assertEquals("hello", q.get(5000));
+        producer.join();
+    }
+
+    @Test
+    public void manyProducersOneConsumer() throws Exception {
+        stress(new LockFreeQueue(), 1);
+    }
+
+    @Test
+    public void manyProducersManyConsumers() throws Exception {
+        stress(new LockFreeQueue(), 4);
+    }
+
+    private void stress(final GenericQueue q, final int consumers) throws Exception {
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicInteger received = new AtomicInteger();
+        final AtomicInteger errors = new AtomicInteger();
+        final Thread[] threads = new Thread[PRODUCERS + consumers];
+
+        for (int p = 0; p < PRODUCERS; p++) {
+            final int producer = p;
+            threads[p] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    await(start);
+                    for (int i = 0; i < ITEMS; i++) {
+                        q.put(new int[] { producer, i });
+                    }
+                }
+            });
+        }
+        final int total = PRODUCERS * ITEMS;
+        for (int c = 0; c < consumers; c++) {
+            threads[PRODUCERS + c] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    await(start);
+                    // with a single consumer, items of each producer must arrive in order
+                    final int[] last = new int[PRODUCERS];
+                    for (int i = 0; i < PRODUCERS; i++) {
+                        last[i] = -1;
+                    }
+                    while (received.get() < total) {
+                        final int[] item;
+                        try {
+                            item = (int[]) q.get(100);
+                        } catch (final InterruptedException e) {
+                            continue;
+                        }
+                        received.incrementAndGet();
+                        if (item[1] <= last[item[0]]) {
+                            errors.incrementAndGet();
+                        }
+                        last[item[0]] = item[1];
+                    }
+                }
+            });
+        }
+        for (final Thread t : threads) {
+            t.start();
+        }
+        start.countDown();
+        for (final Thread t : threads) {
+            t.join(60000);
+        }
+        assertEquals(total, received.get());
+        assertEquals(0, errors.get());
+        assertNull(q.tryGet());
+    }
+
+    private static void await(final CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (final InterruptedException e) {
+        }
+    }
+}
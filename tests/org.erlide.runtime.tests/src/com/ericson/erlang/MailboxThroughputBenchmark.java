@@ -0,0 +1,85 @@
+package com.ericson.erlang;
+
+import java.util.concurrent.CountDownLatch;
+
+import com.ericsson.otp.erlang.GenericQueue;
+import com.ericsson.otp.erlang.LockFreeQueue;
+
+/**
+ * Compares how many messages per second a mailbox queue moves from several producers to
+ * one consumer, for the old synchronized queue and the lock-free one. It is not a test:
+ * timings depend on the machine, so run it by hand, with the producer count and the
+ * messages per producer as optional arguments.
+ */
+public class MailboxThroughputBenchmark {
+
+    private static final int ROUNDS = 5;
+
+    private interface QueueFactory {
+        GenericQueue create();
+    }
+
+    public static void main(final String[] args) throws Exception {
+        final int producers = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        final int items = args.length > 1 ? Integer.parseInt(args[1]) : 200000;
+        final QueueFactory synchronizedQueue = new QueueFactory() {
+            @Override
+            public GenericQueue create() {
+                return new GenericQueue();
+            }
+        };
+        final QueueFactory lockFreeQueue = new QueueFactory() {
+            @Override
+            public GenericQueue create() {
+                return new LockFreeQueue();
+            }
+        };
+        // the first rounds warm up the JIT, only the last one is reported
+        for (int round = 1; round <= ROUNDS; round++) {
+            final double before = run(synchronizedQueue, producers, items);
+            final double after = run(lockFreeQueue, producers, items);
+            if (round == ROUNDS) {
+                System.out.printf("%d producers x %d messages%n", producers, items);
+                System.out.printf("GenericQueue:  %,.0f msg/s%n", before);
+                System.out.printf("LockFreeQueue: %,.0f msg/s%n", after);
+            }
+        }
+    }
+
+    /**
+     * @return the messages per second that went through the queue
+     */
+    private static double run(final QueueFactory factory, final int producers,
+            final int items) throws InterruptedException {
+        final GenericQueue q = factory.create();
+        final CountDownLatch go = new CountDownLatch(1);
+        final Thread[] threads = new Thread[producers];
+        for (int p = 0; p < producers; p++) {
+            threads[p] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        go.await();
+                    } catch (final InterruptedException e) {
+                        return;
+                    }
+                    for (int i = 0; i < items; i++) {
+                        q.put(i);
+                    }
+                }
+            });
+            threads[p].start();
+        }
+        final long total = (long) producers * items;
+        final long start = System.nanoTime();
+        go.countDown();
+        for (long n = 0; n < total; n++) {
+            q.get();
+        }
+        final long elapsed = System.nanoTime() - start;
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        return total * 1e9 / elapsed;
+    }
+}
@@ -0,0 +1,61 @@
+package com.ericson.erlang;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.ericsson.otp.erlang.OtpAtomCache;
+import com.ericsson.otp.erlang.OtpErlangAtom;
+import com.ericsson.otp.erlang.OtpErlangDecodeException;
+import com.ericsson.otp.erlang.OtpErlangObject;
+import com.ericsson.otp.erlang.OtpErlangTuple;
+import com.ericsson.otp.erlang.OtpInputStream;
+import com.ericsson.otp.erlang.OtpOutputStream;
+
+public class OtpAtomCacheTest {
+
+    private static OtpErlangObject decode(final OtpErlangObject term)
+            throws OtpErlangDecodeException {
+        final byte[] data = new OtpOutputStream(term).toByteArray();
+        return new OtpInputStream(data, 0).read_any();
+    }
+
+    @Test
+    public void decodedAtomsAreShared() throws OtpErlangDecodeException {
+        final OtpErlangTuple t = (OtpErlangTuple) decode(new OtpErlangTuple(
+                new OtpErlangObject[] { new OtpErlangAtom("clause"),
+                        new OtpErlangAtom("clause") }));
+        assertSame(t.elementAt(0), t.elementAt(1));
+        assertSame(t.elementAt(0), decode(new OtpErlangAtom("clause")));
+        assertEquals(new OtpErlangAtom("clause"), t.elementAt(0));
+    }
+
+    @Test
+    public void decodedAndInternedAtomsAreShared() throws OtpErlangDecodeException {
+        final OtpErlangAtom a = OtpErlangAtom.valueOf("module_name");
+        assertSame(a, OtpErlangAtom.valueOf("module_name"));
+        assertSame(a, decode(new OtpErlangAtom("module_name")));
+    }
+
+    @Test
+    public void nonAsciiAtomsAreDecodedButNotShared() throws OtpErlangDecodeException {
+        final OtpErlangAtom atom = new OtpErlangAtom("\u00e5\u00e4\u00f6");
+        final OtpErlangObject a = decode(atom);
+        final OtpErlangObject b = decode(atom);
+        assertEquals(atom, a);
+        assertEquals(a, b);
+        assertNotSame(a, b);
+    }
+
+    @Test
+    public void hitRateIsReported() throws OtpErlangDecodeException {
+        decode(new OtpErlangAtom("hit_rate"));
+        final long hits = OtpAtomCache.hits();
+        decode(new OtpErlangAtom("hit_rate"));
+        assertEquals(hits + 1, OtpAtomCache.hits());
+        assertTrue(OtpAtomCache.hitRate() > 0);
+    }
+}
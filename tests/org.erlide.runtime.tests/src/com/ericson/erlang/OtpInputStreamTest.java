@@ -0,0 +1,229 @@
+package com.ericson.erlang;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import com.ericsson.otp.erlang.OtpErlangAtom;
+import com.ericsson.otp.erlang.OtpErlangBinary;
+import com.ericsson.otp.erlang.OtpErlangBitstr;
+import com.ericsson.otp.erlang.OtpErlangDecodeException;
+import com.ericsson.otp.erlang.OtpErlangList;
+import com.ericsson.otp.erlang.OtpErlangLong;
+import com.ericsson.otp.erlang.OtpErlangObject;
+import com.ericsson.otp.erlang.OtpErlangString;
+import com.ericsson.otp.erlang.OtpErlangTuple;
+import com.ericsson.otp.erlang.OtpInputStream;
+import com.ericsson.otp.erlang.OtpOutputStream;
+
+public class OtpInputStreamTest {
+
+    private static OtpErlangObject form(final int i) {
+        // shaped like the function forms returned by erlide_noparse
+        final OtpErlangObject pos = new OtpErlangTuple(new OtpErlangObject[] {
+                new OtpErlangLong(i), new OtpErlangLong(i * 80L),
+                new OtpErlangLong(70000L + i) });
+        return new OtpErlangTuple(new OtpErlangObject[] { new OtpErlangAtom("function"),
+                pos, new OtpErlangAtom("fun_" + i), new OtpErlangLong(i % 5),
+                new OtpErlangString("comment " + i), new OtpErlangString("\u00e5\u4e2d"),
+                new OtpErlangAtom("\u00e4tom_" + i),
+                new OtpErlangLong(BigInteger.ONE.shiftLeft(70).negate()),
+                new OtpErlangLong(-i), new OtpErlangBinary(new byte[] { 1, 2, 3 }) });
+    }
+
+    private static byte[] encode(final OtpErlangObject term) {
+        final OtpOutputStream out = new OtpOutputStream(term);
+        return out.toByteArray();
+    }
+
+    private static OtpErlangObject decode(final byte[] data, final int flags)
+            throws OtpErlangDecodeException {
+        final OtpInputStream in = new OtpInputStream(data, flags);
+        return in.read_any();
+    }
+
+    @Test
+    public void directDecodeYieldsSameTerms() throws OtpErlangDecodeException {
+        final OtpErlangObject[] forms = new OtpErlangObject[300];
+        for (int i = 0; i < forms.length; i++) {
+            forms[i] = form(i);
+        }
+        final OtpErlangObject term = new OtpErlangList(forms);
+        final byte[] data = encode(term);
+
+        final OtpErlangObject copying = decode(data, 0);
+        final OtpErlangObject direct = decode(data, OtpInputStream.DECODE_DIRECT);
+        assertEquals(copying, direct);
+    }
+
+    @Test
+    public void directDecodeOfIntegers() throws OtpErlangDecodeException {
+        final long[] values = { 0, 255, 256, -1, Integer.MAX_VALUE, Integer.MIN_VALUE,
+                Long.MAX_VALUE, Long.MIN_VALUE };
+        for (final long value : values) {
+            final byte[] data = encode(new OtpErlangLong(value));
+            final OtpInputStream in = new OtpInputStream(data,
+                    OtpInputStream.DECODE_DIRECT);
+            assertEquals(value, in.read_long());
+        }
+    }
+
+    @Test(expected = OtpErlangDecodeException.class)
+    public void directDecodeOfUnsignedRejectsNegative() throws OtpErlangDecodeException {
+        final byte[] data = encode(new OtpErlangLong(-5));
+        new OtpInputStream(data, OtpInputStream.DECODE_DIRECT).read_ulong();
+    }
+
+    @Test(expected = OtpErlangDecodeException.class)
+    public void directDecodeDetectsTruncation() throws OtpErlangDecodeException {
+        final byte[] data = encode(new OtpErlangAtom("truncated"));
+        final byte[] truncated = new byte[data.length - 3];
+        System.arraycopy(data, 0, truncated, 0, truncated.length);
+        decode(truncated, OtpInputStream.DECODE_DIRECT);
+    }
+
+    @Test
+    public void directReadOfRawIntegers() throws OtpErlangDecodeException {
+        final byte[] data = { 1, 2, 3, 4, 5, 6, 7, 8 };
+        final OtpInputStream in = new OtpInputStream(data, OtpInputStream.DECODE_DIRECT);
+        assertEquals(0x0102, in.read2BE());
+        assertEquals(0x06050403, in.read4LE());
+        assertEquals(0x0807, in.read2LE());
+        in.setPos(0);
+        assertEquals(0x0102030405060708L, in.readBE(8));
+        in.setPos(0);
+        assertEquals(0x0807060504030201L, in.readLE(8));
+    }
+
+    private static byte[] bytes(final int size) {
+        final byte[] result = new byte[size];
+        for (int i = 0; i < size; i++) {
+            result[i] = (byte) i;
+        }
+        return result;
+    }
+
+    @Test
+    public void lazyBinariesAreViews() throws OtpErlangDecodeException {
+        final byte[] payload = bytes(OtpInputStream.LAZY_BINARY_THRESHOLD * 4);
+        final byte[] data = encode(new OtpErlangTuple(new OtpErlangObject[] {
+                new OtpErlangBinary(payload), new OtpErlangBinary(bytes(3)) }));
+        final OtpErlangTuple t = (OtpErlangTuple) decode(data,
+                OtpInputStream.DECODE_LAZY_BINARIES);
+
+        final OtpErlangBinary big = (OtpErlangBinary) t.elementAt(0);
+        final OtpErlangBinary small = (OtpErlangBinary) t.elementAt(1);
+        assertTrue(big.isLazy());
+        assertFalse(small.isLazy());
+        assertEquals(payload.length, big.size());
+
+        final ByteBuffer view = big.asByteBuffer();
+        assertEquals(payload.length, view.remaining());
+        assertEquals(payload[payload.length - 1], view.get(payload.length - 1));
+        assertTrue(big.isLazy());
+
+        assertArrayEquals(data, encode(t));
+        assertTrue(big.isLazy());
+        assertEquals(t, decode(data, 0));
+        assertArrayEquals(payload, big.binaryValue());
+        assertFalse(big.isLazy());
+    }
+
+    @Test
+    public void lazyBitstrs() throws OtpErlangDecodeException {
+        final OtpErlangBitstr bits = new OtpErlangBitstr(
+                bytes(OtpInputStream.LAZY_BINARY_THRESHOLD + 1), 3);
+        final byte[] data = encode(bits);
+        final OtpErlangBitstr decoded = (OtpErlangBitstr) decode(data,
+                OtpInputStream.DECODE_LAZY_BINARIES);
+        assertEquals(3, decoded.pad_bits());
+        assertEquals(bits, decoded);
+        assertArrayEquals(data, encode(decoded));
+    }
+
+    /**
+     * A BIT_BINARY_EXT term of len bytes, whose unused bits in the last byte are set.
+     */
+    private static byte[] bitBinary(final int len, final int tailBits) {
+        final ByteBuffer data = ByteBuffer.allocate(len + 7);
+        data.put((byte) 131).put((byte) 77).putInt(len).put((byte) tailBits);
+        data.put(bytes(len));
+        data.put(len + 6, (byte) 0xff);
+        return data.array();
+    }
+
+    @Test
+    public void lazyDecodeKeepsTheClassOfEachTag() throws OtpErlangDecodeException {
+        final int[] sizes = { 3, OtpInputStream.LAZY_BINARY_THRESHOLD * 4 };
+        for (final int size : sizes) {
+            final byte[] binary = encode(new OtpErlangBinary(bytes(size)));
+            final byte[] bitstr = bitBinary(size, 5);
+            for (final byte[] data : new byte[][] { binary, bitstr }) {
+                final OtpErlangObject eager = decode(data, 0);
+                final OtpErlangObject lazy = decode(data,
+                        OtpInputStream.DECODE_LAZY_BINARIES);
+                assertEquals(eager.getClass(), lazy.getClass());
+                assertEquals(eager, lazy);
+            }
+            assertEquals(OtpErlangBinary.class, decode(binary,
+                    OtpInputStream.DECODE_LAZY_BINARIES).getClass());
+            assertEquals(OtpErlangBitstr.class, decode(bitstr,
+                    OtpInputStream.DECODE_LAZY_BINARIES).getClass());
+        }
+    }
+
+    @Test
+    public void lazyDecodeChecksThePaddingRightAway() throws OtpErlangDecodeException {
+        // no tail bits means 8 pad bits, which both ways of decoding refuse
+        final byte[] data = bitBinary(OtpInputStream.LAZY_BINARY_THRESHOLD * 4, 0);
+        for (final int flags : new int[] { 0, OtpInputStream.DECODE_LAZY_BINARIES }) {
+            try {
+                decode(data, flags);
+                fail("expected IllegalArgumentException");
+            } catch (final IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void lazyBinariesCanBeReadFromSeveralThreads() throws Exception {
+        final byte[] payload = bytes(OtpInputStream.LAZY_BINARY_THRESHOLD * 4);
+        final byte[] data = encode(new OtpErlangBinary(payload));
+        final ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            for (int round = 0; round < 200; round++) {
+                final OtpErlangBinary bin = (OtpErlangBinary) decode(data,
+                        OtpInputStream.DECODE_LAZY_BINARIES);
+                final Callable<byte[]> read = new Callable<byte[]>() {
+                    @Override
+                    public byte[] call() {
+                        assertEquals(payload.length, bin.size());
+                        return bin.binaryValue();
+                    }
+                };
+                final Future<?>[] results = new Future<?>[4];
+                for (int i = 0; i < results.length; i++) {
+                    results[i] = pool.submit(read);
+                }
+                for (final Future<?> result : results) {
+                    assertArrayEquals(payload, (byte[]) result.get());
+                }
+                assertFalse(bin.isLazy());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
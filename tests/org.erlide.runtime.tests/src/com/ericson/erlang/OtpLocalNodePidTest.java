@@ -0,0 +1,85 @@
+package com.ericson.erlang;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.ericsson.otp.erlang.OtpErlangPid;
+import com.ericsson.otp.erlang.OtpSelf;
+import com.google.common.collect.Lists;
+
+public class OtpLocalNodePidTest {
+
+    private static final int THREADS = 8;
+    private static final int PIDS = 20000;
+
+    private final List<OtpSelf> nodes = Lists.newArrayList();
+
+    @After
+    public void tearDown() {
+        for (final OtpSelf node : nodes) {
+            node.close();
+        }
+    }
+
+    private OtpSelf createNode(final String name) throws IOException {
+        final OtpSelf node = new OtpSelf(name, "cookie");
+        nodes.add(node);
+        return node;
+    }
+
+    @Test
+    public void pidsAreSequential() throws IOException {
+        final OtpSelf self = createNode("pidtest1@localhost");
+        // the node's own pid is the first one
+        OtpErlangPid pid = self.pid();
+        assertEquals(1, pid.id());
+        assertEquals(0, pid.serial());
+        for (int i = 2; i <= 0x7fff; i++) {
+            pid = self.createPid();
+        }
+        assertEquals(0x7fff, pid.id());
+        pid = self.createPid();
+        assertEquals(0, pid.id());
+        assertEquals(1, pid.serial());
+    }
+
+    @Test
+    public void concurrentPidsAreUnique() throws Exception {
+        final OtpSelf self = createNode("pidtest2@localhost");
+        final Set<OtpErlangPid> pids = ConcurrentHashMap.newKeySet();
+        final CountDownLatch start = new CountDownLatch(1);
+        final Thread[] threads = new Thread[THREADS];
+        for (int t = 0; t < THREADS; t++) {
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (final InterruptedException e) {
+                    }
+                    for (int i = 0; i < PIDS; i++) {
+                        pids.add(self.createPid());
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        start.countDown();
+        for (final Thread t : threads) {
+            t.join(60000);
+        }
+        assertEquals(THREADS * PIDS, pids.size());
+        // nothing was skipped either: the next pid follows the last one handed out
+        final OtpErlangPid next = self.createPid();
+        assertEquals((THREADS * PIDS + 2) % 0x8000, next.id());
+        assertEquals((THREADS * PIDS + 2) / 0x8000, next.serial());
+    }
+}
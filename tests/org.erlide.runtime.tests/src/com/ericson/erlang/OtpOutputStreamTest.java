@@ -0,0 +1,68 @@
+package com.ericson.erlang;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+import com.ericsson.otp.erlang.OtpErlangBinary;
+import com.ericsson.otp.erlang.OtpErlangObject;
+import com.ericsson.otp.erlang.OtpOutputStream;
+
+public class OtpOutputStreamTest {
+
+    @Test
+    public void releasedStreamsAreReused() {
+        final OtpOutputStream s1 = OtpOutputStream.acquire();
+        s1.write_binary(new byte[10000]);
+        s1.release();
+
+        final OtpOutputStream s2 = OtpOutputStream.acquire();
+        assertSame(s1, s2);
+        assertEquals(0, s2.size());
+        s2.release();
+    }
+
+    @Test
+    public void nestedAcquiresGetDistinctStreams() {
+        final OtpOutputStream s1 = OtpOutputStream.acquire();
+        final OtpOutputStream s2 = OtpOutputStream.acquire();
+        assertNotSame(s1, s2);
+        s2.release();
+        s1.release();
+    }
+
+    @Test
+    public void oversizedStreamsAreNotPooled() {
+        final OtpOutputStream s1 = OtpOutputStream.acquire();
+        s1.ensureCapacity(OtpOutputStream.maxPooledSize + 1);
+        s1.release();
+
+        final OtpOutputStream s2 = OtpOutputStream.acquire();
+        assertNotSame(s1, s2);
+        s2.release();
+    }
+
+    @Test
+    public void unpooledStreamsIgnoreRelease() {
+        final OtpOutputStream s1 = new OtpOutputStream();
+        s1.write1(1);
+        s1.release();
+        assertEquals(1, s1.size());
+    }
+
+    @Test
+    public void pooledStreamEncodesLikeFreshOne() {
+        final OtpErlangObject term = new OtpErlangBinary(new byte[] { 1, 2, 3 });
+        final OtpOutputStream s1 = OtpOutputStream.acquire();
+        s1.write_binary(new byte[5000]);
+        s1.release();
+
+        final OtpOutputStream s2 = OtpOutputStream.acquire();
+        s2.write_any(term);
+        assertArrayEquals(new OtpOutputStream(term).toByteArray(), s2.toByteArray());
+        s2.release();
+    }
+}
@@ -0,0 +1,177 @@
+package org.erlide.runtime;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.erlide.runtime.events.ErlEvent;
+import org.erlide.runtime.events.ErlangEventHandler;
+import org.erlide.runtime.internal.ErlEventDispatcher;
+import org.junit.Test;
+
+import com.ericsson.otp.erlang.OtpErlangLong;
+
+public class ErlEventDispatcherTest {
+
+    private static class Handler extends ErlangEventHandler {
+        final List<Long> received = Collections.synchronizedList(new ArrayList<Long>());
+        final List<Thread> threads = Collections
+                .synchronizedList(new ArrayList<Thread>());
+        private final int capacity;
+        volatile CountDownLatch gate;
+
+        Handler(final String topic, final int capacity) {
+            super(topic);
+            this.capacity = capacity;
+        }
+
+        @Override
+        public int getQueueCapacity() {
+            return capacity;
+        }
+
+        @Override
+        public void handleEvent(final ErlEvent event) {
+            final CountDownLatch g = gate;
+            if (g != null) {
+                try {
+                    g.await(5, TimeUnit.SECONDS);
+                } catch (final InterruptedException e) {
+                }
+            }
+            threads.add(Thread.currentThread());
+            received.add(((OtpErlangLong) event.getEvent()).longValue());
+        }
+    }
+
+    private static ErlEvent event(final String topic, final long n) {
+        return new ErlEvent(new String(topic), null, new OtpErlangLong(n), null);
+    }
+
+    private static void await(final Handler h, final int n) throws InterruptedException {
+        final long end = System.currentTimeMillis() + 5000;
+        while (h.received.size() < n && System.currentTimeMillis() < end) {
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    public void directHandlersRunOnDispatchingThread() {
+        final ErlEventDispatcher dispatcher = new ErlEventDispatcher("test");
+        final Handler log = new Handler("log", 0);
+        dispatcher.register(log);
+        for (int i = 0; i < 10; i++) {
+            assertThat(dispatcher.dispatch(event("log", i))).isTrue();
+        }
+        assertThat(log.received).hasSize(10);
+        assertThat(log.received.get(9)).isEqualTo(9L);
+        assertThat(new HashSet<>(log.threads)).containsExactly(Thread.currentThread());
+    }
+
+    @Test
+    public void eventsAreRoutedByTopic() {
+        final ErlEventDispatcher dispatcher = new ErlEventDispatcher("test");
+        final Handler a = new Handler("a", 0);
+        final Handler b = new Handler("b", 0);
+        dispatcher.register(a);
+        dispatcher.register(b);
+        dispatcher.dispatch(event("a", 1));
+        dispatcher.dispatch(event("b", 2));
+        assertThat(dispatcher.dispatch(event("c", 3))).isFalse();
+        assertThat(a.received).containsExactly(1L);
+        assertThat(b.received).containsExactly(2L);
+    }
+
+    @Test
+    public void queuedHandlersKeepOrder() throws InterruptedException {
+        final ErlEventDispatcher dispatcher = new ErlEventDispatcher("test");
+        final Handler trace = new Handler("trace", 100000);
+        dispatcher.register(trace);
+        for (int i = 0; i < 20000; i++) {
+            dispatcher.dispatch(event("trace", i));
+        }
+        await(trace, 20000);
+        assertThat(trace.received).hasSize(20000);
+        for (int i = 0; i < 20000; i++) {
+            assertThat(trace.received.get(i)).isEqualTo((long) i);
+        }
+        assertThat(trace.threads).doesNotContain(Thread.currentThread());
+    }
+
+    @Test
+    public void slowHandlerDoesntHoldUpDispatching() throws Exception {
+        final ErlEventDispatcher dispatcher = new ErlEventDispatcher("test");
+        final Handler trace = new Handler("trace", 10);
+        final Handler log = new Handler("log", 0);
+        dispatcher.register(trace);
+        dispatcher.register(log);
+        trace.gate = new CountDownLatch(1);
+        final Thread receiver = new Thread() {
+            @Override
+            public void run() {
+                for (int i = 0; i < 100; i++) {
+                    dispatcher.dispatch(event("trace", i));
+                    dispatcher.dispatch(event("log", i));
+                }
+            }
+        };
+        receiver.start();
+        receiver.join(5000);
+        // the other topics got all their events while trace was stuck
+        assertThat(receiver.isAlive()).isFalse();
+        assertThat(log.received).hasSize(100);
+        assertThat(dispatcher.getOverCapacityCount()).isGreaterThan(0L);
+        trace.gate.countDown();
+        await(trace, 100);
+        assertThat(trace.received).hasSize(100);
+        for (int i = 0; i < 100; i++) {
+            assertThat(trace.received.get(i)).isEqualTo((long) i);
+        }
+    }
+
+    @Test
+    public void unregisteredHandlerGetsNoMoreEvents() throws Exception {
+        final ErlEventDispatcher dispatcher = new ErlEventDispatcher("test");
+        final Handler old = new Handler("trace", 10);
+        final Handler current = new Handler("trace", 10);
+        dispatcher.register(old);
+        dispatcher.dispatch(event("trace", 0));
+        await(old, 1);
+        dispatcher.unregister(old);
+        dispatcher.register(current);
+        dispatcher.dispatch(event("trace", 1));
+        await(current, 1);
+        assertThat(old.received).containsExactly(0L);
+        assertThat(current.received).containsExactly(1L);
+        dispatcher.unregister(current);
+        assertThat(dispatcher.dispatch(event("trace", 2))).isFalse();
+    }
+
+    @Test
+    public void interruptedHandlerThreadIsReplaced() throws Exception {
+        final ErlEventDispatcher dispatcher = new ErlEventDispatcher("test");
+        final Handler trace = new Handler("trace", 100);
+        dispatcher.register(trace);
+        for (int i = 0; i < 50; i++) {
+            dispatcher.dispatch(event("trace", i));
+        }
+        await(trace, 50);
+        final Thread first = trace.threads.get(0);
+        first.interrupt();
+        first.join(5000);
+        assertThat(first.isAlive()).isFalse();
+        for (int i = 50; i < 100; i++) {
+            dispatcher.dispatch(event("trace", i));
+        }
+        await(trace, 100);
+        assertThat(trace.received).hasSize(100);
+        for (int i = 0; i < 100; i++) {
+            assertThat(trace.received.get(i)).isEqualTo((long) i);
+        }
+    }
+}
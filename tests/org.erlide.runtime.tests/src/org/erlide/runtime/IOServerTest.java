@@ -0,0 +1,172 @@
+package org.erlide.runtime;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.Collection;
+import java.util.List;
+
+import org.erlide.runtime.internal.IOCallback;
+import org.erlide.runtime.internal.IOEncoding;
+import org.erlide.runtime.internal.IOServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.ericsson.otp.erlang.OtpErlangAtom;
+import com.ericsson.otp.erlang.OtpErlangLong;
+import com.ericsson.otp.erlang.OtpErlangObject;
+import com.ericsson.otp.erlang.OtpErlangPid;
+import com.ericsson.otp.erlang.OtpErlangString;
+import com.ericsson.otp.erlang.OtpErlangTuple;
+import com.ericsson.otp.erlang.OtpMbox;
+import com.ericsson.otp.erlang.OtpNode;
+import com.google.common.collect.Lists;
+
+public class IOServerTest {
+
+    private static final OtpErlangAtom OK = new OtpErlangAtom("ok");
+    private static final OtpErlangObject ERROR = new OtpErlangTuple(new OtpErlangObject[] {
+            new OtpErlangAtom("error"), new OtpErlangAtom("request") });
+
+    private OtpNode node;
+    private OtpMbox client;
+    private OtpMbox serverMbox;
+    private IOServer server;
+    private final List<String> written = Lists.newArrayList();
+
+    private final IOCallback callback = new IOCallback() {
+        @Override
+        public OtpErlangObject putChars(final OtpErlangPid from,
+                final IOEncoding encoding, final OtpErlangObject chars) {
+            final String text = ((OtpErlangString) chars).stringValue();
+            if ("boom".equals(text)) {
+                throw new IllegalStateException(text);
+            }
+            written.add(text);
+            return OK;
+        }
+
+        @Override
+        public OtpErlangObject putChars(final OtpErlangPid from,
+                final IOEncoding encoding, final String module, final String function,
+                final Collection<OtpErlangObject> args) {
+            return OK;
+        }
+
+        @Override
+        public OtpErlangObject getUntil(final IOEncoding encoding,
+                final OtpErlangObject prompt) {
+            return OK;
+        }
+
+        @Override
+        public OtpErlangObject getUntil(final IOEncoding encoding,
+                final OtpErlangObject prompt, final long n) {
+            return OK;
+        }
+
+        @Override
+        public OtpErlangObject getUntil(final IOEncoding encoding,
+                final OtpErlangObject prompt, final String m, final String f,
+                final Collection<OtpErlangObject> a) {
+            return OK;
+        }
+
+        @Override
+        public OtpErlangObject getOpts() {
+            return OK;
+        }
+
+        @Override
+        public OtpErlangObject setOpts(final Collection<OtpErlangObject> opts) {
+            return OK;
+        }
+    };
+
+    @Before
+    public void setUp() throws Exception {
+        node = new OtpNode("iotest" + System.currentTimeMillis());
+        client = node.createMbox();
+    }
+
+    @After
+    public void tearDown() {
+        if (server != null) {
+            server.stop();
+        }
+        node.close();
+    }
+
+    private void startServer(final long bytesPerSecond) {
+        serverMbox = node.createMbox();
+        server = new IOServer(serverMbox, callback, bytesPerSecond);
+    }
+
+    private void request(final int ref, final OtpErlangObject request) {
+        client.send(serverMbox.self(), new OtpErlangTuple(new OtpErlangObject[] {
+                new OtpErlangAtom("io_request"), client.self(), new OtpErlangLong(ref),
+                request }));
+    }
+
+    private static OtpErlangObject putChars(final String text) {
+        return new OtpErlangTuple(new OtpErlangObject[] { new OtpErlangAtom("put_chars"),
+                new OtpErlangAtom("unicode"), new OtpErlangString(text) });
+    }
+
+    private OtpErlangObject receiveReply(final int ref) throws Exception {
+        final OtpErlangObject msg = client.receive(10000);
+        assertThat(msg).isNotNull();
+        final OtpErlangTuple reply = (OtpErlangTuple) msg;
+        assertThat(reply.elementAt(0)).isEqualTo(new OtpErlangAtom("io_reply"));
+        assertThat(reply.elementAt(1)).isEqualTo(new OtpErlangLong(ref));
+        return reply.elementAt(2);
+    }
+
+    @Test
+    public void everyRequestOfABatchIsAnsweredInOrder() throws Exception {
+        startServer(0);
+        for (int i = 0; i < 1000; i++) {
+            request(i, putChars("line " + i));
+        }
+        for (int i = 0; i < 1000; i++) {
+            assertThat(receiveReply(i)).isEqualTo(OK);
+        }
+        assertThat(written).hasSize(1000);
+        assertThat(written.get(0)).isEqualTo("line 0");
+        assertThat(written.get(999)).isEqualTo("line 999");
+    }
+
+    @Test
+    public void failingRequestsGetAnErrorAndDontAffectTheOthers() throws Exception {
+        startServer(0);
+        request(0, putChars("before"));
+        // unknown encoding
+        request(1, new OtpErlangTuple(new OtpErlangObject[] {
+                new OtpErlangAtom("put_chars"), new OtpErlangAtom("bogus"),
+                new OtpErlangString("x") }));
+        // tag is not an atom
+        request(2, new OtpErlangTuple(new OtpErlangObject[] { new OtpErlangLong(1),
+                new OtpErlangString("x") }));
+        // the callback throws
+        request(3, putChars("boom"));
+        request(4, putChars("after"));
+
+        assertThat(receiveReply(0)).isEqualTo(OK);
+        assertThat(receiveReply(1)).isEqualTo(ERROR);
+        assertThat(receiveReply(2)).isEqualTo(ERROR);
+        assertThat(receiveReply(3)).isEqualTo(ERROR);
+        assertThat(receiveReply(4)).isEqualTo(OK);
+        assertThat(written).containsExactly("before", "after").inOrder();
+    }
+
+    @Test
+    public void outputOverTheLimitIsAcknowledgedButNotWritten() throws Exception {
+        startServer(10);
+        request(0, putChars("0123456789"));
+        request(1, putChars("dropped"));
+        assertThat(receiveReply(0)).isEqualTo(OK);
+        assertThat(receiveReply(1)).isEqualTo(OK);
+        assertThat(written).contains("0123456789");
+        assertThat(written).doesNotContain("dropped");
+    }
+}
@@ -0,0 +1,52 @@
+package org.erlide.runtime;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.erlide.runtime.internal.OutputRateLimiter;
+import org.junit.Test;
+
+public class OutputRateLimiterTest {
+
+    @Test
+    public void noLimit() {
+        final OutputRateLimiter limiter = new OutputRateLimiter(0);
+        for (int i = 0; i < 1000; i++) {
+            assertThat(limiter.tryAcquire(1000000)).isTrue();
+        }
+        assertThat(limiter.getDropped()).isEqualTo(0L);
+    }
+
+    @Test
+    public void outputOverTheLimitIsCounted() {
+        final OutputRateLimiter limiter = new OutputRateLimiter(1000);
+        assertThat(limiter.tryAcquire(600)).isTrue();
+        assertThat(limiter.tryAcquire(600)).isFalse();
+        assertThat(limiter.tryAcquire(700)).isFalse();
+        assertThat(limiter.takeDropped()).isEqualTo(1300L);
+        assertThat(limiter.getDropped()).isEqualTo(0L);
+    }
+
+    @Test
+    public void limitIsRefilledOverTime() throws InterruptedException {
+        final OutputRateLimiter limiter = new OutputRateLimiter(1000);
+        assertThat(limiter.tryAcquire(1000)).isTrue();
+        assertThat(limiter.tryAcquire(500)).isFalse();
+        Thread.sleep(700);
+        assertThat(limiter.tryAcquire(500)).isTrue();
+        Thread.sleep(2000);
+        // no more than one second worth is kept
+        assertThat(limiter.tryAcquire(1001)).isTrue();
+        assertThat(limiter.tryAcquire(1)).isFalse();
+    }
+
+    @Test
+    public void writeLargerThanTheLimitPassesWhenTheBucketIsFull()
+            throws InterruptedException {
+        final OutputRateLimiter limiter = new OutputRateLimiter(1000);
+        assertThat(limiter.tryAcquire(5000)).isTrue();
+        assertThat(limiter.tryAcquire(5000)).isFalse();
+        Thread.sleep(1100);
+        assertThat(limiter.tryAcquire(5000)).isTrue();
+        assertThat(limiter.takeDropped()).isEqualTo(5000L);
+    }
+}
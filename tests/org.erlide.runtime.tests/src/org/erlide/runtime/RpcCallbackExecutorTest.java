@@ -0,0 +1,190 @@
+package org.erlide.runtime;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.erlide.runtime.internal.rpc.RpcCallbackExecutor;
+import org.erlide.runtime.rpc.IRpcCallback;
+import org.erlide.runtime.rpc.RpcFuture;
+import org.erlide.runtime.rpc.RpcTimeoutException;
+import org.junit.Test;
+
+import com.ericsson.otp.erlang.OtpErlangAtom;
+import com.ericsson.otp.erlang.OtpErlangObject;
+import com.google.common.util.concurrent.SettableFuture;
+
+public class RpcCallbackExecutorTest {
+
+    private static class Callback implements IRpcCallback {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final AtomicReference<Object> outcome = new AtomicReference<>();
+
+        @Override
+        public void onSuccess(final OtpErlangObject result) {
+            outcome.set(result);
+            latch.countDown();
+        }
+
+        @Override
+        public void onFailure(final Throwable t) {
+            outcome.set(t);
+            latch.countDown();
+        }
+
+        Object await() throws InterruptedException {
+            assertThat(latch.await(5, TimeUnit.SECONDS)).isTrue();
+            return outcome.get();
+        }
+    }
+
+    private static RpcFuture future(final SettableFuture<OtpErlangObject> reply) {
+        return new RpcFuture(reply, "test", false);
+    }
+
+    @Test
+    public void callbackGetsResult() throws Exception {
+        final RpcCallbackExecutor executor = new RpcCallbackExecutor(2, 10);
+        final SettableFuture<OtpErlangObject> reply = SettableFuture.create();
+        final Callback cb = new Callback();
+        executor.execute(future(reply), 5000, cb, "m:f");
+        reply.set(new OtpErlangAtom("ok"));
+        assertThat(cb.await()).isEqualTo(new OtpErlangAtom("ok"));
+    }
+
+    @Test
+    public void callbackTimesOut() throws Exception {
+        final RpcCallbackExecutor executor = new RpcCallbackExecutor(2, 10);
+        final SettableFuture<OtpErlangObject> reply = SettableFuture.create();
+        final Callback cb = new Callback();
+        executor.execute(future(reply), 50, cb, "m:f");
+        assertThat(cb.await()).isInstanceOf(RpcTimeoutException.class);
+        // the call is given up
+        assertThat(reply.isCancelled()).isTrue();
+        // a late reply doesn't call back again
+        reply.set(new OtpErlangAtom("ok"));
+        assertThat(cb.outcome.get()).isInstanceOf(RpcTimeoutException.class);
+    }
+
+    @Test
+    public void threadsStayBounded() throws Exception {
+        final int n = 200;
+        final RpcCallbackExecutor executor = new RpcCallbackExecutor(2, 4);
+        final Set<Thread> threads = ConcurrentHashMap.newKeySet();
+        final AtomicInteger calls = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(n);
+        final IRpcCallback cb = new IRpcCallback() {
+            @Override
+            public void onSuccess(final OtpErlangObject result) {
+                threads.add(Thread.currentThread());
+                calls.incrementAndGet();
+                try {
+                    Thread.sleep(1);
+                } catch (final InterruptedException e) {
+                }
+                done.countDown();
+            }
+
+            @Override
+            public void onFailure(final Throwable t) {
+                done.countDown();
+            }
+        };
+        for (int i = 0; i < n; i++) {
+            final SettableFuture<OtpErlangObject> reply = SettableFuture.create();
+            executor.execute(future(reply), 5000, cb, "m:f");
+            reply.set(new OtpErlangAtom("ok"));
+        }
+        assertThat(done.await(10, TimeUnit.SECONDS)).isTrue();
+        assertThat(calls.get()).isEqualTo(n);
+        assertThat(threads.size()).isAtMost(2);
+        assertThat(executor.getOverLimitCount()).isEqualTo(0L);
+    }
+
+    @Test
+    public void callersWaitWhileTooManyCallbacksArePending() throws Exception {
+        // one thread and one queue slot: two callbacks can be pending
+        final RpcCallbackExecutor executor = new RpcCallbackExecutor(1, 1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(3);
+        final IRpcCallback cb = new IRpcCallback() {
+            @Override
+            public void onSuccess(final OtpErlangObject result) {
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (final InterruptedException e) {
+                }
+                done.countDown();
+            }
+
+            @Override
+            public void onFailure(final Throwable t) {
+                done.countDown();
+            }
+        };
+        for (int i = 0; i < 2; i++) {
+            final SettableFuture<OtpErlangObject> reply = SettableFuture.create();
+            executor.execute(future(reply), 5000, cb, "m:f");
+            reply.set(new OtpErlangAtom("ok"));
+        }
+        final CountDownLatch submitted = new CountDownLatch(1);
+        final Thread caller = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                final SettableFuture<OtpErlangObject> reply = SettableFuture.create();
+                executor.execute(future(reply), 5000, cb, "m:f");
+                submitted.countDown();
+                reply.set(new OtpErlangAtom("ok"));
+            }
+        });
+        caller.start();
+        assertThat(submitted.await(200, TimeUnit.MILLISECONDS)).isFalse();
+        assertThat(executor.getQueueDepth() + executor.getActiveCount()).isEqualTo(2);
+        release.countDown();
+        assertThat(submitted.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    public void callbacksNeverRunOnTheDeliveringThread() throws Exception {
+        final int n = 2;
+        final RpcCallbackExecutor executor = new RpcCallbackExecutor(1, 1);
+        final Thread deliverer = Thread.currentThread();
+        final AtomicInteger onDeliverer = new AtomicInteger();
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(n);
+        final IRpcCallback cb = new IRpcCallback() {
+            @Override
+            public void onSuccess(final OtpErlangObject result) {
+                if (Thread.currentThread() == deliverer) {
+                    onDeliverer.incrementAndGet();
+                }
+                try {
+                    // like a callback waiting for another reply
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (final InterruptedException e) {
+                }
+                done.countDown();
+            }
+
+            @Override
+            public void onFailure(final Throwable t) {
+                done.countDown();
+            }
+        };
+        for (int i = 0; i < n; i++) {
+            final SettableFuture<OtpErlangObject> reply = SettableFuture.create();
+            executor.execute(future(reply), 5000, cb, "m:f");
+            reply.set(new OtpErlangAtom("ok"));
+        }
+        // delivering didn't block on the waiting callbacks
+        release.countDown();
+        assertThat(done.await(10, TimeUnit.SECONDS)).isTrue();
+        assertThat(onDeliverer.get()).isEqualTo(0);
+    }
+}
@@ -0,0 +1,77 @@
+package org.erlide.runtime;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.List;
+
+import org.erlide.runtime.rpc.RpcMonitor;
+import org.erlide.runtime.rpc.RpcMonitor.Call;
+import org.erlide.runtime.rpc.RpcMonitor.Snapshot;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.ericsson.otp.erlang.OtpErlangAtom;
+import com.ericsson.otp.erlang.OtpErlangObject;
+import com.ericsson.otp.erlang.OtpErlangTuple;
+
+public class RpcMonitorTest {
+
+    private static final OtpErlangObject OK = new OtpErlangAtom("ok");
+
+    @Before
+    public void setUp() {
+        RpcMonitor.reset();
+    }
+
+    @Test
+    public void countsCallsPerFunction() {
+        for (int i = 0; i < 10; i++) {
+            final Call call = RpcMonitor.recordRequest("erlang", "node");
+            RpcMonitor.recordRequestSize(call, 30);
+            RpcMonitor.recordResponse(call, OK, 5);
+        }
+        final Call bad = RpcMonitor.recordRequest("lists", "reverse");
+        RpcMonitor.recordResponse(bad, new OtpErlangTuple(new OtpErlangObject[] {
+                new OtpErlangAtom("badrpc"), new OtpErlangAtom("nodedown") }), 20);
+        RpcMonitor.recordFailure(RpcMonitor.recordRequest("lists", "reverse"));
+
+        final List<Snapshot> all = RpcMonitor.snapshot();
+        assertThat(all).hasSize(2);
+        final Snapshot node = find(all, "erlang:node");
+        assertThat(node.calls).isEqualTo(10L);
+        assertThat(node.answers).isEqualTo(10L);
+        assertThat(node.errors).isEqualTo(0L);
+        assertThat(node.bytesOut).isEqualTo(300L);
+        assertThat(node.bytesIn).isEqualTo(50L);
+        assertThat(node.p50).isAtMost(node.p99);
+        assertThat(node.p99).isAtMost(node.max);
+
+        final Snapshot reverse = find(all, "lists:reverse");
+        assertThat(reverse.calls).isEqualTo(2L);
+        assertThat(reverse.answers).isEqualTo(1L);
+        assertThat(reverse.errors).isEqualTo(2L);
+    }
+
+    @Test
+    public void exportsCsvAndJson() {
+        RpcMonitor.recordResponse(RpcMonitor.recordRequest("erlang", "node"), OK, 5);
+
+        final String[] csv = RpcMonitor.toCsv().split("\n");
+        assertThat(csv).hasLength(2);
+        assertThat(csv[0]).startsWith("function,calls,errors");
+        assertThat(csv[1]).startsWith("erlang:node,1,0,0,5,");
+
+        final String json = RpcMonitor.toJson();
+        assertThat(json).startsWith("[{\"function\":\"erlang:node\",\"calls\":1,");
+        assertThat(json).endsWith("}]");
+    }
+
+    private static Snapshot find(final List<Snapshot> all, final String function) {
+        for (final Snapshot s : all) {
+            if (s.function.equals(function)) {
+                return s;
+            }
+        }
+        throw new AssertionError(function + " not found");
+    }
+}
@@ -0,0 +1,162 @@
+package org.erlide.runtime;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.erlide.runtime.internal.rpc.RpcReplyDispatcher;
+import org.erlide.runtime.internal.rpc.RpcResultCallbackImpl;
+import org.erlide.runtime.rpc.RpcException;
+import org.erlide.runtime.rpc.RpcFuture;
+import org.erlide.runtime.rpc.RpcMonitor;
+import org.erlide.runtime.rpc.RpcTimeoutException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.ericsson.otp.erlang.OtpErlangAtom;
+import com.ericsson.otp.erlang.OtpErlangObject;
+import com.ericsson.otp.erlang.OtpErlangPid;
+import com.ericsson.otp.erlang.OtpErlangRef;
+import com.ericsson.otp.erlang.OtpErlangTuple;
+import com.ericsson.otp.erlang.OtpMbox;
+import com.ericsson.otp.erlang.OtpNode;
+import com.google.common.util.concurrent.SettableFuture;
+
+public class RpcReplyDispatcherTest {
+
+    private OtpNode node;
+    private RpcReplyDispatcher dispatcher;
+    private OtpMbox peer;
+
+    @Before
+    public void setUp() throws Exception {
+        RpcMonitor.reset();
+        node = new OtpNode("rpctest" + System.currentTimeMillis());
+        dispatcher = new RpcReplyDispatcher(node);
+        peer = node.createMbox();
+    }
+
+    @After
+    public void tearDown() {
+        dispatcher.dispose();
+        node.close();
+    }
+
+    private static class Callback extends RpcResultCallbackImpl {
+        final CountDownLatch stopped = new CountDownLatch(1);
+        volatile OtpErlangObject result;
+
+        @Override
+        public void stop(final OtpErlangObject msg) {
+            result = msg;
+            stopped.countDown();
+        }
+    }
+
+    private static OtpErlangTuple tuple(final OtpErlangObject... elements) {
+        return new OtpErlangTuple(elements);
+    }
+
+    private void reply(final OtpErlangRef ref, final OtpErlangObject result) {
+        peer.send(dispatcher.getMbox().self(),
+                new OtpErlangTuple(new OtpErlangObject[] { ref, result }));
+    }
+
+    @Test
+    public void replyCompletesTheCallAndForgetsIt() throws Exception {
+        final SettableFuture<OtpErlangObject> reply = SettableFuture.create();
+        final OtpErlangRef ref = dispatcher.addCall(reply,
+                RpcMonitor.recordRequest("m", "f"));
+        assertThat(dispatcher.getPendingCount()).isEqualTo(1);
+        reply(ref, new OtpErlangAtom("ok"));
+        final RpcFuture future = new RpcFuture(reply, "m:f/0", false);
+        assertThat(future.checkedGet(5000, TimeUnit.MILLISECONDS)).isEqualTo(
+                new OtpErlangAtom("ok"));
+        assertThat(dispatcher.getPendingCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void cancelledCallIsForgotten() throws Exception {
+        final SettableFuture<OtpErlangObject> reply = SettableFuture.create();
+        final OtpErlangRef ref = dispatcher.addCall(reply,
+                RpcMonitor.recordRequest("m", "f"));
+        final RpcFuture future = new RpcFuture(reply, "m:f/0", false);
+
+        assertThat(future.cancel(false)).isTrue();
+        assertThat(future.isCancelled()).isTrue();
+        assertThat(future.isDone()).isTrue();
+        assertThat(dispatcher.getPendingCount()).isEqualTo(0);
+        try {
+            future.checkedGet();
+            throw new AssertionError("expected RpcException");
+        } catch (final RpcException e) {
+            // expected
+        }
+        // a late reply is dropped
+        reply(ref, new OtpErlangAtom("ok"));
+        assertThat(future.cancel(false)).isFalse();
+        // and the call counts as failed
+        final RpcMonitor.Snapshot stats = RpcMonitor.snapshot().get(0);
+        assertThat(stats.function).isEqualTo("m:f");
+        assertThat(stats.errors).isEqualTo(1L);
+    }
+
+    @Test
+    public void timedOutWaitCanBeRetriedUntilCancelled() throws Exception {
+        final SettableFuture<OtpErlangObject> reply = SettableFuture.create();
+        dispatcher.addCall(reply, RpcMonitor.recordRequest("m", "f"));
+        final RpcFuture future = new RpcFuture(reply, "m:f/0", false);
+        try {
+            future.checkedGet(10, TimeUnit.MILLISECONDS);
+            throw new AssertionError("expected RpcTimeoutException");
+        } catch (final RpcTimeoutException e) {
+            // expected
+        }
+        // polling callers keep waiting for the same reply
+        assertThat(dispatcher.getPendingCount()).isEqualTo(1);
+        future.cancel(false);
+        assertThat(dispatcher.getPendingCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void malformedProgressIsIgnored() throws Exception {
+        final Callback callback = new Callback();
+        final OtpErlangPid alias = dispatcher.addStream(callback);
+        peer.send(alias, tuple(new OtpErlangAtom("ok")));
+        peer.send(alias, tuple(ref(), new OtpErlangAtom("ok")));
+        peer.send(alias, tuple(new OtpErlangAtom("stop"), new OtpErlangAtom("done")));
+        assertThat(callback.stopped.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(callback.result).isEqualTo(new OtpErlangAtom("done"));
+        assertThat(dispatcher.getStreamCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void silentStreamIsGivenUp() throws Exception {
+        final RpcReplyDispatcher quick = new RpcReplyDispatcher(node, 100);
+        try {
+            final Callback callback = new Callback();
+            quick.addStream(callback);
+            assertThat(callback.stopped.await(5, TimeUnit.SECONDS)).isTrue();
+            assertThat(((OtpErlangTuple) callback.result).elementAt(0)).isEqualTo(
+                    new OtpErlangAtom("error"));
+            assertThat(quick.getStreamCount()).isEqualTo(0);
+        } finally {
+            quick.dispose();
+        }
+    }
+
+    @Test
+    public void failAllStopsStreams() throws Exception {
+        final Callback callback = new Callback();
+        dispatcher.addStream(callback);
+        dispatcher.failAll("down");
+        assertThat(callback.stopped.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(dispatcher.getStreamCount()).isEqualTo(0);
+    }
+
+    private OtpErlangRef ref() {
+        return node.createRef();
+    }
+}
@@ -0,0 +1,80 @@
+package org.erlide.tracing.core.utils;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void emptyHistogram() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        assertThat(histogram.getCount()).isEqualTo(0L);
+        assertThat(histogram.getMin()).isEqualTo(0L);
+        assertThat(histogram.getMax()).isEqualTo(0L);
+        assertThat(histogram.getPercentile(50)).isEqualTo(0L);
+    }
+
+    @Test
+    public void smallValuesAreExact() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 10; i++) {
+            histogram.record(i);
+        }
+        assertThat(histogram.getCount()).isEqualTo(10L);
+        assertThat(histogram.getTotal()).isEqualTo(55L);
+        assertThat(histogram.getPercentile(0)).isEqualTo(1L);
+        assertThat(histogram.getPercentile(10)).isEqualTo(1L);
+        assertThat(histogram.getPercentile(50)).isEqualTo(5L);
+        assertThat(histogram.getPercentile(90)).isEqualTo(9L);
+        assertThat(histogram.getPercentile(100)).isEqualTo(10L);
+    }
+
+    @Test
+    public void largeValuesAreWithinAnEighth() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 100000; i++) {
+            histogram.record(i);
+        }
+        for (final int percent : new int[] { 1, 25, 50, 75, 90, 99 }) {
+            final long exact = percent * 1000L;
+            final long value = histogram.getPercentile(percent);
+            assertThat(value).isAtLeast(exact);
+            assertThat(value).isAtMost(exact + exact / 8);
+        }
+        assertThat(histogram.getPercentile(100)).isEqualTo(100000L);
+    }
+
+    @Test
+    public void percentilesAreClippedToRecordedValues() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(1000);
+        histogram.record(1001);
+        // both are in the bucket up to 1023
+        assertThat(histogram.getPercentile(1)).isEqualTo(1001L);
+        assertThat(histogram.getPercentile(100)).isEqualTo(1001L);
+        histogram.record(Long.MAX_VALUE);
+        assertThat(histogram.getPercentile(100)).isEqualTo(Long.MAX_VALUE);
+    }
+
+    @Test
+    public void negativeValuesCountAsZero() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        assertThat(histogram.getMin()).isEqualTo(0L);
+        assertThat(histogram.getPercentile(100)).isEqualTo(0L);
+    }
+
+    @Test
+    public void copyIsIndependent() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(3);
+        final LatencyHistogram copy = new LatencyHistogram(histogram);
+        histogram.record(7);
+        assertThat(copy.getCount()).isEqualTo(1L);
+        assertThat(copy.getPercentile(100)).isEqualTo(3L);
+        histogram.clear();
+        assertThat(histogram.getCount()).isEqualTo(0L);
+        assertThat(copy.getMax()).isEqualTo(3L);
+    }
+}
@@ -0,0 +1,184 @@
+package org.erlide.tracing.core.utils;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.junit.Test;
+
+import com.ericsson.otp.erlang.OtpErlangAtom;
+import com.ericsson.otp.erlang.OtpErlangList;
+import com.ericsson.otp.erlang.OtpErlangLong;
+import com.ericsson.otp.erlang.OtpErlangObject;
+import com.ericsson.otp.erlang.OtpErlangPid;
+import com.ericsson.otp.erlang.OtpErlangTuple;
+
+public class TraceAggregatorTest {
+
+    private static final OtpErlangPid P1 = new OtpErlangPid("n@h", 1, 0, 0);
+    private static final OtpErlangPid P2 = new OtpErlangPid("n@h", 2, 0, 0);
+
+    private final TraceAggregator aggregator = new TraceAggregator();
+
+    private static OtpErlangTuple tuple(final OtpErlangObject... elements) {
+        return new OtpErlangTuple(elements);
+    }
+
+    private static OtpErlangAtom atom(final String name) {
+        return new OtpErlangAtom(name);
+    }
+
+    private static OtpErlangObject ts(final long micros) {
+        return tuple(new OtpErlangLong(1400), new OtpErlangLong(micros / 1000000),
+                new OtpErlangLong(micros % 1000000));
+    }
+
+    private static OtpErlangObject call(final OtpErlangObject pid, final String f,
+            final long time) {
+        return tuple(atom("trace_ts"), pid, atom("call"),
+                tuple(atom("m"), atom(f), new OtpErlangList(new OtpErlangLong(1))),
+                ts(time));
+    }
+
+    private static OtpErlangObject returnFrom(final OtpErlangObject pid, final String f,
+            final long time) {
+        return tuple(atom("trace_ts"), pid, atom("return_from"),
+                tuple(atom("m"), atom(f), new OtpErlangLong(1)), atom("ok"), ts(time));
+    }
+
+    private CallStats stats(final String f) {
+        for (final CallStats stats : aggregator.getCallStats()) {
+            if (stats.getFunction().equals(f)) {
+                return stats;
+            }
+        }
+        throw new AssertionError("no stats for " + f);
+    }
+
+    @Test
+    public void nestedCallsArePairedWithTheirReturns() {
+        aggregator.add(call(P1, "a", 0));
+        aggregator.add(call(P1, "b", 10));
+        aggregator.add(returnFrom(P1, "b", 30));
+        aggregator.add(returnFrom(P1, "a", 100));
+
+        final CallStats a = stats("a");
+        assertThat(a.getModule()).isEqualTo("m");
+        assertThat(a.getArity()).isEqualTo(1);
+        assertThat(a.getCalls()).isEqualTo(1L);
+        assertThat(a.getReturns()).isEqualTo(1L);
+        assertThat(a.getInclusiveTime()).isEqualTo(100L);
+        assertThat(a.getExclusiveTime()).isEqualTo(80L);
+        final CallStats b = stats("b");
+        assertThat(b.getInclusiveTime()).isEqualTo(20L);
+        assertThat(b.getExclusiveTime()).isEqualTo(20L);
+        assertThat(b.getLatency().getPercentile(100)).isEqualTo(20L);
+        assertThat(aggregator.getEventCount()).isEqualTo(4L);
+    }
+
+    @Test
+    public void recursiveCallsReturnInnermostFirst() {
+        aggregator.add(call(P1, "a", 0));
+        aggregator.add(call(P1, "a", 10));
+        aggregator.add(returnFrom(P1, "a", 15));
+        aggregator.add(returnFrom(P1, "a", 40));
+
+        final CallStats a = stats("a");
+        assertThat(a.getCalls()).isEqualTo(2L);
+        assertThat(a.getLatency().getMin()).isEqualTo(5L);
+        assertThat(a.getLatency().getMax()).isEqualTo(40L);
+        assertThat(a.getInclusiveTime()).isEqualTo(45L);
+        assertThat(a.getExclusiveTime()).isEqualTo(40L);
+    }
+
+    @Test
+    public void callsWithoutReturnAreDroppedWhenTheirCallerReturns() {
+        aggregator.add(call(P1, "a", 0));
+        aggregator.add(call(P1, "tail", 5));
+        aggregator.add(returnFrom(P1, "a", 50));
+
+        assertThat(stats("a").getInclusiveTime()).isEqualTo(50L);
+        assertThat(stats("tail").getCalls()).isEqualTo(1L);
+        assertThat(stats("tail").getReturns()).isEqualTo(0L);
+        // a later return of tail has nothing to pair with
+        aggregator.add(returnFrom(P1, "tail", 60));
+        assertThat(stats("tail").getReturns()).isEqualTo(0L);
+    }
+
+    @Test
+    public void processesHaveSeparateStacks() {
+        aggregator.add(call(P1, "a", 0));
+        aggregator.add(call(P2, "a", 10));
+        aggregator.add(returnFrom(P1, "a", 20));
+        aggregator.add(returnFrom(P2, "a", 100));
+
+        final LatencyHistogram latency = stats("a").getLatency();
+        assertThat(latency.getMin()).isEqualTo(20L);
+        assertThat(latency.getMax()).isEqualTo(90L);
+    }
+
+    @Test
+    public void tracesLoadedByTheTracerNodeArePaired() {
+        // process as {Pid, InitialCall, Node}, timestamps as {Date, Time}
+        final OtpErlangObject process = tuple(P1,
+                tuple(atom("m"), atom("init"), new OtpErlangLong(0)), atom("n@h"));
+        final OtpErlangObject start = tuple(
+                tuple(new OtpErlangLong(2014), new OtpErlangLong(12),
+                        new OtpErlangLong(31)),
+                tuple(new OtpErlangLong(23), new OtpErlangLong(59),
+                        new OtpErlangLong(59)));
+        final OtpErlangObject end = tuple(
+                tuple(new OtpErlangLong(2015), new OtpErlangLong(1),
+                        new OtpErlangLong(1)),
+                tuple(new OtpErlangLong(0), new OtpErlangLong(0),
+                        new OtpErlangLong(1)));
+        aggregator.add(tuple(atom("trace_ts"), process, atom("call"),
+                tuple(atom("m"), atom("a"), new OtpErlangList()), start));
+        aggregator.add(tuple(atom("trace_ts"), P1, atom("return_from"),
+                tuple(atom("m"), atom("a"), new OtpErlangLong(0)), atom("ok"), end));
+
+        assertThat(stats("a").getInclusiveTime()).isEqualTo(2000000L);
+    }
+
+    @Test
+    public void messagesAreCountedPerProcess() {
+        aggregator.add(tuple(atom("trace_ts"), P1, atom("send"), atom("hi"), P2, ts(0)));
+        aggregator.add(tuple(atom("trace_ts"), P1, atom("send"), atom("hi"), P2, ts(1)));
+        aggregator.add(tuple(atom("trace_ts"), P2, atom("receive"), atom("hi"), ts(2)));
+
+        for (final TraceAggregator.ProcessStats stats : aggregator.getProcessStats()) {
+            if (stats.getProcess().equals(P1)) {
+                assertThat(stats.getSent()).isEqualTo(2L);
+                assertThat(stats.getReceived()).isEqualTo(0L);
+            } else {
+                assertThat(stats.getProcess()).isEqualTo(P2);
+                assertThat(stats.getReceived()).isEqualTo(1L);
+            }
+        }
+        assertThat(aggregator.getProcessStats()).hasSize(2);
+    }
+
+    @Test
+    public void otherMessagesAreIgnored() {
+        aggregator.add(atom("trace_ts"));
+        aggregator.add(tuple(atom("trace"), P1, atom("call"), atom("x"), ts(0)));
+        aggregator.add(tuple(atom("drop"), new OtpErlangLong(3)));
+        assertThat(aggregator.getEventCount()).isEqualTo(0L);
+        assertThat(aggregator.getCallStats()).isEmpty();
+    }
+
+    @Test
+    public void allEventsOfASourceAreAdded() throws Exception {
+        final TraceEventLog log = new TraceEventLog();
+        try {
+            for (int i = 0; i < 25000; i++) {
+                log.append(call(P1, "a", i * 10));
+                log.append(returnFrom(P1, "a", i * 10 + 3));
+            }
+            aggregator.addAll(log);
+        } finally {
+            log.dispose();
+        }
+        assertThat(aggregator.getEventCount()).isEqualTo(50000L);
+        assertThat(stats("a").getReturns()).isEqualTo(25000L);
+        assertThat(stats("a").getInclusiveTime()).isEqualTo(75000L);
+    }
+}
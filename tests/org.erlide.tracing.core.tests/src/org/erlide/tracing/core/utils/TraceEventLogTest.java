@@ -0,0 +1,80 @@
+package org.erlide.tracing.core.utils;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.ericsson.otp.erlang.OtpErlangAtom;
+import com.ericsson.otp.erlang.OtpErlangLong;
+import com.ericsson.otp.erlang.OtpErlangObject;
+import com.ericsson.otp.erlang.OtpErlangString;
+import com.ericsson.otp.erlang.OtpErlangTuple;
+
+public class TraceEventLogTest {
+
+    private TraceEventLog log;
+
+    @Before
+    public void setUp() throws Exception {
+        log = new TraceEventLog();
+    }
+
+    @After
+    public void tearDown() {
+        log.dispose();
+    }
+
+    private static OtpErlangObject event(final int i) {
+        return new OtpErlangTuple(new OtpErlangObject[] { new OtpErlangAtom("trace"),
+                new OtpErlangLong(i), new OtpErlangString("event " + i) });
+    }
+
+    @Test
+    public void eventsAreReadBackInOrder() throws Exception {
+        for (int i = 0; i < 1000; i++) {
+            log.append(event(i));
+        }
+        assertThat(log.size()).isEqualTo(1000);
+        final List<OtpErlangObject> page = log.read(100, 150);
+        assertThat(page).hasSize(50);
+        for (int i = 0; i < 50; i++) {
+            assertThat(page.get(i)).isEqualTo(event(100 + i));
+        }
+    }
+
+    @Test
+    public void rangeIsClippedToEvents() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            log.append(event(i));
+        }
+        assertThat(log.read(-5, 3)).containsExactly(event(0), event(1), event(2))
+                .inOrder();
+        assertThat(log.read(8, 100)).containsExactly(event(8), event(9)).inOrder();
+        assertThat(log.read(20, 30)).isEmpty();
+        assertThat(log.read(5, 5)).isEmpty();
+    }
+
+    @Test
+    public void readsSeeEventsAppendedSinceTheLastRead() throws Exception {
+        log.append(event(0));
+        assertThat(log.read(0, 1)).containsExactly(event(0));
+        for (int i = 1; i < 5000; i++) {
+            log.append(event(i));
+        }
+        assertThat(log.read(4998, 5000)).containsExactly(event(4998), event(4999))
+                .inOrder();
+    }
+
+    @Test
+    public void disposedLogIgnoresAppendsAndReads() throws Exception {
+        log.append(event(0));
+        log.dispose();
+        log.append(event(1));
+        assertThat(log.size()).isEqualTo(1);
+        assertThat(log.read(0, 1)).isEmpty();
+    }
+}
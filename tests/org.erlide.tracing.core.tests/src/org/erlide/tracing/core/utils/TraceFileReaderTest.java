@@ -0,0 +1,164 @@
+package org.erlide.tracing.core.utils;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.ericsson.otp.erlang.OtpErlangAtom;
+import com.ericsson.otp.erlang.OtpErlangLong;
+import com.ericsson.otp.erlang.OtpErlangObject;
+import com.ericsson.otp.erlang.OtpErlangPid;
+import com.ericsson.otp.erlang.OtpErlangTuple;
+import com.ericsson.otp.erlang.OtpExternal;
+import com.ericsson.otp.erlang.OtpOutputStream;
+
+public class TraceFileReaderTest {
+
+    private File file;
+    private TraceFileReader reader;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("trace", ".ttb");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (reader != null) {
+            reader.close();
+        }
+        file.delete();
+    }
+
+    private static OtpErlangObject trace(final int i) {
+        return new OtpErlangTuple(new OtpErlangObject[] { new OtpErlangAtom("trace_ts"),
+                new OtpErlangPid("n@h", i, 0, 0), new OtpErlangAtom("call"),
+                new OtpErlangTuple(new OtpErlangObject[] { new OtpErlangAtom("m"),
+                        new OtpErlangAtom("f_" + i), new OtpErlangLong(i) }),
+                new OtpErlangTuple(new OtpErlangObject[] { new OtpErlangLong(1400),
+                        new OtpErlangLong(0), new OtpErlangLong(i) }) });
+    }
+
+    private static OtpErlangObject drop(final long n) {
+        return new OtpErlangTuple(new OtpErlangObject[] { new OtpErlangAtom("drop"),
+                new OtpErlangLong(n) });
+    }
+
+    /**
+     * Writes entries the way the <code>file</code> trace port does: a
+     * <code>{drop, N}</code> tuple as <code>&lt;&lt;1, N:32&gt;&gt;</code>, anything
+     * else as <code>&lt;&lt;0, Size:32, (term_to_binary(Term))/binary&gt;&gt;</code>.
+     */
+    private void write(final OtpErlangObject... entries) throws IOException {
+        try (final DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file, true)))) {
+            for (final OtpErlangObject entry : entries) {
+                final OtpErlangTuple tuple = (OtpErlangTuple) entry;
+                if (tuple.elementAt(0).equals(new OtpErlangAtom("drop"))) {
+                    out.writeByte(1);
+                    out.writeInt((int) ((OtpErlangLong) tuple.elementAt(1)).longValue());
+                    continue;
+                }
+                final OtpOutputStream term = new OtpOutputStream();
+                term.write1(OtpExternal.versionTag);
+                term.write_any(entry);
+                out.writeByte(0);
+                out.writeInt(term.size());
+                out.write(term.toByteArray());
+            }
+        }
+    }
+
+    @Test
+    public void tracesAndDropsAreRead() throws IOException {
+        write(trace(1), trace(2), drop(7), trace(3));
+        reader = new TraceFileReader(file);
+        assertThat(reader.size()).isEqualTo(4);
+        assertThat(reader.read(0, 4)).containsExactly(trace(1), trace(2), drop(7),
+                trace(3)).inOrder();
+    }
+
+    @Test
+    public void dropCountsAreUnsigned() throws IOException {
+        write(drop(0xfffffffeL));
+        reader = new TraceFileReader(file);
+        assertThat(reader.read(0, 1)).containsExactly(drop(0xfffffffeL));
+    }
+
+    @Test
+    public void entriesAreNumberedLikeTheTracerNodeDoes() throws IOException {
+        // the tracer node counts drops as traces too, and numbers them from 1;
+        // page first..last is read as read(first - 1, last)
+        for (int i = 1; i <= 100; i++) {
+            write(i % 10 == 0 ? drop(i) : trace(i));
+        }
+        reader = new TraceFileReader(file);
+        assertThat(reader.size()).isEqualTo(100);
+        final List<OtpErlangObject> page = reader.read(41 - 1, 50);
+        assertThat(page).hasSize(10);
+        assertThat(page.get(0)).isEqualTo(trace(41));
+        assertThat(page.get(9)).isEqualTo(drop(50));
+        assertThat(reader.read(95, 200)).hasSize(5);
+        assertThat(reader.read(-3, 1)).containsExactly(trace(1));
+        assertThat(reader.read(100, 110)).isEmpty();
+    }
+
+    @Test
+    public void truncatedLastEntryIsIgnored() throws IOException {
+        write(trace(1), trace(2));
+        try (final FileOutputStream out = new FileOutputStream(file, true)) {
+            out.write(new byte[] { 0, 0, 0, 1, 0, 1, 2 });
+        }
+        reader = new TraceFileReader(file);
+        assertThat(reader.size()).isEqualTo(2);
+    }
+
+    @Test(expected = IOException.class)
+    public void otherFilesAreRejected() throws IOException {
+        try (final FileOutputStream out = new FileOutputStream(file)) {
+            out.write("not a trace file".getBytes("UTF-8"));
+        }
+        reader = new TraceFileReader(file);
+    }
+
+    @Test
+    public void entriesAreSplitOverRegions() throws IOException {
+        // regions of 200 bytes stand in for the 2 GB ones; no entry may straddle two
+        final int n = 300;
+        for (int i = 1; i <= n; i++) {
+            write(i % 7 == 0 ? drop(i) : trace(i));
+        }
+        assertThat(file.length()).isGreaterThan(200L * 10);
+        reader = new TraceFileReader(file, 200);
+        assertThat(reader.size()).isEqualTo(n);
+        final List<OtpErlangObject> all = reader.read(0, n);
+        for (int i = 1; i <= n; i++) {
+            assertThat(all.get(i - 1)).isEqualTo(i % 7 == 0 ? drop(i) : trace(i));
+        }
+    }
+
+    @Test
+    public void closedReaderCantBeRead() throws IOException {
+        write(trace(1));
+        reader = new TraceFileReader(file);
+        reader.close();
+        try {
+            reader.read(0, 1);
+            throw new AssertionError("expected IOException");
+        } catch (final IOException e) {
+            // expected
+        }
+        // closing again does nothing
+        reader.close();
+        assertThat(file.delete()).isTrue();
+    }
+}
@@ -0,0 +1,78 @@
+/*******************************************************************************
+ * Copyright (c) 2008 Vlad Dumitrescu and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Vlad Dumitrescu
+ *******************************************************************************/
+package org.erlide.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.erlide.util.erlang.CompiledSignature;
+import org.erlide.util.erlang.Signature;
+import org.erlide.util.erlang.SignatureException;
+import org.erlide.util.erlang.TypeConverter;
+import org.junit.Test;
+
+import com.ericsson.otp.erlang.OtpErlangAtom;
+import com.ericsson.otp.erlang.OtpErlangLong;
+import com.ericsson.otp.erlang.OtpErlangObject;
+import com.ericsson.otp.erlang.OtpErlangString;
+
+public class CompiledSignatureTest {
+
+    // same result as the generic conversion, argument by argument
+    private void check(final String sig, final Object... args) throws SignatureException {
+        final Signature[] types = Signature.parse(sig);
+        final OtpErlangObject[] expect = new OtpErlangObject[args.length];
+        for (int i = 0; i < args.length; i++) {
+            expect[i] = TypeConverter.java2erlang(args[i], types[i]);
+        }
+        assertArrayEquals(expect, CompiledSignature.of(sig).encode(args));
+    }
+
+    @SuppressWarnings("boxing")
+    @Test
+    public void typicalSignatures() throws SignatureException {
+        check("aiis", "mod", 1, 2L, "text");
+        check("lslslsoo", Arrays.asList("a", "b"), Collections.emptyList(),
+                new String[] { "c" }, true, false);
+        check("ssx", "file.erl", "", new OtpErlangAtom("ok"));
+        check("2ai", (Object) new Object[] { "key", 42 });
+        check("l2si", Arrays.asList(new Object[] { "a", 1 }, new Object[] { "b", 2 }));
+        check("iid", BigInteger.TEN, 'c', 3.14);
+    }
+
+    @Test
+    public void fallsBackForOtherValues() throws SignatureException {
+        check("saib", new OtpErlangString("s"), new OtpErlangAtom("a"),
+                new OtpErlangLong(3), "bin");
+    }
+
+    @SuppressWarnings("boxing")
+    @Test(expected = SignatureException.class)
+    public void badConversionFails() throws SignatureException {
+        CompiledSignature.of("i").encode(true);
+    }
+
+    @Test(expected = SignatureException.class)
+    public void wrongArityFails() throws SignatureException {
+        CompiledSignature.of("ii").encode("x");
+    }
+
+    @Test
+    public void isCached() throws SignatureException {
+        assertSame(CompiledSignature.of("aiis"), CompiledSignature.of("aiis"));
+        assertEquals(4, CompiledSignature.of("aiis").arity());
+    }
+}
@@ -0,0 +1,224 @@
+package org.erlide.util;
+
+import java.util.Random;
+
+import org.erlide.util.erlang.OtpErlang;
+import org.erlide.util.erlang.OtpParser;
+import org.erlide.util.erlang.OtpPatternVariable;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.ericsson.otp.erlang.OtpErlangList;
+import com.ericsson.otp.erlang.OtpErlangMap;
+import com.ericsson.otp.erlang.OtpErlangObject;
+import com.ericsson.otp.erlang.OtpErlangTuple;
+
+/**
+ * Checks that {@link OtpParser} gives the same results as the old recursive parser, on
+ * random terms and on random corruptions of them.
+ */
+public class OtpParserEquivalenceTest {
+
+    private final OtpParser termParser = OtpErlang.getTermParser();
+    private final Random random = new Random(4711);
+
+    private static final String[] ATOMS = { "a", "ok", "hello_world", "x1", "'quoted'",
+            "'with space'", "'it''s'" };
+    private static final String[] VARIABLES = { "X", "Var", "_", "_Ignored", "N:i",
+            "Enc:a", "Reqs:lx", "P:p" };
+    private static final String[] STRINGS = { "\"\"", "\"abc\"", "\"with \\\"quote\\\"\"",
+            "\"a\\nb\"", "\"[{,}]\"" };
+    private static final String[] SPACES = { "", " ", "  ", "\n", "\t", " \r\n" };
+    private static final String NOISE = "{}[](),|#=>~-_aZ9\"' ";
+
+    private String space() {
+        return SPACES[random.nextInt(SPACES.length)];
+    }
+
+    private String term(final int depth) {
+        final int kind = random.nextInt(depth > 4 ? 5 : 9);
+        switch (kind) {
+        case 0:
+            return ATOMS[random.nextInt(ATOMS.length)];
+        case 1:
+            return VARIABLES[random.nextInt(VARIABLES.length)];
+        case 2:
+            return STRINGS[random.nextInt(STRINGS.length)];
+        case 3:
+            return Integer.toString(random.nextInt(2000) - 1000);
+        case 4:
+            return "~" + "sail".charAt(random.nextInt(4));
+        case 5:
+        case 6: {
+            final StringBuilder b = new StringBuilder("[");
+            final int n = random.nextInt(5);
+            for (int i = 0; i < n; i++) {
+                b.append(i > 0 ? "," : "").append(space()).append(term(depth + 1));
+            }
+            if (n > 0 && random.nextInt(4) == 0) {
+                b.append(space()).append("|").append(space()).append(term(depth + 1));
+            }
+            return b.append(space()).append("]").toString();
+        }
+        case 7: {
+            final StringBuilder b = new StringBuilder("{");
+            final int n = random.nextInt(5);
+            for (int i = 0; i < n; i++) {
+                b.append(i > 0 ? "," : "").append(space()).append(term(depth + 1));
+            }
+            return b.append(space()).append("}").toString();
+        }
+        default: {
+            final StringBuilder b = new StringBuilder("#{");
+            final int n = random.nextInt(4);
+            for (int i = 0; i < n; i++) {
+                b.append(i > 0 ? "," : "").append(term(depth + 1)).append(space())
+                        .append("=>").append(space()).append(term(depth + 1));
+            }
+            return b.append("}").toString();
+        }
+        }
+    }
+
+    private String corrupt(final String s) {
+        final StringBuilder b = new StringBuilder(s);
+        final int n = 1 + random.nextInt(3);
+        for (int i = 0; i < n && b.length() > 0; i++) {
+            final int pos = random.nextInt(b.length());
+            switch (random.nextInt(3)) {
+            case 0:
+                b.deleteCharAt(pos);
+                break;
+            case 1:
+                b.insert(pos, NOISE.charAt(random.nextInt(NOISE.length())));
+                break;
+            default:
+                b.setLength(pos);
+                break;
+            }
+        }
+        return b.toString();
+    }
+
+    private void check(final String s) {
+        Object expected;
+        try {
+            expected = LegacyOtpParser.parse(s);
+        } catch (final Exception e) {
+            expected = e;
+        }
+        Object actual;
+        try {
+            actual = termParser.parse(s);
+        } catch (final Exception e) {
+            actual = e;
+        }
+        if (expected instanceof Exception || actual instanceof Exception) {
+            // the old parser could also fail with runtime exceptions
+            Assert.assertTrue("<" + s + "> " + expected + " / " + actual,
+                    expected instanceof Exception && actual instanceof Exception);
+            return;
+        }
+        Assert.assertTrue("<" + s + "> " + expected + " / " + actual,
+                same((OtpErlangObject) expected, (OtpErlangObject) actual));
+    }
+
+    // pattern variables don't implement equals in a useful way
+    private static boolean same(final OtpErlangObject a, final OtpErlangObject b) {
+        if (a == null || b == null) {
+            return a == b;
+        }
+        if (a.getClass() != b.getClass()) {
+            return false;
+        }
+        if (a instanceof OtpPatternVariable) {
+            final OtpPatternVariable va = (OtpPatternVariable) a;
+            final OtpPatternVariable vb = (OtpPatternVariable) b;
+            return va.getName().equals(vb.getName())
+                    && va.getSignature().kind == vb.getSignature().kind;
+        }
+        if (a instanceof OtpErlangTuple) {
+            return same(((OtpErlangTuple) a).elements(), ((OtpErlangTuple) b).elements());
+        }
+        if (a instanceof OtpErlangList) {
+            final OtpErlangList la = (OtpErlangList) a;
+            final OtpErlangList lb = (OtpErlangList) b;
+            return same(la.elements(), lb.elements())
+                    && same(la.getLastTail(), lb.getLastTail());
+        }
+        if (a instanceof OtpErlangMap) {
+            final OtpErlangMap ma = (OtpErlangMap) a;
+            final OtpErlangMap mb = (OtpErlangMap) b;
+            return same(ma.keys(), mb.keys()) && same(ma.values(), mb.values());
+        }
+        return a.equals(b);
+    }
+
+    private static boolean same(final OtpErlangObject[] a, final OtpErlangObject[] b) {
+        if (a.length != b.length) {
+            return false;
+        }
+        for (int i = 0; i < a.length; i++) {
+            if (!same(a[i], b[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Test
+    public void randomTerms() {
+        for (int i = 0; i < 3000; i++) {
+            check(space() + term(0) + space());
+        }
+    }
+
+    @Test
+    public void corruptedTerms() {
+        for (int i = 0; i < 3000; i++) {
+            check(corrupt(term(0)));
+        }
+    }
+
+    @Test
+    public void trailingInput() {
+        check("{a, b} [c]");
+        check("[a | b c]");
+        check("[|a]");
+        check("[a | ]");
+        check("[");
+        check("{a");
+    }
+
+    @Test
+    public void deepNesting() throws Exception {
+        final int depth = 20000;
+        final StringBuilder b = new StringBuilder();
+        for (int i = 0; i < depth; i++) {
+            b.append("[{");
+        }
+        b.append("x");
+        for (int i = 0; i < depth; i++) {
+            b.append("}]");
+        }
+        OtpErlangObject r = termParser.parse(b.toString());
+        int n = 0;
+        while (r instanceof OtpErlangList) {
+            r = ((OtpErlangTuple) ((OtpErlangList) r).elementAt(0)).elementAt(0);
+            n++;
+        }
+        Assert.assertEquals(depth, n);
+    }
+
+    @Test
+    public void longList() throws Exception {
+        final int size = 100000;
+        final StringBuilder b = new StringBuilder("[");
+        for (int i = 0; i < size; i++) {
+            b.append(i > 0 ? ", " : "").append("{a, ").append(i).append("}");
+        }
+        b.append("]");
+        final OtpErlangList r = (OtpErlangList) termParser.parse(b.toString());
+        Assert.assertEquals(size, r.arity());
+    }
+}
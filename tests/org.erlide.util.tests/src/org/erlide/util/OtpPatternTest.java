@@ -0,0 +1,77 @@
+/*******************************************************************************
+ * Copyright (c) 2004 Vlad Dumitrescu and others. All rights reserved. This program and
+ * the accompanying materials are made available under the terms of the Eclipse Public
+ * License v1.0 which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors: Vlad Dumitrescu
+ *******************************************************************************/
+package org.erlide.util;
+
+import org.erlide.util.erlang.OtpBindings;
+import org.erlide.util.erlang.OtpErlang;
+import org.erlide.util.erlang.OtpParserException;
+import org.erlide.util.erlang.OtpPattern;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.ericsson.otp.erlang.OtpErlangAtom;
+import com.ericsson.otp.erlang.OtpErlangObject;
+
+public class OtpPatternTest {
+
+    private static final String[][] CASES = { { "[a, {b}]", "[a, {b}]" },
+            { "[a, {b}]", "[a, {c}]" }, { "[W, V]", "[a, b]" },
+            { "[W, V]", "[\"a\", {[1, 2]}]" }, { "[W, {V}]", "[a, {a}]" },
+            { "[_, {_}]", "[a, {b}]" }, { "[W, {W}]", "[a, {b}]" },
+            { "[W, {W}]", "[a, {a}]" }, { "W:a", "zzz" }, { "W:i", "222" },
+            { "W:i", "zzz" }, { "[X | T]", "[x,y,z]" }, { "[X | T]", "[x]" },
+            { "[X | y]", "[x,y,z]" }, { "[W:a, V:i]", "[a, 1]" },
+            { "[W:a, V:i]", "[a, b]" }, { "{put_chars, Enc:a, Chars}",
+                    "{put_chars, unicode, \"hello\"}" },
+            { "{put_chars, Enc:a, Chars}", "{put_chars, \"hello\"}" },
+            { "{get_until, Prompt, N:i}", "{get_until, \"> \", 3}" },
+            { "{Payload, Leader, From, Tstamp}", "{\"x\", a, b, {1,2,3}}" },
+            { "\"abc\"", "\"abc\"" }, { "[]", "[]" }, { "[]", "[a]" },
+            { "{}", "{}" }, { "{A, A, B}", "{1, 1, 2}" }, { "{A, A, B}", "{1, 2, 2}" } };
+
+    @Test
+    public void sameResultAsMatch() throws OtpParserException {
+        for (final String[] c : CASES) {
+            final OtpErlangObject pattern = OtpErlang.parse(c[0]);
+            final OtpErlangObject term = OtpErlang.parse(c[1]);
+            final OtpBindings expect = OtpErlang.match(pattern, term);
+            final OtpBindings actual = OtpPattern.compile(c[0]).bind(term);
+            Assert.assertEquals(c[0] + " = " + c[1], expect == null ? null
+                    : expect.getAll(), actual == null ? null : actual.getAll());
+        }
+    }
+
+    @Test
+    public void slotsInOrderOfAppearance() throws OtpParserException {
+        final OtpPattern p = OtpPattern.compile("{put_chars, Enc:a, _, Chars, Enc}");
+        Assert.assertEquals(2, p.size());
+        Assert.assertEquals(0, p.slot("Enc"));
+        Assert.assertEquals(1, p.slot("Chars"));
+        Assert.assertEquals(-1, p.slot("_"));
+        final OtpErlangObject[] slots = new OtpErlangObject[4];
+        Assert.assertTrue(p.match(OtpErlang.parse("{put_chars, latin1, x, \"s\", latin1}"),
+                slots));
+        Assert.assertEquals(new OtpErlangAtom("latin1"), slots[0]);
+        Assert.assertEquals(OtpErlang.parse("\"s\""), slots[1]);
+    }
+
+    @Test
+    public void slotsAreClearedBetweenMatches() throws OtpParserException {
+        final OtpPattern p = OtpPattern.compile("{A, A}");
+        final OtpErlangObject[] slots = p.newSlots();
+        Assert.assertTrue(p.match(OtpErlang.parse("{x, x}"), slots));
+        Assert.assertTrue(p.match(OtpErlang.parse("{y, y}"), slots));
+        Assert.assertEquals(new OtpErlangAtom("y"), slots[0]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void badConstantPattern() {
+        OtpPattern.of("{get_until, Enc: a}");
+    }
+}